@@ -0,0 +1,80 @@
+/*
+ * @(#)ClassifierLibrary.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.classifier;
+
+/**
+ * The classifier operations shared by the Matlab JNI library and the pure
+ * Java engine. See {@link ClassifierLibraryJNI} for a description of each
+ * method's arguments.
+ *
+ * @author dcline
+ */
+public interface ClassifierLibrary {
+
+    /**
+     * Initialize the library - this must always be called first
+     * before calling any of the following methods
+     *
+     * @param matlabLogFileName the file to log the matlab output to
+     * @param nojvm set to 1 to use a jvm, 0 to not
+     */
+    void initLib(String matlabLogFileName, int nojvm);
+
+    /** Close the library - this must be called when done with this library */
+    void closeLib();
+
+    /**
+     * Sets a kill state used to stop a running function
+     * @param killFileName file name of the kill handle
+     * @param state set 1 to kill associated function; 0 to not kill.
+     */
+    void set_kill(String killFileName, int state);
+
+    void collect_class(String killfile, String rawDirectoryName, String squaredDirectoryName, String classname,
+                       String matlabdbDirName, String varsclassname, String description, ColorSpace colorspace);
+
+    void delete_class(String classname, String matlabdbDirName, ColorSpace colorspace);
+
+    void delete_train_class(String matlabdbDirName, String trainingalias);
+
+    void collect_tests(String killfile, String testDirName, String matlabdbDirName, ColorSpace colorspace);
+
+    void test_class(String killfile, String[] eventfilenames, int[] classindex, float[] probability,
+                    String testclassname, String trainingclasses, float minprobthreshold, String matlabdbDirName,
+                    ColorSpace colorspace);
+
+    void run_test(String killfile, String[] eventids, int[] majoritywinnerindex, int[] probabilitywinnerindex,
+                  int[] maxwinnerindex, float[] probability, String testclassname, String trainingalias,
+                  float minprobthreshold, String matlabdbDirName, ColorSpace colorspace);
+
+    void train_classes(String killfile, String trainingclasses, String trainingalias, String matlabdbDirName,
+                       ColorSpace colorspace, String description);
+
+    TrainingModel[] get_training_classes(String matlabdbDirName);
+
+    ClassModel[] get_collected_classes(String matlabdbDirName);
+}
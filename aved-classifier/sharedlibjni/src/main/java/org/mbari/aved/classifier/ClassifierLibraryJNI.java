@@ -36,7 +36,7 @@ import org.mbari.aved.classifier.NarSystem;
  * and exposed through a shared library.
  * @author Danelle Cline
  */
-public class ClassifierLibraryJNI {
+public class ClassifierLibraryJNI implements ClassifierLibrary {
 
     public ClassifierLibraryJNI() throws Exception {
 
@@ -0,0 +1,859 @@
+/*
+ * @(#)ClassifierLibraryJava.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.classifier;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pure Java implementation of the avljNL3 classifier. Test image
+ * collection and classification run in Java, with feature extraction
+ * spread across all available processors, and read and write the same
+ * Matlab (.mat) feature and training database the Matlab library uses.
+ *
+ * <p>Classes are collected in Java too. Training a library, and deleting
+ * classes and training libraries, are still done by the Matlab library:
+ * the Fisher discriminant and Gaussian mixtures are fit with Matlab's
+ * random number generator, so a Java port could not reproduce the
+ * libraries Matlab trains. Those calls are passed to an optional fallback
+ * library, typically a {@link ClassifierLibraryJNI}, and throw an
+ * <code>UnsupportedOperationException</code> if there is none.
+ *
+ * <p>Feature vectors are kept in a {@link FeatureCache} so images that
+ * have not changed since they were last collected are not recomputed.
+ *
+ * @author dcline
+ */
+public class ClassifierLibraryJava implements ClassifierLibrary {
+    private static final String[] IMAGE_EXTENSIONS = { ".ppm", ".png", ".jpg", ".jpeg" };
+    private static final String   FEATURE_SUFFIX   = "_collection_avljNL3_cl_pcsnew.mat";
+    private static final String   CLASS_METADATA   = "_metadata" + FEATURE_SUFFIX;
+    private static final String   TRAINING_METADATA = "_metadata.mat";
+    private final ClassifierLibrary fallback;
+    private final int               numThreads;
+    private boolean                 featureCacheEnabled = true;
+    private PrintStream             log = System.out;
+
+    /**
+     * Creates the library without a fallback and a thread per processor
+     */
+    public ClassifierLibraryJava() {
+        this(null);
+    }
+
+    /**
+     * Creates the library with a thread per processor
+     * @param fallback the library used to collect and train classes,
+     * or null if none
+     */
+    public ClassifierLibraryJava(ClassifierLibrary fallback) {
+        this(fallback, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the library
+     * @param fallback the library used to collect and train classes,
+     * or null if none
+     * @param numThreads the number of threads used to extract features
+     */
+    public ClassifierLibraryJava(ClassifierLibrary fallback, int numThreads) {
+        this.fallback   = fallback;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Sets whether collected features are read from and stored in the
+     * {@link FeatureCache}. This is enabled by default.
+     * @param enabled true to use the feature cache
+     */
+    public void setFeatureCacheEnabled(boolean enabled) {
+        this.featureCacheEnabled = enabled;
+    }
+
+    /**
+     * Opens the log file and initializes the fallback library
+     */
+    public void initLib(String matlabLogFileName, int nojvm) {
+        try {
+            log = new PrintStream(new FileOutputStream(matlabLogFileName, true), true);
+        } catch (FileNotFoundException ex) {
+            Logger.getLogger(ClassifierLibraryJava.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        if (fallback != null) {
+            fallback.initLib(matlabLogFileName, nojvm);
+        }
+    }
+
+    public void closeLib() {
+        if (log != System.out) {
+            log.close();
+            log = System.out;
+        }
+
+        if (fallback != null) {
+            fallback.closeLib();
+        }
+    }
+
+    /**
+     * Sets a kill state. This appends to the kill file as the JNI library
+     * does so either library can be killed with the same file.
+     */
+    public void set_kill(String killFileName, int state) {
+        try {
+            FileOutputStream out = new FileOutputStream(killFileName, true);
+
+            try {
+                out.write(Integer.toString(state).getBytes("US-ASCII"));
+            } finally {
+                out.close();
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException("Exception writing the file " + killFileName);
+        }
+    }
+
+    /**
+     * Collects the features of a directory of squared class images into
+     * <code>matlabdbDirName/features/class</code>, with the class metadata
+     * the Matlab collect_ui function saves.
+     */
+    public void collect_class(String killfile, String rawDirectoryName, String squaredDirectoryName,
+                              String classname, String matlabdbDirName, String varsclassname, String description,
+                              ColorSpace colorspace) {
+        File squaredDir = new File(squaredDirectoryName);
+
+        if (!squaredDir.isDirectory()) {
+            throw new IllegalArgumentException(squaredDirectoryName + " is not a valid directory");
+        }
+
+        removeKill(killfile);
+
+        try {
+            File dbroot = new File(matlabdbDirName);
+
+            log.println("Collecting training file data");
+            collect(killfile, squaredDir, classname, dbroot, "class", colorspace);
+
+            Map<String, Object> metadata = new LinkedHashMap<String, Object>();
+
+            metadata.put("raw_directory", rawDirectoryName);
+            metadata.put("square_directory", squaredDirectoryName);
+            metadata.put("classname", classname);
+            metadata.put("dbroot", matlabdbDirName);
+            metadata.put("predictedclassname", varsclassname);
+            metadata.put("description", description);
+            metadata.put("color_space", new MatFile.Matrix(new double[][] { { colorspace.color } }));
+
+            File m = new File(dbroot, "features/class/" + FeatureSet.getRootName(classname, colorspace)
+                              + CLASS_METADATA);
+
+            log.println("Saving " + m);
+            write(m, "class_metadata", new MatFile.Struct(metadata));
+        } catch (IOException ex) {
+            throw new RuntimeException("Collecting class failed: " + ex.getMessage());
+        } finally {
+            removeKill(killfile);
+        }
+    }
+
+    public void delete_class(String classname, String matlabdbDirName, ColorSpace colorspace) {
+        getFallback("delete_class").delete_class(classname, matlabdbDirName, colorspace);
+    }
+
+    public void delete_train_class(String matlabdbDirName, String trainingalias) {
+        getFallback("delete_train_class").delete_train_class(matlabdbDirName, trainingalias);
+    }
+
+    public void train_classes(String killfile, String trainingclasses, String trainingalias,
+                              String matlabdbDirName, ColorSpace colorspace, String description) {
+        getFallback("train_classes").train_classes(killfile, trainingclasses, trainingalias, matlabdbDirName,
+                    colorspace, description);
+    }
+
+    /**
+     * Collects the features of a directory of test images into
+     * <code>matlabdbDirName/features/tests</code>. Directories of class
+     * subdirectories are passed to the fallback library.
+     */
+    public void collect_tests(String killfile, String testDirName, String matlabdbDirName,
+                              ColorSpace colorspace) {
+        File testDir = new File(testDirName);
+
+        if (!testDir.isDirectory()) {
+            throw new IllegalArgumentException(testDirName + " is not a valid directory");
+        }
+
+        File[] subdirs = testDir.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return new File(dir, name).isDirectory();
+            }
+        });
+
+        if ((subdirs != null) && (subdirs.length > 0)) {
+            getFallback("collect_tests of subdirectories").collect_tests(killfile, testDirName, matlabdbDirName,
+                        colorspace);
+
+            return;
+        }
+
+        removeKill(killfile);
+
+        try {
+            log.println("Collecting test file features");
+            collect(killfile, testDir, testDir.getName(), new File(matlabdbDirName), "tests", colorspace);
+        } catch (IOException ex) {
+            throw new RuntimeException("Collecting tests failed: " + ex.getMessage());
+        } finally {
+            removeKill(killfile);
+        }
+    }
+
+    /**
+     * Classifies the collected test images and assigns a class to each
+     * event with the majority, probability and maximum rules. The
+     * probability returned is that of the maximum rule, as in the Matlab
+     * library.
+     */
+    public void run_test(String killfile, String[] eventids, int[] majoritywinnerindex,
+                         int[] probabilitywinnerindex, int[] maxwinnerindex, float[] probability,
+                         String testclassname, String trainingalias, float minprobthreshold,
+                         String matlabdbDirName, ColorSpace colorspace) {
+        removeKill(killfile);
+        log.println("TESTING " + testclassname + " STARTING...");
+
+        File             dbroot = new File(matlabdbDirName);
+        FisherClassifier classifier;
+        FeatureSet       tests;
+
+        try {
+            classifier = FisherClassifier.load(dbroot, trainingalias);
+            tests      = FeatureSet.load(new File(dbroot, "features/tests"), testclassname, colorspace);
+        } catch (IOException ex) {
+            throw new RuntimeException("Run test failed: " + ex.getMessage());
+        }
+
+        int      numClasses = classifier.getClassNames().length + 1;
+        int[]    classIndex = new int[tests.size()];
+        double[] storeProb  = new double[tests.size()];
+
+        classify(killfile, classifier, tests, minprobthreshold, classIndex, storeProb);
+        log.println("TESTING DONE...");
+
+        List<int[]> events = FisherClassifier.groupEvents(tests.filenames);
+        int         rlen   = events.size();
+
+        if ((eventids.length < rlen) || (probability.length < rlen) || (majoritywinnerindex.length < rlen)
+                || (maxwinnerindex.length < rlen)) {
+            throw new IllegalArgumentException("Result arrays incorrectly sized, initialize to size " + rlen);
+        }
+
+        if (probabilitywinnerindex.length != rlen) {
+            throw new IllegalArgumentException("Probability class index array incorrectly sized, initialize to "
+                                               + rlen + " size");
+        }
+
+        int maxIndex = FisherClassifier.maximumIndex(storeProb);
+
+        for (int i = 0; i < rlen; i++) {
+            int[] event = events.get(i);
+
+            eventids[i]               = FisherClassifier.getEventId(tests.filenames[event[0]]);
+            majoritywinnerindex[i]    = FisherClassifier.majorityWinner(classIndex, event[0], event[1],
+                    numClasses);
+            probabilitywinnerindex[i] = FisherClassifier.probabilityWinner(classIndex, storeProb, event[0],
+                    event[1], numClasses);
+            maxwinnerindex[i]         = classIndex[maxIndex];
+            probability[i]            = (float) storeProb[maxIndex];
+        }
+
+        removeKill(killfile);
+    }
+
+    /**
+     * Classifies a random 10% of the images in a collected class, or all of
+     * them if there are 10 or fewer
+     */
+    public void test_class(String killfile, String[] eventfilenames, int[] classindex, float[] probability,
+                           String testclassname, String trainingclasses, float minprobthreshold,
+                           String matlabdbDirName, ColorSpace colorspace) {
+        removeKill(killfile);
+        log.println("TESTING STARTING...");
+
+        File             dbroot = new File(matlabdbDirName);
+        FisherClassifier classifier;
+        FeatureSet       features;
+
+        try {
+            features   = FeatureSet.load(new File(dbroot, "features/class"), testclassname, colorspace);
+            classifier = FisherClassifier.load(dbroot, trainingclasses);
+        } catch (IOException ex) {
+            throw new RuntimeException("Testing class failed: " + ex.getMessage());
+        }
+
+        int   ttl     = features.size();
+        int   numTest = (ttl > 10) ? (int) Math.round(ttl * 0.10) : ttl;
+        int[] index   = new int[ttl];
+
+        for (int i = 0; i < ttl; i++) {
+            index[i] = i;
+        }
+
+        Random random = new Random();
+
+        for (int i = ttl - 1; i > 0; i--) {
+            int j   = random.nextInt(i + 1);
+            int tmp = index[i];
+
+            index[i] = index[j];
+            index[j] = tmp;
+        }
+
+        FeatureSet subset = features.subset(Arrays.copyOf(index, numTest));
+
+        if ((probability.length != numTest) || (classindex.length != numTest)) {
+            throw new IllegalArgumentException("Class index array incorrectly sized, initialize to size "
+                                               + numTest);
+        }
+
+        double[] storeProb = new double[numTest];
+
+        classify(killfile, classifier, subset, minprobthreshold, classindex, storeProb);
+
+        for (int i = 0; i < numTest; i++) {
+            eventfilenames[i] = subset.filenames[i];
+            probability[i]    = (float) storeProb[i];
+        }
+
+        log.println("TESTING DONE...");
+        removeKill(killfile);
+    }
+
+    /**
+     * Returns the training libraries found in
+     * <code>matlabdbDirName/training/class</code>
+     * @return the training libraries, or null if none found
+     */
+    public TrainingModel[] get_training_classes(String matlabdbDirName) {
+        File     dir   = new File(matlabdbDirName, "training/class");
+        String[] files = listSorted(dir, TRAINING_METADATA);
+
+        if (files.length == 0) {
+            return null;
+        }
+
+        ClassModel[] collected = get_collected_classes(matlabdbDirName);
+
+        if (collected == null) {
+            throw new RuntimeException("cannot find classes to populate training library");
+        }
+
+        TrainingModel[] models = new TrainingModel[files.length];
+
+        for (int i = 0; i < files.length; i++) {
+            try {
+                MatFile.Struct metadata = (MatFile.Struct) MatFile.read(new File(dir, files[i]),
+                                              "training_metadata");
+                TrainingModel  model    = new TrainingModel();
+                MatFile.Cell   classes  = (MatFile.Cell) metadata.get("classes");
+
+                if (metadata.get("dbroot") != null) {
+                    model.setDatabaseRoot(new File(getString(metadata, "dbroot")));
+                }
+
+                model.setName(getString(metadata, "classalias"));
+                model.setDescription(getString(metadata, "description"));
+                model.setColorSpace(getColorSpace(metadata));
+
+                for (ClassModel c : collected) {
+                    for (int j = 0; (classes != null) && (j < classes.size()); j++) {
+                        if (classes.getString(j).equals(c.getName()) && (c.getColorSpace() == model.getColorSpace())) {
+                            model.addClassModel(c);
+                        }
+                    }
+                }
+
+                models[i] = model;
+            } catch (Exception ex) {
+                throw new RuntimeException("Error reading " + files[i] + ": " + ex.getMessage());
+            }
+        }
+
+        return models;
+    }
+
+    /**
+     * Returns the classes collected in
+     * <code>matlabdbDirName/features/class</code>
+     * @return the classes, or null if none found
+     */
+    public ClassModel[] get_collected_classes(String matlabdbDirName) {
+        if (!new File(matlabdbDirName).exists()) {
+            throw new RuntimeException("Directory " + matlabdbDirName + " does not exist");
+        }
+
+        File dir = new File(matlabdbDirName, "features/class");
+
+        if (!dir.exists()) {
+            throw new RuntimeException("Directory " + dir + " does not exist");
+        }
+
+        String[] files = listSorted(dir, CLASS_METADATA);
+
+        if (files.length == 0) {
+            return null;
+        }
+
+        ClassModel[] models = new ClassModel[files.length];
+
+        for (int i = 0; i < files.length; i++) {
+            try {
+                MatFile.Struct metadata = (MatFile.Struct) MatFile.read(new File(dir, files[i]), "class_metadata");
+                ClassModel     model    = new ClassModel();
+
+                if (metadata.get("dbroot") != null) {
+                    model.setDatabaseRoot(new File(getString(metadata, "dbroot")));
+                }
+
+                if (metadata.get("raw_directory") != null) {
+                    try {
+                        model.setRawImageDirectory(new File(getString(metadata, "raw_directory")));
+                    } catch (Exception ex) {
+                        Logger.getLogger(ClassifierLibraryJava.class.getName()).log(Level.WARNING, null, ex);
+                    }
+                }
+
+                if (metadata.get("square_directory") != null) {
+                    model.setSquareImageDirectory(new File(getString(metadata, "square_directory")));
+                }
+
+                if (metadata.get("classname") != null) {
+                    model.setName(getString(metadata, "classname"));
+                }
+
+                if (metadata.get("predictedclassname") != null) {
+                    model.setPredictedName(getString(metadata, "predictedclassname"));
+                }
+
+                if (metadata.get("description") != null) {
+                    model.setDescription(getString(metadata, "description"));
+                }
+
+                model.updateFileList();
+                model.setColorSpace(getColorSpace(metadata));
+                models[i] = model;
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Error reading " + files[i] + ": " + ex.getMessage());
+            }
+        }
+
+        return models;
+    }
+
+    /**
+     * Extracts the features of the images in a directory and saves them
+     * as the Matlab collect function does
+     * @param killfile the kill file
+     * @param dir the directory of squared images
+     * @param name the name to save the features under
+     * @param dbroot the root directory of the classifier database
+     * @param type the feature subdirectory to save to, class or tests
+     * @param colorspace the color space
+     */
+    void collect(final String killfile, File dir, String name, File dbroot, String type,
+                 final ColorSpace colorspace)
+            throws IOException {
+        final List<File> files = listImages(dir);
+
+        if (files.isEmpty()) {
+            throw new IOException("No images found in " + dir);
+        }
+
+        log.println("Collecting " + dir);
+
+        final FeatureCache               cache   = featureCacheEnabled ? new FeatureCache(dbroot) : null;
+        final AtomicInteger              hits    = new AtomicInteger();
+        ExecutorService                  pool    = Executors.newFixedThreadPool(numThreads);
+        List<Future<FeatureCache.Entry>> results = new ArrayList<Future<FeatureCache.Entry>>();
+
+        try {
+            for (final File file : files) {
+                results.add(pool.submit(new Callable<FeatureCache.Entry>() {
+                    public FeatureCache.Entry call() throws Exception {
+                        String hash = null;
+
+                        if (cache != null) {
+                            hash = FeatureCache.hash(file);
+
+                            FeatureCache.Entry entry = cache.get(hash, colorspace);
+
+                            if (entry != null) {
+                                hits.incrementAndGet();
+
+                                return entry;
+                            }
+                        }
+
+                        LocalJetFeatures.Image im = LocalJetFeatures.read(file);
+
+                        // Non-square images are excluded
+                        if (im.rows != im.cols) {
+                            return null;
+                        }
+
+                        FeatureCache.Entry entry = new FeatureCache.Entry(im.rows,
+                                                       LocalJetFeatures.compute(im, colorspace));
+
+                        if (cache != null) {
+                            try {
+                                cache.put(hash, colorspace, entry);
+                            } catch (IOException ex) {
+                                Logger.getLogger(ClassifierLibraryJava.class.getName()).log(Level.WARNING, null, ex);
+                            }
+                        }
+
+                        return entry;
+                    }
+                }));
+            }
+
+            List<double[]> store     = new ArrayList<double[]>();
+            List<double[]> group     = new ArrayList<double[]>();
+            List<String>   filenames = new ArrayList<String>();
+            List<Double>   resol     = new ArrayList<Double>();
+            String         id        = FisherClassifier.getEventId(files.get(0).getName());
+
+            for (int i = 0; i < files.size(); i++) {
+                if (isKill(killfile)) {
+                    throw new IOException("Killing collect");
+                }
+
+                File   file  = files.get(i);
+                String newid = FisherClassifier.getEventId(file.getName());
+
+                log.println("Collecting " + (i + 1) + " of " + files.size() + " " + file);
+
+                // Rows are stored an event at a time. As in the Matlab code,
+                // the last event is dropped if the last image is not square
+                if (!newid.startsWith(id)) {
+                    store.addAll(group);
+                    group.clear();
+                    id = newid;
+                }
+
+                FeatureCache.Entry entry = results.get(i).get();
+
+                if (entry == null) {
+                    log.println(file + " image " + (i + 1) + " of " + files.size()
+                                + " not square - image will be excluded");
+
+                    continue;
+                }
+
+                group.add(entry.features);
+                filenames.add(file.getName());
+                resol.add((double) entry.resolution);
+
+                if (i == files.size() - 1) {
+                    store.addAll(group);
+                }
+            }
+
+            if (filenames.isEmpty()) {
+                filenames.add(name);
+            }
+
+            if (cache != null) {
+                log.println("Feature cache hits " + hits.get() + " of " + files.size());
+            }
+
+            save(new File(dbroot, "features/" + type), name, colorspace, store, resol, filenames);
+        } catch (InterruptedException ex) {
+            throw new IOException("Collect interrupted");
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause().getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Saves collected features in the Matlab feature database format
+     */
+    private void save(File featureDir, String name, ColorSpace colorspace, List<double[]> store,
+                      List<Double> resol, List<String> filenames)
+            throws IOException {
+        if (!featureDir.isDirectory() && !featureDir.mkdirs()) {
+            throw new IOException("Cannot create " + featureDir);
+        }
+
+        String     root   = FeatureSet.getRootName(name, colorspace);
+        double[][] resols = new double[resol.size()][1];
+
+        for (int i = 0; i < resols.length; i++) {
+            resols[i][0] = resol.get(i);
+        }
+
+        File d = new File(featureDir, root + "_data" + FEATURE_SUFFIX);
+        File r = new File(featureDir, root + "_resol" + FEATURE_SUFFIX);
+        File n = new File(featureDir, root + "_names" + FEATURE_SUFFIX);
+
+        log.println("Saving to " + d);
+        write(d, "store", new MatFile.Matrix(store.toArray(new double[store.size()][])));
+        log.println("Saving to " + r);
+        write(r, "resol", new MatFile.Matrix(resols));
+        log.println("Saving to " + n);
+        write(n, "filenames", new MatFile.Cell(filenames.toArray(new String[filenames.size()])));
+    }
+
+    private static void write(File file, String name, Object value) throws IOException {
+        Map<String, Object> variables = new LinkedHashMap<String, Object>();
+
+        variables.put(name, value);
+        MatFile.write(file, variables);
+    }
+
+    /**
+     * Classifies each feature row, checking the kill file between rows
+     */
+    private void classify(String killfile, FisherClassifier classifier, FeatureSet features, float threshold,
+                          int[] classIndex, double[] storeProb) {
+        double[] prob = new double[1];
+
+        for (int i = 0; i < features.size(); i++) {
+            if ((i % 100 == 0) && isKill(killfile)) {
+                throw new RuntimeException("Killing test_ljmNL3");
+            }
+
+            classIndex[i] = classifier.classify(features.store[i], features.resol[i], threshold, prob);
+            storeProb[i]  = prob[0];
+        }
+
+        log.println("Classified " + features.size() + " files");
+    }
+
+    private ClassifierLibrary getFallback(String operation) {
+        if (fallback == null) {
+            throw new UnsupportedOperationException(operation
+                    + " requires the Matlab classifier library, which could not be loaded");
+        }
+
+        return fallback;
+    }
+
+    /**
+     * Returns the images in a directory ordered as the Matlab collect
+     * function lists them: by extension, then by name
+     */
+    private static List<File> listImages(File dir) {
+        List<File> files = new ArrayList<File>();
+
+        for (final String ext : IMAGE_EXTENSIONS) {
+            String[] names = dir.list(new FilenameFilter() {
+                public boolean accept(File d, String name) {
+                    return name.endsWith(ext) && new File(d, name).isFile();
+                }
+            });
+
+            if (names != null) {
+                Arrays.sort(names);
+
+                for (String name : names) {
+                    files.add(new File(dir, name));
+                }
+            }
+        }
+
+        return files;
+    }
+
+    private static String[] listSorted(File dir, final String suffix) {
+        String[] names = dir.list(new FilenameFilter() {
+            public boolean accept(File d, String name) {
+                return name.contains(suffix);
+            }
+        });
+
+        if (names == null) {
+            return new String[0];
+        }
+
+        Arrays.sort(names);
+
+        return names;
+    }
+
+    private static String getString(MatFile.Struct struct, String field) {
+        Object value = struct.get(field);
+
+        return (value instanceof String) ? (String) value : "";
+    }
+
+    private static ColorSpace getColorSpace(MatFile.Struct struct) {
+        Object value = struct.get("color_space");
+        int    color = (value instanceof MatFile.Matrix) ? (int) ((MatFile.Matrix) value).scalar() : 1;
+
+        switch (color) {
+        case 2 :
+            return ColorSpace.RGB;
+
+        case 3 :
+            return ColorSpace.YCBCR;
+
+        default :
+            return ColorSpace.GRAY;
+        }
+    }
+
+    /**
+     * @return true if the kill file exists and its first byte is not zero
+     */
+    private static boolean isKill(String killfile) {
+        try {
+            FileInputStream in = new FileInputStream(killfile);
+
+            try {
+                int b = in.read();
+
+                return (b > 0);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private static void removeKill(String killfile) {
+        File file = new File(killfile);
+
+        if (file.exists() && !file.delete()) {
+            throw new RuntimeException("Error deleting file " + killfile);
+        }
+    }
+
+    /**
+     * The feature rows, resolutions and file names of a collected class or
+     * test directory
+     */
+    static class FeatureSet {
+        final String[]   filenames;
+        final double[]   resol;
+        final double[][] store;
+
+        FeatureSet(double[][] store, double[] resol, String[] filenames) {
+            this.store     = store;
+            this.resol     = resol;
+            this.filenames = filenames;
+        }
+
+        static String getRootName(String name, ColorSpace colorspace) {
+            switch (colorspace) {
+            case RGB :
+                return name + "_rgb";
+
+            case YCBCR :
+                return name + "_ycbcr";
+
+            default :
+                return name + "_gray";
+            }
+        }
+
+        static FeatureSet load(File dir, String name, ColorSpace colorspace) throws IOException {
+            String root = getRootName(name, colorspace);
+            File   d    = new File(dir, root + "_data" + FEATURE_SUFFIX);
+            File   r    = new File(dir, root + "_resol" + FEATURE_SUFFIX);
+            File   n    = new File(dir, root + "_names" + FEATURE_SUFFIX);
+
+            for (File f : new File[] { d, r, n }) {
+                if (!f.exists()) {
+                    throw new IOException("File " + f + " does not exist");
+                }
+            }
+
+            MatFile.Matrix store     = (MatFile.Matrix) MatFile.read(d, "store");
+            MatFile.Matrix resol     = (MatFile.Matrix) MatFile.read(r, "resol");
+            MatFile.Cell   names     = (MatFile.Cell) MatFile.read(n, "filenames");
+            int            rows      = resol.data.length;
+            double[][]     features  = new double[rows][];
+            String[]       filenames = new String[rows];
+
+            if ((store.rows() < rows) || (names.size() < rows)) {
+                throw new IOException("Features in " + d + " do not match " + r);
+            }
+
+            for (int i = 0; i < rows; i++) {
+                features[i]  = store.getRow(i);
+                filenames[i] = names.getString(i);
+            }
+
+            return new FeatureSet(features, resol.data, filenames);
+        }
+
+        int size() {
+            return store.length;
+        }
+
+        FeatureSet subset(int[] index) {
+            double[][] s = new double[index.length][];
+            double[]   r = new double[index.length];
+            String[]   n = new String[index.length];
+
+            for (int i = 0; i < index.length; i++) {
+                s[i] = store[index[i]];
+                r[i] = resol[index[i]];
+                n[i] = filenames[index[i]];
+            }
+
+            return new FeatureSet(s, r, n);
+        }
+    }
+}
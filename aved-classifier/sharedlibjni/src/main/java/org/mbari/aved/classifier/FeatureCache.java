@@ -0,0 +1,310 @@
+/*
+ * @(#)FeatureCache.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.classifier;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A persistent store of feature vectors keyed by the content hash of the
+ * image they were computed from and the color space. Unchanged images are
+ * then not recomputed when a test directory is collected again, e.g. to
+ * classify against a different training library or threshold.
+ *
+ * <p>The cache is kept in <code>features/cache</code> under the classifier
+ * database root, one small file per image and color space. Entries are
+ * written to a temporary file and renamed so concurrent writers never
+ * leave a partial entry.
+ *
+ * @author dcline
+ */
+public class FeatureCache {
+
+    /** Increment when the feature computation changes to invalidate old entries */
+    private static final int    VERSION   = 1;
+    private static final int    MAGIC     = 0x41564643;
+    private static final String EXTENSION = ".fv";
+    private final File          directory;
+
+    /**
+     * Creates the cache for a classifier database
+     * @param dbroot the root directory of the classifier database
+     */
+    public FeatureCache(File dbroot) {
+        this.directory = new File(dbroot, "features/cache");
+    }
+
+    /**
+     * @return the cache directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Computes the content hash of a file
+     * @param file the file
+     * @return the SHA-1 hash as a hex string
+     * @throws IOException if the file cannot be read
+     */
+    public static String hash(File file) throws IOException {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex.getMessage());
+        }
+
+        InputStream in = new FileInputStream(file);
+
+        try {
+            byte[] buf = new byte[65536];
+            int    n;
+
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+
+        StringBuilder b = new StringBuilder(40);
+
+        for (byte v : digest.digest()) {
+            b.append(Character.forDigit((v >> 4) & 0xF, 16)).append(Character.forDigit(v & 0xF, 16));
+        }
+
+        return b.toString();
+    }
+
+    /**
+     * Returns a cached entry
+     * @param hash the image content hash
+     * @param colorSpace the color space
+     * @return the entry, or null if there is no valid entry
+     */
+    public Entry get(String hash, ColorSpace colorSpace) {
+        File file = getFile(hash, colorSpace);
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            try {
+                if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+                    return null;
+                }
+
+                int      resolution = in.readInt();
+                double[] features   = new double[in.readInt()];
+
+                for (int i = 0; i < features.length; i++) {
+                    features[i] = in.readDouble();
+                }
+
+                return new Entry(resolution, features);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+
+            // A truncated or corrupt entry is simply a miss
+            return null;
+        }
+    }
+
+    /**
+     * Stores an entry, replacing any existing one
+     * @param hash the image content hash
+     * @param colorSpace the color space
+     * @param entry the entry
+     * @throws IOException if the entry cannot be written
+     */
+    public void put(String hash, ColorSpace colorSpace, Entry entry) throws IOException {
+        File file = getFile(hash, colorSpace);
+        File dir  = file.getParentFile();
+
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Cannot create " + dir);
+        }
+
+        File             tmp = File.createTempFile(hash, ".tmp", dir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entry.resolution);
+            out.writeInt(entry.features.length);
+
+            for (double v : entry.features) {
+                out.writeDouble(v);
+            }
+        } finally {
+            out.close();
+        }
+
+        // Renaming over an existing file fails on some platforms
+        if (!tmp.renameTo(file)) {
+            file.delete();
+
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+
+                throw new IOException("Cannot write " + file);
+            }
+        }
+    }
+
+    /**
+     * Removes an entry
+     * @param hash the image content hash
+     * @param colorSpace the color space
+     * @return true if the entry was removed
+     */
+    public boolean remove(String hash, ColorSpace colorSpace) {
+        return getFile(hash, colorSpace).delete();
+    }
+
+    /**
+     * Removes all entries for a color space
+     * @param colorSpace the color space
+     */
+    public void invalidate(ColorSpace colorSpace) {
+        delete(new File(directory, colorSpace.toString().toLowerCase()));
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void invalidate() {
+        delete(directory);
+    }
+
+    /**
+     * Walks the cache directory, so this is only for reporting on request
+     * @return the number of entries in the cache
+     */
+    public int getNumEntries() {
+        return (int) walk(directory)[0];
+    }
+
+    /**
+     * Walks the cache directory, so this is only for reporting on request
+     * @return the size of the cache in bytes
+     */
+    public long getSize() {
+        return walk(directory)[1];
+    }
+
+    /**
+     * Walks the cache directory once for both the number of entries and
+     * their size, so this is only for reporting on request
+     * @return a description of the cache, e.g. "10 entries, 0.1 MB"
+     */
+    public String getSummary() {
+        long[] totals = walk(directory);
+
+        return String.format("%d entries, %.1f MB", totals[0], totals[1] / (1024.0 * 1024.0));
+    }
+
+    private File getFile(String hash, ColorSpace colorSpace) {
+        return new File(directory,
+                        colorSpace.toString().toLowerCase() + "/" + hash.substring(0, 2) + "/" + hash + EXTENSION);
+    }
+
+    /**
+     * @return the number of entries and the total size of the entries
+     */
+    private static long[] walk(File dir) {
+        long[] totals = new long[2];
+
+        walk(dir, totals);
+
+        return totals;
+    }
+
+    private static void walk(File dir, long[] totals) {
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    walk(f, totals);
+                } else if (f.getName().endsWith(EXTENSION)) {
+                    totals[0]++;
+                    totals[1] += f.length();
+                }
+            }
+        }
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+
+        if (files != null) {
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    delete(f);
+                } else {
+                    f.delete();
+                }
+            }
+        }
+
+        dir.delete();
+    }
+
+    /**
+     * A cached feature row and the resolution of the image it came from
+     */
+    public static class Entry {
+        public final double[] features;
+        public final int      resolution;
+
+        public Entry(int resolution, double[] features) {
+            this.resolution = resolution;
+            this.features   = features;
+        }
+    }
+}
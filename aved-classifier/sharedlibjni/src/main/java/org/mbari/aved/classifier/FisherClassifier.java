@@ -0,0 +1,545 @@
+/*
+ * @(#)FisherClassifier.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.classifier;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies avljNL3 feature rows against a training library created by
+ * the Matlab <code>train_classes</code> function. The features are
+ * projected onto the Fisher linear discriminants and scored against the
+ * Gaussian mixture model of each class. This is a port of the Matlab
+ * <code>test_ljmNL3</code>, <code>gmmprob</code> and
+ * <code>event_classifier</code> functions.
+ *
+ * @author dcline
+ */
+public class FisherClassifier {
+
+    /** Number of standard deviations a resolution may be from the class mean */
+    private static final int     NDS         = 10;
+    private static final Pattern EVENT_ID    = Pattern.compile("evt[0-9]+");
+    private final String[]       classNames;
+    private final double[][]     fld;
+    private final Mixture[]      mixtures;
+    private final double[]       mean;
+    private final double[][]     resolution;
+
+    private FisherClassifier(String[] classNames, double[][] fld, double[] mean, double[][] resolution,
+                             Mixture[] mixtures) {
+        this.classNames = classNames;
+        this.fld        = fld;
+        this.mean       = mean;
+        this.resolution = resolution;
+        this.mixtures   = mixtures;
+    }
+
+    /**
+     * Loads a training library
+     * @param dbroot the root directory of the classifier database
+     * @param trainingAlias the name of the training library
+     * @return the classifier
+     * @throws IOException if the training data cannot be read
+     */
+    public static FisherClassifier load(File dbroot, String trainingAlias) throws IOException {
+        File dir  = new File(dbroot, "training/class");
+        File data = new File(dir, trainingAlias + "_training_data.mat");
+        File cls  = new File(dir, trainingAlias + "_training_data_cls.mat");
+
+        if (!data.exists()) {
+            throw new IOException(data + " does not exist");
+        }
+
+        if (!cls.exists()) {
+            throw new IOException(cls + " does not exist");
+        }
+
+        MatFile.Struct ris        = (MatFile.Struct) MatFile.read(data, "ris");
+        MatFile.Cell   names      = (MatFile.Cell) MatFile.read(cls, "classnames");
+        MatFile.Struct mog        = (MatFile.Struct) ris.get("mog");
+        MatFile.Matrix fld        = (MatFile.Matrix) ris.get("FLD");
+        MatFile.Matrix mediatot   = (MatFile.Matrix) ris.get("mediatot");
+        MatFile.Matrix resol      = (MatFile.Matrix) ris.get("resolution");
+        String[]       classNames = new String[names.size()];
+
+        for (int i = 0; i < classNames.length; i++) {
+            classNames[i] = names.getString(i);
+        }
+
+        if ((mog == null) || (fld == null) || (mediatot == null) || (resol == null)) {
+            throw new IOException(data + " is not a valid training library");
+        }
+
+        Mixture[] mixtures = new Mixture[mog.size()];
+
+        for (int i = 0; i < mixtures.length; i++) {
+            mixtures[i] = new Mixture((MatFile.Struct) mog.get(i, "mix"));
+        }
+
+        // Store the transpose of the FLD so each discriminant is a row
+        double[][] fldT = new double[fld.cols()][fld.rows()];
+
+        for (int r = 0; r < fld.rows(); r++) {
+            for (int c = 0; c < fld.cols(); c++) {
+                fldT[c][r] = fld.get(r, c);
+            }
+        }
+
+        double[][] resolution = new double[resol.rows()][];
+
+        for (int r = 0; r < resolution.length; r++) {
+            resolution[r] = resol.getRow(r);
+        }
+
+        return new FisherClassifier(classNames, fldT, mediatot.data, resolution, mixtures);
+    }
+
+    /**
+     * @return the class names, not including the Unknown class
+     */
+    public String[] getClassNames() {
+        return classNames.clone();
+    }
+
+    /**
+     * Classifies a feature row
+     * @param features the feature row
+     * @param resol the resolution (height) of the image the features were
+     * computed from
+     * @param threshold the minimum probability for an assignment
+     * @param probability returns the maximum normalized probability in the
+     * first element
+     * @return the class index, where 1 is Unknown and 2 and up index the
+     * training classes
+     */
+    public int classify(double[] features, double resol, double threshold, double[] probability) {
+        int      dims = Math.min(features.length, mean.length);
+        double[] proj = new double[fld.length];
+
+        for (int k = 0; k < fld.length; k++) {
+            double sum = 0;
+
+            for (int d = 0; d < dims; d++) {
+                sum += fld[k][d] * (features[d] - mean[d]);
+            }
+
+            proj[k] = sum;
+        }
+
+        double[] prob = new double[mixtures.length];
+        double   sum  = 0;
+
+        for (int j = 0; j < mixtures.length; j++) {
+            prob[j] = mixtures[j].probability(proj);
+            sum     += prob[j];
+        }
+
+        int    estimate = 0;
+        double mp       = 0;
+
+        if (sum != 0) {
+            for (int j = 0; j < prob.length; j++) {
+                prob[j] /= sum;
+            }
+
+            mp = max(prob, 0, prob.length);
+
+            for (int j = 0; j < prob.length; j++) {
+                if (prob[j] == mp) {
+                    estimate = j + 1;
+
+                    break;
+                }
+            }
+        }
+
+        probability[0] = mp;
+
+        if ((estimate == 0) || (resol >= resolution[estimate - 1][0] + NDS * resolution[estimate - 1][1])
+                || (resol <= resolution[estimate - 1][0] - NDS * resolution[estimate - 1][1]) || (mp <= threshold)) {
+            return 1;
+        }
+
+        return estimate + 1;
+    }
+
+    /**
+     * Returns the event identifier in a file name, e.g. evt00123
+     * @param filename the file name
+     * @return the event identifier
+     * @throws IllegalArgumentException if the name has no event identifier
+     */
+    public static String getEventId(String filename) {
+        Matcher m = EVENT_ID.matcher(filename);
+
+        if (!m.find()) {
+            throw new IllegalArgumentException("File does not conform to naming specification, no evt##### found: "
+                                               + filename);
+        }
+
+        return m.group();
+    }
+
+    /**
+     * Groups consecutive files with the same event identifier
+     * @param filenames the classified file names
+     * @return the {start, end} index of each event, end exclusive
+     */
+    public static List<int[]> groupEvents(String[] filenames) {
+        List<int[]> events = new ArrayList<int[]>();
+        int         start  = 0;
+
+        for (int i = 1; i <= filenames.length; i++) {
+            if ((i == filenames.length) || !getEventId(filenames[i]).equals(getEventId(filenames[start]))) {
+                events.add(new int[] { start, i });
+                start = i;
+            }
+        }
+
+        return events;
+    }
+
+    /**
+     * Assigns an event the class with the most frames; the first class on
+     * ties
+     */
+    public static int majorityWinner(int[] classIndex, int start, int end, int numClasses) {
+        int[] classSum = classSum(classIndex, start, end, numClasses);
+        int   winner   = 1;
+
+        for (int j = 2; j <= numClasses; j++) {
+            if (classSum[j - 1] > classSum[winner - 1]) {
+                winner = j;
+            }
+        }
+
+        return winner;
+    }
+
+    /**
+     * Assigns an event the class with the highest mean probability among
+     * the classes found in at least 30% of its frames. The Matlab code
+     * this replicates sums the probabilities of the frames at the event
+     * relative positions from the start of the file list, and breaks ties
+     * by position rather than class index; both are kept so the results
+     * match.
+     */
+    public static int probabilityWinner(int[] classIndex, double[] storeProb, int start, int end, int numClasses) {
+        int      ttl         = end - start;
+        int[]    classSum    = classSum(classIndex, start, end, numClasses);
+        double[] probability = new double[numClasses];
+
+        for (int j = 1; j <= numClasses; j++) {
+            double sum = 0;
+
+            for (int i = start; i < end; i++) {
+                if (classIndex[i] == j) {
+                    sum += storeProb[i - start];
+                }
+            }
+
+            probability[j - 1] = sum / Math.max(1, classSum[j - 1]);
+        }
+
+        List<Integer> a = new ArrayList<Integer>();
+
+        for (int j = 0; j < numClasses; j++) {
+            if ((double) classSum[j] / ttl >= 0.30) {
+                a.add(j);
+            }
+        }
+
+        double[] pa = new double[a.size()];
+
+        for (int i = 0; i < pa.length; i++) {
+            pa[i] = probability[a.get(i)];
+        }
+
+        double        best = max(pa, 0, pa.length);
+        List<Integer> b    = new ArrayList<Integer>();
+
+        for (int i = 0; i < pa.length; i++) {
+            if (pa[i] == best) {
+                b.add(a.get(i));
+            }
+        }
+
+        List<Integer> winner = new ArrayList<Integer>();
+
+        if ((b.size() != 1) || a.isEmpty()) {
+            winner.add(1);
+        } else {
+            for (int j = 0; j < numClasses; j++) {
+                if (probability[j] == probability[b.get(0)]) {
+                    winner.add(j + 1);
+                }
+            }
+        }
+
+        if (winner.size() > 1) {
+            int most = 0;
+
+            for (int w : winner) {
+                most = Math.max(most, classSum[w - 1]);
+            }
+
+            List<Integer> positions = new ArrayList<Integer>();
+
+            for (int i = 0; i < winner.size(); i++) {
+                if (classSum[winner.get(i) - 1] == most) {
+                    positions.add(i + 1);
+                }
+            }
+
+            winner = positions;
+        }
+
+        return winner.isEmpty() ? 1 : winner.get(0);
+    }
+
+    /**
+     * Returns the file index with the highest probability over all files.
+     * The Matlab maximum rule assigns every event this file's class.
+     */
+    public static int maximumIndex(double[] storeProb) {
+        double best = max(storeProb, 0, storeProb.length);
+
+        for (int i = 0; i < storeProb.length; i++) {
+            if (storeProb[i] == best) {
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    private static int[] classSum(int[] classIndex, int start, int end, int numClasses) {
+        int[] sum = new int[numClasses];
+
+        for (int i = start; i < end; i++) {
+            if ((classIndex[i] >= 1) && (classIndex[i] <= numClasses)) {
+                sum[classIndex[i] - 1]++;
+            }
+        }
+
+        return sum;
+    }
+
+    /**
+     * Returns the maximum ignoring NaN values as the Matlab max does, or
+     * NaN if there are no other values
+     */
+    private static double max(double[] v, int start, int end) {
+        double m = Double.NaN;
+
+        for (int i = start; i < end; i++) {
+            if (!Double.isNaN(v[i]) && (Double.isNaN(m) || (v[i] > m))) {
+                m = v[i];
+            }
+        }
+
+        return m;
+    }
+
+    /**
+     * A netlab Gaussian mixture model
+     */
+    private static class Mixture {
+        private final double[][]   centres;
+        private final double[][][] cholesky;
+        private final String       covarType;
+        private final double[][]   covars;
+        private final int          nin;
+        private final double[]     normal;
+        private final double[]     priors;
+
+        Mixture(MatFile.Struct mix) throws IOException {
+            MatFile.Matrix c = (MatFile.Matrix) mix.get("centres");
+            MatFile.Matrix p = (MatFile.Matrix) mix.get("priors");
+            MatFile.Matrix v = (MatFile.Matrix) mix.get("covars");
+            int            n = c.rows();
+
+            covarType = (String) mix.get("covar_type");
+            nin       = c.cols();
+            priors    = p.data;
+            centres   = new double[n][];
+
+            for (int i = 0; i < n; i++) {
+                centres[i] = c.getRow(i);
+            }
+
+            normal = new double[n];
+
+            if ("full".equals(covarType)) {
+                covars   = null;
+                cholesky = new double[n][][];
+
+                for (int i = 0; i < n; i++) {
+                    double[][] cov = new double[nin][nin];
+
+                    for (int r = 0; r < nin; r++) {
+                        for (int k = 0; k < nin; k++) {
+                            cov[r][k] = v.get(r, k, i);
+                        }
+                    }
+
+                    cholesky[i] = cholesky(cov);
+
+                    double prod = 1;
+
+                    for (int r = 0; r < nin; r++) {
+                        prod *= cholesky[i][r][r];
+                    }
+
+                    normal[i] = Math.pow(2 * Math.PI, nin / 2.0) * prod;
+                }
+            } else if ("diag".equals(covarType)) {
+                cholesky = null;
+                covars   = new double[n][];
+
+                for (int i = 0; i < n; i++) {
+                    covars[i] = v.getRow(i);
+
+                    double s = 1;
+
+                    for (int k = 0; k < nin; k++) {
+                        s *= Math.sqrt(covars[i][k]);
+                    }
+
+                    normal[i] = Math.pow(2 * Math.PI, nin / 2.0) * s;
+                }
+            } else if ("spherical".equals(covarType)) {
+                cholesky = null;
+                covars   = new double[][] { v.data };
+
+                for (int i = 0; i < n; i++) {
+                    normal[i] = Math.pow(Math.PI * 2 * v.data[i], nin / 2.0);
+                }
+            } else {
+                throw new IOException("Unsupported covariance type " + covarType);
+            }
+        }
+
+        /**
+         * @return the unconditional data density of x, as gmmprob
+         */
+        double probability(double[] x) {
+            double sum = 0;
+
+            for (int i = 0; i < centres.length; i++) {
+                sum += activation(i, x) * priors[i];
+            }
+
+            return sum;
+        }
+
+        private double activation(int i, double[] x) {
+            double[] diff = new double[nin];
+
+            for (int k = 0; k < nin; k++) {
+                diff[k] = x[k] - centres[i][k];
+            }
+
+            double d2 = 0;
+
+            if (cholesky != null) {
+
+                // Forward substitution with the lower triangular factor
+                double[][] l = cholesky[i];
+                double[]   y = new double[nin];
+
+                for (int r = 0; r < nin; r++) {
+                    double s = diff[r];
+
+                    for (int k = 0; k < r; k++) {
+                        s -= l[r][k] * y[k];
+                    }
+
+                    y[r] = s / l[r][r];
+                    d2   += y[r] * y[r];
+                }
+
+                return Math.exp(-0.5 * d2) / normal[i];
+            } else if ("diag".equals(covarType)) {
+                for (int k = 0; k < nin; k++) {
+                    d2 += diff[k] * diff[k] / covars[i][k];
+                }
+
+                return Math.exp(-0.5 * d2) / normal[i];
+            } else {
+                for (int k = 0; k < nin; k++) {
+                    d2 += diff[k] * diff[k];
+                }
+
+                return Math.exp(-d2 / (2 * covars[0][i])) / normal[i];
+            }
+        }
+
+        /**
+         * @return the lower triangular Cholesky factor of a symmetric
+         * positive definite matrix
+         */
+        private static double[][] cholesky(double[][] a) throws IOException {
+            int        n = a.length;
+            double[][] l = new double[n][n];
+
+            for (int j = 0; j < n; j++) {
+                double d = a[j][j];
+
+                for (int k = 0; k < j; k++) {
+                    d -= l[j][k] * l[j][k];
+                }
+
+                if (d <= 0) {
+                    throw new IOException("Covariance matrix is not positive definite");
+                }
+
+                l[j][j] = Math.sqrt(d);
+
+                for (int i = j + 1; i < n; i++) {
+                    double s = a[i][j];
+
+                    for (int k = 0; k < j; k++) {
+                        s -= l[i][k] * l[j][k];
+                    }
+
+                    l[i][j] = s / l[j][j];
+                }
+            }
+
+            return l;
+        }
+    }
+}
@@ -0,0 +1,546 @@
+/*
+ * @(#)LocalJetFeatures.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.classifier;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.awt.image.BufferedImage;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Computes the averaged local jet non-linear (avljNL3) feature vector of a
+ * squared image. This is a direct port of the Matlab functions
+ * <code>calcola_invarianti</code>, <code>apply_non_lin3</code> and
+ * <code>comp_stat</code>, and produces the same rows the Matlab
+ * <code>collect</code> function stores in the feature database.
+ *
+ * <p>For each channel, nine differential invariants are computed at four
+ * scales of a binomial pyramid. Each invariant is cropped by a 7 pixel
+ * border, the background mean estimated from the crop edges is removed,
+ * and the mean of the negative part, the positive part and the absolute
+ * value are stored, for 108 features per channel.
+ *
+ * @author dcline
+ */
+public class LocalJetFeatures {
+
+    /** The highest scale, the Matlab code computes scales 0 through 3 */
+    public static final int SCALE = 3;
+
+    /** The number of differential invariants computed per scale */
+    public static final int NUM_INVARIANTS = 9;
+
+    /** The number of features computed per color channel */
+    public static final int FEATURES_PER_CHANNEL = 3 * (SCALE + 1) * NUM_INVARIANTS;
+
+    /**
+     * The number of motion features appended to each row. Motion is
+     * never computed so these are always zero.
+     */
+    public static final int MOTION_FEATURES = 2;
+
+    /** Border cropped from the invariant images */
+    private static final int BORDER = 7;
+
+    /** Coefficients used by the Matlab rgb2gray function */
+    private static final double[] GRAY_COEFFICIENTS = { 0.298936021293776, 0.587043074451121, 0.114020904255103 };
+
+    /** Transform used by the Matlab rgb2ycbcr function for uint8 images */
+    private static final double[][] YCBCR_TRANSFORM = {
+        { 65.481, 128.553, 24.966 }, { -37.797, -74.203, 112 }, { 112, -93.786, -18.214 }
+    };
+    private static final double[]   YCBCR_OFFSET    = { 16, 128, 128 };
+
+    private LocalJetFeatures() {}
+
+    /**
+     * Returns the length of a feature row for a color space
+     * @param colorSpace the color space
+     * @return the number of columns in the stored feature row
+     */
+    public static int getNumFeatures(ColorSpace colorSpace) {
+        return ((colorSpace == ColorSpace.GRAY) ? 1 : 3) * FEATURES_PER_CHANNEL + MOTION_FEATURES;
+    }
+
+    /**
+     * Computes the feature row of an image as stored in the Matlab feature
+     * database
+     * @param image the image
+     * @param colorSpace the color space to compute the features in
+     * @return the feature row, including the trailing motion features
+     */
+    public static double[] compute(Image image, ColorSpace colorSpace) {
+        double[][] planes;
+
+        if (colorSpace == ColorSpace.GRAY) {
+            planes = new double[][] { toGray(image) };
+        } else if (colorSpace == ColorSpace.YCBCR) {
+            planes = toYCbCr(image);
+        } else {
+            planes = toRGB(image);
+        }
+
+        double[] row = new double[planes.length * FEATURES_PER_CHANNEL + MOTION_FEATURES];
+
+        for (int k = 0; k < planes.length; k++) {
+            double[] val = compute(planes[k], image.rows, image.cols);
+
+            System.arraycopy(val, 0, row, k * FEATURES_PER_CHANNEL, FEATURES_PER_CHANNEL);
+        }
+
+        return row;
+    }
+
+    /**
+     * Computes the features of a single channel
+     * @param plane the channel, in row-major order
+     * @param rows the number of rows
+     * @param cols the number of columns
+     * @return the {@link #FEATURES_PER_CHANNEL} features
+     */
+    public static double[] compute(double[] plane, int rows, int cols) {
+        double[] val   = new double[FEATURES_PER_CHANNEL];
+        int      crows = Math.max(rows - 2 * BORDER, 0);
+        int      ccols = Math.max(cols - 2 * BORDER, 0);
+        double[] g     = plane.clone();
+
+        for (int s = 0; s <= SCALE; s++) {
+            double[]   x   = dx(g, rows, cols);
+            double[]   y   = dy(g, rows, cols);
+            double[]   xy  = dy(x, rows, cols);
+            double[]   xx  = dx(x, rows, cols);
+            double[]   yy  = dy(y, rows, cols);
+            double[]   xyy = dx(yy, rows, cols);
+            double[]   xxy = dy(xx, rows, cols);
+            double[]   xxx = dx(xx, rows, cols);
+            double[]   yyy = dy(yy, rows, cols);
+            double[][] inv = new double[NUM_INVARIANTS][crows * ccols];
+
+            for (int r = 0; r < crows; r++) {
+                for (int c = 0; c < ccols; c++) {
+                    int    i  = (r + BORDER) * cols + c + BORDER;
+                    int    k  = r * ccols + c;
+                    double Lx = x[i];
+                    double Ly = y[i];
+
+                    inv[0][k] = g[i];
+                    inv[1][k] = Lx * Lx + Ly * Ly;
+                    inv[2][k] = Lx * xx[i] * Lx + 2 * Lx * xy[i] * Ly + Ly * yy[i] * Ly;
+                    inv[3][k] = xx[i] + yy[i];
+                    inv[4][k] = xx[i] * xx[i] + 2 * xy[i] * xy[i] + yy[i] * yy[i];
+                    inv[5][k] = xxx[i] * Ly * Ly * Ly - yyy[i] * Lx * Lx * Lx + 4 * xyy[i] * Lx * Lx * Ly
+                                - 4 * xxy[i] * Lx * Ly * Ly;
+
+                    // The Matlab code has ima_x.*2 rather than ima_x.^2 in
+                    // the second term; kept so the features match
+                    inv[6][k] = xxy[i] * Ly * Ly * Ly + xxy[i] * Lx * 2 * Ly - xyy[i] * Lx * Ly * Ly
+                                - xyy[i] * Lx * Lx * Lx;
+                    inv[7][k] = -xxy[i] * Lx * Lx * Lx - 2 * xyy[i] * Lx * Lx * Ly - yyy[i] * Lx * Ly * Ly
+                                + xxx[i] * Ly * Lx * Lx + 2 * xxy[i] * Ly * Ly * Lx + xyy[i] * Ly * Ly * Ly;
+                    inv[8][k] = xxx[i] * Lx * Lx * Lx + 3 * xxy[i] * Lx * Lx * Ly + 3 * xyy[i] * Lx * Ly * Ly
+                                + yyy[i] * Ly * Ly * Ly;
+                }
+            }
+
+            for (int i = 0; i < NUM_INVARIANTS; i++) {
+                int index = s * NUM_INVARIANTS + i;
+                int size  = (SCALE + 1) * NUM_INVARIANTS;
+
+                applyNonLinearity(inv[i], crows, ccols, val, index, index + size, index + 2 * size);
+            }
+
+            if (s < SCALE) {
+                g = smoothY(smoothX(g, rows, cols), rows, cols);
+            }
+        }
+
+        return val;
+    }
+
+    /**
+     * Stores the mean of the negative part, positive part and absolute
+     * value of a background corrected invariant
+     */
+    private static void applyNonLinearity(double[] I, int rows, int cols, double[] val, int neg, int pos,
+            int abs) {
+        if (I.length == 0) {
+            val[neg] = 0;
+            val[pos] = 0;
+            val[abs] = 0;
+
+            return;
+        }
+
+        double mbg    = backgroundMean(I, rows, cols);
+        double negSum = 0;
+        double posSum = 0;
+        double absSum = 0;
+        int    negN   = 0;
+        int    posN   = 0;
+
+        // Sum in column-major order as Matlab does
+        for (int c = 0; c < cols; c++) {
+            double colSum = 0;
+
+            for (int r = 0; r < rows; r++) {
+                double v = I[r * cols + c] - mbg;
+
+                if (v <= 0) {
+                    negSum += v;
+                    negN++;
+                }
+
+                if (v >= 0) {
+                    posSum += v;
+                    posN++;
+                }
+
+                colSum += Math.abs(v);
+            }
+
+            absSum += colSum / rows;
+        }
+
+        // An empty part gives NaN, as the Matlab mean of an empty matrix does
+        val[neg] = negSum / negN;
+        val[pos] = posSum / posN;
+        val[abs] = absSum / cols + mbg;
+    }
+
+    /**
+     * Returns the mean of a border around the image, which is taken to be
+     * the background. The border is up to 10 pixels wide.
+     */
+    static double backgroundMean(double[] I, int rows, int cols) {
+        int    x   = (int) Math.min(10, Math.round(rows / 2.0));
+        double sum = 0;
+        int    n   = 0;
+
+        // Top and bottom rows; these overlap for very small images
+        for (int r = 0; r < x; r++) {
+            for (int c = 0; c < cols; c++) {
+                sum += I[r * cols + c] + I[(rows - x + r) * cols + c];
+                n   += 2;
+            }
+        }
+
+        // Left and right columns between them
+        for (int r = x; r < rows - x; r++) {
+            for (int c = 0; c < x; c++) {
+                sum += I[r * cols + c] + I[r * cols + cols - x + c];
+                n   += 2;
+            }
+        }
+
+        return sum / n;
+    }
+
+    /**
+     * Convolves each row with [-1 0 1], as conv2(ima, dx, 'same')
+     */
+    private static double[] dx(double[] a, int rows, int cols) {
+        double[] out = new double[a.length];
+
+        for (int r = 0; r < rows; r++) {
+            int o = r * cols;
+
+            for (int c = 0; c < cols; c++) {
+                double left  = (c > 0) ? a[o + c - 1] : 0;
+                double right = (c < cols - 1) ? a[o + c + 1] : 0;
+
+                out[o + c] = left - right;
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Convolves each column with [-1 0 1]', as conv2(ima, dy, 'same')
+     */
+    private static double[] dy(double[] a, int rows, int cols) {
+        double[] out = new double[a.length];
+
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                double up   = (r > 0) ? a[(r - 1) * cols + c] : 0;
+                double down = (r < rows - 1) ? a[(r + 1) * cols + c] : 0;
+
+                out[r * cols + c] = up - down;
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Convolves each row with [1 2 1]/4
+     */
+    private static double[] smoothX(double[] a, int rows, int cols) {
+        double[] out = new double[a.length];
+
+        for (int r = 0; r < rows; r++) {
+            int o = r * cols;
+
+            for (int c = 0; c < cols; c++) {
+                double left  = (c > 0) ? a[o + c - 1] : 0;
+                double right = (c < cols - 1) ? a[o + c + 1] : 0;
+
+                out[o + c] = left * 0.25 + a[o + c] * 0.5 + right * 0.25;
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Convolves each column with [1 2 1]'/4
+     */
+    private static double[] smoothY(double[] a, int rows, int cols) {
+        double[] out = new double[a.length];
+
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                double up   = (r > 0) ? a[(r - 1) * cols + c] : 0;
+                double down = (r < rows - 1) ? a[(r + 1) * cols + c] : 0;
+
+                out[r * cols + c] = up * 0.25 + a[r * cols + c] * 0.5 + down * 0.25;
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Converts to gray as the Matlab rgb2gray function does for uint8
+     * images. Gray images are returned unchanged.
+     */
+    private static double[] toGray(Image image) {
+        if (image.isGray()) {
+            return image.planes[0];
+        }
+
+        double[] out = new double[image.rows * image.cols];
+
+        for (int i = 0; i < out.length; i++) {
+            double v = GRAY_COEFFICIENTS[0] * image.planes[0][i] + GRAY_COEFFICIENTS[1] * image.planes[1][i]
+                       + GRAY_COEFFICIENTS[2] * image.planes[2][i];
+
+            out[i] = toUint8(v);
+        }
+
+        return out;
+    }
+
+    /**
+     * Returns the red, green and blue planes, replicating gray images
+     * into all three as the Matlab collect function does
+     */
+    private static double[][] toRGB(Image image) {
+        if (image.isGray()) {
+            return new double[][] { image.planes[0], image.planes[0], image.planes[0] };
+        }
+
+        return image.planes;
+    }
+
+    /**
+     * Converts to YCbCr as the Matlab rgb2ycbcr function does for uint8
+     * images
+     */
+    private static double[][] toYCbCr(Image image) {
+        double[][] rgb = toRGB(image);
+        int        n   = image.rows * image.cols;
+        double[][] out = new double[3][n];
+
+        for (int k = 0; k < 3; k++) {
+            double t0 = YCBCR_TRANSFORM[k][0] / 255;
+            double t1 = YCBCR_TRANSFORM[k][1] / 255;
+            double t2 = YCBCR_TRANSFORM[k][2] / 255;
+
+            for (int i = 0; i < n; i++) {
+                out[k][i] = toUint8(t0 * rgb[0][i] + t1 * rgb[1][i] + t2 * rgb[2][i] + YCBCR_OFFSET[k]);
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Rounds half away from zero and saturates, as Matlab does when
+     * converting to uint8
+     */
+    private static double toUint8(double v) {
+        return Math.min(255, Math.max(0, Math.floor(v + 0.5)));
+    }
+
+    /**
+     * Reads an image. Binary and ASCII PNM files are read directly,
+     * everything else is read with {@link javax.imageio.ImageIO}.
+     * @param file the image file
+     * @return the image
+     * @throws IOException if the image cannot be read
+     */
+    public static Image read(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+        try {
+            in.mark(2);
+
+            if ((in.read() == 'P') && "2356".indexOf(in.read()) >= 0) {
+                in.reset();
+
+                return readPNM(in, file);
+            }
+
+            in.reset();
+
+            BufferedImage image = ImageIO.read(in);
+
+            if (image == null) {
+                throw new IOException("Unsupported image format " + file);
+            }
+
+            return toImage(image);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static Image readPNM(InputStream in, File file) throws IOException {
+        in.read();
+
+        int     format   = in.read() - '0';
+        int     cols     = readHeaderInt(in);
+        int     rows     = readHeaderInt(in);
+        int     maxval   = readHeaderInt(in);
+        int     channels = ((format == 3) || (format == 6)) ? 3 : 1;
+        boolean binary   = format > 3;
+
+        if (maxval > 255) {
+            throw new IOException("16-bit PNM images are not supported " + file);
+        }
+
+        Image image = new Image(rows, cols, channels);
+
+        for (int i = 0; i < rows * cols; i++) {
+            for (int k = 0; k < channels; k++) {
+                int v = binary ? in.read() : readHeaderInt(in);
+
+                if (v < 0) {
+                    throw new IOException("Unexpected end of file " + file);
+                }
+
+                image.planes[k][i] = v;
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * Reads a whitespace delimited integer from a PNM header, skipping
+     * comments
+     */
+    private static int readHeaderInt(InputStream in) throws IOException {
+        int c = in.read();
+
+        while ((c == '#') || Character.isWhitespace(c)) {
+            if (c == '#') {
+                while ((c != '\n') && (c != '\r') && (c != -1)) {
+                    c = in.read();
+                }
+            }
+
+            c = in.read();
+        }
+
+        if ((c < '0') || (c > '9')) {
+            throw new IOException("Invalid PNM header");
+        }
+
+        int v = 0;
+
+        while ((c >= '0') && (c <= '9')) {
+            v = v * 10 + (c - '0');
+            c = in.read();
+        }
+
+        return v;
+    }
+
+    private static Image toImage(BufferedImage bi) {
+        int rows = bi.getHeight();
+        int cols = bi.getWidth();
+
+        if ((bi.getType() == BufferedImage.TYPE_BYTE_GRAY) && (bi.getRaster().getNumBands() == 1)) {
+            Image image = new Image(rows, cols, 1);
+
+            bi.getRaster().getSamples(0, 0, cols, rows, 0, image.planes[0]);
+
+            return image;
+        }
+
+        Image image = new Image(rows, cols, 3);
+        int[] rgb   = bi.getRGB(0, 0, cols, rows, null, 0, cols);
+
+        for (int i = 0; i < rgb.length; i++) {
+            image.planes[0][i] = (rgb[i] >> 16) & 0xFF;
+            image.planes[1][i] = (rgb[i] >> 8) & 0xFF;
+            image.planes[2][i] = rgb[i] & 0xFF;
+        }
+
+        return image;
+    }
+
+    /**
+     * An 8-bit image with one or three channels, each stored as doubles in
+     * row-major order
+     */
+    public static class Image {
+        public final int        cols;
+        public final double[][] planes;
+        public final int        rows;
+
+        public Image(int rows, int cols, int channels) {
+            this.rows   = rows;
+            this.cols   = cols;
+            this.planes = new double[channels][rows * cols];
+        }
+
+        public boolean isGray() {
+            return planes.length == 1;
+        }
+    }
+}
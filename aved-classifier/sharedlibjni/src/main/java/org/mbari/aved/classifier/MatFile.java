@@ -0,0 +1,849 @@
+/*
+ * @(#)MatFile.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.classifier;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads and writes the subset of the MATLAB Level 5 MAT-file format used
+ * by the classifier database: numeric arrays, which are read as doubles,
+ * character arrays, cell arrays and structures. Compressed variables as
+ * written by MATLAB 7 and later are supported. Version 7.3 (HDF5) files
+ * are not.
+ *
+ * Variables are returned as {@link Matrix}, <code>String</code>,
+ * {@link Cell} or {@link Struct} objects.
+ *
+ * @author dcline
+ */
+public class MatFile {
+    private static final int miINT8       = 1;
+    private static final int miUINT8      = 2;
+    private static final int miINT16      = 3;
+    private static final int miUINT16     = 4;
+    private static final int miINT32      = 5;
+    private static final int miUINT32     = 6;
+    private static final int miSINGLE     = 7;
+    private static final int miDOUBLE     = 9;
+    private static final int miINT64      = 12;
+    private static final int miUINT64     = 13;
+    private static final int miMATRIX     = 14;
+    private static final int miCOMPRESSED = 15;
+    private static final int miUTF8       = 16;
+    private static final int miUTF16      = 17;
+    private static final int miUTF32      = 18;
+    private static final int mxCELL       = 1;
+    private static final int mxSTRUCT     = 2;
+    private static final int mxCHAR       = 4;
+    private static final int mxDOUBLE     = 6;
+
+    /** The length of structure field names written, with the null */
+    private static final int FIELD_NAME_LENGTH = 32;
+
+    private MatFile() {}
+
+    /**
+     * Reads all the variables in a MAT-file
+     * @param file the file to read
+     * @return map of variable names to values, in file order
+     * @throws IOException if the file cannot be read or is not a
+     * supported MAT-file
+     */
+    public static Map<String, Object> read(File file) throws IOException {
+        byte[]          bytes = new byte[(int) file.length()];
+        DataInputStream in    = new DataInputStream(new FileInputStream(file));
+
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+
+        if (bytes.length < 128) {
+            throw new IOException(file + " is not a MAT-file");
+        }
+
+        if (new String(bytes, 0, 19, "US-ASCII").startsWith("MATLAB 7.3")) {
+            throw new IOException(file + " is a MATLAB 7.3 (HDF5) file, which is not supported");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        if ((bytes[126] == 'I') && (bytes[127] == 'M')) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else if ((bytes[126] == 'M') && (bytes[127] == 'I')) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            throw new IOException(file + " is not a MAT-file");
+        }
+
+        buffer.position(128);
+
+        Map<String, Object> variables = new LinkedHashMap<String, Object>();
+
+        while (buffer.remaining() >= 8) {
+            readVariable(buffer, variables);
+        }
+
+        return variables;
+    }
+
+    /**
+     * Reads a single variable from a MAT-file
+     * @param file the file to read
+     * @param name the name of the variable
+     * @return the variable
+     * @throws IOException if the file cannot be read or does not contain
+     * the variable
+     */
+    public static Object read(File file, String name) throws IOException {
+        Object value = read(file).get(name);
+
+        if (value == null) {
+            throw new IOException("Variable " + name + " not found in " + file);
+        }
+
+        return value;
+    }
+
+    /**
+     * Writes variables to an uncompressed little-endian MAT-file. The
+     * values may be {@link Matrix}, <code>String</code>, {@link Cell} or
+     * {@link Struct}.
+     * @param file the file to write
+     * @param variables map of variable names to values
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(File file, Map<String, Object> variables) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(128);
+        String                text   = "MATLAB 5.0 MAT-file, Platform: Java, Created on: " + new Date();
+
+        header.write(text.getBytes("US-ASCII"), 0, Math.min(text.length(), 116));
+
+        while (header.size() < 124) {
+            header.write(' ');
+        }
+
+        // Version 0x0100 and the endian indicator
+        header.write(0x00);
+        header.write(0x01);
+        header.write('I');
+        header.write('M');
+
+        OutputStream out = new FileOutputStream(file);
+
+        try {
+            out.write(header.toByteArray());
+
+            for (Map.Entry<String, Object> entry : variables.entrySet()) {
+                out.write(toMatrixElement(entry.getKey(), entry.getValue()));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the next top level data element, inflating it if compressed
+     */
+    private static void readVariable(ByteBuffer buffer, Map<String, Object> variables) throws IOException {
+        int type   = buffer.getInt();
+        int nbytes = buffer.getInt();
+
+        if (type == miCOMPRESSED) {
+            byte[] compressed = new byte[nbytes];
+
+            buffer.get(compressed);
+
+            ByteBuffer inflated = ByteBuffer.wrap(inflate(compressed)).order(buffer.order());
+
+            readVariable(inflated, variables);
+
+            return;
+        }
+
+        if (type != miMATRIX) {
+            skip(buffer, nbytes);
+
+            return;
+        }
+
+        int      end   = buffer.position() + nbytes;
+        String[] name  = new String[1];
+        Object   value = readMatrix(buffer, end, name);
+
+        buffer.position(end + padding(nbytes));
+
+        if (value != null) {
+            variables.put(name[0], value);
+        }
+    }
+
+    /**
+     * Reads the contents of a miMATRIX element up to <code>end</code>
+     * @param name returns the array name
+     * @return the value, or null for unsupported classes
+     */
+    private static Object readMatrix(ByteBuffer buffer, int end, String[] name) throws IOException {
+        if (buffer.position() >= end) {
+
+            // Empty element, e.g. an empty cell
+            name[0] = "";
+
+            return new Matrix(new int[] { 0, 0 }, new double[0]);
+        }
+
+        int[]  flags      = toInts(readElement(buffer));
+        int    arrayClass = flags[0] & 0xFF;
+        int[]  dims       = toInts(readElement(buffer));
+        Object nameData   = readElement(buffer);
+
+        name[0] = toStringValue(nameData);
+
+        int count = 1;
+
+        for (int d : dims) {
+            count *= d;
+        }
+
+        switch (arrayClass) {
+        case mxCELL : {
+            Object[] cells = new Object[count];
+
+            for (int i = 0; i < count; i++) {
+                int type   = buffer.getInt();
+                int nbytes = buffer.getInt();
+                int e      = buffer.position() + nbytes;
+
+                if (type != miMATRIX) {
+                    throw new IOException("Expected a matrix in cell array " + name[0]);
+                }
+
+                cells[i] = readMatrix(buffer, e, new String[1]);
+                buffer.position(e + padding(nbytes));
+            }
+
+            return new Cell(dims, cells);
+        }
+
+        case mxSTRUCT : {
+            int      fieldNameLength = toInts(readElement(buffer))[0];
+            byte[]   names           = (byte[]) readRaw(buffer)[1];
+            int      numFields       = names.length / Math.max(fieldNameLength, 1);
+            String[] fieldNames      = new String[numFields];
+
+            for (int f = 0; f < numFields; f++) {
+                int len = 0;
+
+                while ((len < fieldNameLength) && (names[f * fieldNameLength + len] != 0)) {
+                    len++;
+                }
+
+                fieldNames[f] = new String(names, f * fieldNameLength, len, "US-ASCII");
+            }
+
+            Object[][] values = new Object[count][numFields];
+
+            for (int i = 0; i < count; i++) {
+                for (int f = 0; f < numFields; f++) {
+                    int type   = buffer.getInt();
+                    int nbytes = buffer.getInt();
+                    int e      = buffer.position() + nbytes;
+
+                    if (type != miMATRIX) {
+                        throw new IOException("Expected a matrix in structure " + name[0]);
+                    }
+
+                    values[i][f] = readMatrix(buffer, e, new String[1]);
+                    buffer.position(e + padding(nbytes));
+                }
+            }
+
+            return new Struct(dims, fieldNames, values);
+        }
+
+        case mxCHAR : {
+            char[] chars = toChars(readElement(buffer));
+            int    rows  = dims[0];
+            int    cols  = (rows > 0) ? chars.length / rows : 0;
+
+            // Character arrays are stored column-major; return the rows
+            // separated by new lines
+            StringBuilder b = new StringBuilder(chars.length + rows);
+
+            for (int r = 0; r < rows; r++) {
+                if (r > 0) {
+                    b.append('\n');
+                }
+
+                for (int c = 0; c < cols; c++) {
+                    b.append(chars[r + c * rows]);
+                }
+            }
+
+            return b.toString();
+        }
+
+        default :
+            if ((arrayClass >= mxDOUBLE) && (arrayClass <= 15)) {
+                double[] data = toDoubles(readElement(buffer), count);
+
+                // Skip any imaginary part
+                buffer.position(end);
+
+                return new Matrix(dims, data);
+            }
+
+            // Sparse arrays and objects are not supported
+            buffer.position(end);
+
+            return null;
+        }
+    }
+
+    /**
+     * Reads a data element and converts it to a Java array
+     * @return the element as a byte[], short[], int[], long[], float[]
+     * or double[] depending on its type
+     */
+    private static Object readElement(ByteBuffer buffer) {
+        Object[] raw  = readRaw(buffer);
+        int      type = (Integer) raw[0];
+        byte[]   data = (byte[]) raw[1];
+
+        ByteBuffer b = ByteBuffer.wrap(data).order(buffer.order());
+
+        switch (type) {
+        case miINT8 :
+        case miUINT8 :
+        case miUTF8 :
+            return data;
+
+        case miINT16 :
+        case miUINT16 :
+        case miUTF16 : {
+            short[] v = new short[data.length / 2];
+
+            b.asShortBuffer().get(v);
+
+            return (type == miINT16) ? (Object) v : (Object) toUnsigned(v);
+        }
+
+        case miINT32 :
+        case miUINT32 :
+        case miUTF32 : {
+            int[] v = new int[data.length / 4];
+
+            b.asIntBuffer().get(v);
+
+            return v;
+        }
+
+        case miINT64 :
+        case miUINT64 : {
+            long[] v = new long[data.length / 8];
+
+            b.asLongBuffer().get(v);
+
+            return v;
+        }
+
+        case miSINGLE : {
+            float[] v = new float[data.length / 4];
+
+            b.asFloatBuffer().get(v);
+
+            return v;
+        }
+
+        case miDOUBLE : {
+            double[] v = new double[data.length / 8];
+
+            b.asDoubleBuffer().get(v);
+
+            return v;
+        }
+
+        default :
+            return data;
+        }
+    }
+
+    /**
+     * Reads the tag and bytes of a data element, handling the small data
+     * element format
+     * @return {type, byte[]}
+     */
+    private static Object[] readRaw(ByteBuffer buffer) {
+        int    first = buffer.getInt();
+        int    type;
+        int    nbytes;
+        byte[] data;
+
+        if ((first >>> 16) != 0) {
+
+            // Small data element: type and size packed in the tag
+            type   = first & 0xFFFF;
+            nbytes = first >>> 16;
+            data   = new byte[nbytes];
+            buffer.get(data);
+            skip(buffer, 4 - nbytes);
+        } else {
+            type   = first;
+            nbytes = buffer.getInt();
+            data   = new byte[nbytes];
+            buffer.get(data);
+            skip(buffer, padding(nbytes));
+        }
+
+        return new Object[] { type, data };
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        Inflater              inflater = new Inflater();
+        ByteArrayOutputStream out      = new ByteArrayOutputStream(compressed.length * 4);
+        byte[]                buf      = new byte[65536];
+
+        inflater.setInput(compressed);
+
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+
+                if ((n == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                out.write(buf, 0, n);
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupt compressed variable: " + ex.getMessage());
+        } finally {
+            inflater.end();
+        }
+
+        return out.toByteArray();
+    }
+
+    private static void skip(ByteBuffer buffer, int n) {
+        buffer.position(Math.min(buffer.position() + n, buffer.limit()));
+    }
+
+    /**
+     * @return the number of pad bytes to align an element to 8 bytes
+     */
+    private static int padding(int nbytes) {
+        return (8 - (nbytes % 8)) % 8;
+    }
+
+    private static int[] toUnsigned(short[] v) {
+        int[] u = new int[v.length];
+
+        for (int i = 0; i < v.length; i++) {
+            u[i] = v[i] & 0xFFFF;
+        }
+
+        return u;
+    }
+
+    private static int[] toInts(Object data) {
+        if (data instanceof int[]) {
+            return (int[]) data;
+        }
+
+        double[] d = toDoubles(data, -1);
+        int[]    v = new int[d.length];
+
+        for (int i = 0; i < d.length; i++) {
+            v[i] = (int) d[i];
+        }
+
+        return v;
+    }
+
+    private static char[] toChars(Object data) {
+        if (data instanceof byte[]) {
+            byte[] b = (byte[]) data;
+            char[] c = new char[b.length];
+
+            for (int i = 0; i < b.length; i++) {
+                c[i] = (char) (b[i] & 0xFF);
+            }
+
+            return c;
+        }
+
+        int[]  v = toInts(data);
+        char[] c = new char[v.length];
+
+        for (int i = 0; i < v.length; i++) {
+            c[i] = (char) v[i];
+        }
+
+        return c;
+    }
+
+    private static String toStringValue(Object data) {
+        return new String(toChars(data));
+    }
+
+    /**
+     * Converts numeric element data to doubles
+     * @param count the expected number of values, or -1 if unknown
+     */
+    private static double[] toDoubles(Object data, int count) {
+        double[] v;
+
+        if (data instanceof double[]) {
+            v = (double[]) data;
+        } else if (data instanceof float[]) {
+            float[] f = (float[]) data;
+
+            v = new double[f.length];
+
+            for (int i = 0; i < f.length; i++) {
+                v[i] = f[i];
+            }
+        } else if (data instanceof int[]) {
+            int[] n = (int[]) data;
+
+            v = new double[n.length];
+
+            for (int i = 0; i < n.length; i++) {
+                v[i] = n[i];
+            }
+        } else if (data instanceof long[]) {
+            long[] n = (long[]) data;
+
+            v = new double[n.length];
+
+            for (int i = 0; i < n.length; i++) {
+                v[i] = n[i];
+            }
+        } else if (data instanceof short[]) {
+            short[] n = (short[]) data;
+
+            v = new double[n.length];
+
+            for (int i = 0; i < n.length; i++) {
+                v[i] = n[i];
+            }
+        } else {
+            byte[] n = (byte[]) data;
+
+            v = new double[n.length];
+
+            for (int i = 0; i < n.length; i++) {
+                v[i] = n[i] & 0xFF;
+            }
+        }
+
+        if ((count >= 0) && (v.length != count)) {
+            double[] r = new double[count];
+
+            System.arraycopy(v, 0, r, 0, Math.min(count, v.length));
+
+            return r;
+        }
+
+        return v;
+    }
+
+    /**
+     * Encodes a value as a miMATRIX element
+     */
+    private static byte[] toMatrixElement(String name, Object value) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int[]                 dims;
+        int                   arrayClass;
+
+        if (value instanceof Matrix) {
+            dims       = ((Matrix) value).dims;
+            arrayClass = mxDOUBLE;
+        } else if (value instanceof String) {
+            dims       = new int[] { 1, ((String) value).length() };
+            arrayClass = mxCHAR;
+        } else if (value instanceof Cell) {
+            dims       = ((Cell) value).dims;
+            arrayClass = mxCELL;
+        } else if (value instanceof Struct) {
+            dims       = ((Struct) value).dims;
+            arrayClass = mxSTRUCT;
+        } else {
+            throw new IOException("Cannot write " + value.getClass().getName() + " to a MAT-file");
+        }
+
+        ByteBuffer flags = newBuffer(8);
+
+        flags.putInt(arrayClass);
+        flags.putInt(0);
+        writeElement(body, miUINT32, flags.array());
+
+        ByteBuffer d = newBuffer(4 * dims.length);
+
+        for (int dim : dims) {
+            d.putInt(dim);
+        }
+
+        writeElement(body, miINT32, d.array());
+        writeElement(body, miINT8, name.getBytes("US-ASCII"));
+
+        if (value instanceof Matrix) {
+            double[]   data = ((Matrix) value).data;
+            ByteBuffer b    = newBuffer(8 * data.length);
+
+            for (double v : data) {
+                b.putDouble(v);
+            }
+
+            writeElement(body, miDOUBLE, b.array());
+        } else if (value instanceof String) {
+            String     s = (String) value;
+            ByteBuffer b = newBuffer(2 * s.length());
+
+            for (int i = 0; i < s.length(); i++) {
+                b.putShort((short) s.charAt(i));
+            }
+
+            writeElement(body, miUINT16, b.array());
+        } else if (value instanceof Cell) {
+            for (Object cell : ((Cell) value).data) {
+                body.write(toMatrixElement("", cell));
+            }
+        } else {
+            Struct     struct = (Struct) value;
+            ByteBuffer length = newBuffer(4);
+            byte[]     names  = new byte[FIELD_NAME_LENGTH * struct.fieldNames.length];
+
+            length.putInt(FIELD_NAME_LENGTH);
+            writeElement(body, miINT32, length.array());
+
+            for (int f = 0; f < struct.fieldNames.length; f++) {
+                byte[] field = struct.fieldNames[f].getBytes("US-ASCII");
+
+                if (field.length >= FIELD_NAME_LENGTH) {
+                    throw new IOException("Field name " + struct.fieldNames[f] + " is too long");
+                }
+
+                System.arraycopy(field, 0, names, f * FIELD_NAME_LENGTH, field.length);
+            }
+
+            writeElement(body, miINT8, names);
+
+            for (Object[] element : struct.values) {
+                for (Object field : element) {
+                    body.write(toMatrixElement("", field));
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + 8);
+
+        writeElement(out, miMATRIX, body.toByteArray());
+
+        return out.toByteArray();
+    }
+
+    private static void writeElement(ByteArrayOutputStream out, int type, byte[] data) throws IOException {
+        ByteBuffer tag = newBuffer(8);
+
+        tag.putInt(type);
+        tag.putInt(data.length);
+        out.write(tag.array());
+        out.write(data);
+        out.write(new byte[padding(data.length)]);
+    }
+
+    private static ByteBuffer newBuffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * A numeric array, stored as doubles in column-major order
+     */
+    public static class Matrix {
+        public final double[] data;
+        public final int[]    dims;
+
+        public Matrix(int[] dims, double[] data) {
+            this.dims = dims;
+            this.data = data;
+        }
+
+        /**
+         * Creates a rows x cols matrix from row-major values
+         */
+        public Matrix(double[][] values) {
+            int rows = values.length;
+            int cols = (rows > 0) ? values[0].length : 0;
+
+            this.dims = new int[] { rows, cols };
+            this.data = new double[rows * cols];
+
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    data[r + c * rows] = values[r][c];
+                }
+            }
+        }
+
+        public int rows() {
+            return dims[0];
+        }
+
+        public int cols() {
+            return (dims.length > 1) ? data.length / Math.max(dims[0], 1) : 1;
+        }
+
+        public double get(int row, int col) {
+            return data[row + col * dims[0]];
+        }
+
+        public double get(int i, int j, int k) {
+            return data[i + j * dims[0] + k * dims[0] * dims[1]];
+        }
+
+        /**
+         * @return the values of a row
+         */
+        public double[] getRow(int row) {
+            double[] r = new double[cols()];
+
+            for (int c = 0; c < r.length; c++) {
+                r[c] = get(row, c);
+            }
+
+            return r;
+        }
+
+        /**
+         * @return the first element, for scalars
+         */
+        public double scalar() {
+            return data[0];
+        }
+    }
+
+    /**
+     * A cell array, stored in column-major order
+     */
+    public static class Cell {
+        public final Object[] data;
+        public final int[]    dims;
+
+        public Cell(int[] dims, Object[] data) {
+            this.dims = dims;
+            this.data = data;
+        }
+
+        /**
+         * Creates a column cell array of strings
+         */
+        public Cell(String[] values) {
+            this(new int[] { values.length, 1 }, values.clone());
+        }
+
+        public int size() {
+            return data.length;
+        }
+
+        public Object get(int i) {
+            return data[i];
+        }
+
+        public String getString(int i) {
+            return (data[i] instanceof String) ? (String) data[i] : "";
+        }
+    }
+
+    /**
+     * A structure array, stored in column-major order
+     */
+    public static class Struct {
+        public final int[]       dims;
+        private final String[]   fieldNames;
+        private final Object[][] values;
+
+        Struct(int[] dims, String[] fieldNames, Object[][] values) {
+            this.dims       = dims;
+            this.fieldNames = fieldNames;
+            this.values     = values;
+        }
+
+        /**
+         * Creates a 1x1 structure
+         * @param fields map of field names to values
+         */
+        public Struct(Map<String, Object> fields) {
+            this(new int[] { 1, 1 }, fields.keySet().toArray(new String[fields.size()]),
+                 new Object[][] { fields.values().toArray() });
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        public String[] getFieldNames() {
+            return fieldNames.clone();
+        }
+
+        /**
+         * @return the value of a field of an element, or null if the
+         * structure has no such field
+         */
+        public Object get(int index, String field) {
+            for (int f = 0; f < fieldNames.length; f++) {
+                if (fieldNames[f].equals(field)) {
+                    return values[index][f];
+                }
+            }
+
+            return null;
+        }
+
+        public Object get(String field) {
+            return get(0, field);
+        }
+    }
+}
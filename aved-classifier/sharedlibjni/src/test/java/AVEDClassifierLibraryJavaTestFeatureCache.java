@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import junit.framework.*;
+import org.mbari.aved.classifier.ColorSpace;
+import org.mbari.aved.classifier.FeatureCache;
+
+/**
+ * Tests storing, reading back and invalidating feature cache entries
+ */
+public class AVEDClassifierLibraryJavaTestFeatureCache extends TestCase {
+
+    private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+    private File dbroot;
+
+    public AVEDClassifierLibraryJavaTestFeatureCache(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        dbroot = File.createTempFile("avedtest", "");
+        dbroot.delete();
+        dbroot.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        new FeatureCache(dbroot).invalidate();
+        new File(dbroot, "features").delete();
+        dbroot.delete();
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws Exception {
+        FeatureCache cache = new FeatureCache(dbroot);
+        double[] features = {1.5, -2.25, Double.NaN, 0};
+
+        assertNull(cache.get(HASH, ColorSpace.RGB));
+        cache.put(HASH, ColorSpace.RGB, new FeatureCache.Entry(64, features));
+
+        FeatureCache.Entry entry = cache.get(HASH, ColorSpace.RGB);
+
+        assertNotNull(entry);
+        assertEquals(64, entry.resolution);
+        assertEquals(features.length, entry.features.length);
+
+        for (int i = 0; i < features.length; i++) {
+            assertEquals(Double.doubleToLongBits(features[i]), Double.doubleToLongBits(entry.features[i]));
+        }
+
+        // Entries are kept per color space
+        assertNull(cache.get(HASH, ColorSpace.GRAY));
+        assertEquals(1, cache.getNumEntries());
+        assertEquals(16 + 8 * features.length, cache.getSize());
+        assertEquals("1 entries, 0.0 MB", cache.getSummary());
+    }
+
+    public void testInvalidate() throws Exception {
+        FeatureCache cache = new FeatureCache(dbroot);
+        FeatureCache.Entry entry = new FeatureCache.Entry(32, new double[]{1, 2});
+
+        cache.put(HASH, ColorSpace.RGB, entry);
+        cache.put(HASH, ColorSpace.GRAY, entry);
+        cache.invalidate(ColorSpace.GRAY);
+        assertNull(cache.get(HASH, ColorSpace.GRAY));
+        assertNotNull(cache.get(HASH, ColorSpace.RGB));
+
+        cache.invalidate();
+        assertNull(cache.get(HASH, ColorSpace.RGB));
+        assertEquals(0, cache.getNumEntries());
+        assertFalse(cache.getDirectory().exists());
+
+        // The cache is usable again after it is invalidated
+        cache.put(HASH, ColorSpace.RGB, entry);
+        assertNotNull(cache.get(HASH, ColorSpace.RGB));
+    }
+
+    public void testCorruptEntryIsMiss() throws Exception {
+        FeatureCache cache = new FeatureCache(dbroot);
+
+        cache.put(HASH, ColorSpace.RGB, new FeatureCache.Entry(32, new double[]{1, 2}));
+
+        File file = new File(cache.getDirectory(), "rgb/01/" + HASH + ".fv");
+        FileOutputStream out = new FileOutputStream(file);
+
+        try {
+            out.write(new byte[]{1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        assertNull(cache.get(HASH, ColorSpace.RGB));
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2013 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1
+ * (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import junit.framework.*;
+import org.mbari.aved.classifier.ClassModel;
+import org.mbari.aved.classifier.ClassifierLibraryJNI;
+import org.mbari.aved.classifier.ClassifierLibraryJava;
+import org.mbari.aved.classifier.ColorSpace;
+import org.mbari.aved.classifier.LocalJetFeatures;
+import org.mbari.aved.classifier.MatFile;
+
+/**
+ * Tests the Java classifier library against the Matlab library. The
+ * Matlab comparison fails if the JNI library cannot be loaded, as the
+ * other JNI tests do.
+ */
+public class AVEDClassifierLibraryJavaTestParity extends TestCase {
+
+    private static final String TEST_CLASS = "2526_00_47_53_05-events";
+    private static final String SUFFIX = "_collection_avljNL3_cl_pcsnew.mat";
+    private static final double TOLERANCE = 1e-6;
+
+    public AVEDClassifierLibraryJavaTestParity(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public void testMatFile() throws Exception {
+        File file = File.createTempFile("avedtest", ".mat");
+        Map<String, Object> variables = new LinkedHashMap<String, Object>();
+
+        variables.put("store", new MatFile.Matrix(new double[][]{{1, 2, 3}, {4, 5, Double.NaN}}));
+        variables.put("filenames", new MatFile.Cell(new String[]{"a_evt0001.ppm", "b_evt0002.ppm"}));
+        variables.put("name", "flat");
+
+        Map<String, Object> fields = new LinkedHashMap<String, Object>();
+
+        fields.put("classname", "flat");
+        fields.put("color_space", new MatFile.Matrix(new double[][]{{2}}));
+        variables.put("metadata", new MatFile.Struct(fields));
+        MatFile.write(file, variables);
+
+        Map<String, Object> read = MatFile.read(file);
+        MatFile.Matrix store = (MatFile.Matrix) read.get("store");
+        MatFile.Cell filenames = (MatFile.Cell) read.get("filenames");
+
+        assertEquals(2, store.rows());
+        assertEquals(3, store.cols());
+        assertEquals(6.0, store.get(1, 1) + store.get(0, 0), 0);
+        assertTrue(Double.isNaN(store.get(1, 2)));
+        assertEquals("b_evt0002.ppm", filenames.getString(1));
+        assertEquals("flat", read.get("name"));
+
+        MatFile.Struct metadata = (MatFile.Struct) read.get("metadata");
+
+        assertTrue(Arrays.equals(new String[]{"classname", "color_space"}, metadata.getFieldNames()));
+        assertEquals("flat", metadata.get("classname"));
+        assertEquals(2.0, ((MatFile.Matrix) metadata.get("color_space")).scalar(), 0);
+        file.delete();
+    }
+
+    public void testCollectClass() throws Exception {
+        URL flat = getClass().getResource("2526_Training_Classes/flat");
+        File dbRoot = createTempDir();
+        String killFile = dbRoot.getAbsolutePath() + "/testkill";
+
+        new ClassifierLibraryJava().collect_class(killFile, flat.getFile(), flat.getFile(), "flat",
+                dbRoot.getAbsolutePath(), "flatfish", "Test flatfish class", ColorSpace.GRAY);
+
+        ClassModel[] classes = new ClassifierLibraryJava().get_collected_classes(dbRoot.getAbsolutePath());
+
+        assertEquals(1, classes.length);
+        assertEquals("flat", classes[0].getName());
+        assertEquals("flatfish", classes[0].getPredictedName());
+        assertEquals("Test flatfish class", classes[0].getDescription());
+        assertEquals(ColorSpace.GRAY, classes[0].getColorSpace());
+        assertEquals(LocalJetFeatures.getNumFeatures(ColorSpace.GRAY),
+                readStore(dbRoot, "class", "flat", ColorSpace.GRAY).cols());
+    }
+
+    public void testCollectTests() throws Exception {
+        URL testDir = getClass().getResource("2526_Test_Cases/" + TEST_CLASS);
+        String killFile = createTempDir().getAbsolutePath() + "/testkill";
+
+        // Collect with one thread and with a thread per processor
+        File sequential = createTempDir();
+        File parallel = createTempDir();
+
+        new ClassifierLibraryJava(null, 1).collect_tests(killFile, testDir.getFile(),
+                sequential.getAbsolutePath(), ColorSpace.GRAY);
+        new ClassifierLibraryJava().collect_tests(killFile, testDir.getFile(),
+                parallel.getAbsolutePath(), ColorSpace.GRAY);
+
+        MatFile.Matrix a = readStore(sequential, "tests", TEST_CLASS, ColorSpace.GRAY);
+        MatFile.Matrix b = readStore(parallel, "tests", TEST_CLASS, ColorSpace.GRAY);
+
+        assertEquals(LocalJetFeatures.getNumFeatures(ColorSpace.GRAY), a.cols());
+        assertEquals(new File(testDir.getFile()).list().length, a.rows());
+        assertTrue(Arrays.equals(a.dims, b.dims));
+        assertTrue(Arrays.equals(a.data, b.data));
+    }
+
+    public void testParityWithMatlab() throws Exception {
+        ClassifierLibraryJNI matlab = new ClassifierLibraryJNI();
+        String dbRoot = createTempDir().getAbsolutePath();
+        String logfile = dbRoot + "/matlablog.txt";
+        String killFile = dbRoot + "/testkill";
+        String lcOSName = System.getProperty("os.name").toLowerCase();
+
+        // If running from Mac
+        if (lcOSName.startsWith("mac os x")) {
+            matlab.initLib(logfile, 1);
+        } else {
+            matlab.initLib(logfile, 0);
+        }
+
+        try {
+            URL flat = getClass().getResource("2526_Training_Classes/flat");
+            URL rath = getClass().getResource("2526_Training_Classes/rath");
+            URL testDir = getClass().getResource("2526_Test_Cases/" + TEST_CLASS);
+            String trainingAlias = "BenthicTest";
+
+            matlab.collect_class(killFile, flat.getFile(), flat.getFile(), "flat", dbRoot,
+                    "flatfish", "Test flatfish class", ColorSpace.GRAY);
+            matlab.collect_class(killFile, rath.getFile(), rath.getFile(), "rath", dbRoot,
+                    "Rathbunaster-Californicus", "Test Rathbunaster-Californicus class", ColorSpace.GRAY);
+            matlab.train_classes(killFile, "flat,rath", trainingAlias, dbRoot, ColorSpace.GRAY,
+                    "Test benthic training class");
+            matlab.collect_tests(killFile, testDir.getFile(), dbRoot, ColorSpace.GRAY);
+
+            // Compare the features
+            File javaRoot = createTempDir();
+            ClassifierLibraryJava java = new ClassifierLibraryJava();
+
+            java.collect_class(killFile, flat.getFile(), flat.getFile(), "flat", javaRoot.getAbsolutePath(),
+                    "flatfish", "Test flatfish class", ColorSpace.GRAY);
+            java.collect_tests(killFile, testDir.getFile(), javaRoot.getAbsolutePath(), ColorSpace.GRAY);
+            assertFeaturesEqual(readStore(new File(dbRoot), "class", "flat", ColorSpace.GRAY),
+                    readStore(javaRoot, "class", "flat", ColorSpace.GRAY));
+            assertFeaturesEqual(readStore(new File(dbRoot), "tests", TEST_CLASS, ColorSpace.GRAY),
+                    readStore(javaRoot, "tests", TEST_CLASS, ColorSpace.GRAY));
+
+            // Compare the classification of the Matlab features
+            int numEvents = 4;
+            int[][] majority = new int[2][numEvents];
+            int[][] probabilitywinner = new int[2][numEvents];
+            int[][] maxwinner = new int[2][numEvents];
+            float[][] probability = new float[2][numEvents];
+            String[][] eventids = new String[2][numEvents];
+
+            matlab.run_test(killFile, eventids[0], majority[0], probabilitywinner[0], maxwinner[0],
+                    probability[0], TEST_CLASS, trainingAlias, 0.8f, dbRoot, ColorSpace.GRAY);
+            java.run_test(killFile, eventids[1], majority[1], probabilitywinner[1], maxwinner[1],
+                    probability[1], TEST_CLASS, trainingAlias, 0.8f, dbRoot, ColorSpace.GRAY);
+
+            for (int i = 0; i < numEvents; i++) {
+                System.out.println("event:" + eventids[1][i]
+                        + "\tmajority:" + majority[0][i] + "/" + majority[1][i]
+                        + "\tprobability:" + probabilitywinner[0][i] + "/" + probabilitywinner[1][i]
+                        + "\tmax:" + maxwinner[0][i] + "/" + maxwinner[1][i]
+                        + "\tprobability in class:" + probability[0][i] + "/" + probability[1][i]);
+            }
+
+            assertTrue(Arrays.equals(eventids[0], eventids[1]));
+            assertTrue(Arrays.equals(majority[0], majority[1]));
+            assertTrue(Arrays.equals(probabilitywinner[0], probabilitywinner[1]));
+            assertTrue(Arrays.equals(maxwinner[0], maxwinner[1]));
+
+            for (int i = 0; i < numEvents; i++) {
+                assertEquals(probability[0][i], probability[1][i], 1e-5);
+            }
+        } finally {
+            matlab.closeLib();
+        }
+    }
+
+    private static void assertFeaturesEqual(MatFile.Matrix expected, MatFile.Matrix actual) {
+        assertTrue(Arrays.equals(expected.dims, actual.dims));
+
+        for (int i = 0; i < expected.data.length; i++) {
+            double e = expected.data[i];
+            double a = actual.data[i];
+
+            if (Double.isNaN(e)) {
+                assertTrue(Double.isNaN(a));
+            } else {
+                assertEquals(e, a, TOLERANCE * Math.max(1, Math.abs(e)));
+            }
+        }
+    }
+
+    private static MatFile.Matrix readStore(File dbRoot, String type, String name, ColorSpace colorSpace)
+            throws Exception {
+        File file = new File(dbRoot, "features/" + type + "/" + name + "_"
+                + colorSpace.toString().toLowerCase() + "_data" + SUFFIX);
+
+        return (MatFile.Matrix) MatFile.read(file, "store");
+    }
+
+    private static File createTempDir() throws Exception {
+        File dir = File.createTempFile("avedtest", "");
+
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+
+        return dir;
+    }
+}
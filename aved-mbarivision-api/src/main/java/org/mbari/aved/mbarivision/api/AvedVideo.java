@@ -24,7 +24,9 @@
 
 package org.mbari.aved.mbarivision.api;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 
 
 /**
@@ -42,6 +44,12 @@ public class AvedVideo {
         // this is determined by the transcode binary
         private String fileStem = "f";
         private String fileExt = "ppm";
+        
+        // source of the decoded frames; defaults to the frame files
+        private FrameSource frameSource = null;
+
+        // true once no more frames will become available
+        private volatile boolean complete = false;
 	
 	/**
 	 * The constructor
@@ -93,6 +101,49 @@ public class AvedVideo {
                     fileStem, n, fileExt);                     
                    return new File(framename);
         }
+	/**
+	 * Decodes a frame through the frame source
+	 * @param n number of the frame in the video
+	 * @return the decoded frame or null if it is not available
+	 */
+	public BufferedImage getFrame (int n) throws IOException {
+            return getFrameSource().getFrame(n, null);
+        }
+	/**
+	 * Decodes a frame through the frame source into a reusable image
+	 * @param n number of the frame in the video
+	 * @param reuse an image to decode into if it matches the frame, or null
+	 * @return the decoded frame or null if it is not available
+	 */
+	public BufferedImage getFrame (int n, BufferedImage reuse) throws IOException {
+            return getFrameSource().getFrame(n, reuse);
+        }
+	/**
+	 * Sets the source of the decoded frames, e.g. to decode frames on
+         * demand instead of reading them from the transcoded frame files
+	 * @param source the frame source
+	 */
+	public void setFrameSource (FrameSource source) { this.frameSource = source; }
+	/**
+	 * Gets the source of the decoded frames
+	 * @return the frame source; this defaults to reading the frame files
+	 */
+	public synchronized FrameSource getFrameSource () { 
+            if (frameSource == null) {
+                frameSource = new FileFrameSource(this);
+            }
+            return frameSource;
+        }
+	/**
+	 * Marks the frames as complete, e.g. when the transcoder finishes,
+         * so any frame still missing will never become available
+	 * @param b true if no more frames will become available
+	 */
+	public void setComplete (boolean b) { this.complete = b; }
+	/**
+	 * @return true if no more frames will become available
+	 */
+	public boolean isComplete () { return complete; }
 	/**
 	 * Sets the folder where the imageDir are stored
 	 * @param f the imageDir folder, AVED read only imageDir folder
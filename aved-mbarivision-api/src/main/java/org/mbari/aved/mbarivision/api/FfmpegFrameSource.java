@@ -0,0 +1,309 @@
+/*
+ * @(#)FfmpegFrameSource.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.mbari.aved.mbarivision.api;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import org.mbari.aved.mbarivision.api.utils.ExtendedVector;
+import org.mbari.aved.mbarivision.api.utils.StreamGobbler;
+
+/**
+ * Frame source that decodes frames on demand from an ffmpeg rawvideo pipe
+ * instead of exploding the whole clip into image files. Frames are read
+ * sequentially from the pipe; requests for frames behind the decoder, or
+ * far ahead of it, restart the decoder with a seek to the frame.
+ * Requesting frames in increasing order is therefore much cheaper than
+ * random access.
+ *
+ * Frames are decoded as 24-bit BGR so the pipe output can be read directly
+ * into the data buffer of a TYPE_3BYTE_BGR image.
+ */
+public class FfmpegFrameSource implements FrameSource {
+
+    /**
+     * Maximum number of frames to decode and drop when seeking forward
+     * before restarting the decoder at the frame instead
+     */
+    private static final int MAX_SKIP_FRAMES = 300;
+    private final String ffmpeg;
+    private final File video;
+    private final String[] envParams;
+    private final OutputStream printStream;
+    private final int width;
+    private final int height;
+    private final double frameRate;
+    private int numFrames = -1;
+    /** Frame number of the first frame. ffmpeg numbers its image files from 1 */
+    private int firstFrame = 1;
+    private Process process;
+    private InputStream in;
+    private StreamGobbler errGobbler;
+    /** Zero-based index of the next frame to be read from the pipe */
+    private int nextIndex = -1;
+    /** Reusable buffer for frames that are skipped */
+    private byte[] skipBuffer;
+
+    /**
+     * Constructor
+     * @param ffmpeg the fully qualified ffmpeg command
+     * @param video the video file to decode
+     * @param width the frame width
+     * @param height the frame height
+     * @param frameRate the frame rate in frames per second
+     * @param envParams environment to run ffmpeg in, or null to inherit
+     * @param printStream the stream to print ffmpeg messages to
+     */
+    public FfmpegFrameSource(String ffmpeg, File video, int width, int height, double frameRate,
+            String[] envParams, OutputStream printStream) {
+        this.ffmpeg = ffmpeg;
+        this.video = video;
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.envParams = envParams;
+        this.printStream = (printStream != null ? printStream : System.out);
+    }
+
+    /**
+     * Creates a frame source for a video, finding the frame size, rate and
+     * count with ffprobe
+     * @param ffmpeg the fully qualified ffmpeg command
+     * @param ffprobe the fully qualified ffprobe command
+     * @param video the video file to decode
+     * @param envParams environment to run ffmpeg in, or null to inherit
+     * @param printStream the stream to print ffmpeg messages to
+     * @return the frame source
+     * @throws Exception if the video stream cannot be probed
+     */
+    public static FfmpegFrameSource probe(String ffmpeg, String ffprobe, File video, String[] envParams,
+            OutputStream printStream) throws Exception {
+        String[] cmd = {ffprobe, "-v", "error", "-select_streams", "v:0", "-show_entries",
+            "stream=width,height,r_frame_rate,nb_frames", "-of", "default=noprint_wrappers=1", video.toString()};
+        Process proc = Runtime.getRuntime().exec(cmd, envParams);
+        ExtendedVector line = new ExtendedVector();
+        StreamGobbler errGobbler = new StreamGobbler(proc.getErrorStream(), printStream);
+        StreamGobbler outGobbler = new StreamGobbler(proc.getInputStream(), printStream, "OUTPUT");
+        outGobbler.setLineVector(line);
+
+        outGobbler.start();
+        errGobbler.start();
+
+        if (proc.waitFor() != 0) {
+            throw new AvedRuntimeException("Error running command " + ffprobe + " on " + video);
+        }
+        outGobbler.join();
+
+        int w = 0;
+        int h = 0;
+        int n = -1;
+        double rate = 0.;
+
+        for (int i = 0; i < line.size(); i++) {
+            String s = line.get(i).toString().trim();
+            int j = s.indexOf('=');
+
+            if (j < 0) {
+                continue;
+            }
+            String key = s.substring(0, j);
+            String value = s.substring(j + 1);
+
+            try {
+                if (key.equals("width")) {
+                    w = Integer.parseInt(value);
+                } else if (key.equals("height")) {
+                    h = Integer.parseInt(value);
+                } else if (key.equals("nb_frames")) {
+                    n = Integer.parseInt(value);
+                } else if (key.equals("r_frame_rate")) {
+                    int k = value.indexOf('/');
+
+                    rate = (k > 0 ? Double.parseDouble(value.substring(0, k))
+                            / Double.parseDouble(value.substring(k + 1)) : Double.parseDouble(value));
+                }
+            } catch (NumberFormatException ex) {
+                // e.g. nb_frames=N/A for some containers
+            }
+        }
+
+        if (w <= 0 || h <= 0 || rate <= 0. || Double.isInfinite(rate) || Double.isNaN(rate)) {
+            throw new AvedRuntimeException("Error finding the frame size and rate of " + video);
+        }
+
+        FfmpegFrameSource source = new FfmpegFrameSource(ffmpeg, video, w, h, rate, envParams, printStream);
+
+        source.numFrames = n;
+        return source;
+    }
+
+    public synchronized BufferedImage getFrame(int frameNo, BufferedImage reuse) throws IOException {
+        int index = frameNo - firstFrame;
+
+        if (index < 0 || (numFrames > 0 && index >= numFrames)) {
+            return null;
+        }
+
+        // Restart the decoder if the frame is behind it or too far ahead
+        if (process == null || index < nextIndex || index - nextIndex > MAX_SKIP_FRAMES) {
+            start(index);
+        }
+
+        while (nextIndex < index) {
+            if (skipBuffer == null) {
+                skipBuffer = new byte[width * height * 3];
+            }
+
+            if (!readFully(skipBuffer)) {
+                stop();
+                return null;
+            }
+            nextIndex++;
+        }
+
+        BufferedImage image = reuse;
+
+        if (image == null || image.getType() != BufferedImage.TYPE_3BYTE_BGR
+                || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        }
+
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+        if (!readFully(data)) {
+            stop();
+            return null;
+        }
+        nextIndex++;
+
+        return image;
+    }
+
+    public boolean isSequential() {
+        return true;
+    }
+
+    public synchronized void close() {
+        stop();
+    }
+
+    /**
+     * Sets the frame number of the first frame in the video
+     * @param n the first frame number; this defaults to 1 as in the
+     * files written by ffmpeg
+     */
+    public void setFirstFrameNumber(int n) {
+        this.firstFrame = n;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @return the number of frames in the video, or -1 if not known
+     */
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * Starts the decoder at a frame
+     * @param index the zero-based index of the frame to start at
+     */
+    private void start(int index) throws IOException {
+        stop();
+
+        String[] cmd;
+
+        if (index > 0) {
+            // Input seeking is frame accurate when decoding; seek half a frame
+            // early so rounding cannot skip past the frame
+            String seconds = String.format(Locale.US, "%.6f", (index - 0.5) / frameRate);
+
+            cmd = new String[]{ffmpeg, "-v", "error", "-ss", seconds, "-i", video.toString(), "-an",
+                        "-f", "rawvideo", "-pix_fmt", "bgr24", "-"};
+        } else {
+            cmd = new String[]{ffmpeg, "-v", "error", "-i", video.toString(), "-an",
+                        "-f", "rawvideo", "-pix_fmt", "bgr24", "-"};
+        }
+
+        process = Runtime.getRuntime().exec(cmd, envParams);
+        in = new BufferedInputStream(process.getInputStream(), width * height * 3);
+        errGobbler = new StreamGobbler(process.getErrorStream(), printStream);
+        errGobbler.start();
+        nextIndex = index;
+    }
+
+    /**
+     * Stops the decoder if it is running
+     */
+    private void stop() {
+        if (process != null) {
+            process.destroy();
+
+            try {
+                in.close();
+            } catch (IOException ex) {
+            }
+            errGobbler.kill();
+            process = null;
+            in = null;
+        }
+        nextIndex = -1;
+    }
+
+    /**
+     * Reads a whole frame from the decoder
+     * @return false if the end of the video was reached
+     */
+    private boolean readFully(byte[] b) throws IOException {
+        int off = 0;
+
+        while (off < b.length) {
+            int n = in.read(b, off, b.length - off);
+
+            if (n < 0) {
+                return false;
+            }
+            off += n;
+        }
+
+        return true;
+    }
+}
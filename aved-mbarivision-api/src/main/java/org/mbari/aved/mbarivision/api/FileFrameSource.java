@@ -0,0 +1,90 @@
+/*
+ * @(#)FileFrameSource.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.mbari.aved.mbarivision.api;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import org.mbari.aved.mbarivision.api.utils.PpmCodec;
+
+/**
+ * Frame source for frames that have been transcoded to individual image
+ * files, e.g. f000001.ppm, in the AvedVideo output directory
+ */
+public class FileFrameSource implements FrameSource {
+
+    private final AvedVideo video;
+
+    /**
+     * Constructor
+     * @param video the video whose output directory holds the frames
+     */
+    public FileFrameSource(AvedVideo video) {
+        this.video = video;
+    }
+
+    public boolean isSequential() {
+        return false;
+    }
+
+    /**
+     * Reads the frame file. PPM frames are decoded into the reusable
+     * image if it matches the frame; other formats are read with ImageIO,
+     * which always allocates its own image.
+     */
+    public BufferedImage getFrame(int frameNo, BufferedImage reuse) throws IOException {
+        File source = video.getFrameName(frameNo);
+
+        if (!source.exists() || !source.getAbsoluteFile().canRead()) {
+            return null;
+        }
+
+        // Brute force check if the file is still being written to by the
+        // transcoder because of file locking inconsistencies
+        long i = source.length();
+
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException ex) {
+            return null;
+        }
+
+        if (i != source.length()) {
+            return null;
+        }
+
+        BufferedImage image = PpmCodec.read(source, reuse);
+
+        if (image != null) {
+            return image;
+        }
+
+        return ImageIO.read(source);
+    }
+
+    public void close() {
+    }
+}
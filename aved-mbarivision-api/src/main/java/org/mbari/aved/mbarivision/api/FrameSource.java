@@ -0,0 +1,58 @@
+/*
+ * @(#)FrameSource.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.mbari.aved.mbarivision.api;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * A source of decoded video frames. This lets frames be fetched on demand,
+ * e.g. from a decoder pipe, instead of requiring the whole clip to be
+ * transcoded to individual image files first.
+ */
+public interface FrameSource {
+
+    /**
+     * Decodes a frame
+     * @param frameNo the frame number, numbered as in {@link AvedVideo#getFrameName(int)}
+     * @param reuse an image to decode into to avoid allocating a new one for
+     * every frame, or null. This is only used if it has the frame size and type
+     * @return the decoded frame, or null if the frame is not available
+     * @throws IOException if the frame cannot be decoded
+     */
+    BufferedImage getFrame(int frameNo, BufferedImage reuse) throws IOException;
+
+    /**
+     * @return true if frames are decoded in sequence, e.g. from a pipe, so
+     * they are much cheaper to get in increasing order from a single thread
+     * than in random order or from several threads at once
+     */
+    boolean isSequential();
+
+    /**
+     * Releases any resources, e.g. decoder processes, held by this source
+     */
+    void close();
+}
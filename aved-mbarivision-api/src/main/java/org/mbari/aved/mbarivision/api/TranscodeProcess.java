@@ -28,6 +28,10 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Timer;
@@ -62,6 +66,15 @@ public class TranscodeProcess extends Thread {
     private String envParams[] = null;
     private String[] validImageExtensions = {"ppm", "jpg", "gif", "png", "pnm"};
     private boolean isEnableFfmpeg = false;
+    private boolean isDecodeOnDemand = false;
+    /** Sorted frame numbers to extract, or null to extract every frame */
+    private int[] sparseFrames = null;
+    /**
+     * Largest gap between two frames to extract that is decoded through
+     * rather than starting a new range. Short gaps are cheaper to decode
+     * than to seek over, since a seek decodes from the previous key frame.
+     */
+    public static int SPARSE_MAX_GAP = 30;
 
  
     /** Helper class to interrupt processes that take too long to runUncompressVideo*/
@@ -211,6 +224,7 @@ public class TranscodeProcess extends Thread {
                 if (isRunning) {
                     kill();
                 }
+                getOutAVEDVideo().getFrameSource().close();
                 Utils.deleteDir(getOutAVEDVideo().getOutputDirectory());
 
             } catch (ThreadDeath d) {
@@ -290,6 +304,52 @@ public class TranscodeProcess extends Thread {
         this.isEnableFfmpeg = true;
     }
 
+    /**
+     * Decode video frames on demand from an ffmpeg pipe instead of
+     * transcoding every frame to a file. Tar archives are still unpacked.
+     */
+    public void enableDecodeOnDemand() {
+        this.isDecodeOnDemand = true;
+    }
+
+    /**
+     * Extract only the given frames instead of every frame in the video.
+     * The frames are coalesced into ranges, so a few unreferenced frames
+     * between close frames are extracted too.
+     * @param frames the frame numbers to extract, in any order, or null
+     * to extract every frame
+     */
+    public void setSparseFrames(int[] frames) {
+        if (frames == null || frames.length == 0) {
+            this.sparseFrames = null;
+        } else {
+            this.sparseFrames = frames.clone();
+            Arrays.sort(this.sparseFrames);
+        }
+    }
+
+    /**
+     * Coalesces sorted frame numbers into inclusive ranges
+     * @param frames sorted frame numbers, possibly with duplicates
+     * @param maxGap the largest number of missing frames between two
+     * frames in the same range
+     * @return list of {first, last} frame ranges
+     */
+    public static List<int[]> coalesceRanges(int[] frames, int maxGap) {
+        List<int[]> ranges = new ArrayList<int[]>();
+
+        for (int i = 0; i < frames.length; i++) {
+            int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+
+            if (last != null && frames[i] - last[1] <= maxGap + 1) {
+                last[1] = Math.max(last[1], frames[i]);
+            } else {
+                ranges.add(new int[]{frames[i], frames[i]});
+            }
+        }
+        return ranges;
+    }
+
     /**
      * Sets optional transcode arguments to pass to the transcoder
      */
@@ -318,6 +378,9 @@ public class TranscodeProcess extends Thread {
                 if (ext.equals("tar") || ext.equals("gz") || ext.equals("tgz")) {
                     //TODO pass extra args here as 3rd argument
                     runUncompressTar(inVideoFile, outAvedVideo.getOutputDirectory());
+                } else if (isDecodeOnDemand) {
+                    runDecodeOnDemand(inVideoFile);
+                    isRunning = false;
                 } else {
                     runUncompressVideo(inVideoFile, outAvedVideo.getOutputDirectory(), transcodeOpts);
                 }
@@ -332,6 +395,9 @@ public class TranscodeProcess extends Thread {
             } catch (Exception ex) {
                 isRunning = false;
                 throw new AvedRuntimeException(ex.toString());
+            } finally {
+                // Whether it finished, failed or was killed, no more frames will be written
+                getOutAVEDVideo().setComplete(true);
             }
         }
     }
@@ -689,13 +755,24 @@ public class TranscodeProcess extends Thread {
             catch (Exception ex) {
             }
   
-            if (isEnableFfmpeg) {
-                runFfmpegTranscode(file, outputdir, transcodeopts);
-            } else {
-                if (!"Unknown".equals(codec))
-                    runTranscode(file, outputdir, codec, transcodeopts);
-                else
+            if (isEnableFfmpeg || "Unknown".equals(codec)) {
+                if (sparseFrames != null) {
+                    runFfmpegSparseTranscode(file, outputdir);
+                } else {
                     runFfmpegTranscode(file, outputdir, transcodeopts);
+                }
+            } else {
+                if (sparseFrames != null) {
+                    // transcode takes a comma separated list of frame ranges
+                    // with an exclusive end frame
+                    String frameRanges = "";
+
+                    for (int[] range : coalesceRanges(sparseFrames, SPARSE_MAX_GAP)) {
+                        frameRanges += (frameRanges.length() > 0 ? "," : "") + range[0] + "-" + (range[1] + 1);
+                    }
+                    transcodeopts = transcodeopts + " -c " + frameRanges;
+                }
+                runTranscode(file, outputdir, codec, transcodeopts);
             }
         } catch (NumberFormatException ex) {
             throw new AvedRuntimeException(ex.toString());
@@ -710,6 +787,28 @@ public class TranscodeProcess extends Thread {
 
     }
     
+    /**
+     * Sets up an ffmpeg frame source to decode frames from the video as they are
+     * requested. Nothing is written to the output directory except what the
+     * application writes there itself, e.g. event crops.
+     * @param file to decode
+     * @throws java.lang.Exception if ffmpeg or ffprobe cannot be found or the video cannot be probed
+     */
+    private void runDecodeOnDemand(File file) throws Exception {
+        String ffmpeg = getCmdLoc("ffmpeg", 1);
+        String ffprobe = getCmdLoc("ffprobe", 1);
+        FfmpegFrameSource source = FfmpegFrameSource.probe(ffmpeg, ffprobe, file, envParams, printStream);
+
+        System.out.println("Decoding " + file + " on demand " + source.getWidth() + "x" + source.getHeight()
+                + " at " + source.getFrameRate() + " fps");
+        outAvedVideo.setFrameSource(source);
+
+        if (source.getNumFrames() > 0) {
+            outAvedVideo.setNbFrame(source.getNumFrames());
+        }
+        isInitialized = true;
+    }
+
     /**
      * Runs the external ffmpeg transcode binary convering the file into individual ppms
      * @param file to transcode 
@@ -749,6 +848,66 @@ public class TranscodeProcess extends Thread {
 
     }
     
+    /**
+     * Runs the external ffmpeg binary once per range of frames to extract,
+     * seeking to the start of each range and writing only the frames in
+     * it. Frames are numbered as in {@link #runFfmpegTranscode}, i.e. the
+     * first frame of the video is f000001
+     * @param file to transcode
+     * @throws java.lang.Exception is exception or a negative return code
+     */
+    private void runFfmpegSparseTranscode(File file, File outputdir) throws Exception {
+        String ffmpeg = getCmdLoc("ffmpeg", 1);
+        double frameRate = FfmpegFrameSource.probe(ffmpeg, getCmdLoc("ffprobe", 1), file, envParams,
+                printStream).getFrameRate();
+        String outputfilestem = outputdir.toString() + "/f%06d." + outAvedVideo.getFileExt();
+        List<int[]> ranges = coalesceRanges(sparseFrames, SPARSE_MAX_GAP);
+        int total = 0;
+
+        outputdir.mkdir();
+
+        for (int[] range : ranges) {
+            int first = Math.max(range[0], 1);
+            int count = range[1] - first + 1;
+
+            if (count <= 0) {
+                continue;
+            }
+            total += count;
+
+            List<String> cmd = new ArrayList<String>();
+
+            cmd.addAll(Arrays.asList(ffmpeg, "-v", "error"));
+
+            // Input seeking is frame accurate when decoding; seek half a frame
+            // early so rounding cannot skip past the first frame
+            if (first > 1) {
+                cmd.addAll(Arrays.asList("-ss", String.format(Locale.US, "%.6f", (first - 1.5) / frameRate)));
+            }
+
+            cmd.addAll(Arrays.asList("-i", file.toString(), "-an", "-frames:v", Integer.toString(count),
+                    "-start_number", Integer.toString(first), "-f", "image2", "-vcodec", outAvedVideo.getFileExt(),
+                    outputfilestem));
+            System.out.println("Executing " + cmd);
+            process = Runtime.getRuntime().exec(cmd.toArray(new String[cmd.size()]), envParams);
+
+            StreamGobbler errGobbler = new StreamGobbler(process.getErrorStream(), printStream);
+            StreamGobbler outGobbler = new StreamGobbler(process.getInputStream(), printStream, "OUTPUT");
+
+            outGobbler.start();
+            errGobbler.start();
+
+            int exitVal = process.waitFor();
+
+            if (exitVal != 0) {
+                throw new AvedRuntimeException("Error running command " + cmd);
+            }
+        }
+
+        System.out.println("Extracted " + total + " frames in " + ranges.size() + " ranges for "
+                + sparseFrames.length + " event frames");
+    }
+
     /**
      * Runs the external transcode binary convering the file into individual ppms
      * @param file to transcode 
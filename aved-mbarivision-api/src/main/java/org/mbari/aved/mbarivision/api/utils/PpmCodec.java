@@ -0,0 +1,377 @@
+/*
+ * @(#)PpmCodec.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package org.mbari.aved.mbarivision.api.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import javax.imageio.ImageIO;
+
+/**
+ * Reads and writes the binary 8-bit PPM (P6) and PGM (P5) files AVED uses
+ * for frames and event crops, without going through the ImageIO plugins.
+ *
+ * <p>Large files are memory mapped and copied straight into the
+ * {@link DataBufferByte} of a TYPE_3BYTE_BGR or TYPE_BYTE_GRAY image, which
+ * can be reused from frame to frame. Images are written with the header
+ * and pixels in a single gathered write. Any other file is read with
+ * {@link ImageIO}.
+ */
+public class PpmCodec {
+
+    /** Files at least this large are memory mapped, smaller ones are read */
+    private static final int MAP_THRESHOLD = 256 * 1024;
+
+    /** The most header read to find the comment */
+    private static final int MAX_HEADER_SIZE = 4096;
+
+    /**
+     * Reads an image, with ImageIO if it is not a binary 8-bit PPM or PGM
+     * @param file the image file
+     * @return the image, or null if ImageIO cannot read it
+     * @throws IOException if the file cannot be read
+     */
+    public static BufferedImage readImage(File file) throws IOException {
+        BufferedImage image = read(file, null);
+
+        if (image != null) {
+            return image;
+        }
+
+        return ImageIO.read(file);
+    }
+
+    /**
+     * Reads a binary 8-bit PPM or PGM file
+     * @param file the image file
+     * @param reuse an image to decode into, or null. It is used if it
+     * has the same size and type as the file, otherwise a new image is
+     * allocated
+     * @return the image, or null if the file is not a binary 8-bit PPM
+     * or PGM file
+     * @throws IOException if the file cannot be read or is truncated
+     */
+    public static BufferedImage read(File file, BufferedImage reuse) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            FileChannel channel = in.getChannel();
+            long        size    = channel.size();
+            ByteBuffer  buf;
+
+            if (size >= MAP_THRESHOLD) {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                buf = ByteBuffer.allocate((int) size);
+
+                while (buf.hasRemaining() && channel.read(buf) >= 0) {}
+
+                buf.flip();
+            }
+
+            return decode(buf, reuse, file);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes the header and pixels in a buffer
+     */
+    private static BufferedImage decode(ByteBuffer buf, BufferedImage reuse, File file) throws IOException {
+        if ((buf.remaining() < 2) || (buf.get() != 'P')) {
+            return null;
+        }
+
+        int format = buf.get();
+
+        if ((format != '5') && (format != '6')) {
+            return null;
+        }
+
+        int width  = readHeaderInt(buf, file, null);
+        int height = readHeaderInt(buf, file, null);
+        int maxval = readHeaderInt(buf, file, null);
+
+        if (maxval != 255) {
+            return null;
+        }
+
+        // A single whitespace character separates the header and pixels
+        buf.get();
+
+        int  channels = (format == '6') ? 3 : 1;
+        long length   = (long) width * height * channels;
+
+        if ((width <= 0) || (height <= 0) || (length > buf.remaining())) {
+            throw new IOException("Truncated or invalid PNM file " + file);
+        }
+
+        int type = (channels == 3) ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_BYTE_GRAY;
+        BufferedImage image = reuse;
+
+        if ((image == null) || (image.getType() != type) || (image.getWidth() != width)
+                || (image.getHeight() != height) || (image.getRaster().getSampleModelTranslateX() != 0)
+                || (image.getRaster().getSampleModelTranslateY() != 0)) {
+            image = new BufferedImage(width, height, type);
+        }
+
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+        buf.get(data, 0, (int) length);
+
+        // PPM is RGB, the image is BGR
+        if (channels == 3) {
+            for (int i = 0; i < length; i += 3) {
+                byte r = data[i];
+
+                data[i]     = data[i + 2];
+                data[i + 2] = r;
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * Reads the comment in the header of a binary PPM or PGM file, e.g.
+     * the event size and position written with a crop of the event
+     * @param file the image file
+     * @return the comment lines separated by newlines, or null if the
+     * file is not a PPM or PGM file or has no comment
+     * @throws IOException if the file cannot be read
+     */
+    public static String readComment(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer  buf     = ByteBuffer.allocate((int) Math.min(channel.size(), MAX_HEADER_SIZE));
+
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {}
+
+            buf.flip();
+
+            if ((buf.remaining() < 2) || (buf.get() != 'P') || ("2356".indexOf(buf.get()) < 0)) {
+                return null;
+            }
+
+            StringBuilder comments = new StringBuilder();
+
+            for (int i = 0; i < 3; i++) {
+                readHeaderInt(buf, file, comments);
+            }
+
+            return (comments.length() > 0) ? comments.toString() : null;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a whitespace delimited integer from a PNM header, skipping
+     * comments
+     * @param comments appended with the comments skipped, or null
+     */
+    private static int readHeaderInt(ByteBuffer buf, File file, StringBuilder comments) throws IOException {
+        int c = next(buf, file);
+
+        while ((c == '#') || Character.isWhitespace(c)) {
+            if (c == '#') {
+                int start = buf.position();
+
+                while ((c != '\n') && (c != '\r')) {
+                    c = next(buf, file);
+                }
+
+                if (comments != null) {
+                    byte[] line = new byte[buf.position() - 1 - start];
+
+                    buf.position(start);
+                    buf.get(line);
+                    buf.get();
+
+                    if (comments.length() > 0) {
+                        comments.append('\n');
+                    }
+
+                    comments.append(new String(line, "US-ASCII").trim());
+                }
+            }
+
+            c = next(buf, file);
+        }
+
+        if ((c < '0') || (c > '9')) {
+            throw new IOException("Invalid PNM header " + file);
+        }
+
+        int v = 0;
+
+        while ((c >= '0') && (c <= '9')) {
+            v = v * 10 + (c - '0');
+
+            // The caller reads the whitespace after the last value
+            buf.mark();
+            c = next(buf, file);
+        }
+
+        buf.reset();
+
+        return v;
+    }
+
+    private static int next(ByteBuffer buf, File file) throws IOException {
+        if (!buf.hasRemaining()) {
+            throw new IOException("Truncated PNM header " + file);
+        }
+
+        return buf.get() & 0xFF;
+    }
+
+    /**
+     * Writes an image to a binary PPM file, or a PGM file if the image
+     * is TYPE_BYTE_GRAY
+     * @param image the image to write
+     * @param comment a comment to write in the header, or null if none.
+     * Each line of the comment is written on its own comment line
+     * @param file the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(BufferedImage image, String comment, File file) throws IOException {
+        boolean       gray   = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        StringBuilder header = new StringBuilder(gray ? "P5\n" : "P6\n");
+
+        if (comment != null) {
+            for (String line : comment.split("\r\n|\r|\n")) {
+                header.append("# ").append(line).append('\n');
+            }
+        }
+
+        header.append(image.getWidth()).append(' ').append(image.getHeight()).append("\n255\n");
+
+        ByteBuffer[]     buffers = new ByteBuffer[] { ByteBuffer.wrap(header.toString().getBytes("US-ASCII")),
+                ByteBuffer.wrap(gray ? getGrayPixels(image) : getRGBPixels(image)) };
+        FileOutputStream out     = new FileOutputStream(file);
+
+        try {
+            FileChannel channel = out.getChannel();
+
+            while (buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Gets the pixels of an image as interleaved RGB bytes. Byte
+     * interleaved and packed integer RGB images, including subimages of
+     * them, are copied directly from their data buffers.
+     */
+    private static byte[] getRGBPixels(BufferedImage image) {
+        int            width  = image.getWidth();
+        int            height = image.getHeight();
+        byte[]         pixels = new byte[width * height * 3];
+        WritableRaster raster = image.getRaster();
+        int            tx     = -raster.getSampleModelTranslateX();
+        int            ty     = -raster.getSampleModelTranslateY();
+        DataBuffer     db     = raster.getDataBuffer();
+        int            type   = image.getType();
+        int            k      = 0;
+
+        if ((type == BufferedImage.TYPE_3BYTE_BGR) && (db.getNumBanks() == 1)) {
+            ComponentSampleModel sm      = (ComponentSampleModel) raster.getSampleModel();
+            byte[]               data    = ((DataBufferByte) db).getData();
+            int                  stride  = sm.getScanlineStride();
+            int                  pstride = sm.getPixelStride();
+            int[]                offsets = sm.getBandOffsets();
+
+            for (int y = 0; y < height; y++) {
+                int p = db.getOffset() + (y + ty) * stride + tx * pstride;
+
+                for (int x = 0; x < width; x++, p += pstride) {
+                    pixels[k++] = data[p + offsets[0]];
+                    pixels[k++] = data[p + offsets[1]];
+                    pixels[k++] = data[p + offsets[2]];
+                }
+            }
+        } else if ((type == BufferedImage.TYPE_INT_RGB) || (type == BufferedImage.TYPE_INT_ARGB)) {
+            SinglePixelPackedSampleModel sm     = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            int[]                        data   = ((DataBufferInt) db).getData();
+            int                          stride = sm.getScanlineStride();
+
+            for (int y = 0; y < height; y++) {
+                int p = db.getOffset() + (y + ty) * stride + tx;
+
+                for (int x = 0; x < width; x++) {
+                    int rgb = data[p++];
+
+                    pixels[k++] = (byte) (rgb >> 16);
+                    pixels[k++] = (byte) (rgb >> 8);
+                    pixels[k++] = (byte) rgb;
+                }
+            }
+        } else {
+            int[] row = new int[width];
+
+            for (int y = 0; y < height; y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+
+                for (int x = 0; x < width; x++) {
+                    pixels[k++] = (byte) (row[x] >> 16);
+                    pixels[k++] = (byte) (row[x] >> 8);
+                    pixels[k++] = (byte) row[x];
+                }
+            }
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Gets the pixels of a TYPE_BYTE_GRAY image
+     */
+    private static byte[] getGrayPixels(BufferedImage image) {
+        int    width  = image.getWidth();
+        int    height = image.getHeight();
+        byte[] pixels = new byte[width * height];
+
+        image.getRaster().getDataElements(0, 0, width, height, pixels);
+
+        return pixels;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2009 MBARI
+ *
+ * Licensed under the GNU LESSER GENERAL PUBLIC LICENSE, Version 2.1 
+ * (the "License"); you may not use this file except in compliance 
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/copyleft/lesser.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import junit.framework.TestCase;
+import org.mbari.aved.mbarivision.api.utils.PpmCodec;
+
+/**
+ * Tests the PPM codec and compares its speed with the ImageIO PPM plugin,
+ * if one is installed
+ */
+public class TestPpmCodec extends TestCase {
+
+    private static final int ITERATIONS = 50;
+    private static final int WARMUP     = 10;
+    private BufferedImage    frame;
+    private File             file;
+
+    public TestPpmCodec(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        Random random = new Random(1);
+
+        frame = new BufferedImage(720, 480, BufferedImage.TYPE_3BYTE_BGR);
+
+        for (int y = 0; y < frame.getHeight(); y++) {
+            for (int x = 0; x < frame.getWidth(); x++) {
+                frame.setRGB(x, y, random.nextInt());
+            }
+        }
+
+        file = File.createTempFile("testppm", ".ppm");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public final void testRoundTrip() throws Exception {
+        PpmCodec.write(frame, "123 45 67 8 9", file);
+        assertEquals("123 45 67 8 9", PpmCodec.readComment(file));
+        assertSame(frame, PpmCodec.read(file, frame));
+
+        BufferedImage image = PpmCodec.read(file, null);
+
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, image.getType());
+        assertSamePixels(frame, image);
+    }
+
+    public final void testSubimage() throws Exception {
+        BufferedImage crop = frame.getSubimage(13, 17, 301, 203);
+
+        PpmCodec.write(crop, null, file);
+        assertNull(PpmCodec.readComment(file));
+        assertSamePixels(crop, PpmCodec.read(file, null));
+    }
+
+    public final void testTruncated() throws Exception {
+        PpmCodec.write(frame, null, file);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        raf.setLength(file.length() - 1);
+        raf.close();
+
+        try {
+            PpmCodec.read(file, null);
+            fail("Truncated file read");
+        } catch (IOException ex) {}
+    }
+
+    /**
+     * Times reading and writing a frame with the codec and, if a PPM
+     * plugin is installed, with ImageIO
+     */
+    public final void testBenchmark() throws Exception {
+        BufferedImage reuse = null;
+
+        PpmCodec.write(frame, null, file);
+
+        for (int i = 0; i < WARMUP; i++) {
+            reuse = PpmCodec.read(file, reuse);
+            PpmCodec.write(frame, null, file);
+        }
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            reuse = PpmCodec.read(file, reuse);
+        }
+
+        long read  = System.nanoTime() - start;
+
+        start = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            PpmCodec.write(frame, null, file);
+        }
+
+        long write = System.nanoTime() - start;
+
+        report("PpmCodec", read, write);
+
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("ppm");
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("ppm");
+
+        if (!readers.hasNext() ||!writers.hasNext()) {
+            System.out.println("No ImageIO PPM plugin installed, skipping ImageIO benchmark");
+
+            return;
+        }
+
+        ImageReader reader = readers.next();
+        ImageWriter writer = writers.next();
+
+        for (int i = 0; i < WARMUP; i++) {
+            imageIORead(reader);
+            imageIOWrite(writer);
+        }
+
+        start = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            imageIORead(reader);
+        }
+
+        read  = System.nanoTime() - start;
+        start = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            imageIOWrite(writer);
+        }
+
+        write = System.nanoTime() - start;
+        report("ImageIO", read, write);
+        reader.dispose();
+        writer.dispose();
+    }
+
+    private BufferedImage imageIORead(ImageReader reader) throws IOException {
+        ImageInputStream in = ImageIO.createImageInputStream(file);
+
+        try {
+            reader.setInput(in);
+
+            return reader.read(0);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void imageIOWrite(ImageWriter writer) throws IOException {
+        file.delete();
+
+        ImageOutputStream out = ImageIO.createImageOutputStream(file);
+
+        try {
+            writer.setOutput(out);
+            writer.write(frame);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void report(String name, long read, long write) {
+        System.out.println(String.format("%s: read %.2f ms/frame, write %.2f ms/frame", name,
+                                         read / 1e6 / ITERATIONS, write / 1e6 / ITERATIONS));
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+}
@@ -345,6 +345,23 @@ public final class ApplicationController extends AbstractController implements M
         }
     }
 
+    /**
+     * Follows the processed results of a detection that is still running,
+     * adding events to the editor as they are written to the XML file.
+     * Following stops when the file is complete or the events are closed.
+     */
+    public void streamProcessedResults() {
+        try {
+            File xmlfile = browseForXMLImport();
+
+            if ((xmlfile != null) && xmlfile.exists()) {
+                runImportXML(xmlfile, true);
+            }
+        } catch (Exception ex) {
+            Logger.getLogger(ApplicationController.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
     /**
      * Looks for associated video clip with xmlfile, before starting import
      * process
@@ -354,7 +371,7 @@ public final class ApplicationController extends AbstractController implements M
             if ((xmlfile != null) && xmlfile.exists()) {
 
                 // Import the processed results
-                runImportXML(xmlfile);
+                runImportXML(xmlfile, false);
             }
         } catch (Exception ex) {
             Logger.getLogger(ApplicationController.class.getName()).log(Level.SEVERE, null, ex);
@@ -438,16 +455,25 @@ public final class ApplicationController extends AbstractController implements M
         // else TODO: display error message here
     }
 
-    /** Starts a separate worker to import the processed results */
-    private void runImportXML(File xmlfile) throws Exception {
+    /**
+     * Starts a separate worker to import the processed results
+     * @param follow true to keep following the file in the background
+     * while it is written
+     */
+    private void runImportXML(File xmlfile, boolean follow) throws Exception {
         if (xmlfile != null) {
             
             if (xmlImportWorker != null && !xmlImportWorker.isDone()) {
                 xmlImportWorker.cancel(true);
             }
             
-            xmlImportWorker = new ImportXMLWorker(xmlfile, this.getModel(), this); 
-            xmlImportWorker.run();
+            xmlImportWorker = new ImportXMLWorker(xmlfile, this.getModel(), this, follow); 
+
+            if (follow) {
+                xmlImportWorker.execute();
+            } else {
+                xmlImportWorker.run();
+            }
         }
 
         // else TODO: display error message here
@@ -904,6 +930,7 @@ public final class ApplicationController extends AbstractController implements M
 
             // Set the maximum frames to only encode the frames needed.  
             transcodeWorker.setMaxFrame(this.xmlImportWorker.getMaxEventFrame());
+            transcodeWorker.setEventFrames(this.xmlImportWorker.getEventFrames());
             Thread transcodeThread = new Thread(new Runnable() {
 
                 @Override
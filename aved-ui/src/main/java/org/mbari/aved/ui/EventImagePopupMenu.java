@@ -44,14 +44,12 @@ import java.awt.Point;
 import java.awt.event.MouseEvent;
 
 import java.awt.image.BufferedImage;
-import java.io.File;
 
 import java.net.URL;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.media.jai.JAI;
 import javax.media.jai.PlanarImage;
 
 import javax.swing.ImageIcon;
@@ -149,16 +147,16 @@ public class EventImagePopupMenu {
 
         // Get the image sequence, and display the image
         try {
-            File        src      = null;
-            EventObject eventObj = null;
-            int         num      = event.getBestEventFrame();
+            BufferedImage src      = null;
+            EventObject   eventObj = null;
+            int           num      = event.getBestEventFrame();
 
             eventObj = event.getEventObject(num);
 
-            // Get the frame source and catch exception
+            // Get the frame and catch exception
             // in case it is missing
             try {
-                src = event.getFrameSource(num);
+                src = event.getFrame(num);
             } catch (Exception e) {
                 src = null;
                 Logger.getLogger(EventImagePopupMenu.class.getName()).log(Level.SEVERE, null, e);
@@ -186,23 +184,19 @@ public class EventImagePopupMenu {
 
     /**
      * Display the event image for this event object.
-     * This will load the image frame this EventObject
+     * This will display the decoded image frame this EventObject
      * is in and overlay the bounding box representing it
      * on the image.
      */
-    public void displayEventImage(EventObject eventObj, File frame) {
+    public void displayEventImage(EventObject eventObj, BufferedImage frame) {
         PlanarImage image = null;
 
         if ((eventObj != null) && (frame != null)) {
-            try {
 
-                // Load up the frame, or use missing image it is undefined
-                image = ((frame != null)
-                         ? JAI.create("fileload", frame.toString())
-                         : missingImage);
-            } catch (IllegalArgumentException ex) {
-                image = missingImage;
-            }
+            // Wrap the decoded frame, or use missing image it is undefined
+            image = ((frame != null)
+                     ? PlanarImage.wrapRenderedImage(frame)
+                     : missingImage);
 
             // If file load failed, use missingImage
             if (image == null) {
@@ -0,0 +1,414 @@
+/*
+ * @(#)EventXmlIndex.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binary sidecar index of an AVED events XML file. The index stores the
+ * byte range of each <code>FrameEventSet</code> element in the XML, so
+ * a large file can be re-opened by unmarshalling slices of it in parallel
+ * instead of streaming the whole document through one parser. It also
+ * stores, for each event object ID, the first and last FrameEventSet the
+ * object is found in, so a reader knows when it has read all of an event.
+ * The events themselves are not in the index; every event is still
+ * unmarshalled from the XML when the file is opened.
+ * <p>
+ * The index is recorded by the {@link EventXmlStreamReader} while it
+ * parses the XML, with a {@link Recorder}, and is written next to the XML
+ * as <code>&lt;xml&gt;.idx</code>. It is memory-mapped when read. It
+ * records the length and modification time of the XML it was built from;
+ * if either no longer matches, or the index is from another version, it
+ * is ignored and the XML is read directly.
+ * <p>
+ * The range of a FrameEventSet starts at the end of the element before
+ * it, so it may begin with white space, comments or processing
+ * instructions, and ends at the end of its end tag.
+ *
+ * <pre>
+ * int  magic            'AVEI'
+ * int  version
+ * long XML length
+ * long XML last modified
+ * int  number of FrameEventSets
+ * int  number of event objects
+ * then for each FrameEventSet, in document order
+ * long offset of the end of the element before it
+ * int  length of the range in bytes
+ * then for each event object, in increasing object ID order
+ * long object ID
+ * int  index of the first FrameEventSet the object is in
+ * int  index of the last FrameEventSet the object is in
+ * </pre>
+ *
+ * @author dcline
+ */
+public class EventXmlIndex {
+
+    /** Version of the index format. Increment when the layout changes */
+    public static final int     VERSION            = 3;
+    private static final int    MAGIC              = 0x41564549;
+    private static final int    HEADER_SIZE        = 32;
+    private static final int    RECORD_SIZE        = 12;
+    private static final int    OBJECT_RECORD_SIZE = 16;
+    private static final String SUFFIX             = ".idx";
+    private final MappedByteBuffer buffer;
+    private final int              numFrameSets;
+    private final int              numObjects;
+
+    private EventXmlIndex(MappedByteBuffer buffer, int numFrameSets, int numObjects) {
+        this.buffer       = buffer;
+        this.numFrameSets = numFrameSets;
+        this.numObjects   = numObjects;
+    }
+
+    /**
+     * @param xmlFile the events XML file
+     * @return the index file for the XML file
+     */
+    public static File getIndexFile(File xmlFile) {
+        return new File(xmlFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Opens the index of an XML file
+     * @param xmlFile the events XML file
+     * @return the index, or null if there is no index or it does not
+     * match the XML file
+     */
+    public static EventXmlIndex open(File xmlFile) {
+        File indexFile = getIndexFile(xmlFile);
+
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        try {
+            RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+
+            try {
+                FileChannel channel = file.getChannel();
+                long        size    = channel.size();
+
+                if (size < HEADER_SIZE) {
+                    return invalid(indexFile, "truncated");
+                }
+
+                // The mapping stays valid after the file is closed
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                long             length  = buffer.getLong(8);
+                int              count   = buffer.getInt(24);
+                int              objects = buffer.getInt(28);
+
+                if (buffer.getInt(0) != MAGIC) {
+                    return invalid(indexFile, "not an index");
+                }
+
+                if (buffer.getInt(4) != VERSION) {
+                    return invalid(indexFile, "version " + buffer.getInt(4));
+                }
+
+                if ((length != xmlFile.length()) || (buffer.getLong(16) != xmlFile.lastModified())) {
+                    return invalid(indexFile, "out of date");
+                }
+
+                if ((count < 0) || (objects < 0)
+                        || (size != HEADER_SIZE + (long) count * RECORD_SIZE + (long) objects * OBJECT_RECORD_SIZE)) {
+                    return invalid(indexFile, "truncated");
+                }
+
+                // Check the elements are in order and within the XML file
+                EventXmlIndex index = new EventXmlIndex(buffer, count, objects);
+                long          end   = 0;
+
+                for (int i = 0; i < count; i++) {
+                    if ((index.getOffset(i) < end) || (index.getLength(i) <= 0)) {
+                        return invalid(indexFile, "corrupt");
+                    }
+
+                    end = index.getOffset(i) + index.getLength(i);
+                }
+
+                if (end > length) {
+                    return invalid(indexFile, "corrupt");
+                }
+
+                // Check the objects are in order and in indexed FrameEventSets
+                for (int i = 0; i < objects; i++) {
+                    if (((i > 0) && (index.getObjectId(i) <= index.getObjectId(i - 1)))
+                            || (index.getFirstFrameSet(i) < 0)
+                            || (index.getFirstFrameSet(i) > index.getLastFrameSet(i))
+                            || (index.getLastFrameSet(i) >= count)) {
+                        return invalid(indexFile, "corrupt");
+                    }
+                }
+
+                return index;
+            } finally {
+                file.close();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(EventXmlIndex.class.getName()).log(Level.WARNING, null, ex);
+
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the index of an XML file, e.g. before the XML is rewritten
+     * @param xmlFile the events XML file
+     */
+    public static void delete(File xmlFile) {
+        getIndexFile(xmlFile).delete();
+    }
+
+    /**
+     * @return the number of FrameEventSets in the XML file
+     */
+    public int getNumFrameSets() {
+        return numFrameSets;
+    }
+
+    /**
+     * @param i the index of the FrameEventSet in document order
+     * @return the byte offset of the end of the element before it
+     */
+    public long getOffset(int i) {
+        return buffer.getLong(HEADER_SIZE + i * RECORD_SIZE);
+    }
+
+    /**
+     * @param i the index of the FrameEventSet in document order
+     * @return the length of its range in bytes
+     */
+    public int getLength(int i) {
+        return buffer.getInt(HEADER_SIZE + i * RECORD_SIZE + 8);
+    }
+
+    /**
+     * @return the number of event objects in the XML file
+     */
+    public int getNumObjects() {
+        return numObjects;
+    }
+
+    /**
+     * @param i the index of the object in increasing object ID order
+     * @return the object ID
+     */
+    public long getObjectId(int i) {
+        return buffer.getLong(objectRecord(i));
+    }
+
+    /**
+     * @param i the index of the object in increasing object ID order
+     * @return the index of the first FrameEventSet the object is in
+     */
+    public int getFirstFrameSet(int i) {
+        return buffer.getInt(objectRecord(i) + 8);
+    }
+
+    /**
+     * @param i the index of the object in increasing object ID order
+     * @return the index of the last FrameEventSet the object is in
+     */
+    public int getLastFrameSet(int i) {
+        return buffer.getInt(objectRecord(i) + 12);
+    }
+
+    /**
+     * Finds an object by its ID
+     * @param objectId the object ID
+     * @return the index of the object, or -1 if it is not in the XML file
+     */
+    public int findObject(long objectId) {
+        int low  = 0;
+        int high = numObjects - 1;
+
+        while (low <= high) {
+            int  mid = (low + high) >>> 1;
+            long id  = getObjectId(mid);
+
+            if (id < objectId) {
+                low = mid + 1;
+            } else if (id > objectId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    private int objectRecord(int i) {
+        return HEADER_SIZE + numFrameSets * RECORD_SIZE + i * OBJECT_RECORD_SIZE;
+    }
+
+    private static EventXmlIndex invalid(File indexFile, String reason) {
+        Logger.getLogger(EventXmlIndex.class.getName()).log(Level.INFO, "Ignoring index {0}, {1}",
+                         new Object[] { indexFile.getName(),
+                                        reason });
+
+        return null;
+    }
+
+    /**
+     * Records the index of an XML file while it is parsed, so the file
+     * does not have to be read a second time to index it
+     */
+    public static class Recorder {
+        private int                        count   = 0;
+        private long[]                     offsets = new long[1024];
+        private int[]                      lengths = new int[1024];
+        private final TreeMap<Long, int[]> objects = new TreeMap<Long, int[]>();
+
+        /**
+         * Adds the next FrameEventSet in document order
+         * @param offset the offset of the end of the element before it
+         * @param end the offset of the end of its end tag
+         * @param objectIds the IDs of the EventObjects in it
+         * @return false if the range cannot be indexed
+         */
+        public boolean add(long offset, long end, List<Long> objectIds) {
+            long length = end - offset;
+
+            if ((length <= 0) || (length > Integer.MAX_VALUE) || ((count > 0) && (offset != getEnd()))) {
+                return false;
+            }
+
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * count);
+                lengths = Arrays.copyOf(lengths, 2 * count);
+            }
+
+            for (Long id : objectIds) {
+                int[] range = objects.get(id);
+
+                if (range == null) {
+                    objects.put(id, new int[] { count, count });
+                } else {
+                    range[1] = count;
+                }
+            }
+
+            offsets[count] = offset;
+            lengths[count] = (int) length;
+            count++;
+
+            return true;
+        }
+
+        /**
+         * @return the number of FrameEventSets recorded
+         */
+        public int getNumFrameSets() {
+            return count;
+        }
+
+        private long getEnd() {
+            return offsets[count - 1] + lengths[count - 1];
+        }
+
+        /**
+         * Writes the index of an XML file. Any existing index is replaced.
+         * @param xmlFile the events XML file
+         * @param length the length of the XML file when it was parsed
+         * @param modified the modification time of the XML file when it was parsed
+         * @return true if the index was written
+         */
+        public boolean write(File xmlFile, long length, long modified) {
+            File indexFile = getIndexFile(xmlFile);
+            File tmpFile   = new File(indexFile.getPath() + ".tmp");
+
+            // Don't keep an index of a file that changed while it was parsed
+            if ((count == 0) || (getEnd() > length) || (xmlFile.length() != length)
+                    || (xmlFile.lastModified() != modified)) {
+                return false;
+            }
+
+            try {
+                DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+                try {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeLong(length);
+                    out.writeLong(modified);
+                    out.writeInt(count);
+                    out.writeInt(objects.size());
+
+                    for (int j = 0; j < count; j++) {
+                        out.writeLong(offsets[j]);
+                        out.writeInt(lengths[j]);
+                    }
+
+                    for (Map.Entry<Long, int[]> e : objects.entrySet()) {
+                        out.writeLong(e.getKey());
+                        out.writeInt(e.getValue()[0]);
+                        out.writeInt(e.getValue()[1]);
+                    }
+                } finally {
+                    out.close();
+                }
+
+                indexFile.delete();
+
+                if (!tmpFile.renameTo(indexFile)) {
+                    tmpFile.delete();
+
+                    return false;
+                }
+
+                return true;
+            } catch (IOException ex) {
+                Logger.getLogger(EventXmlIndex.class.getName()).log(Level.WARNING, null, ex);
+                tmpFile.delete();
+
+                return false;
+            }
+        }
+    }
+}
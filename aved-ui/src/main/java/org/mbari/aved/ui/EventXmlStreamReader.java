@@ -0,0 +1,714 @@
+/*
+ * @(#)EventXmlStreamReader.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import aved.model.EventDataStream;
+import aved.model.FrameEventSet;
+import aved.model.xml.Mapper;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Pull-parser for AVED events XML files that reads the
+ * <code>FrameEventSet</code>s a batch at a time instead of unmarshalling
+ * the whole document at once. Each batch is copied into a small
+ * EventDataSet document with the same header and unmarshalled with the
+ * AVED XML {@link Mapper}, so the object model is exactly what a full
+ * unmarshall would produce.
+ * <p>
+ * If the file has an up to date {@link EventXmlIndex}, the FrameEventSets
+ * are instead sliced straight from the memory-mapped file and the batches
+ * unmarshalled in parallel. Should the index turn out to be unusable, the
+ * reader falls back to parsing the XML. A file without an index has one
+ * recorded as it is parsed, which {@link #writeIndex()} writes.
+ *
+ * @author dcline
+ */
+public class EventXmlStreamReader {
+    private static final String EVENT_OBJECT    = "EventObject";
+    private static final String FRAME_EVENT_SET = "FrameEventSet";
+    private static final String OBJECT_ID       = "ObjectID";
+    private final CountingInputStream counter;
+
+    /** Header elements, i.e. everything in the root before the first FrameEventSet */
+    private byte[]                header;
+    private final long            length;
+    private final XMLStreamReader reader;
+
+    /** True when the reader is positioned at the start of a FrameEventSet */
+    private boolean atFrame = false;
+
+    /** True once the end of the root element has been read */
+    private boolean atEnd = false;
+
+    /** True if the file may still be written to */
+    private final boolean isGrowing;
+
+    /** The file being read, or null for a stream */
+    private File xmlFile;
+
+    /** The index of the file, or null if the XML is parsed */
+    private EventXmlIndex index;
+
+    /** Records the index while the XML is parsed, or null if it cannot be indexed */
+    private EventXmlIndex.Recorder recorder;
+
+    /** The end of the last child element of the root parsed, for the index */
+    private long lastEnd = -1;
+
+    /** The modification time of the file when opened */
+    private long modified;
+
+    /** Batches of indexed FrameEventSets being unmarshalled, in file order */
+    private final LinkedList<Batch> pending = new LinkedList<Batch>();
+    private ExecutorService         executor;
+    private RandomAccessFile        xmlAccess;
+
+    /** The next indexed FrameEventSet to unmarshall */
+    private int nextFrameSet = 0;
+
+    /** The number of FrameEventSets returned so far */
+    private int framesReturned = 0;
+
+    /** The end of the last indexed batch returned, for progress */
+    private long indexedBytes = 0;
+
+    /** Root element name, namespaces and attributes */
+    private String       rootName;
+    private List<String[]> rootAttributes = new ArrayList<String[]>();
+    private List<String[]> rootNamespaces = new ArrayList<String[]>();
+
+    /**
+     * Opens the XML file for reading
+     * @param xmlFile the events XML file
+     */
+    public EventXmlStreamReader(File xmlFile) throws IOException, XMLStreamException {
+        this(new BufferedInputStream(new FileInputStream(xmlFile)), xmlFile.length(), false);
+        this.xmlFile = xmlFile;
+        modified     = xmlFile.lastModified();
+        index        = EventXmlIndex.open(xmlFile);
+
+        if (index == null) {
+            recorder = new EventXmlIndex.Recorder();
+        }
+    }
+
+    /**
+     * Reads an XML file that is still being written, e.g. by a running
+     * detection. The stream should block until more of the file is written.
+     * Batches then end early at the data written so far, so new
+     * FrameEventSets are returned as soon as they are written.
+     *
+     * @param in the XML stream
+     * @param length the length of the XML written when opened, for progress
+     */
+    public EventXmlStreamReader(InputStream in, long length) throws XMLStreamException {
+        this(in, length, true);
+    }
+
+    private EventXmlStreamReader(InputStream in, long length, boolean isGrowing) throws XMLStreamException {
+        this.length    = length;
+        this.isGrowing = isGrowing;
+        counter        = new CountingInputStream(in);
+        reader         = XMLInputFactory.newInstance().createXMLStreamReader(counter);
+    }
+
+    /**
+     * Reads everything up to the first FrameEventSet
+     * @return the EventDataStream with the source metadata and detection
+     * parameters but no FrameEventSets
+     */
+    public EventDataStream readHeader() throws Exception {
+        while (reader.hasNext() && (reader.next() != XMLStreamConstants.START_ELEMENT)) {}
+
+        if (!reader.isStartElement()) {
+            throw new XMLStreamException("No root element found");
+        }
+
+        rootName = reader.getLocalName();
+
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            rootNamespaces.add(new String[] { reader.getNamespacePrefix(i), reader.getNamespaceURI(i) });
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            rootAttributes.add(new String[] { reader.getAttributePrefix(i), reader.getAttributeNamespace(i),
+                                              reader.getAttributeLocalName(i), reader.getAttributeValue(i) });
+        }
+
+        ByteArrayOutputStream out    = new ByteArrayOutputStream();
+        XMLStreamWriter       writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+
+        while (nextChildElement()) {
+            if (reader.getLocalName().equals(FRAME_EVENT_SET)) {
+                atFrame = true;
+
+                break;
+            }
+
+            copyElement(reader, writer, null);
+            lastEnd = getEnd(-1);
+        }
+
+        writer.flush();
+        header = out.toByteArray();
+
+        return unmarshall(new ArrayList<byte[]>());
+    }
+
+    /**
+     * Reads the next batch of FrameEventSets
+     * @param maxFrames the maximum number of FrameEventSets to read
+     * @return the FrameEventSets read, or an empty list at the end of the file
+     * @throws Exception if the XML is invalid, or the stream of a growing
+     * file ended before the end of the root element
+     */
+    public List<FrameEventSet> readFrameEventSets(int maxFrames) throws Exception {
+        if (index != null) {
+            try {
+                return readIndexedFrameEventSets(maxFrames);
+            } catch (Exception ex) {
+                Logger.getLogger(EventXmlStreamReader.class.getName()).log(Level.WARNING,
+                                 "Index of " + xmlFile.getName() + " is unusable, parsing the XML instead", ex);
+                closeIndex();
+                EventXmlIndex.delete(xmlFile);
+
+                // Skip what was already returned from the index
+                int skipped = 0;
+
+                while ((skipped < framesReturned) && (atFrame || nextChildElement())) {
+                    atFrame = false;
+
+                    if (reader.getLocalName().equals(FRAME_EVENT_SET)) {
+                        skipped++;
+                    }
+
+                    skipElement(reader);
+                }
+            }
+        }
+
+        List<byte[]> frames = new ArrayList<byte[]>(maxFrames);
+
+        while ((frames.size() < maxFrames) && (atFrame || nextChildElement())) {
+            atFrame = false;
+
+            if (reader.getLocalName().equals(FRAME_EVENT_SET)) {
+                ByteArrayOutputStream out       = new ByteArrayOutputStream();
+                XMLStreamWriter       writer    = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+                List<Long>            objectIds = (recorder != null) ? new ArrayList<Long>() : null;
+
+                copyElement(reader, writer, objectIds);
+                writer.flush();
+                frames.add(out.toByteArray());
+                record(objectIds);
+
+                // Don't wait for the rest of the batch to be written
+                if (isGrowing && (counter.available() == 0)) {
+                    break;
+                }
+            } else {
+
+                // Other elements would end up in the range of the next FrameEventSet
+                recorder = null;
+                skipElement(reader);
+            }
+        }
+
+        if (frames.isEmpty()) {
+            return new ArrayList<FrameEventSet>();
+        }
+
+        framesReturned += frames.size();
+
+        return new ArrayList<FrameEventSet>(unmarshall(frames).getFrameEventSets());
+    }
+
+    /**
+     * Reads the next batch of FrameEventSets using the index. Keeps a
+     * couple of batches per processor being unmarshalled ahead of the
+     * one returned.
+     */
+    private List<FrameEventSet> readIndexedFrameEventSets(int maxFrames) throws Exception {
+        if (executor == null) {
+            executor  = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            xmlAccess = new RandomAccessFile(xmlFile, "r");
+        }
+
+        int ahead = 2 * Runtime.getRuntime().availableProcessors();
+
+        while ((pending.size() < ahead) && (nextFrameSet < index.getNumFrameSets())) {
+            int first = nextFrameSet;
+            int last  = Math.min(first + maxFrames, index.getNumFrameSets()) - 1;
+
+            pending.add(new Batch(first, last));
+            nextFrameSet = last + 1;
+        }
+
+        if (pending.isEmpty()) {
+            return new ArrayList<FrameEventSet>();
+        }
+
+        Batch               batch = pending.removeFirst();
+        List<FrameEventSet> frames;
+
+        try {
+            frames = batch.future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+
+            throw ex;
+        }
+
+        framesReturned += batch.size;
+        indexedBytes   = batch.end;
+
+        return frames;
+    }
+
+    /**
+     * Adds the FrameEventSet the reader just read to the index being recorded
+     * @param objectIds the IDs of the EventObjects in it
+     */
+    private void record(List<Long> objectIds) {
+        if (recorder == null) {
+            return;
+        }
+
+        long end = getEnd(lastEnd);
+
+        if ((lastEnd < 0) || (end < 0) || !recorder.add(lastEnd, end, objectIds)) {
+            recorder = null;
+        }
+
+        lastEnd = end;
+    }
+
+    /**
+     * Returns the offset of the end of the element the reader is positioned
+     * at the end tag of. The offset the parser reports can include a few
+     * characters it read ahead, so it is moved back to just past the '>'
+     * before it in the bytes just read. It is an int, so past 2 GB it is
+     * unwrapped from the previous offset.
+     * @param previous the end of the element before, or -1 if there is none
+     * @return the offset, or -1 if it cannot be found
+     */
+    private long getEnd(long previous) {
+        int offset = reader.getLocation().getCharacterOffset();
+
+        if (previous < 0) {
+            return (offset < 0) ? -1 : counter.getTagEnd(offset, 0);
+        }
+
+        return counter.getTagEnd(previous + ((offset - (int) previous) & 0xFFFFFFFFL), previous);
+    }
+
+    /**
+     * Writes the index recorded while the XML was parsed, so the file opens
+     * faster the next time. The index is only written once the whole file
+     * is parsed, and only for 7-bit ASCII files, where the character
+     * offsets the parser reports are also byte offsets.
+     * @return true if the index was written
+     */
+    public boolean writeIndex() {
+        if ((recorder == null) || !atEnd || !counter.ascii || (recorder.getNumFrameSets() != framesReturned)) {
+            return false;
+        }
+
+        return recorder.write(xmlFile, length, modified);
+    }
+
+    /**
+     * @return true if the FrameEventSets are read using the index
+     */
+    public boolean isIndexed() {
+        return index != null;
+    }
+
+    /**
+     * @return the index the FrameEventSets are read with, or null if the
+     * XML is parsed, e.g. after the index turned out to be unusable
+     */
+    public EventXmlIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the number of FrameEventSets returned so far
+     */
+    public int getFrameSetsRead() {
+        return framesReturned;
+    }
+
+    /**
+     * @return the approximate number of bytes of the file parsed so far
+     */
+    public long getBytesRead() {
+        return Math.max(counter.count, indexedBytes);
+    }
+
+    /**
+     * @return the length of the file in bytes
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public void close() {
+        closeIndex();
+
+        try {
+            reader.close();
+            counter.close();
+        } catch (Exception ex) {}
+    }
+
+    private void closeIndex() {
+        index = null;
+        pending.clear();
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+
+        if (xmlAccess != null) {
+            try {
+                xmlAccess.close();
+            } catch (IOException ex) {}
+
+            xmlAccess = null;
+        }
+    }
+
+    /**
+     * Wraps the header and the given FrameEventSets in a root element
+     * and unmarshalls it
+     */
+    private EventDataStream unmarshall(List<byte[]> frames) throws Exception {
+        ByteArrayOutputStream out    = new ByteArrayOutputStream();
+        XMLStreamWriter       writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement(rootName);
+
+        for (String[] ns : rootNamespaces) {
+            if ((ns[0] == null) || (ns[0].length() == 0)) {
+                writer.writeDefaultNamespace(ns[1]);
+            } else {
+                writer.writeNamespace(ns[0], ns[1]);
+            }
+        }
+
+        for (String[] a : rootAttributes) {
+            if ((a[0] == null) || (a[0].length() == 0)) {
+                writer.writeAttribute(a[2], a[3]);
+            } else {
+                writer.writeAttribute(a[0], a[1], a[2], a[3]);
+            }
+        }
+
+        // Close the start tag before appending the raw fragments
+        writer.writeCharacters("");
+        writer.flush();
+        out.write(header);
+
+        for (byte[] frame : frames) {
+            out.write(frame);
+        }
+
+        out.write(("</" + rootName + ">").getBytes("UTF-8"));
+
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+
+        try {
+            return (EventDataStream) Mapper.unmarshall(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Advances to the next child element of the root element
+     * @return false if the end of the root element was reached
+     */
+    private boolean nextChildElement() throws XMLStreamException {
+        while (!atEnd && reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                atEnd = true;
+            } else if (((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA))
+                       &&!reader.isWhiteSpace()) {
+
+                // Text would end up in the range of the next FrameEventSet
+                recorder = null;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Copies the element the reader is positioned at, including its
+     * children, to the writer. On return the reader is positioned at
+     * the element's end tag.
+     * @param objectIds the list to add the ObjectIDs of the EventObjects
+     * copied to, or null
+     */
+    private static void copyElement(XMLStreamReader r, XMLStreamWriter w, List<Long> objectIds)
+            throws XMLStreamException {
+        int depth = 0;
+
+        do {
+            switch (r.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT :
+                depth++;
+                w.writeStartElement(r.getLocalName());
+
+                if ((objectIds != null) && r.getLocalName().equals(EVENT_OBJECT)) {
+                    String id = r.getAttributeValue(null, OBJECT_ID);
+
+                    try {
+                        objectIds.add(Long.valueOf(id.trim()));
+                    } catch (RuntimeException ex) {}
+                }
+
+                for (int i = 0; i < r.getAttributeCount(); i++) {
+                    String prefix = r.getAttributePrefix(i);
+
+                    if ((prefix == null) || (prefix.length() == 0)) {
+                        w.writeAttribute(r.getAttributeLocalName(i), r.getAttributeValue(i));
+                    }
+                }
+
+                break;
+
+            case XMLStreamConstants.END_ELEMENT :
+                depth--;
+                w.writeEndElement();
+
+                break;
+
+            case XMLStreamConstants.CHARACTERS :
+            case XMLStreamConstants.CDATA :
+                if (!r.isWhiteSpace()) {
+                    w.writeCharacters(r.getTextCharacters(), r.getTextStart(), r.getTextLength());
+                }
+
+                break;
+
+            default :
+                break;
+            }
+        } while ((depth > 0) && r.hasNext() && (r.next() >= 0));
+    }
+
+    /**
+     * Skips the element the reader is positioned at, including its children
+     */
+    private static void skipElement(XMLStreamReader r) throws XMLStreamException {
+        int depth = 1;
+
+        while ((depth > 0) && r.hasNext()) {
+            int event = r.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * A run of consecutive indexed FrameEventSets, sliced from the mapped
+     * file and unmarshalled in the background
+     */
+    private class Batch implements Callable<List<FrameEventSet>> {
+        private final long                         start;
+        private final long                         end;
+        private final int                          size;
+        private final Future<List<FrameEventSet>> future;
+
+        Batch(int first, int last) {
+            start  = index.getOffset(first);
+            end    = index.getOffset(last) + index.getLength(last);
+            size   = last - first + 1;
+            future = executor.submit(this);
+        }
+
+        public List<FrameEventSet> call() throws Exception {
+            MappedByteBuffer buffer = xmlAccess.getChannel().map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            byte[]           bytes  = new byte[(int) (end - start)];
+
+            buffer.get(bytes);
+
+            // The slice must start with markup, end with a tag and hold as many
+            // FrameEventSets as indexed
+            int i = 0;
+
+            while ((i < bytes.length) && Character.isWhitespace(bytes[i])) {
+                i++;
+            }
+
+            if ((i == bytes.length) || (bytes[i] != '<') || (bytes[bytes.length - 1] != '>')) {
+                throw new IOException("Index does not match the XML at offset " + start);
+            }
+
+            List<FrameEventSet> frames =
+                new ArrayList<FrameEventSet>(unmarshall(Collections.singletonList(bytes)).getFrameEventSets());
+
+            if (frames.size() != size) {
+                throw new IOException("Index does not match the XML at offset " + start);
+            }
+
+            return frames;
+        }
+    }
+
+    /**
+     * Counts the bytes read from the file for progress reporting
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        /** The number of bytes last read kept, more than the parser reads ahead */
+        private static final int RECENT_BYTES = 1 << 16;
+        private volatile long    count        = 0;
+        private final byte[]     recent       = new byte[RECENT_BYTES];
+
+        /** True while only 7-bit ASCII has been read */
+        private volatile boolean ascii = true;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+
+            if (b >= 0) {
+                recent[(int) (count % RECENT_BYTES)] = (byte) b;
+                count++;
+                ascii &= (b < 0x80);
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+
+            if (n > 0) {
+                for (int i = 0; i < n; ) {
+                    int at    = (int) ((count + i) % RECENT_BYTES);
+                    int chunk = Math.min(n - i, RECENT_BYTES - at);
+
+                    System.arraycopy(b, off + i, recent, at, chunk);
+                    i += chunk;
+                }
+
+                count += n;
+
+                for (int i = off; ascii && (i < off + n); i++) {
+                    ascii = (b[i] >= 0);
+                }
+            }
+
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+
+            count += skipped;
+            ascii &= (skipped == 0);
+
+            return skipped;
+        }
+
+        /**
+         * Returns the offset just past the last '>' before an offset, looking
+         * back no further than the bytes still kept.
+         * @param offset the offset to look back from
+         * @param floor the offset not to look back past
+         * @return the offset, or -1 if there is no '>' in the bytes kept
+         */
+        long getTagEnd(long offset, long floor) {
+            long first = Math.max(floor, count - RECENT_BYTES);
+
+            for (long i = Math.min(offset, count) - 1; i >= first; i--) {
+                if (recent[(int) (i % RECENT_BYTES)] == '>') {
+                    return i + 1;
+                }
+            }
+
+            return -1;
+        }
+    }
+}
@@ -105,6 +105,9 @@ public class ExportXMLWorker extends SwingWorker {
 
         // Export the XML file using Brian S. AVED DB files
         try { 
+            // Remove the index first so it can't be mistaken for that of the new file
+            EventXmlIndex.delete(xmlFile);
+
             FileOutputStream outputStream = new FileOutputStream(xmlFile);
 
             progessDisplay.display("Exporting XML file now...");
@@ -32,35 +32,43 @@ import aved.model.EventDataStream;
 import aved.model.EventObject;
 import aved.model.FrameEventSet;
 import aved.model.SourceMetadata;
-import aved.model.xml.Mapper;
  
 import org.jdesktop.swingworker.SwingWorker;
 
 import org.mbari.aved.ui.appframework.AbstractController;
 import org.mbari.aved.ui.message.NonModalMessageDialog;
+import org.mbari.aved.ui.model.BulkEdit;
 import org.mbari.aved.ui.model.EventObjectContainer;
 import org.mbari.aved.ui.progress.ProgressDisplay;
+import org.mbari.aved.ui.userpreferences.UserPreferences;
 import org.mbari.aved.ui.utils.URLUtils;
 
 //~--- JDK imports ------------------------------------------------------------
 
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 
 import java.net.URL;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.JFrame;
 import org.mbari.aved.ui.progress.AbstractOutputStream;
+import org.mbari.aved.ui.progress.LogTailer;
 
 /**
  *
@@ -68,14 +76,20 @@ import org.mbari.aved.ui.progress.AbstractOutputStream;
  *
  * Helper class to import results and update the ApplicationModel. This can be
  * slow for even small XML files, so put this in worker thread to not bog
- * down the UI
+ * down the UI. The file is streamed with {@link EventXmlStreamReader} and
+ * events are added to the list model as they are read.
  */
 public class ImportXMLWorker extends SwingWorker {
 
+    /** Number of FrameEventSets to read before publishing new events */
+    private static final int FRAMES_PER_BATCH = 500;
 
     /** Maximum frame any event found in. Used for bounding transcoding range */
     private Integer maxEventFrame = 0;
 
+    /** Frames events are found in. Used for transcoding only those frames */
+    private TreeSet<Integer> eventFrames = new TreeSet<Integer>();
+
     /** Helper member to send message to editor controller */
     private AbstractController controller;
 
@@ -92,6 +106,9 @@ public class ImportXMLWorker extends SwingWorker {
     /** XML file to import and controller */
     File xmlFile;
 
+    /** True to follow the XML file while it is written */
+    private boolean isFollowing = false;
+
     /**
      * Import the results in the XML file and put in hash map
      *
@@ -132,6 +149,20 @@ public class ImportXMLWorker extends SwingWorker {
     }     
     
     
+    /**
+     * Follows the results in an XML file that is still being written, e.g.
+     * by a running detection. Events are added to the model as they are
+     * written until the root element ends or the worker is cancelled.
+     *
+     * @param xmlFile
+     *            XML file to follow
+     * @param follow true to follow the file
+     */
+    public ImportXMLWorker(File xmlFile, ApplicationModel model, AbstractController controller, boolean follow) {
+        this(xmlFile, model, controller);
+        this.isFollowing = follow;
+    }
+
     /**
      * Executed after the {@code doInBackground} method is finished.
      *
@@ -146,10 +177,31 @@ public class ImportXMLWorker extends SwingWorker {
 
     /**
      * Maximum frame any event found in. Used for bounding transcoding range
-     * @return
+     * @return the frame number, or -1 if the file is followed and events
+     * may be found in any frame
      */
     public int getMaxEventFrame() {
-        return this.maxEventFrame;
+        return isFollowing ? -1 : this.maxEventFrame;
+    }
+
+    /**
+     * Frames any event is found in, in increasing order
+     * @return the frame numbers, or none if the file is followed and events
+     * may be found in any frame
+     */
+    public int[] getEventFrames() {
+        if (isFollowing) {
+            return new int[0];
+        }
+
+        int[] frames = new int[eventFrames.size()];
+        int   i      = 0;
+
+        for (Integer f : eventFrames) {
+            frames[i++] = f;
+        }
+
+        return frames;
     }
 
     /*
@@ -160,6 +212,8 @@ public class ImportXMLWorker extends SwingWorker {
     protected Object doInBackground() throws Exception {
         // Import the XML file using Brian S. AVED XML parser for AVED DB
         // files
+        EventXmlStreamReader reader = null;
+
         try {
             progressDisplay.write("Importing " + xmlFile.getName() + " now...");
 
@@ -167,25 +221,34 @@ public class ImportXMLWorker extends SwingWorker {
             setProgress(0);
             Application.getView().setBusyCursor();
 
-            // Create event map with 201 objects and 75% loading factor
-            // This should be enough to store events collected over a few
-            // minutes and will grow when needed
-            HashMap<Long, EventObjectContainer> map = new HashMap<Long, EventObjectContainer>(201, 0.75f);
-            Object object = null;
-
             progressDisplay.write("Parsing XML file now");
-            progressDisplay.write("Unmarshalling the XML file...");
 
-            URL url = xmlFile.toURL();
-            InputStream inputStream = url.openStream();
+            int numObjects = 201;
+
+            if (isFollowing) {
+                reader = new EventXmlStreamReader(new FollowInputStream(), xmlFile.length());
+            } else {
+                reader = new EventXmlStreamReader(xmlFile);
+
+                if (reader.isIndexed()) {
+                    numObjects = reader.getIndex().getNumObjects();
+                    progressDisplay.write("Using index " + EventXmlIndex.getIndexFile(xmlFile).getName() + " of "
+                                          + numObjects + " events");
+                }
+            }
 
-            object = Mapper.unmarshall(inputStream);
-            inputStream.close();
+            // Create event map with 75% loading factor. Without an index
+            // 201 objects should be enough to store events collected over
+            // a few minutes and will grow when needed
+            HashMap<Long, EventObjectContainer> map = new HashMap<Long, EventObjectContainer>((int) (numObjects
+                                                          / 0.75f) + 1, 0.75f);
 
-            progressDisplay.write("Unmarshalling done");
+            // Events created but not in the list yet
+            HashMap<Long, EventObjectContainer> held = new HashMap<Long, EventObjectContainer>();
 
-            // Get handle to data stream
-            eventDataStream = (EventDataStream) object;
+            // Get handle to data stream. The FrameEventSets are added to it
+            // as they are read
+            eventDataStream = reader.readHeader();
 
             // Update the XML file. This must be done before setting the source
             model.getSummaryModel().setXmlFile(xmlFile);
@@ -193,133 +256,142 @@ public class ImportXMLWorker extends SwingWorker {
             // Update the data stream in the model
             model.getSummaryModel().setEventDataStream(eventDataStream);
 
-            // Update the source metadata if there is one
-            SourceMetadata source = null;
-
-            source = eventDataStream.getSourceMetadata(); 
-            
             long key = 0;
             EventObjectContainer value = null;
+            SortedSet<FrameEventSet> frameSets = eventDataStream.getFrameEventSets();
+            List<FrameEventSet> frames;
+            boolean first = true;
+            boolean caughtUp = false;
+
+            // A followed file may have no events yet, so start with an
+            // empty list rather than the first batch
+            if (isFollowing) {
+                model.add(new LinkedList<EventObjectContainer>());
+                first = false;
+            }
 
             progressDisplay.write("Extracting event objects...");
 
-            // Walk through all FrameEventSets and extract event objects
-            SortedSet<FrameEventSet> frames = eventDataStream.getFrameEventSets();
-            int max = ((frames.size() > 0)
-                    ? frames.size()
-                    : 1);    // avoid divide
+            // Walk through the FrameEventSets a batch at a time and extract
+            // event objects, publishing new events to the list model as
+            // each batch is read
+            while (!isCancelled() && !(frames = reader.readFrameEventSets(FRAMES_PER_BATCH)).isEmpty()) {
+                ArrayList<EventObjectContainer> entries = new ArrayList<EventObjectContainer>();
+                BulkEdit                        edit    = new BulkEdit();
+
+                for (FrameEventSet f : frames) {
+                    frameSets.add(f);
+
+                    // Go through all events in the frame
+                    Set<EventObject> eventObjs = f.getEventObjects();
+
+                    for (EventObject event : eventObjs) {
+
+                        // Key is simply the objectid which is of type long
+                        key = event.getObjectId();
+                        event.setFrameEventSet(f);
+                        event.setId(key);
+
+                        // If key is not stored in this map, add a new object of
+                        // type Event to the map
+                        if (!map.containsKey(key)) {
+                            value = new EventObjectContainer(event, model);
+                            map.put(key, value);
+                            held.put(key, value);
+                        } else if (held.containsKey(key)) {
+
+                            // Not in the list yet, so add this EventObject
+                            // to the EventObjectContainer directly
+                            value = (EventObjectContainer) map.get(key);
+                            value.add(event);
+                        } else {
+
+                            // Already in the list, so add it in the same
+                            // transaction as the new entries
+                            edit.append(map.get(key), event);
+                        }
+                    }
 
-            // by zero
-            // exception
-            int count = 0;
+                    if (!eventObjs.isEmpty()) {
+                        maxEventFrame = f.getFrameNumber();
+                        eventFrames.add(f.getFrameNumber());
+                    }
+                }
 
-            for (FrameEventSet f : frames) {
+                release(held, entries, reader.getIndex(), reader.getFrameSetsRead());
 
                 // Set the progress bar to something between 0 - 99 %
-                setProgress((99 * count++) / max);
-
-                // Go through all events in the frame
-                Set<EventObject> eventObjs = f.getEventObjects();
-
-                for (EventObject event : eventObjs) {
-
-                    // Key is simply the objectid which is of type long
-                    key = event.getObjectId();
-                    event.setFrameEventSet(f);
-                    event.setId(key);
-
-                    // If key is not stored in this map, add a new object of
-                    // type Event to the map
-                    if (!map.containsKey(key)) {
-                        value = new EventObjectContainer(event, model);
-                        map.put(key, value);
-                    } else {    // Otherwise, add this EventObject to the
-
-                        // EventObjectContainer
-                        value = (EventObjectContainer) map.get(key);
-                        value.add(event);
+                setProgress((int) Math.min(99, (99 * reader.getBytesRead()) / Math.max(reader.getLength(), 1)));
+
+                // The first batch replaces the list; later batches are
+                // inserted in increasing ID order and extend the events
+                // already in the list
+                if (first) {
+                    Collections.sort(entries, EventObjectContainer.OBJECT_ID_COMPARATOR);
+                    model.add(new LinkedList<EventObjectContainer>(entries));
+                    first = false;
+                } else {
+                    edit.add(entries);
+
+                    if (!edit.isEmpty()) {
+                        model.getEventListModel().apply(edit);
                     }
                 }
 
-                if (!eventObjs.isEmpty()) {
-                    maxEventFrame = f.getFrameNumber();
+                // Once what was written when the file was opened is read,
+                // set the source so the video is transcoded and the images
+                // load while the rest of the file is followed
+                if (isFollowing && !caughtUp && (reader.getBytesRead() >= reader.getLength())) {
+                    caughtUp = true;
+                    setInputSource(eventDataStream.getSourceMetadata());
+                    progressDisplay.write("Following " + xmlFile.getName() + " ...");
+                    setProgress(100);
+                    Application.getView().setDefaultCursor();
                 }
             }
 
-            // Sort the map by key using the event ID
-            LinkedList<Long> keys = new LinkedList<Long>(map.keySet());    // Get the keys from
+            if (isCancelled()) {
+                Application.getView().setDefaultCursor();
 
-            // the map as a list
-            progressDisplay.write("Sorting events by increasing ID order");
-
-            Collections.sort(keys);
-
-            // Create a collection of AVEDEvents based on the sorted event keys
-            progressDisplay.write("Creating a collection based on event keys");
-            
-            // Sleep for a second so the user can see this last message since
-            // the sorting is very fast
-            Thread.sleep(1000);
-
-            LinkedList<EventObjectContainer> entries = new LinkedList<EventObjectContainer>();
-            Iterator<Long> i = keys.iterator();
-
-            max = keys.size();
-            count = 0;
-
-            while (i.hasNext()) {
-                EventObjectContainer e = (EventObjectContainer) map.get(i.next());
-
-                // Sort the events in this container now that we are done adding to it
-                e.sort();
-
-                // Add the container to the list of containers
-                entries.add(e);
+                return null;
             }
 
-            // Add the sorted collection to the list model
-            model.add(entries); 
-              
-            progressDisplay.write("Checking for a video source identifier");
+            // Add the events still held, e.g. if the index was unusable
+            ArrayList<EventObjectContainer> entries = new ArrayList<EventObjectContainer>(held.values());
 
-            // If a video source defined check if it contains
-            // a file or http protocol string before setting it
-            if (source != null) {
-                String id = source.getSourceIdentifier();
+            if (first) {
+                Collections.sort(entries, EventObjectContainer.OBJECT_ID_COMPARATOR);
+                model.add(new LinkedList<EventObjectContainer>(entries));
+            } else if (!entries.isEmpty()) {
+                BulkEdit edit = new BulkEdit();
 
-                // If this is a true url reference and not a local file
-                // just set it
-                if (URLUtils.isHttpUrl(id)) {
-                    model.getSummaryModel().setInputSourceURL(new URL(id), true);
-                } else if (URLUtils.isFileUrl(id)) {
+                edit.add(entries);
+                model.getEventListModel().apply(edit);
+            }
 
-                    // otherwise check if a file and convert it to a file URL reference
-                    // Convert to to a file reference
-                    File video = new File(id);
+            progressDisplay.write("Found " + map.size() + " events in " + frameSets.size() + " frames");
 
-                    // If there is no root path in the source identifier
-                    // assume it is in the same path as the XML,
-                    // and set its root to the same path as the XML
-                    if (video.getParent() == null) {
-                        String v = "file:" + xmlFile.getParent() + "/" + video.getName();
+            // Index the file so it opens faster next time, if enabled
+            if (!isFollowing && !reader.isIndexed() && UserPreferences.getModel().getEnableXmlIndex()
+                    && reader.writeIndex()) {
+                progressDisplay.write("Indexed " + xmlFile.getName());
+            }
 
-                        model.getSummaryModel().setInputSourceURL(new URL(v), true);
-                    } else {                        
-                        model.getSummaryModel().setInputSourceURL(new URL(id), true);
-                    }
-                }
-            } else {
-                // if no video source identified, set it to a default AVI file
-                // this is completely arbitrary
-                String defaultSource = "file:" + xmlFile.getParent() + "/" + xmlFile.getName() + ".avi";
-                model.getSummaryModel().setInputSourceURL(new URL(defaultSource), true);
-            } 
+            if (!caughtUp) {
+                setInputSource(eventDataStream.getSourceMetadata());
+            }
 
             // Set the progress bar to 100% and reset cursor
             setProgress(100);
             
         } catch (Exception e) {
             Application.getView().setDefaultCursor();
+
+            // Reading a followed file ends with an error when it is cancelled
+            if (isCancelled()) {
+                return null;
+            }
+
             Logger.getLogger(ImportXMLWorker.class.getName()).log(Level.SEVERE, null, e);
 
             String message = "Error - cannot parse xml file: " + xmlFile.getName() + "\nmessage:"
@@ -327,6 +399,10 @@ public class ImportXMLWorker extends SwingWorker {
             NonModalMessageDialog dialog = new NonModalMessageDialog((JFrame) controller.getView(), message);
 
             dialog.setVisible(true); 
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
         }
 
         Application.getView().setDefaultCursor();
@@ -334,4 +410,122 @@ public class ImportXMLWorker extends SwingWorker {
         return null;
     }
 
+    /**
+     * Moves the held events that are complete to the entries to add to the
+     * list. With an index, an event is complete once the last FrameEventSet
+     * it is in is read, so it is added to the list once with all its
+     * frames. Without an index, every held event is moved.
+     *
+     * @param held the events created but not in the list yet
+     * @param entries the list to add the complete events to
+     * @param index the index of the file, or null if there is none
+     * @param frameSetsRead the number of FrameEventSets read so far
+     */
+    private static void release(Map<Long, EventObjectContainer> held, List<EventObjectContainer> entries,
+                                EventXmlIndex index, int frameSetsRead) {
+        Iterator<Map.Entry<Long, EventObjectContainer>> i = held.entrySet().iterator();
+
+        while (i.hasNext()) {
+            Map.Entry<Long, EventObjectContainer> e      = i.next();
+            int                                   object = (index != null) ? index.findObject(e.getKey()) : -1;
+
+            if ((object < 0) || (index.getLastFrameSet(object) < frameSetsRead)) {
+                entries.add(e.getValue());
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Sets the video source of the events in the summary model. If a video
+     * source is defined, checks if it contains a file or http protocol
+     * string before setting it.
+     */
+    private void setInputSource(SourceMetadata source) throws Exception {
+        progressDisplay.write("Checking for a video source identifier");
+
+        if (source != null) {
+            String id = source.getSourceIdentifier();
+
+            // If this is a true url reference and not a local file
+            // just set it
+            if (URLUtils.isHttpUrl(id)) {
+                model.getSummaryModel().setInputSourceURL(new URL(id), true);
+            } else if (URLUtils.isFileUrl(id)) {
+
+                // otherwise check if a file and convert it to a file URL reference
+                // Convert to to a file reference
+                File video = new File(id);
+
+                // If there is no root path in the source identifier
+                // assume it is in the same path as the XML,
+                // and set its root to the same path as the XML
+                if (video.getParent() == null) {
+                    String v = "file:" + xmlFile.getParent() + "/" + video.getName();
+
+                    model.getSummaryModel().setInputSourceURL(new URL(v), true);
+                } else {                        
+                    model.getSummaryModel().setInputSourceURL(new URL(id), true);
+                }
+            }
+        } else {
+            // if no video source identified, set it to a default AVI file
+            // this is completely arbitrary
+            String defaultSource = "file:" + xmlFile.getParent() + "/" + xmlFile.getName() + ".avi";
+            model.getSummaryModel().setInputSourceURL(new URL(defaultSource), true);
+        } 
+    }
+
+    /**
+     * Reads the XML file as it is written. Reads block until more of the
+     * file is written, and end when the worker is cancelled.
+     */
+    private class FollowInputStream extends InputStream {
+        private long            count  = 0;
+        private final LogTailer tailer = new LogTailer(xmlFile, false);
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+
+            return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            try {
+                int n;
+
+                // Wake up regularly to check if cancelled
+                while ((n = tailer.read(b, off, len, LogTailer.MAX_BACKOFF)) == 0) {
+                    if (isCancelled()) {
+                        return -1;
+                    }
+                }
+
+                if (n > 0) {
+                    count += n;
+                }
+
+                return n;
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, xmlFile.length() - count));
+        }
+
+        @Override
+        public void close() {
+            tailer.stop();
+            tailer.close();
+        }
+    }
 }
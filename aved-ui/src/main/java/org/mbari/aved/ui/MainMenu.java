@@ -136,6 +136,7 @@ public class MainMenu implements ModelListener {
     private JMenuItem              runClassifierItem;
     private JMenuItem              saveEventsItemAs;
     private JMenuItem              saveEventsMenuItem;
+    private JMenuItem              streamEventsItem;
     private SummaryView            summaryView;
     private JMenuItem              testClassItem;
     private JMenuItem batchRunClassifierItem;
@@ -310,6 +311,11 @@ public class MainMenu implements ModelListener {
         setMenuItemMneumonic(openEventsItem, KeyEvent.VK_O);
         openEventsItem.addActionListener(l);
         fileMenu.add(openEventsItem);
+
+        // Follows the events of a detection that is still running
+        streamEventsItem = new JMenuItem(STREAM_PROCESS);
+        streamEventsItem.addActionListener(l);
+        fileMenu.add(streamEventsItem);
         saveEventsMenuItem = new JMenuItem(SAVE_EVENTS);
         setMenuItemMneumonic(saveEventsMenuItem, KeyEvent.VK_S);
         saveEventsMenuItem.addActionListener(l);
@@ -487,12 +493,14 @@ public class MainMenu implements ModelListener {
         // the open functions in the menu
         if (listModel.getMaximum() != -1) {
             openEventsItem.setEnabled(false);
+            streamEventsItem.setEnabled(false);
             saveEventsMenuItem.setEnabled(true);
             saveEventsItemAs.setEnabled(true);
             exportExcelEventsItems.setEnabled(true);
             closeEventsItem.setEnabled(true);
         } else {
             openEventsItem.setEnabled(true);
+            streamEventsItem.setEnabled(true);
             closeEventsItem.setEnabled(false);
             saveEventsMenuItem.setEnabled(false);
             saveEventsItemAs.setEnabled(false);
@@ -513,6 +521,7 @@ public class MainMenu implements ModelListener {
 
                 // Disable save/close function
                 openEventsItem.setEnabled(true);
+                streamEventsItem.setEnabled(true);
                 closeEventsItem.setEnabled(false);
                 saveEventsMenuItem.setEnabled(false);
                 saveEventsItemAs.setEnabled(false);
@@ -678,7 +687,9 @@ public class MainMenu implements ModelListener {
                             else if (actionCommand.equals(MainMenu.PREFERENCES)) {
                                 displayPreferences();
                             } else if (actionCommand.equals(MainMenu.FILE_PROCESS)) {}
-                            else if (actionCommand.equals(MainMenu.STREAM_PROCESS)) {}
+                            else if (actionCommand.equals(MainMenu.STREAM_PROCESS)) {
+                                Application.getController().streamProcessedResults();
+                            }
                             else if (actionCommand.equals(MainMenu.BATCH_PROCESS)) {
                             
                             }
@@ -77,6 +77,9 @@ public class VideoTranscodeWorker extends SwingWorker {
     /** Max frames to set in the transcoder. This is only needed if transcoding
      a particular range*/
     private int maxEventFrame = -1;
+
+    /** Frames to transcode, or null to transcode every frame up to the maximum */
+    private int[] eventFrames = null;
  
     /**
      * Import the results in the XML file and put in hash map
@@ -192,14 +195,23 @@ public class VideoTranscodeWorker extends SwingWorker {
             transcodeProcess = new TranscodeProcess(clip); 
             
             
-            // Set the range if defined. This does not work with ffmpeg and is ignored
-            if (maxEventFrame > 0) {
+            // Transcode only the frames events are found in, otherwise set the
+            // range if defined. The range does not work with ffmpeg and is ignored
+            if ((eventFrames != null) && (eventFrames.length > 0)
+                    && UserPreferences.getModel().getEnableSparseTranscode()) {
+                transcodeProcess.setSparseFrames(eventFrames);
+            } else if (maxEventFrame > 0) {
                 transcodeProcess.setTranscodeOpts(" -c 0-" + Integer.toString(maxEventFrame));
             }
             
             if (UserPreferences.getModel().getEnableFfmpeg()) { 
                 transcodeProcess.enableFfmpeg(); 
             }
+
+            // Decode only the frames that are needed, as they are needed
+            if (UserPreferences.getModel().getEnableDecodeOnDemand()) {
+                transcodeProcess.enableDecodeOnDemand();
+            }
              
             transcodeProcess.setPrintStream(processDisplay);
              
@@ -318,4 +330,13 @@ public class VideoTranscodeWorker extends SwingWorker {
         this.maxEventFrame = maxEventFrame + 1; 
     }
 
+    /**
+     * Set the frames to transcode. Only these frames, and short gaps
+     * between them, are extracted from the video.
+     * @param eventFrames the frame numbers events are found in
+     */
+    public void setEventFrames(int[] eventFrames) {
+        this.eventFrames = eventFrames;
+    }
+
 }
@@ -28,38 +28,103 @@ package org.mbari.aved.ui.appframework;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Abstract root class of Model hierarchy - provides basic
- * notification behaviour
+ * notification behaviour.
+ *
+ * <p>Listeners are called on the thread that calls
+ * {@link #notifyChanged(ModelEvent)}, unless the model sets a
+ * {@link ModelEventDispatcher} to deliver its events on the Event
+ * Dispatch Thread or an executor. The time each listener takes, and how
+ * long events wait to be delivered to it, are kept in a
+ * {@link ListenerLatency}.
  */
 public abstract class AbstractModel implements Model {
-    private final ArrayList listeners = new ArrayList(10);
+    private final ConcurrentHashMap<ModelListener, ListenerLatency> latency =
+        new ConcurrentHashMap<ModelListener, ListenerLatency>();
+    private final CopyOnWriteArrayList<ModelListener> listeners  = new CopyOnWriteArrayList<ModelListener>();
+    private volatile ModelEventDispatcher             dispatcher = null;
 
     /**
      * Method that is called by subclasses of AbstractModel when they want to
      * notify other classes of changes to themselves.
      */
     public void notifyChanged(ModelEvent event) {
-        synchronized (listeners) {
-            ArrayList list = (ArrayList) listeners.clone();
-            Iterator  it   = list.iterator();
+        ModelEventDispatcher d = dispatcher;
+
+        if (d != null) {
+            d.dispatch(this, event);
+        } else {
+            deliver(event, System.nanoTime());
+        }
+    }
+
+    /**
+     * Calls the listeners with an event
+     * @param event the event
+     * @param posted the {@link System#nanoTime()} the event was sent
+     */
+    void deliver(ModelEvent event, long posted) {
+        for (ModelListener ml : listeners) {
+            long start = System.nanoTime();
 
-            while (it.hasNext()) {
-                ModelListener ml = (ModelListener) it.next();
+            ml.modelChanged(event);
 
-                ml.modelChanged(event);
+            ListenerLatency l = latency.get(ml);
+
+            if (l != null) {
+                l.record(start - posted, System.nanoTime() - start);
             }
         }
     }
 
+    /**
+     * Merges an event with the one sent before it, if that has not been
+     * delivered yet. This is only called when the model has a
+     * {@link ModelEventDispatcher}, and lets a model collapse a burst of
+     * events, e.g. progress updates, into one. It is called on the thread
+     * the events are delivered on.
+     * @param queued the event waiting to be delivered
+     * @param next the event sent after it
+     * @return the event to deliver in place of both, or null to deliver
+     * both
+     */
+    protected ModelEvent coalesce(ModelEvent queued, ModelEvent next) {
+        return null;
+    }
+
+    /**
+     * Updates an event with the state of the model just before it is
+     * delivered. This is only called when the model has a
+     * {@link ModelEventDispatcher}, since the model may have changed again
+     * while the event was queued.
+     * @param event the event to deliver
+     * @return the event to deliver in its place
+     */
+    protected ModelEvent resolve(ModelEvent event) {
+        return event;
+    }
+
+    /**
+     * Sets how events are delivered to the listeners
+     * @param dispatcher the dispatcher, or null to call the listeners on
+     * the thread that sends the event
+     */
+    protected void setDispatcher(ModelEventDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
     /**
      * Add a ModelListener to the list of objects interested in ModelEvents.
      */
     public void addModelListener(ModelListener l) {
         listeners.add(l);
+        latency.putIfAbsent(l, new ListenerLatency());
     }
 
     /**
@@ -67,5 +132,17 @@ public abstract class AbstractModel implements Model {
      */
     public void removeModelListener(ModelListener l) {
         listeners.remove(l);
+
+        if (!listeners.contains(l)) {
+            latency.remove(l);
+        }
+    }
+
+    /**
+     * Returns the latency of each listener
+     * @return a copy of the latency by listener
+     */
+    public Map<ModelListener, ListenerLatency> getListenerLatency() {
+        return new HashMap<ModelListener, ListenerLatency>(latency);
     }
 }
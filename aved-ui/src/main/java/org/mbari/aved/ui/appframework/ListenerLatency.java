@@ -0,0 +1,93 @@
+/*
+ * @(#)ListenerLatency.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.appframework;
+
+/**
+ * Latency statistics for one {@link ModelListener}: how long events wait
+ * before they are delivered to it, and how long it takes to handle them
+ */
+public class ListenerLatency {
+    private long count;
+    private long maxRun;
+    private long maxWait;
+    private long totalRun;
+    private long totalWait;
+
+    /**
+     * Records the delivery of an event
+     * @param waitNanos the time from sending to delivering the event
+     * @param runNanos the time the listener took to handle it
+     */
+    synchronized void record(long waitNanos, long runNanos) {
+        count++;
+        totalWait += waitNanos;
+        totalRun  += runNanos;
+        maxWait   = Math.max(maxWait, waitNanos);
+        maxRun    = Math.max(maxRun, runNanos);
+    }
+
+    /**
+     * @return the number of events delivered
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the mean time events waited to be delivered, in ms
+     */
+    public synchronized double getMeanWaitMillis() {
+        return (count > 0) ? totalWait / 1e6 / count : 0.;
+    }
+
+    /**
+     * @return the longest time an event waited to be delivered, in ms
+     */
+    public synchronized double getMaxWaitMillis() {
+        return maxWait / 1e6;
+    }
+
+    /**
+     * @return the mean time the listener took to handle an event, in ms
+     */
+    public synchronized double getMeanRunMillis() {
+        return (count > 0) ? totalRun / 1e6 / count : 0.;
+    }
+
+    /**
+     * @return the longest time the listener took to handle an event, in ms
+     */
+    public synchronized double getMaxRunMillis() {
+        return maxRun / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d events, wait %.2f/%.2f ms, run %.2f/%.2f ms (mean/max)", count,
+                             getMeanWaitMillis(), getMaxWaitMillis(), getMeanRunMillis(), getMaxRunMillis());
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * @(#)ModelEventDispatcher.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.appframework;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Delivers {@link ModelEvent}s from an {@link AbstractModel} to its
+ * listeners on the Event Dispatch Thread or a dedicated thread, so
+ * background workers neither update Swing views off the EDT nor wait
+ * on slow listeners.
+ *
+ * <p>Events are delivered in the order they are sent. An event sent on
+ * the EDT to an EDT dispatcher is delivered at once, after any still
+ * queued, so listeners see the same state as the code that sent it.
+ * Events sent from other threads are queued. When the queue is drained,
+ * consecutive events from a model may be merged with
+ * {@link AbstractModel#coalesce(ModelEvent, ModelEvent)}, and each event
+ * is brought up to date with {@link AbstractModel#resolve(ModelEvent)}
+ * before it is delivered. Neither is called with the queue locked.
+ */
+public class ModelEventDispatcher {
+    private static ModelEventDispatcher edtDispatcher;
+
+    /** Delivers the queued events */
+    private final Runnable             drain = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+    private final LinkedList<Pending>  queue = new LinkedList<Pending>();
+    private boolean                    scheduled = false;
+
+    /** The executor events are delivered on, or null for the EDT */
+    private final Executor executor;
+
+    private ModelEventDispatcher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the dispatcher that delivers events on the Event Dispatch
+     * Thread. Models that share it have their events delivered in the
+     * order they were sent.
+     * @return the dispatcher
+     */
+    public static synchronized ModelEventDispatcher getEdtDispatcher() {
+        if (edtDispatcher == null) {
+            edtDispatcher = new ModelEventDispatcher(null);
+        }
+
+        return edtDispatcher;
+    }
+
+    /**
+     * Creates a dispatcher that delivers events on its own daemon thread
+     * @param name the name of the thread
+     * @return the dispatcher
+     */
+    public static ModelEventDispatcher createThreadDispatcher(final String name) {
+        return new ModelEventDispatcher(Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+
+                t.setDaemon(true);
+
+                return t;
+            }
+        }));
+    }
+
+    /**
+     * Delivers or queues an event
+     * @param model the model that sent the event
+     * @param event the event
+     */
+    void dispatch(AbstractModel model, ModelEvent event) {
+        if ((executor == null) && SwingUtilities.isEventDispatchThread()) {
+            flush();
+            model.deliver(model.resolve(event), System.nanoTime());
+
+            return;
+        }
+
+        synchronized (queue) {
+            queue.add(new Pending(model, event));
+
+            if (!scheduled) {
+                scheduled = true;
+
+                if (executor == null) {
+                    SwingUtilities.invokeLater(drain);
+                } else {
+                    executor.execute(drain);
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers the queued events
+     */
+    private void flush() {
+        while (true) {
+            Pending p;
+
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    scheduled = false;
+
+                    return;
+                }
+
+                p = queue.removeFirst();
+            }
+
+            // Merge the events the same model sent after it. The next event
+            // is put back if it cannot be merged, so a listener that sends
+            // an event still has it delivered after the queued ones.
+            while (true) {
+                Pending next;
+
+                synchronized (queue) {
+                    if (queue.isEmpty() || (queue.getFirst().model != p.model)) {
+                        break;
+                    }
+
+                    next = queue.removeFirst();
+                }
+
+                ModelEvent merged = p.model.coalesce(p.event, next.event);
+
+                if (merged == null) {
+                    synchronized (queue) {
+                        queue.addFirst(next);
+                    }
+
+                    break;
+                }
+
+                p.event = merged;
+            }
+
+            deliver(p);
+        }
+    }
+
+    /**
+     * Delivers an event, with its state brought up to date by the model
+     * @param p the event
+     */
+    private void deliver(Pending p) {
+        try {
+            p.model.deliver(p.model.resolve(p.event), p.posted);
+        } catch (RuntimeException ex) {
+            Logger.getLogger(ModelEventDispatcher.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * An event waiting to be delivered
+     */
+    private static class Pending {
+        ModelEvent                  event;
+        final AbstractModel         model;
+        final long                  posted = System.nanoTime();
+
+        Pending(AbstractModel model, ModelEvent event) {
+            this.model = model;
+            this.event = event;
+        }
+    }
+}
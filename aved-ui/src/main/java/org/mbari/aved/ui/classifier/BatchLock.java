@@ -0,0 +1,206 @@
+/*
+ * @(#)BatchLock.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.classifier;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Claims a work item on a shared filesystem so that runners on different
+ * nodes process disjoint files. A claim is a <code>.lock</code> file created
+ * atomically in the lock directory; it is touched while the item is worked on
+ * and a claim that has not been touched within the stale timeout is taken
+ * over, so a node that dies does not hold its files forever. Finished items
+ * are marked with a <code>.done</code> or <code>.failed</code> file and are
+ * never claimed again.
+ *
+ * @author dcline
+ */
+class BatchLock {
+    private final File   doneFile;
+    private final File   failedFile;
+    private final File   lockFile;
+    private final String owner;
+
+    /**
+     * Constructor
+     * @param lockDir the shared directory the claims are made in
+     * @param name the name of the work item, e.g. the XML file name
+     * @param owner identifies the runner, written to the lock file
+     */
+    BatchLock(File lockDir, String name, String owner) {
+        this.lockFile   = new File(lockDir, name + ".lock");
+        this.doneFile   = new File(lockDir, name + ".done");
+        this.failedFile = new File(lockDir, name + ".failed");
+        this.owner      = owner;
+    }
+
+    /**
+     * @return true if the item was finished, successfully or not, by any runner
+     */
+    boolean isFinished() {
+        return doneFile.exists() || failedFile.exists();
+    }
+
+    /**
+     * Tries to claim the item. A stale claim is first renamed aside, which
+     * only one runner can do, so two runners never take over the same claim.
+     * Another runner may take over the claim between the staleness check
+     * and the rename, so the renamed file is checked again; if it is no
+     * longer the stale claim it is put back and this runner backs off.
+     *
+     * @param staleMillis time after which an untouched claim is stale
+     * @return true if this runner now owns the item
+     */
+    boolean claim(long staleMillis) {
+        if (isFinished()) {
+            return false;
+        }
+
+        try {
+            if (!lockFile.createNewFile()) {
+                long modified = lockFile.lastModified();
+
+                if (!isStale(modified, staleMillis)) {
+                    return false;
+                }
+
+                String staleOwner = read(lockFile);
+                File   stale      = new File(lockFile.getPath() + "." + owner + ".stale");
+
+                if (!lockFile.renameTo(stale)) {
+                    return false;
+                }
+
+                // A rename keeps the modification time, so a claim touched
+                // or taken over since the check is no longer stale
+                if (!isStale(stale.lastModified(), staleMillis) || !staleOwner.equals(read(stale))) {
+                    if (lockFile.exists() || !stale.renameTo(lockFile)) {
+                        Logger.getLogger(BatchLock.class.getName()).log(Level.WARNING,
+                                         "Cannot restore the claim " + lockFile + " from " + stale);
+                    }
+
+                    return false;
+                }
+
+                stale.delete();
+
+                if (!lockFile.createNewFile()) {
+                    return false;
+                }
+            }
+
+            // Another runner may have finished the item between the check
+            // and the claim
+            if (isFinished()) {
+                lockFile.delete();
+
+                return false;
+            }
+
+            write(lockFile, owner);
+
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(BatchLock.class.getName()).log(Level.WARNING, "Cannot claim " + lockFile, ex);
+        }
+
+        return false;
+    }
+
+    /**
+     * Marks the claim as alive
+     */
+    void touch() {
+        lockFile.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Marks the item finished and releases the claim
+     * @param success false if the item failed
+     * @param message written to the marker file
+     */
+    void finish(boolean success, String message) {
+        try {
+            write(success ? doneFile : failedFile, owner + "\t" + message);
+        } catch (IOException ex) {
+            Logger.getLogger(BatchLock.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        lockFile.delete();
+    }
+
+    /**
+     * Releases the claim without finishing the item, so another runner
+     * can process it
+     */
+    void release() {
+        lockFile.delete();
+    }
+
+    private static boolean isStale(long modified, long staleMillis) {
+        return (modified != 0) && (System.currentTimeMillis() - modified >= staleMillis);
+    }
+
+    /**
+     * @return the first line of a file, or an empty string if it is empty
+     */
+    private static String read(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(file));
+
+        try {
+            String line = in.readLine();
+
+            return (line != null) ? line : "";
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileWriter out = new FileWriter(file);
+
+        try {
+            out.write(text + "\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return lockFile.getName();
+    }
+}
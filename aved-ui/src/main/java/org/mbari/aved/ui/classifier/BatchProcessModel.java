@@ -44,7 +44,7 @@ import java.util.logging.Logger;
  */
 public class BatchProcessModel {
     private ApplicationModel model;
-    private String     status;
+    private volatile String  status;
     private HashMap<Integer, Object> classTotal = new HashMap<Integer, Object>();
 
     public BatchProcessModel(File events) { 
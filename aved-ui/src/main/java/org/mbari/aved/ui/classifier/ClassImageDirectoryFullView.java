@@ -36,13 +36,10 @@ import com.jgoodies.forms.layout.FormLayout;
 import com.vlsolutions.swing.docking.DockKey;
 import com.vlsolutions.swing.docking.Dockable;
 
-import org.mbari.aved.ui.utils.ParseUtils;
-
 //~--- JDK imports ------------------------------------------------------------
 
 import java.awt.Component;
 import java.awt.Dimension;
-import java.awt.GridLayout;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
 import java.awt.datatransfer.UnsupportedFlavorException;
@@ -63,12 +60,6 @@ import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
 import javax.swing.BorderFactory;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -81,17 +72,11 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 public class ClassImageDirectoryFullView extends JPanel implements Dockable, ClassImageDirectoryView {
-    private static final int               BORDER    = 5;
-    public static final int                MAX_FILES = 1500;
-    private int                            counter   = 1;
-    private int                            gridSize  = 100;
-    private int                            page      = 1;
-    private final List                     labels    = new ArrayList();
-    private int                            total     = 0;
+    private int                            gridSize = 100;
     private JPanel                         bottomPanel;
     private DockKey                        dockKey;
-    private GridLayout                     imageLayout;
-    private final JPanel                   imagePanel;
+    private final DropTargetListener       dropListener;
+    private final ImageGridPanel           imagePanel;
     private final ClassImageDirectoryModel model;
     private int                            quickKey;
     private JSlider                        sizeSlider;
@@ -100,6 +85,7 @@ public class ClassImageDirectoryFullView extends JPanel implements Dockable, Cla
     public ClassImageDirectoryFullView(ClassImageDirectoryModel model, int quickKey) {
         this.model    = model;
         this.quickKey = quickKey;
+        dropListener  = createDropListener();
         setDropTarget(getMyDropTarget());
         dockKey = new DockKey(model.getDirectory());
         dockKey.setCloseEnabled(true);
@@ -109,12 +95,18 @@ public class ClassImageDirectoryFullView extends JPanel implements Dockable, Cla
 
         CellConstraints cc = new CellConstraints();
 
-        imagePanel = buildImagePanel();
+        imagePanel = new ImageGridPanel(dropListener);
 
         final JScrollPane scroll = new JScrollPane(imagePanel);
 
         scroll.setBorder(BorderFactory.createEmptyBorder());
-        scroll.getVerticalScrollBar().setUnitIncrement(10);
+
+        // Only the images in view are created, so update them as the view scrolls
+        scroll.getViewport().addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                imagePanel.updateCells();
+            }
+        });
         this.add(scroll, cc.xy(2, 2));
         bottomPanel = buildBottomPanel();
         bottomPanel.setMinimumSize(new Dimension(30, 40));
@@ -123,30 +115,32 @@ public class ClassImageDirectoryFullView extends JPanel implements Dockable, Cla
             public void componentShown(ComponentEvent e) {
                 SwingUtilities.invokeLater(new Runnable() {
                     public void run() {
-                        relayoutImagePanel();
+                        imagePanel.updateCells();
                     }
                 });
             }
         });
-
-        Thread t = new Thread() {
+        model.addPropertyChangeListener("fileList", new PropertyChangeListener() {
+            public void propertyChange(PropertyChangeEvent evt) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        loadImages();
+                    }
+                });
+            }
+        });
+        SwingUtilities.invokeLater(new Runnable() {
             public void run() {
                 loadImages();
             }
-        };
-
-        t.start();
+        });
     }
 
-    private JPanel buildImagePanel() {
-        imageLayout = new GridLayout(0, 5, 5, 5);
-
-        JPanel panel = new JPanel(imageLayout);
-
-        return panel;
-    }    // placed outside of the loadImages method so they can be accessed in an inner class
-
     private DropTarget getMyDropTarget() {
+        return new DropTarget(this, DnDConstants.ACTION_COPY_OR_MOVE, dropListener, true);
+    }
+
+    private DropTargetListener createDropListener() {
         DropTargetListener listener = new DropTargetAdapter() {
             public void dragEnter(DropTargetDragEvent dtde) {
 
@@ -214,66 +208,17 @@ public class ClassImageDirectoryFullView extends JPanel implements Dockable, Cla
                 return data;
             }
         };
-        DropTarget target = new DropTarget(this, DnDConstants.ACTION_COPY_OR_MOVE, listener, true);
 
-        return target;
+        return listener;
     }
 
+    /**
+     * Shows the images in the model directory. Only the images in view
+     * are decoded, so this returns immediately for any number of images.
+     */
     private void loadImages() {
-        counter = 1;
-        SwingUtilities.invokeLater(new Runnable() {
-            public void run() {
-                sizeSlider.setEnabled(false);
-            }
-        });
-        imagePanel.removeAll();
-
-        List fileList = model.getFileList();
-
-        // System.out.println("Filelist size: " + fileList.size());
-        total = fileList.size();
-
-        if (total == 0) {
-            return;
-        }
-
-        if (total > MAX_FILES) {
-            total = MAX_FILES * page;
-
-            if (total > fileList.size()) {
-                total = fileList.size();
-            }
-        }
-
-        int position = (page - 1) * MAX_FILES;
-
-        counter = position + 1;
-
-        for (int i = position; i < total; i++) {
-            String     filename = (String) fileList.get(i);
-            ImageLabel label    = new ImageLabel(new File(model.getDirectory(), filename), gridSize, gridSize);
-
-            labels.add(label);
-            imagePanel.add(label);
-            label.setDropTarget(getMyDropTarget());
-            SwingUtilities.invokeLater(new Runnable() {
-                public void run() {
-                    status.setText("loading " + counter++ + " of " + total);
-                }
-            });
-        }
-
-        // setting the label as the droptarget removes the parent drop target
-        // so we have to re-add it.
-        setDropTarget(getMyDropTarget());
-        SwingUtilities.invokeLater(new Runnable() {
-            public void run() {
-                model.setStatus(labels.size() + " images loaded");
-                imagePanel.revalidate();
-                imagePanel.repaint();
-                sizeSlider.setEnabled(true);
-            }
-        });
+        imagePanel.setFiles(new File(model.getDirectory()), model.getFileList());
+        model.setStatus(imagePanel.getNumFiles() + " images");
     }
 
     public boolean moveFileHere(File file) {
@@ -286,8 +231,9 @@ public class ClassImageDirectoryFullView extends JPanel implements Dockable, Cla
         if (!file.renameTo(moved)) {
             return false;
         }
- 
-        this.refresh(moved);
+
+        // Updating the file list reloads the images
+        model.updateFileList();
 
         return true;
     }
@@ -301,39 +247,14 @@ public class ClassImageDirectoryFullView extends JPanel implements Dockable, Cla
         status = BasicComponentFactory.createLabel(adapter.getValueModel("status"));
         panel.add(status, cc.xy(2, 1));
         panel.add(new JLabel("QuickKey = " + getQuickKey()), cc.xy(2, 3));
-
-        int           totalPages = (int) (model.getFileList().size() / MAX_FILES) + 1;
-        PageComponent pc         = new PageComponent(totalPages);
-
-        pc.addPropertyChangeListener("currentPage", new PropertyChangeListener() {
-            public void propertyChange(PropertyChangeEvent evt) {
-                ClassImageDirectoryFullView.this.setPage((Integer) evt.getNewValue());
-            }
-        });
-        panel.add(pc, cc.xy(4, 1));
         sizeSlider = new JSlider(SwingConstants.HORIZONTAL, 20, 400, gridSize);
         sizeSlider.setToolTipText("Slide to change image size");
         sizeSlider.addChangeListener(new ChangeListener() {
             public void stateChanged(ChangeEvent e) {
-                final JSlider source = (JSlider) e.getSource();
+                JSlider source = (JSlider) e.getSource();
 
                 if (!source.getValueIsAdjusting()) {
-                    source.setEnabled(false);
-
-                    try {
-                        foxtrot.Worker.post(new foxtrot.Task() {
-                            public void finish() {
-                                source.setEnabled(true);
-                            }
-                            public Object run() throws Exception {
-                                setGridSize(source.getValue());
-
-                                return null;
-                            }
-                        });
-                    } catch (Exception ex) {
-                        Logger.getLogger(ClassImageDirectoryFullView.class.getName()).log(Level.SEVERE, null, ex);
-                    }
+                    setGridSize(source.getValue());
                 }
             }
         });
@@ -341,75 +262,13 @@ public class ClassImageDirectoryFullView extends JPanel implements Dockable, Cla
         panel.add(sizeSlider, cc.xy(7, 1));
         panel.addHierarchyBoundsListener(new HierarchyBoundsAdapter() {
             public void ancestorResized(HierarchyEvent e) {
-                relayoutImagePanel();
+                imagePanel.updateCells();
             }
         });
 
         return panel;
     }
 
-    protected void setPage(int newPage) {
-        page = newPage;
-
-        Thread t = new Thread() {
-            public void run() {
-                loadImages();
-            }
-        };
-
-        t.start();
-    }
-
-    private void refresh(File moved) {
-        counter = 1;
-
-        List fileList = model.getFileList();
-
-        // System.out.println("Filelist size: " + fileList.size());
-        total = fileList.size();
-
-        if (total == 0) {
-            return;
-        }
-
-        if (total > MAX_FILES) {
-            total = MAX_FILES * page;
-
-            if (total > fileList.size()) {
-                total = fileList.size();
-            }
-        }
-
-        int position = (page - 1) * MAX_FILES;
-
-        counter = position + 1;
-
-        for (int i = position; i < total; i++) {
-            String filename = ParseUtils.parseFileNameRemoveDirectory((String) fileList.get(i));
-            String target   = ParseUtils.parseFileNameRemoveDirectory(moved.toString());
-
-            if (target.equals(filename)) {
-                ImageLabel label = new ImageLabel(new File(model.getDirectory(), filename), gridSize, gridSize);
-
-                addLabel(i, label);
-                status.setText("loading " + counter++ + " of " + total);
-
-                break;
-            }
-        }
-    }
-
-    private void relayoutImagePanel() {
-        int width    = imagePanel.getWidth();
-        int numCells = (int) (width / (gridSize + BORDER * 2.0));
-
-        if (numCells < 2) {
-            numCells = 2;
-        }
-
-        imageLayout.setColumns(numCells);
-    }
-
     public static void main(String[] args) {
         JFrame frame = new JFrame("Test ImageDirectory");
 
@@ -446,61 +305,22 @@ public class ClassImageDirectoryFullView extends JPanel implements Dockable, Cla
         return model;
     }
 
+
     public int getGridSize() {
         return gridSize;
     }
 
     public void setGridSize(int gridSize) {
         this.gridSize = gridSize;
-        relayoutImagePanel();
-
-        for (Iterator iter = labels.iterator(); iter.hasNext(); ) {
-            ImageLabel label = (ImageLabel) iter.next();
-
-            label.updateImageIcon(getGridSize(), getGridSize());
-        }
+        imagePanel.setCellSize(gridSize);
     }
 
     public void removeLabel(ImageLabel label) {
-        if (labels.remove(label)) {
-            imagePanel.remove(label);
-            imagePanel.revalidate();
-            imagePanel.repaint();
-            counter = 1; 
-
-            List fileList = model.getFileList();
-
-            total = fileList.size();
-
-            if (total == 0) {
-                return;
-            }
-
-            if (total > MAX_FILES) {
-                total = MAX_FILES * page;
-
-                if (total > fileList.size()) {
-                    total = fileList.size();
-                }
-            }
-
-            int position = (page - 1) * MAX_FILES;
-
-            counter = position + 1;
-            status.setText("loading " + counter++ + " of " + total);
+        if (imagePanel.removeLabel(label)) {
+            model.setStatus(imagePanel.getNumFiles() + " images");
         }
     }
 
-    public void addLabel(int index, ImageLabel label) {
-        labels.add(index, label);
-        imagePanel.add(label, null, index);
-
-        // setting the label as the droptarget removes the parent drop target
-        // so we have to re-add it.
-        setDropTarget(getMyDropTarget());
-        label.setDropTarget(getMyDropTarget());
-    }
-
     public Component getComponent() {
         return this;
     }
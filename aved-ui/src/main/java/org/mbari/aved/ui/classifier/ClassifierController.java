@@ -33,7 +33,9 @@ import aved.model.EventObject;
 import org.jdesktop.swingworker.SwingWorker;
 
 import org.mbari.aved.classifier.ClassModel;
+import org.mbari.aved.classifier.ClassifierLibrary;
 import org.mbari.aved.classifier.ClassifierLibraryJNI;
+import org.mbari.aved.classifier.ClassifierLibraryJava;
 import org.mbari.aved.ui.appframework.AbstractController;
 import org.mbari.aved.ui.appframework.ModelEvent;
 import org.mbari.aved.ui.appframework.ModelListener;
@@ -50,17 +52,11 @@ import org.mbari.aved.ui.userpreferences.UserPreferences;
 import java.awt.event.ActionEvent;
 
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -75,7 +71,7 @@ public class ClassifierController extends AbstractController implements ModelLis
     private final CreateClass              createClass;
     private final CreateTrainingLibrary    createTrainingLib;
     private final EventListModel           eventListModel;
-    private ClassifierLibraryJNITaskWorker jniQueue;
+    private ClassifierTaskScheduler        jniQueue;
     private final Run            runClassifier;
     private final TestClass                testClass;
 
@@ -122,8 +118,8 @@ public class ClassifierController extends AbstractController implements ModelLis
         view.pack();
 
         try { 
-	    ClassifierLibraryJNI            jniLibrary    = new ClassifierLibraryJNI() {};
-            jniQueue = new ClassifierLibraryJNITaskWorker(jniLibrary);
+            jniQueue = new ClassifierTaskScheduler(createEngines(UserPreferences.getModel().getClassifierEngines()),
+                                                   model);
             jniQueue.initLibrary();
             jniQueue.execute();
         } catch (Exception ex) {
@@ -139,6 +135,45 @@ public class ClassifierController extends AbstractController implements ModelLis
         model.setClassTrainingImageDirectory(dir);
     }
 
+    /**
+     * Creates the classifier engines selected in the user preferences.
+     * The Java library passes training and deleting libraries to the Matlab
+     * library, so it is created without one only if the Matlab library
+     * cannot be loaded. The Matlab runtime is loaded once per process, so
+     * only one Matlab engine is created; the Java engines share it and the
+     * processors between them.
+     *
+     * @param numEngines the number of Java engines to create
+     * @return the classifier engines
+     */
+    static List<ClassifierLibrary> createEngines(int numEngines) throws Exception {
+        List<ClassifierLibrary> engines = new ArrayList<ClassifierLibrary>();
+
+        if (!UserPreferences.getModel().getEnableJavaClassifier()) {
+            engines.add(new ClassifierLibraryJNI());
+
+            return engines;
+        }
+
+        ClassifierLibraryJNI matlab = null;
+
+        try {
+            matlab = new ClassifierLibraryJNI();
+        } catch (Exception ex) {
+            Logger.getLogger(ClassifierController.class.getName()).log(Level.WARNING,
+                             "Matlab classifier library not available, libraries cannot be trained", ex);
+        }
+
+        ClassifierLibrary shared     = (matlab != null) ? new SharedClassifierLibrary(matlab) : null;
+        int               numThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / numEngines);
+
+        for (int i = 0; i < numEngines; i++) {
+            engines.add(new ClassifierLibraryJava(shared, numThreads));
+        }
+
+        return engines;
+    }
+
     @Override
     public ClassifierModel getModel() {
         return (ClassifierModel) super.getModel();
@@ -261,19 +296,6 @@ public class ClassifierController extends AbstractController implements ModelLis
         }
     }
 
-    /**
-     * Utility method to pass through a reader to bridge byte streams
-     * between the matlab log file to a graphical display
-     * @return the input stream reader associated with the matlab log file
-     */
-    public BufferedReader getBufferedReader() {
-        if (jniQueue != null) {
-            return jniQueue.getBufferedReader();
-        }
-
-        return null;
-    }
-
     /**
      * Kills the jni worker queue and closes the JNI matlab library
      */
@@ -328,10 +350,10 @@ public class ClassifierController extends AbstractController implements ModelLis
                             data.initialize(source, "", bestFrameNo);
 
                             EventObject object   = event.getEventObject(bestFrameNo);
-                            BufferedImage original = EventImageCache.loadImage(event.getFrameSource(bestFrameNo));
+                            BufferedImage original = event.getFrame(bestFrameNo);
 
                             if (((object != null) && (original != null))
-                                    && EventImageCache.createCroppedImageOfEvent(original, data, object)) {
+                                    && (EventImageCache.createCroppedImageOfEvent(original, data, object) != null)) {
                                 classModel.addToTrainingSet(data.getImageSource());
                             }
                         } catch (Exception ex) {
@@ -349,191 +371,4 @@ public class ClassifierController extends AbstractController implements ModelLis
             return this;
         }
     }
-
-
-    /**
-     * A task thread designed to execute JNI functions from a command queue
-     * @author dcline
-     */
-    private class ClassifierLibraryJNITaskWorker extends SwingWorker {
-        private boolean                               exit          = false;
-        private boolean                               isInitialized = false;
-        private final Queue<ClassifierLibraryJNITask> queue         = new LinkedList<ClassifierLibraryJNITask>();
-        private final File                            logFile       = getDefaultMatlabLog(); 
-	private ClassifierLibraryJNI            jniLibrary    	    = null;
-        private BufferedReader br;
-
-        ClassifierLibraryJNITaskWorker(ClassifierLibraryJNI library) {
-		this.jniLibrary = library;
-	}
-
-        @Override
-        protected Object doInBackground() throws Exception {
-            initLibrary();
-
-            if (logFile.exists() && logFile.canRead()) {
-                FileInputStream fis = null; 
-
-                try {
-                    fis = new FileInputStream(logFile);
-
-                    InputStreamReader isr = new InputStreamReader(fis);
-
-                    br = new BufferedReader(isr);
- 
-                } catch (FileNotFoundException ex) {
-                    Logger.getLogger(ClassifierLibraryJNITaskWorker.class.getName()).log(Level.SEVERE, null,
-                            "ERROR: cannot write to log file " + logFile.getAbsolutePath() + " "
-                            + ex.toString());
-                } catch (IOException ex) {
-                    Logger.getLogger(ClassifierController.class.getName()).log(Level.SEVERE, null, ex);
-                }
-            }
-
-            while (exit == false) {
-                if (queue.isEmpty() == false) {
-                    ClassifierLibraryJNITask task = queue.element();
-
-                    try {
-                        task.run(jniLibrary);
-                    } catch (Exception ex) {
-                        task.setCancelled();
-                        Logger.getLogger(ClassifierLibraryJNITaskWorker.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-
-                    queue.remove(); 
-                    getModel().setJniTaskComplete(task.getId());
-                } else {
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException ex) {}
-                    }
-                }
-
-            closeLibrary();
-
-            return null;
-        }
-
-        /**
-         *
-         *     @return returns log file for the classifier
-         */
-        public File getDefaultMatlabLog() {
-            if (System.getenv("USER") != null) {
-                return new File(UserPreferences.getModel().getDefaultScratchDirectory().getAbsolutePath() + "/"
-                                + System.getenv("USER").toString() + "_" + "matlablog.txt");
-            } else {
-                return new File(UserPreferences.getModel().getDefaultScratchDirectory().getAbsolutePath()
-                                + "/matlablog.txt");
-            }
-        }
-
-        /**
-         * Add a task to the queue for later execution
-         * @param task the task to add
-         */
-        public synchronized void add(ClassifierLibraryJNITask task) {
-            queue.add(task);
-        }
-
-        /**
-         * Cancels a running Matlab method through the JNI layer
-         * This sets a kill flag in a file that is read
-         * by the compiled Matlab code.
-         * @param task
-         */
-        private synchronized void cancelTask(ClassifierLibraryJNITask task) {
-            Iterator<ClassifierLibraryJNITask> it = queue.iterator();
-
-            while (it.hasNext()) {
-                if (it.next().equals(task)) {
-                    task.setCancelled();
-                    jniLibrary.set_kill(task.getCancel(), 1);
-
-                    break;
-                }
-            }
-        }
-
-        /**
-         * Cancels this worker and closes the jni library
-         */
-        public synchronized void cancel() {
-            exit = true;
-            super.cancel(true);
-            closeLibrary();
-        }
-
-        /**
-         * Creates a {@link java.io.BufferedReader} associated with the Matlab log file
-         * This is intended for use in redirecting the Matlab text log ouput
-         * to a display.
-         *
-         * @return the BufferedReader
-         */
-        public synchronized BufferedReader getBufferedReader() {
-            try {
-                // skip to the end of the file
-                do {
-                } while (br.readLine() != null);
-
-            } catch (IOException ex) {
-                Logger.getLogger(ClassifierController.class.getName()).log(Level.SEVERE, null, ex);
-            }
-            return br;
-        }
-
-        /**
-         * Returns the singleton <code>ClassifierLibraryJNI</code>
-         * <p> An exception may be thrown if the Matlab log file does not exist,
-         * which indicates there is something  wrong with the Matlab library
-         * initialization. This is likely caused by an invalid matlab log file
-         * directory
-         *
-         * @return a {@link org.mbari.aved.classifier.ClassifierLibraryJNI} singleton
-         */
-        private synchronized ClassifierLibraryJNI initLibrary() throws Exception {
-            if (isInitialized == false && jniLibrary != null) {
-                try {
-                    String lcOSName = System.getProperty("os.name").toLowerCase();
-
-                    // If running from Mac
-                    if (lcOSName.startsWith("mac os x")) {
-                        jniLibrary.initLib(logFile.getAbsolutePath(), 1);
-                    } else {
-                        jniLibrary.initLib(logFile.getAbsolutePath(), 0);
-                    }
-
-                    isInitialized = true;
-                    Thread.sleep(2000);
-                } catch (Exception e) {
-                    Logger.getLogger(ClassifierLibraryJNITaskWorker.class.getName()).log(Level.SEVERE, null, e);
-                }
-            }
-
-            if (isInitialized == true) {
-                return jniLibrary;
-            }
-
-            return null;
-        }
-
-        /**
-         * Closes the library. If this is called, the library will be reopened
-         * during the first initLibrary() call
-         *
-         * @see     initLibrary()
-         */
-        private synchronized void closeLibrary() {
-            try {
-                if (isInitialized == true) {
-                    jniLibrary.closeLib();
-                    isInitialized = false;
-                }
-            } catch (Exception ex) {
-                Logger.getLogger(ClassifierLibraryJNITaskWorker.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        }
-    }
 }
@@ -28,17 +28,43 @@ package org.mbari.aved.ui.classifier;
 
 //~--- non-JDK imports --------------------------------------------------------
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
-import org.mbari.aved.classifier.ClassifierLibraryJNI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import org.mbari.aved.classifier.ClassifierLibrary;
+import org.mbari.aved.ui.progress.LogTailer;
 
 /**
  *
  * @author dcline
  */
 public class ClassifierLibraryJNITask {
+
+    /**
+     * The stage of the classifier pipeline a task belongs to. A task
+     * that names its inputs waits only for the tasks queued before it in
+     * an earlier stage that create one of them; a task that names none
+     * waits for every task queued before it in an earlier stage.
+     */
+    public enum Stage { COLLECT, TRAIN, RUN }
+
+    /** Priority of tasks that fill in the user interface */
+    public static final int HIGH_PRIORITY   = 10;
+    public static final int NORMAL_PRIORITY = 0;
     private String  matlabCancel = "";
     private boolean isFinished   = false;
     private boolean isCancelled  = false;
+    private int     priority     = NORMAL_PRIORITY;
+    private Stage   stage        = Stage.RUN;
+    private String  output       = null;
+    private final List<String>                   inputs       = new ArrayList<String>();
+    private final List<ClassifierLibraryJNITask> dependencies = new ArrayList<ClassifierLibraryJNITask>();
+    private final CountDownLatch                 started      = new CountDownLatch(1);
+    private File                                 logFile      = null;
+    private long                                 logPosition  = 0;
 
     public ClassifierLibraryJNITask(String name) throws Exception {
         Random random   = new Random();
@@ -59,6 +85,7 @@ public class ClassifierLibraryJNITask {
      */
     public final synchronized void setFini() {
         isFinished = true;
+        started.countDown();
     }
 
     /**
@@ -66,6 +93,7 @@ public class ClassifierLibraryJNITask {
      */
     public final synchronized void setCancelled() {
         isCancelled = true;
+        started.countDown();
     }
 
     /**
@@ -82,10 +110,113 @@ public class ClassifierLibraryJNITask {
         return this.matlabCancel;
     }
  
-    protected void run(ClassifierLibraryJNI library) throws Exception {
+    protected void run(ClassifierLibrary library) throws Exception {
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    /**
+     * Sets the priority. Of the tasks ready to run, the one with the
+     * highest priority is started first.
+     * @param priority the priority, e.g. {@link #NORMAL_PRIORITY}
+     */
+    public final synchronized void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public final synchronized int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the stage of the classifier pipeline this task belongs to
+     * @param stage the stage; the default is {@link Stage#RUN}
+     */
+    public final synchronized void setStage(Stage stage) {
+        this.stage = stage;
+    }
+
+    public final synchronized Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * Sets the name of the class or training library this task creates
+     * @param name the name
+     */
+    public final synchronized void setOutput(String name) {
+        this.output = name;
+    }
+
+    public final synchronized String getOutput() {
+        return output;
+    }
+
+    /**
+     * Adds the name of a class or training library this task reads. The
+     * scheduler makes this task depend on the tasks queued before it in
+     * an earlier stage that create it.
+     * @param name the name
+     */
+    public final synchronized void addInput(String name) {
+        inputs.add(name);
+    }
+
+    /**
+     * @return a copy of the names of the classes and training libraries
+     * this task reads
+     */
+    public final synchronized List<String> getInputs() {
+        return new ArrayList<String>(inputs);
+    }
+
+    /**
+     * Adds a task that must be done before this task starts. If that task
+     * fails or is cancelled, this task is cancelled too.
+     * @param task the task this depends on
+     */
+    public final synchronized void addDependency(ClassifierLibraryJNITask task) {
+        dependencies.add(task);
+    }
+
+    /**
+     * @return a copy of the tasks that must be done before this task starts
+     */
+    public final synchronized List<ClassifierLibraryJNITask> getDependencies() {
+        return new ArrayList<ClassifierLibraryJNITask>(dependencies);
+    }
+
+    /**
+     * Sets the log of the engine this task is started on. Called by the
+     * scheduler when it starts the task.
+     * @param file the log file of the engine
+     * @param position the length of the log when the task started
+     */
+    final synchronized void setLog(File file, long position) {
+        this.logFile     = file;
+        this.logPosition = position;
+        started.countDown();
+    }
+
+    /**
+     * Returns a source for following the output of this task, e.g. with a
+     * {@link org.mbari.aved.ui.progress.ProgressDisplayStream}. The source
+     * waits until the task is started and then follows the log of its
+     * engine from where the task started, so the output of tasks on other
+     * engines is not shown. A task cancelled before it started has no log.
+     * @return the log source
+     */
+    public final Callable<LogTailer> getLog() {
+        return new Callable<LogTailer>() {
+            public LogTailer call() throws InterruptedException {
+                started.await();
+
+                synchronized (ClassifierLibraryJNITask.this) {
+                    return new LogTailer(logFile, logPosition);
+                }
+            }
+        };
+    }
+
     /**
      *
      * @return the task id - this is used for checking the status
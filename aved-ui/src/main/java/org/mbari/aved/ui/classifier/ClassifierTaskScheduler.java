@@ -0,0 +1,441 @@
+/*
+ * @(#)ClassifierTaskScheduler.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.classifier;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import org.jdesktop.swingworker.SwingWorker;
+
+import org.mbari.aved.classifier.ClassifierLibrary;
+import org.mbari.aved.ui.userpreferences.UserPreferences;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs {@link ClassifierLibraryJNITask}s on a pool of classifier engines.
+ *
+ * <p>Each engine is a {@link ClassifierLibrary}; a task runs on one engine
+ * at a time, so independent tasks, e.g. collecting test images for two
+ * runs, run concurrently when there is more than one engine. A queued task
+ * is started when an engine is free and every task it depends on is done.
+ * When a task is queued, it is made to depend on the tasks queued before
+ * it in an earlier {@link ClassifierLibraryJNITask.Stage} that create one
+ * of its inputs, e.g. a run depends on the training of its library but
+ * not on the training of other libraries. A task that names no inputs
+ * instead waits for every task queued before it in an earlier stage.
+ * If a task fails or is cancelled, the queued tasks that depend on it are
+ * cancelled.
+ * Of the tasks ready to start, the one with the highest priority is
+ * started first, then the one queued first.
+ *
+ * <p>The dispatcher blocks until a task is queued or finishes rather
+ * than polling.
+ *
+ * <p>Each engine writes to its own log file, so the output of a task can be
+ * followed with {@link ClassifierLibraryJNITask#getLog()} without the output
+ * of tasks running on other engines. Java engines that fall back to a shared
+ * Matlab library get its output in the log of the engine that opened it.
+ *
+ * @author dcline
+ */
+class ClassifierTaskScheduler extends SwingWorker {
+    private final ReentrantLock                      lock      = new ReentrantLock();
+    private final Condition                          changed   = lock.newCondition();
+    private final LinkedList<ClassifierLibrary>      idle      = new LinkedList<ClassifierLibrary>();
+    private final Map<ClassifierLibraryJNITask, ClassifierLibrary> running =
+        new HashMap<ClassifierLibraryJNITask, ClassifierLibrary>();
+    private final LinkedList<ClassifierLibraryJNITask> queue   = new LinkedList<ClassifierLibraryJNITask>();
+    private final Map<ClassifierLibrary, File>       logFiles  = new HashMap<ClassifierLibrary, File>();
+    private final List<ClassifierLibrary>            engines;
+    private final ExecutorService                    executor;
+    private boolean                                  exit          = false;
+    private boolean                                  isInitialized = false;
+    private final ClassifierModel                    model;
+
+    /**
+     * Constructor
+     * @param engines the classifier engines to run the tasks on
+     * @param model the model to notify when a task completes
+     */
+    ClassifierTaskScheduler(List<ClassifierLibrary> engines, ClassifierModel model) {
+        this.engines = new ArrayList<ClassifierLibrary>(engines);
+        this.model   = model;
+        executor     = Executors.newFixedThreadPool(engines.size());
+        idle.addAll(engines);
+
+        for (int i = 0; i < this.engines.size(); i++) {
+            logFiles.put(this.engines.get(i), getDefaultMatlabLog(i));
+        }
+    }
+
+    @Override
+    protected Object doInBackground() throws Exception {
+        initLibrary();
+
+        lock.lock();
+
+        try {
+            while (!exit) {
+                ClassifierLibraryJNITask task = nextTask();
+
+                if (task == null) {
+
+                    // Wait until a task is queued or finishes
+                    changed.await();
+
+                    continue;
+                }
+
+                ClassifierLibrary engine = idle.removeFirst();
+
+                File log = logFiles.get(engine);
+
+                queue.remove(task);
+                running.put(task, engine);
+                task.setLog(log, log.length());
+                executor.execute(new Runner(task, engine));
+            }
+        } catch (InterruptedException ex) {
+
+            // cancelled by cancel()
+        } finally {
+            lock.unlock();
+        }
+
+        executor.shutdownNow();
+        closeLibrary();
+
+        return null;
+    }
+
+    /**
+     * Finds the next task ready to start
+     *
+     *  Call within block synced by: <code>lock</code>
+     *
+     * @return the task, or null if no engine is free or no task is ready
+     */
+    private ClassifierLibraryJNITask nextTask() {
+        if (idle.isEmpty()) {
+            return null;
+        }
+
+        ClassifierLibraryJNITask next = null;
+
+        for (int i = 0; i < queue.size(); i++) {
+            ClassifierLibraryJNITask task = queue.get(i);
+
+            if (((next == null) || (task.getPriority() > next.getPriority())) && isReady(task, i)) {
+                next = task;
+            }
+        }
+
+        return next;
+    }
+
+    /**
+     * Makes a task depend on the queued and running tasks in an earlier
+     * stage that create one of its inputs
+     *
+     *  Call within block synced by: <code>lock</code>
+     *
+     * @param task the task
+     */
+    private void addDependencies(ClassifierLibraryJNITask task) {
+        List<String> inputs = task.getInputs();
+        int          stage  = task.getStage().ordinal();
+
+        if (inputs.isEmpty()) {
+            return;
+        }
+
+        List<ClassifierLibraryJNITask> earlier = new ArrayList<ClassifierLibraryJNITask>(running.keySet());
+
+        earlier.addAll(queue);
+
+        for (ClassifierLibraryJNITask t : earlier) {
+            if ((t.getStage().ordinal() < stage) && (t.getOutput() != null) && inputs.contains(t.getOutput())) {
+                task.addDependency(t);
+            }
+        }
+    }
+
+    /**
+     * Cancels the queued tasks that depend, directly or not, on a task
+     * that failed or was cancelled
+     *
+     *  Call within block synced by: <code>lock</code>
+     *
+     * @param task the task that failed or was cancelled
+     * @param cancelled the list to add the cancelled tasks to
+     */
+    private void cancelDependents(ClassifierLibraryJNITask task, List<ClassifierLibraryJNITask> cancelled) {
+        for (ClassifierLibraryJNITask q : new ArrayList<ClassifierLibraryJNITask>(queue)) {
+            if (q.getDependencies().contains(task) && queue.remove(q)) {
+                q.setCancelled();
+                cancelled.add(q);
+                cancelDependents(q, cancelled);
+            }
+        }
+    }
+
+    /**
+     * Notifies the model that tasks cancelled with their dependency are
+     * complete. Call outside the lock.
+     *
+     * @param cancelled the cancelled tasks
+     */
+    private void notifyCancelled(List<ClassifierLibraryJNITask> cancelled) {
+        for (ClassifierLibraryJNITask t : cancelled) {
+            Logger.getLogger(ClassifierTaskScheduler.class.getName()).log(Level.INFO,
+                             "Cancelled task {0}; a task it depends on did not finish", t.getCancel());
+            model.setJniTaskComplete(t.getId());
+        }
+    }
+
+    /**
+     * Checks if a task's dependencies and earlier stages are done
+     *
+     *  Call within block synced by: <code>lock</code>
+     *
+     * @param task the task
+     * @param index the position of the task in the queue
+     * @return true if the task can start
+     */
+    private boolean isReady(ClassifierLibraryJNITask task, int index) {
+        for (ClassifierLibraryJNITask d : task.getDependencies()) {
+            if (queue.contains(d) || running.containsKey(d)) {
+                return false;
+            }
+        }
+
+        if (!task.getInputs().isEmpty()) {
+            return true;
+        }
+
+        int stage = task.getStage().ordinal();
+
+        for (int i = 0; i < index; i++) {
+            if (queue.get(i).getStage().ordinal() < stage) {
+                return false;
+            }
+        }
+
+        // Running tasks were all queued before this one
+        for (ClassifierLibraryJNITask r : running.keySet()) {
+            if (r.getStage().ordinal() < stage) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     *
+     *     @param engine the index of the engine
+     *     @return returns log file for a classifier engine
+     */
+    public File getDefaultMatlabLog(int engine) {
+        String name = (engine == 0) ? "matlablog.txt" : "matlablog" + engine + ".txt";
+
+        if (System.getenv("USER") != null) {
+            return new File(UserPreferences.getModel().getDefaultScratchDirectory().getAbsolutePath() + "/"
+                            + System.getenv("USER").toString() + "_" + name);
+        } else {
+            return new File(UserPreferences.getModel().getDefaultScratchDirectory().getAbsolutePath() + "/"
+                            + name);
+        }
+    }
+
+    /**
+     * Add a task to the queue for later execution
+     * @param task the task to add
+     */
+    public void add(ClassifierLibraryJNITask task) {
+        lock.lock();
+
+        try {
+            addDependencies(task);
+            queue.add(task);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels a task. A queued task is removed from the queue; a running
+     * Matlab method is stopped through the JNI layer by setting a kill
+     * flag in a file that is read by the compiled Matlab code.
+     * @param task
+     */
+    void cancelTask(ClassifierLibraryJNITask task) {
+        List<ClassifierLibraryJNITask> cancelled = new ArrayList<ClassifierLibraryJNITask>();
+
+        lock.lock();
+
+        try {
+            if (queue.remove(task)) {
+                task.setCancelled();
+                cancelDependents(task, cancelled);
+                changed.signal();
+            } else if (running.containsKey(task)) {
+
+                // Its dependents are cancelled when it returns
+                task.setCancelled();
+                running.get(task).set_kill(task.getCancel(), 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        notifyCancelled(cancelled);
+    }
+
+    /**
+     * Cancels this worker and closes the libraries
+     */
+    public void cancel() {
+        lock.lock();
+
+        try {
+            exit = true;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        super.cancel(true);
+    }
+
+    /**
+     * Initializes the classifier engines
+     * <p> An exception may be thrown if the Matlab log file does not exist,
+     * which indicates there is something  wrong with the Matlab library
+     * initialization. This is likely caused by an invalid matlab log file
+     * directory
+     */
+    synchronized void initLibrary() throws Exception {
+        if (!isInitialized) {
+            try {
+                String lcOSName = System.getProperty("os.name").toLowerCase();
+
+                for (ClassifierLibrary engine : engines) {
+                    String logFile = logFiles.get(engine).getAbsolutePath();
+
+                    // If running from Mac
+                    if (lcOSName.startsWith("mac os x")) {
+                        engine.initLib(logFile, 1);
+                    } else {
+                        engine.initLib(logFile, 0);
+                    }
+                }
+
+                isInitialized = true;
+            } catch (Exception e) {
+                Logger.getLogger(ClassifierTaskScheduler.class.getName()).log(Level.SEVERE, null, e);
+            }
+        }
+    }
+
+    /**
+     * Closes the classifier engines. If this is called, the engines will be
+     * reopened during the first initLibrary() call
+     *
+     * @see     initLibrary()
+     */
+    private synchronized void closeLibrary() {
+        if (isInitialized) {
+            for (ClassifierLibrary engine : engines) {
+                try {
+                    engine.closeLib();
+                } catch (Exception ex) {
+                    Logger.getLogger(ClassifierTaskScheduler.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+
+            isInitialized = false;
+        }
+    }
+
+    /**
+     * Runs a task on an engine, then returns the engine to the pool
+     */
+    private class Runner implements Runnable {
+        private final ClassifierLibrary        engine;
+        private final ClassifierLibraryJNITask task;
+
+        Runner(ClassifierLibraryJNITask task, ClassifierLibrary engine) {
+            this.task   = task;
+            this.engine = engine;
+        }
+
+        public void run() {
+            List<ClassifierLibraryJNITask> cancelled = new ArrayList<ClassifierLibraryJNITask>();
+
+            try {
+                task.run(engine);
+            } catch (Exception ex) {
+                task.setCancelled();
+                Logger.getLogger(ClassifierTaskScheduler.class.getName()).log(Level.SEVERE, null, ex);
+            } finally {
+                lock.lock();
+
+                try {
+                    running.remove(task);
+                    idle.add(engine);
+
+                    if (!task.isFini() || task.isCancelled()) {
+                        cancelDependents(task, cancelled);
+                    }
+
+                    changed.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            model.setJniTaskComplete(task.getId());
+            notifyCancelled(cancelled);
+        }
+    }
+}
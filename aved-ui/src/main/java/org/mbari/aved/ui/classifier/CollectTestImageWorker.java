@@ -28,14 +28,12 @@ package org.mbari.aved.ui.classifier;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import aved.model.EventObject;
-
 import org.jdesktop.swingworker.SwingWorker;
 
-import org.mbari.aved.ui.model.EventImageCache;
 import org.mbari.aved.ui.model.EventImageCacheData;
 import org.mbari.aved.ui.model.EventListModel;
 import org.mbari.aved.ui.model.EventObjectContainer;
+import org.mbari.aved.ui.model.SquaredImageGenerator;
 import org.mbari.aved.ui.model.SummaryModel;
 import org.mbari.aved.ui.progress.ProgressDisplay;
 
@@ -76,7 +74,13 @@ public class CollectTestImageWorker extends SwingWorker {
             testDir.mkdirs();
         }
 
-        int size = listModel.getSize();
+        int                   size      = listModel.getSize();
+        SquaredImageGenerator generator = new SquaredImageGenerator() {
+            @Override
+            protected boolean isCancelled() {
+                return CollectTestImageWorker.this.isCancelled();
+            }
+        };
 
         for (int i = 0; i < size; i++) {
             EventObjectContainer event = listModel.getElementAt(i);
@@ -98,10 +102,8 @@ public class CollectTestImageWorker extends SwingWorker {
                             data.initialize(testDir, "", bestFrameNo);
                         }
 
-                        EventObject object = event.getEventObject(bestFrameNo);
-
-                        if (object != null) {
-                            EventImageCache.createSquaredImageOfEvent(data, object);
+                        if (data.getImageSource() != null) {
+                            generator.add(event, bestFrameNo, data.getImageSource());
                         }
                     } catch (Exception ex) {
                         Logger.getLogger(CollectTestImageWorker.class.getName()).log(Level.SEVERE, null, ex);
@@ -110,6 +112,13 @@ public class CollectTestImageWorker extends SwingWorker {
             }
         }
 
+        // Decode each frame once and create its images in parallel
+        generator.run();
+
+        if (generator.getError() != null) {
+            Logger.getLogger(CollectTestImageWorker.class.getName()).log(Level.SEVERE, null, generator.getError());
+        }
+
         progressDisplay.display("Done !");
 
         return this;
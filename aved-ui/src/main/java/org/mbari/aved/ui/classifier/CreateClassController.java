@@ -31,7 +31,7 @@ package org.mbari.aved.ui.classifier;
 import org.jdesktop.swingworker.SwingWorker;
 
 import org.mbari.aved.classifier.ClassModel;
-import org.mbari.aved.classifier.ClassifierLibraryJNI;
+import org.mbari.aved.classifier.ClassifierLibrary;
 import org.mbari.aved.classifier.ColorSpace;
 import org.mbari.aved.classifier.LibraryImage;
 import org.mbari.aved.mbarivision.api.utils.Utils;
@@ -40,10 +40,10 @@ import org.mbari.aved.ui.appframework.ModelEvent;
 import org.mbari.aved.ui.appframework.ModelListener;
 import org.mbari.aved.ui.message.NonModalMessageDialog;
 import org.mbari.aved.ui.model.EventListModel;
+import org.mbari.aved.ui.model.SquaredImageGenerator;
 import org.mbari.aved.ui.progress.ProgressDisplay;
 import org.mbari.aved.ui.progress.ProgressDisplayStream;
 import org.mbari.aved.ui.userpreferences.UserPreferences;
-import org.mbari.aved.ui.utils.ImageUtils;
 import org.mbari.aved.ui.utils.ParseUtils;
 
 import vars.knowledgebase.Concept;
@@ -58,7 +58,6 @@ import java.awt.event.MouseEvent;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileFilter;
 
@@ -288,7 +287,6 @@ class CreateClassController extends AbstractController implements ModelListener,
                     @Override
                     public void run() {
                         try {
-                            BufferedReader  br              = Classifier.getController().getBufferedReader();
                             ProgressDisplay progressDisplay = new ProgressDisplay(worker,
                                                                   "Creating class " + newModel.getName());
 
@@ -298,11 +296,12 @@ class CreateClassController extends AbstractController implements ModelListener,
                             System.setOut(new PrintStream(progressDisplay, true));
                             System.setErr(new PrintStream(progressDisplay, true)); 
 
+                            task = new CreateClassTask(worker, newModel);
+
                             ProgressDisplayStream progressDisplayStream = new ProgressDisplayStream(progressDisplay,
-                                                                              br);
+                                                                              task.getLog());
 
                             progressDisplayStream.execute();
-                            task = new CreateClassTask(worker, newModel);
                             Classifier.getController().addQueue(task);
 
                             while (!task.isCancelled() &&!task.isFini()) {
@@ -314,7 +313,7 @@ class CreateClassController extends AbstractController implements ModelListener,
                             getView().setRunButton(true);
                             getView().setStopButton(false);
                             
-                            progressDisplayStream.done();
+                            progressDisplayStream.stop();
                             progressDisplay.getView().dispose();
 
                             // Add the model only after successfully created
@@ -463,9 +462,11 @@ class CreateClassController extends AbstractController implements ModelListener,
         public CreateClassTask(SwingWorker parentWorker, ClassModel newClassModel) throws Exception {
             super(newClassModel.getName());
             this.newClassModel = newClassModel;
+            setStage(Stage.COLLECT);
+            setOutput(newClassModel.getName());
         }
  
-        protected void run(ClassifierLibraryJNI library)  {
+        protected void run(ClassifierLibrary library)  {
             ArrayList<String> filePaths = newClassModel.getRawImageFileListing();
             LibraryImage[]    imageset  = new LibraryImage[filePaths.size()];
             File              rootPath  = newClassModel.getRawImageDirectory();
@@ -510,32 +511,44 @@ class CreateClassController extends AbstractController implements ModelListener,
                 }
             }
 
-            // Convert images to square images as required for the classifier
-            for (int i = 0; i < filePaths.size(); i++) {
-
-                // If user cancelled, return
-                if (isCancelled()) {
-                    return;
+            // Convert images to square images as required for the classifier,
+            // in parallel across the available processors
+            SquaredImageGenerator generator = new SquaredImageGenerator() {
+                @Override
+                protected boolean isCancelled() {
+                    return CreateClassTask.this.isCancelled();
                 }
+            };
 
+            for (int i = 0; i < filePaths.size(); i++) {
                 String f            = rootPath + "/" + filePaths.get(i);
                 String ext          = Utils.getExtension(new File(f));
                 String imageFileOut = path + "/" + ParseUtils.removeFileExtension(filePaths.get(i)) + "." + ext;
-      
-                try {
-                    ImageUtils.squareImageThumbnail(f, imageFileOut, ext);
-                } catch (Exception ex) {
-                    this.setCancelled();
-                    NonModalMessageDialog dialog;
-                    dialog = new NonModalMessageDialog(getView(), ex.toString());
-                    dialog.setVisible(true);
-
-                    return;
-                }
 
+                generator.add(new File(f), new File(imageFileOut));
                 imageset[i] = new LibraryImage(imageFileOut) {};
             }
 
+            try {
+                generator.run();
+            } catch (InterruptedException ex) {
+                this.setCancelled();
+            }
+
+            // If user cancelled, return
+            if (isCancelled()) {
+                return;
+            }
+
+            if (generator.getError() != null) {
+                this.setCancelled();
+                NonModalMessageDialog dialog;
+                dialog = new NonModalMessageDialog(getView(), generator.getError().toString());
+                dialog.setVisible(true);
+
+                return;
+            }
+
             // Get a input stream on the matlab log file to display in
             // the progress display window
             try {
@@ -566,9 +579,10 @@ class CreateClassController extends AbstractController implements ModelListener,
         public DeleteClassTask(ClassModel classModel) throws Exception {
             super(classModel.getName());
             this.classModel = classModel;
+            setStage(Stage.COLLECT);
         }
 
-        protected void run(ClassifierLibraryJNI library) {
+        protected void run(ClassifierLibrary library) {
             try {
 
                 // Delete the class
@@ -31,7 +31,7 @@ package org.mbari.aved.ui.classifier;
 import org.jdesktop.swingworker.SwingWorker;
 
 import org.mbari.aved.classifier.ClassModel;
-import org.mbari.aved.classifier.ClassifierLibraryJNI;
+import org.mbari.aved.classifier.ClassifierLibrary;
 import org.mbari.aved.classifier.ColorSpace;
 import org.mbari.aved.classifier.TrainingModel;
 import org.mbari.aved.ui.appframework.AbstractController;
@@ -50,7 +50,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 
-import java.io.BufferedReader;
 import java.io.File;
 
 import java.io.PrintStream;
@@ -247,7 +246,6 @@ public class CreateTrainingLibraryController extends AbstractController implemen
                 Thread thread = new Thread() {
                     @Override
                     public void run() {
-                        BufferedReader  br              = Classifier.getController().getBufferedReader();
                         ProgressDisplay progressDisplay = new ProgressDisplay(worker,
                                                               "Creating training model " + newModel.getName());
 
@@ -257,7 +255,7 @@ public class CreateTrainingLibraryController extends AbstractController implemen
                         System.setOut(new PrintStream(progressDisplay, true));
                         System.setErr(new PrintStream(progressDisplay, true));
 
-                        ProgressDisplayStream progressDisplayStream = new ProgressDisplayStream(progressDisplay, br);
+                        ProgressDisplayStream progressDisplayStream = new ProgressDisplayStream(progressDisplay, task.getLog());
                         progressDisplayStream.execute();
 
                         while (!task.isCancelled() &&!task.isFini()) {
@@ -269,7 +267,7 @@ public class CreateTrainingLibraryController extends AbstractController implemen
                         getView().setRunButton(true);
                         getView().setStopButton(false);
                         
-                        progressDisplayStream.done();
+                        progressDisplayStream.stop();
                         progressDisplay.getView().dispose();
 
                         if (task.isFini()) {
@@ -386,10 +384,16 @@ public class CreateTrainingLibraryController extends AbstractController implemen
         public CreateTrainingLibraryTask(TrainingModel model) throws Exception {
             super(model.getName());
             this.trainingModel = model;
+            setStage(Stage.TRAIN);
+            setOutput(model.getName());
+
+            for (int i = 0; i < model.getNumClasses(); i++) {
+                addInput(model.getClassModel(i).getName());
+            }
         }
 
         @Override
-        protected void run(ClassifierLibraryJNI library) {
+        protected void run(ClassifierLibrary library) {
             try {
 
                 // Format a comma delimited list of class names for the classifier
@@ -420,7 +424,9 @@ public class CreateTrainingLibraryController extends AbstractController implemen
                     NonModalMessageDialog dialog = new NonModalMessageDialog(getView(), ex.toString());
 
                     dialog.setVisible(true);
-                    setFini();
+
+                    // Cancel the runs that depend on this library
+                    setCancelled();
                 }
             }
 
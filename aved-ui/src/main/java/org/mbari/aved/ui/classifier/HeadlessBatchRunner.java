@@ -0,0 +1,616 @@
+/*
+ * @(#)HeadlessBatchRunner.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.classifier;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import aved.model.EventDataStream;
+import aved.model.EventObject;
+import aved.model.FrameEventSet;
+import aved.model.SourceMetadata;
+import aved.model.xml.Mapper;
+
+import org.mbari.aved.classifier.ClassifierLibrary;
+import org.mbari.aved.classifier.ColorSpace;
+import org.mbari.aved.classifier.TrainingModel;
+import org.mbari.aved.mbarivision.api.TranscodeProcess;
+import org.mbari.aved.ui.ApplicationModel;
+import org.mbari.aved.ui.EventXmlIndex;
+import org.mbari.aved.ui.EventXmlStreamReader;
+import org.mbari.aved.ui.model.EventAbstractTableModel;
+import org.mbari.aved.ui.model.EventObjectContainer;
+import org.mbari.aved.ui.model.SummaryModel;
+import org.mbari.aved.ui.progress.AbstractOutputStream;
+import org.mbari.aved.ui.userpreferences.UserPreferences;
+import org.mbari.aved.ui.utils.ExcelExporter;
+import org.mbari.aved.ui.utils.ParseUtils;
+import org.mbari.aved.ui.utils.URLUtils;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+
+import java.net.URL;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.JTable;
+
+/**
+ * Runs batch classification without a display, for cluster nodes.
+ * Every runner started on the same directory of events XML files claims
+ * files through {@link BatchLock} files in a shared lock directory, so any
+ * number of runners on any number of nodes process disjoint files. Each file
+ * is imported, transcoded, classified and exported to the same XML and xls
+ * files as the batch process view, and a line of stage timings is appended
+ * to a tab separated report for the runner in the output directory.
+ *
+ * Usage:
+ * <pre>
+ * HeadlessBatchRunner [options] &lt;xml directory&gt; &lt;training library&gt; &lt;output directory&gt;
+ * </pre>
+ *
+ * @author dcline
+ */
+public class HeadlessBatchRunner {
+    private static final String USAGE =
+        "Usage: HeadlessBatchRunner [options] <xml directory> <training library> <output directory>\n"
+        + "  -threshold <percent>    minimum probability to assign a class (default 0)\n"
+        + "  -method <method>        voting method: " + Arrays.toString(VotingMethod.values())
+        + " (default PROBABILITY)\n"
+        + "  -colorspace <space>     color space of the training library, if the name is not unique\n"
+        + "  -dbroot <directory>     classifier database root (default from the user preferences)\n"
+        + "  -locks <directory>      shared lock directory (default <output directory>/locks)\n"
+        + "  -stale <minutes>        minutes before the claim of a dead runner is taken over (default 10)";
+
+    /** Columns of the timing report */
+    private static final String REPORT_HEADER =
+        "file\trunner\tstatus\tevents\timport_ms\ttranscode_ms\tclassify_ms\texport_ms\ttotal_ms\tstarted";
+
+    /** Number of FrameEventSets to read at a time */
+    private static final int FRAMES_PER_BATCH = 500;
+    private ColorSpace       colorSpace       = null;
+    private File             dbRoot           = null;
+    private final Timer      heartbeat        = new Timer("BatchLock heartbeat", true);
+    private File             lockDir          = null;
+    private VotingMethod     method           = VotingMethod.PROBABILITY;
+    private float            minProbThreshold = 0f;
+    private int              numFailed        = 0;
+    private File             outputDir;
+    private final String     owner;
+    private File             reportFile;
+    private long             staleMillis      = 10 * 60 * 1000L;
+    private String           trainingLibrary;
+    private File             xmlDir;
+
+    HeadlessBatchRunner() {
+        owner = ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^\\w.@-]", "_");
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        HeadlessBatchRunner runner = new HeadlessBatchRunner();
+
+        try {
+            if (!runner.parse(args)) {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+
+            System.exit(runner.run() ? 0 : 1);
+        } catch (Exception ex) {
+            Logger.getLogger(HeadlessBatchRunner.class.getName()).log(Level.SEVERE, null, ex);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parses the command line arguments
+     * @return false if the arguments are invalid
+     */
+    boolean parse(String[] args) {
+        List<String> files = new LinkedList<String>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-threshold") && (i + 1 < args.length)) {
+                    minProbThreshold = Integer.parseInt(args[++i]) / 100f;
+                } else if (args[i].equals("-method") && (i + 1 < args.length)) {
+                    method = VotingMethod.valueOf(args[++i].toUpperCase());
+                } else if (args[i].equals("-colorspace") && (i + 1 < args.length)) {
+                    colorSpace = ColorSpace.valueOf(args[++i].toUpperCase());
+                } else if (args[i].equals("-dbroot") && (i + 1 < args.length)) {
+                    dbRoot = new File(args[++i]);
+                } else if (args[i].equals("-locks") && (i + 1 < args.length)) {
+                    lockDir = new File(args[++i]);
+                } else if (args[i].equals("-stale") && (i + 1 < args.length)) {
+                    staleMillis = Long.parseLong(args[++i]) * 60 * 1000L;
+                } else if (args[i].startsWith("-")) {
+                    return false;
+                } else {
+                    files.add(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+
+            return false;
+        }
+
+        if (files.size() != 3) {
+            return false;
+        }
+
+        xmlDir          = new File(files.get(0));
+        trainingLibrary = files.get(1);
+        outputDir       = new File(files.get(2));
+
+        if (lockDir == null) {
+            lockDir = new File(outputDir, "locks");
+        }
+
+        if (dbRoot == null) {
+            dbRoot = UserPreferences.getModel().getClassImageDirectory();
+        }
+
+        reportFile = new File(outputDir, owner + "_timing.tsv");
+
+        return true;
+    }
+
+    /**
+     * Processes files until every file is finished or claimed by another
+     * runner. Files whose claims go stale while this runner is working are
+     * picked up on the next pass.
+     *
+     * @return false if any file processed by this runner failed
+     */
+    boolean run() throws Exception {
+        if (!xmlDir.isDirectory()) {
+            throw new Exception(xmlDir + " is not a directory");
+        }
+
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            throw new Exception("Cannot create " + outputDir);
+        }
+
+        if (!lockDir.exists() && !lockDir.mkdirs() && !lockDir.exists()) {
+            throw new Exception("Cannot create " + lockDir);
+        }
+
+        ClassifierLibrary library = ClassifierController.createEngines(1).get(0);
+        File              logFile = new File(UserPreferences.getModel().getScratchDirectory(),
+                                             owner + "_matlablog.txt");
+
+        library.initLib(logFile.getAbsolutePath(),
+                        System.getProperty("os.name").toLowerCase().startsWith("mac os x") ? 1 : 0);
+
+        try {
+            TrainingModel trainingModel = findTrainingModel(library);
+
+            System.out.println(owner + " classifying " + xmlDir + " with " + trainingModel.getName());
+
+            boolean claimed;
+
+            do {
+                claimed = false;
+
+                for (File xmlFile : listXmlFiles()) {
+                    final BatchLock lock = new BatchLock(lockDir, xmlFile.getName(), owner);
+
+                    if (!lock.claim(staleMillis)) {
+                        continue;
+                    }
+
+                    claimed = true;
+
+                    TimerTask touch = new TimerTask() {
+                        @Override
+                        public void run() {
+                            lock.touch();
+                        }
+                    };
+
+                    long period = Math.max(1000L, staleMillis / 4);
+
+                    heartbeat.schedule(touch, period, period);
+
+                    try {
+                        process(xmlFile, trainingModel, library, lock);
+                    } finally {
+                        touch.cancel();
+                    }
+                }
+            } while (claimed);
+        } finally {
+            heartbeat.cancel();
+            library.closeLib();
+        }
+
+        System.out.println(owner + " finished, " + numFailed + " failed");
+
+        return numFailed == 0;
+    }
+
+    /**
+     * Finds the training library in the database root
+     */
+    private TrainingModel findTrainingModel(ClassifierLibrary library) throws Exception {
+        TrainingModel[] models = library.get_training_classes(dbRoot.getAbsolutePath());
+
+        if (models != null) {
+            for (TrainingModel m : models) {
+                if (m.getName().equals(trainingLibrary) && ((colorSpace == null) || (m.getColorSpace() == colorSpace))) {
+                    return m;
+                }
+            }
+        }
+
+        throw new Exception("Training library " + trainingLibrary + " not found in " + dbRoot);
+    }
+
+    /**
+     * @return the events XML files in the input directory, in name order so
+     * that every runner walks them in the same order
+     */
+    private File[] listXmlFiles() {
+        File[] files = xmlDir.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.toLowerCase().endsWith(".xml");
+            }
+        });
+
+        if (files == null) {
+            return new File[0];
+        }
+
+        Arrays.sort(files);
+
+        return files;
+    }
+
+    /**
+     * Imports, transcodes, classifies and exports one file, then finishes
+     * its claim and reports the time spent in each stage
+     */
+    private void process(File xmlFile, TrainingModel trainingModel, ClassifierLibrary library, BatchLock lock) {
+        ConsoleDisplay   display    = new ConsoleDisplay(xmlFile.getName());
+        long             started    = System.currentTimeMillis();
+        long[]           times      = new long[4];
+        String           status     = "failed";
+        int              numEvents  = 0;
+        TranscodeProcess transcoder = null;
+
+        try {
+            ApplicationModel model   = new ApplicationModel();
+            SummaryModel     summary = model.getSummaryModel();
+            long             t       = System.nanoTime();
+
+            // import events xml
+            display.write("Importing xml...");
+
+            int[] eventFrames = importXml(xmlFile, model);
+
+            numEvents = model.getEventListModel().getSize();
+            times[0]  = (System.nanoTime() - t) / 1000000;
+
+            // if no events in this, then just skip
+            if (numEvents == 0) {
+                status = "empty";
+                lock.finish(true, status);
+
+                return;
+            }
+
+            // transcode
+            t = System.nanoTime();
+            display.write("Transcoding...");
+            transcoder = transcode(RunBatchController.findTranscodeSource(summary), summary, eventFrames,
+                                   display);
+            times[1] = (System.nanoTime() - t) / 1000000;
+
+            // Putting the test images in a subdirectory of the transcoded
+            // frames makes for easy deletion later
+            File s       = summary.getFrameSourceDir();
+            File testDir = new File(s + "/testimages_" + s.getName());
+
+            testDir.mkdirs();
+            summary.setTestImageDir(testDir);
+
+            // classify
+            t = System.nanoTime();
+            display.write("Classifying...");
+
+            RunWorker worker = new RunWorker(trainingModel, minProbThreshold, testDir, model.getEventListModel(),
+                                             method, display);
+
+            worker.run(library);
+
+            if (worker.getTableModel() == null) {
+                throw new Exception("Classification failed, see " + library.getClass().getSimpleName() + " log");
+            }
+
+            times[2] = (System.nanoTime() - t) / 1000000;
+
+            // export
+            t = System.nanoTime();
+            display.write("Exporting...");
+            export(xmlFile, model);
+            times[3] = (System.nanoTime() - t) / 1000000;
+            status   = "done";
+            lock.finish(true, status);
+        } catch (Exception ex) {
+            Logger.getLogger(HeadlessBatchRunner.class.getName()).log(Level.SEVERE, xmlFile.toString(), ex);
+            numFailed++;
+            lock.finish(false, ex.toString());
+        } finally {
+            if (transcoder != null) {
+                try {
+                    transcoder.kill();
+                    transcoder.clean();
+                } catch (Exception ex) {
+                    Logger.getLogger(HeadlessBatchRunner.class.getName()).log(Level.WARNING, null, ex);
+                }
+            }
+
+            report(xmlFile, status, numEvents, times, started);
+            display.write(status);
+        }
+    }
+
+    /**
+     * Imports the events in the XML file into the model, as the
+     * {@link org.mbari.aved.ui.ImportXMLWorker} does
+     *
+     * @return the frames events are found in, in increasing order
+     */
+    private int[] importXml(File xmlFile, ApplicationModel model) throws Exception {
+        EventXmlStreamReader reader = new EventXmlStreamReader(xmlFile);
+
+        try {
+            HashMap<Long, EventObjectContainer> map         = new HashMap<Long, EventObjectContainer>(201, 0.75f);
+            LinkedList<EventObjectContainer>    entries     = new LinkedList<EventObjectContainer>();
+            TreeSet<Integer>                    eventFrames = new TreeSet<Integer>();
+            EventDataStream                     eds         = reader.readHeader();
+            SummaryModel                        summary     = model.getSummaryModel();
+            List<FrameEventSet>                 frames;
+
+            summary.setXmlFile(xmlFile);
+            summary.setEventDataStream(eds);
+
+            while (!(frames = reader.readFrameEventSets(FRAMES_PER_BATCH)).isEmpty()) {
+                for (FrameEventSet f : frames) {
+                    eds.getFrameEventSets().add(f);
+
+                    for (EventObject event : f.getEventObjects()) {
+                        long                 key   = event.getObjectId();
+                        EventObjectContainer value = map.get(key);
+
+                        event.setFrameEventSet(f);
+                        event.setId(key);
+
+                        if (value == null) {
+                            value = new EventObjectContainer(event, model);
+                            map.put(key, value);
+                            entries.add(value);
+                        } else {
+                            value.add(event);
+                        }
+                    }
+
+                    if (!f.getEventObjects().isEmpty()) {
+                        eventFrames.add(f.getFrameNumber());
+                    }
+                }
+            }
+
+            // Entries were created in order of first appearance; the list
+            // is kept in increasing ID order
+            Collections.sort(entries, EventObjectContainer.OBJECT_ID_COMPARATOR);
+            model.add(entries);
+            summary.setInputSourceURL(getSourceURL(xmlFile, eds.getSourceMetadata()), true);
+
+            int[] result = new int[eventFrames.size()];
+            int   i      = 0;
+
+            for (Integer frame : eventFrames) {
+                result[i++] = frame;
+            }
+
+            return result;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Resolves the video source of the events the same way the
+     * {@link org.mbari.aved.ui.ImportXMLWorker} does
+     */
+    private static URL getSourceURL(File xmlFile, SourceMetadata source) throws Exception {
+        if (source == null) {
+            return new URL("file:" + xmlFile.getParent() + "/" + xmlFile.getName() + ".avi");
+        }
+
+        String id = source.getSourceIdentifier();
+
+        if (URLUtils.isFileUrl(id)) {
+            File video = new File(id);
+
+            // If there is no root path in the source identifier assume it
+            // is in the same path as the XML
+            if (video.getParent() == null) {
+                return new URL("file:" + xmlFile.getParent() + "/" + video.getName());
+            }
+        }
+
+        return new URL(id);
+    }
+
+    /**
+     * Transcodes the frames of the video events are found in, as the
+     * {@link org.mbari.aved.ui.VideoTranscodeWorker} does. The frames go to
+     * a directory of this runner, so runners sharing a scratch directory do
+     * not transcode over each other.
+     *
+     * @return the transcode process, to clean up when the file is done
+     */
+    private TranscodeProcess transcode(File video, SummaryModel summary, int[] eventFrames, ConsoleDisplay display)
+            throws Exception {
+        TranscodeProcess process = new TranscodeProcess(video);
+
+        if ((eventFrames.length > 0) && UserPreferences.getModel().getEnableSparseTranscode()) {
+            process.setSparseFrames(eventFrames);
+        } else if (eventFrames.length > 0) {
+            process.setTranscodeOpts(" -c 0-" + Integer.toString(eventFrames[eventFrames.length - 1] + 1));
+        }
+
+        if (UserPreferences.getModel().getEnableFfmpeg()) {
+            process.enableFfmpeg();
+        }
+
+        if (UserPreferences.getModel().getEnableDecodeOnDemand()) {
+            process.enableDecodeOnDemand();
+        }
+
+        process.setPrintStream(display);
+
+        String dir = UserPreferences.getModel().getScratchDirectory() + File.separator + owner + File.separator
+                     + ParseUtils.removeFileExtension(video.getName()) + File.separator;
+
+        new File(dir).mkdirs();
+        summary.setTranscodeDir(new File(dir));
+        process.setOutTemporaryStorage(dir);
+        summary.setAVEDVideo(process.getOutAVEDVideo());
+        process.run();
+
+        if (!process.isInitialized()) {
+            process.clean();
+
+            throw new Exception("Cannot transcode " + video);
+        }
+
+        return process;
+    }
+
+    /**
+     * Exports the classified events to XML and the class assignments to xls
+     * in the output directory
+     */
+    private void export(File xmlFile, ApplicationModel model) throws Exception {
+        File             xml = new File(outputDir, xmlFile.getName());
+        File             xls = new File(outputDir, ParseUtils.removeFileExtension(xmlFile.getName()) + ".xls");
+        EventXmlIndex.delete(xml);
+
+        FileOutputStream out = new FileOutputStream(xml);
+
+        try {
+            Mapper.marshall(out, model.getSummaryModel().getEventDataStream());
+        } finally {
+            out.close();
+        }
+
+        EventAbstractTableModel tablemodel = new EventAbstractTableModel(model.getEventListModel());
+
+        ExcelExporter.exportTable(new JTable(tablemodel.getTableModel()), xls);
+    }
+
+    /**
+     * Appends a line for a file to the timing report of this runner.
+     * Each runner has its own report, so appends from different nodes never
+     * interleave on the shared filesystem.
+     */
+    private void report(File xmlFile, String status, int numEvents, long[] times, long started) {
+        boolean header = !reportFile.exists();
+
+        try {
+            FileWriter out = new FileWriter(reportFile, true);
+
+            try {
+                if (header) {
+                    out.write(REPORT_HEADER + "\n");
+                }
+
+                out.write(xmlFile.getName() + "\t" + owner + "\t" + status + "\t" + numEvents + "\t" + times[0]
+                          + "\t" + times[1] + "\t" + times[2] + "\t" + times[3] + "\t"
+                          + (System.currentTimeMillis() - started) + "\t" + started + "\n");
+            } finally {
+                out.close();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(HeadlessBatchRunner.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Writes the progress of the workers to standard out, prefixed with the
+     * file being processed
+     */
+    private static class ConsoleDisplay extends AbstractOutputStream {
+        private final String prefix;
+
+        ConsoleDisplay(String name) {
+            this.prefix = "[" + name + "] ";
+        }
+
+        @Override
+        public void write(String l) {
+            System.out.println(prefix + l);
+        }
+
+        @Override
+        public void write(int b) {
+            System.out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            System.out.write(b, off, len);
+        }
+
+        @Override
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+    }
+}
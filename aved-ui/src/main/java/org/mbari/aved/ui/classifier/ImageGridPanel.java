@@ -0,0 +1,240 @@
+/*
+ * @(#)ImageGridPanel.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.classifier;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.dnd.DnDConstants;
+import java.awt.dnd.DropTarget;
+import java.awt.dnd.DropTargetListener;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.swing.JPanel;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+/**
+ * A grid of training images that only creates an {@link ImageLabel} for
+ * the cells in the visible area plus a margin of rows above and below.
+ * Images are decoded in the background by the {@link ImageThumbnailLoader}
+ * as their cells come into view, so opening a class with any number of
+ * images is fast and memory stays flat.
+ *
+ * <p>Call {@link #updateCells} whenever the visible area changes, e.g. from
+ * a viewport change listener.
+ *
+ * @author dcline
+ */
+class ImageGridPanel extends JPanel implements Scrollable {
+    private static final int                 BORDER      = 5;
+    private static final int                 MARGIN_ROWS = 2;
+    private int                              cellSize    = 100;
+    private final List<String>               files       = new ArrayList<String>();
+    private final Map<Integer, ImageLabel>   labels      = new HashMap<Integer, ImageLabel>();
+    private final Map<ImageLabel, Future<?>> loads       = new HashMap<ImageLabel, Future<?>>();
+    private File                             directory;
+    private final DropTargetListener         dropListener;
+
+    /**
+     * Constructor
+     * @param dropListener the listener for images dropped on a cell
+     */
+    ImageGridPanel(DropTargetListener dropListener) {
+        super(null);
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * Sets the images shown in the grid
+     * @param directory the directory the images are in
+     * @param fileList the image file names
+     */
+    void setFiles(File directory, List fileList) {
+        this.directory = directory;
+        files.clear();
+
+        for (Object f : fileList) {
+            files.add((String) f);
+        }
+
+        clearCells();
+        revalidate();
+        updateCells();
+    }
+
+    /**
+     * @return the number of images in the grid
+     */
+    int getNumFiles() {
+        return files.size();
+    }
+
+    /**
+     * Sets the size of the images. Any decoded images are discarded.
+     * @param cellSize the width and height of the images
+     */
+    void setCellSize(int cellSize) {
+        this.cellSize = cellSize;
+        clearCells();
+        revalidate();
+        updateCells();
+    }
+
+    /**
+     * Removes the image shown by a label from the grid
+     * @param label the label
+     * @return true if the label was in the grid
+     */
+    boolean removeLabel(ImageLabel label) {
+        int index = -1;
+
+        for (Map.Entry<Integer, ImageLabel> e : labels.entrySet()) {
+            if (e.getValue() == label) {
+                index = e.getKey();
+
+                break;
+            }
+        }
+
+        if (index == -1) {
+            return false;
+        }
+
+        files.remove(index);
+        clearCells();
+        revalidate();
+        updateCells();
+
+        return true;
+    }
+
+    /**
+     * Creates the labels for the cells in the visible area plus the margin,
+     * and removes the labels for cells no longer near it
+     */
+    void updateCells() {
+        int       pitch    = cellSize + 2 * BORDER;
+        int       columns  = Math.max(1, getWidth() / pitch);
+        Rectangle visible  = getVisibleRect();
+        int       firstRow = Math.max(0, visible.y / pitch - MARGIN_ROWS);
+        int       lastRow  = (visible.y + visible.height) / pitch + MARGIN_ROWS;
+        int       first    = firstRow * columns;
+        int       last     = Math.min(files.size(), (lastRow + 1) * columns);
+
+        // Remove the labels that have scrolled out of range
+        for (Iterator<Map.Entry<Integer, ImageLabel>> i = labels.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<Integer, ImageLabel> e     = i.next();
+            int                            index = e.getKey();
+
+            if ((index < first) || (index >= last)) {
+                removeCell(e.getValue());
+                i.remove();
+            }
+        }
+
+        for (int i = first; i < last; i++) {
+            ImageLabel label = labels.get(i);
+
+            if (label == null) {
+                label = new ImageLabel(new File(directory, files.get(i)), cellSize, cellSize, false);
+                new DropTarget(label, DnDConstants.ACTION_COPY_OR_MOVE, dropListener, true);
+                labels.put(i, label);
+                loads.put(label, ImageThumbnailLoader.getInstance().load(label, cellSize, cellSize));
+                add(label);
+            }
+
+            label.setBounds(BORDER + (i % columns) * pitch, BORDER + (i / columns) * pitch, cellSize, cellSize);
+        }
+
+        repaint();
+    }
+
+    /**
+     * Removes all the labels and cancels any queued image loads
+     */
+    private void clearCells() {
+        for (ImageLabel label : labels.values()) {
+            removeCell(label);
+        }
+
+        labels.clear();
+    }
+
+    private void removeCell(ImageLabel label) {
+        Future<?> load = loads.remove(label);
+
+        if (load != null) {
+            load.cancel(false);
+        }
+
+        remove(label);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int pitch = cellSize + 2 * BORDER;
+        int width = Math.max(getWidth(), pitch);
+        int cols  = Math.max(1, width / pitch);
+        int rows  = (files.size() + cols - 1) / cols;
+
+        return new Dimension(width, rows * pitch + BORDER);
+    }
+
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL)
+               ? (cellSize + 2 * BORDER) / 4
+               : 10;
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL)
+               ? visibleRect.height
+               : visibleRect.width;
+    }
+
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -80,8 +80,23 @@ public class ImageLabel extends JLabel {
     }
 
     public ImageLabel(File file, int x, int y) {
+        this(file, x, y, true);
+    }
+
+    /**
+     * Constructor
+     * @param file the image file
+     * @param x the image width
+     * @param y the image height
+     * @param decode false to show an empty label until the image is set
+     * with {@link #setThumbnail}, e.g. when decoded in the background
+     */
+    ImageLabel(File file, int x, int y, boolean decode) {
         this.file = file;
-        updateImageIcon(x, y);
+
+        if (decode) {
+            updateImageIcon(x, y);
+        }
 
         TransferHandler myHandler = new TransferHandler("file") {
             protected void exportDone(JComponent source, Transferable data, int action) {
@@ -138,6 +153,24 @@ public class ImageLabel extends JLabel {
         });
     }
 
+    /**
+     * Shows an already scaled image, e.g. from the {@link ImageThumbnailLoader}.
+     * Safe to call from any thread.
+     * @param thumbnail the scaled image
+     */
+    void setThumbnail(BufferedImage thumbnail) {
+        final ImageIcon icon = new ImageIcon(thumbnail);
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                scaledImageIcon = icon;
+                grayedImageIcon = null;
+                ImageLabel.this.setText("");
+                ImageLabel.this.setIcon(scaledImageIcon);
+            }
+        });
+    }
+
     private BufferedImage getImage() {
         if (this.image != null) {
             return this.image;
@@ -176,6 +209,12 @@ public class ImageLabel extends JLabel {
     }
 
     private void addGrayOverlayToImage() {
+
+        // Nothing to gray out until the image has been decoded
+        if (this.getIcon() == null) {
+            return;
+        }
+
         if (grayedImageIcon == null) {
             if (grayedImage == null) {
                 grayedImage = getUncachedImage();
@@ -0,0 +1,277 @@
+/*
+ * @(#)ImageThumbnailLoader.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.classifier;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import org.mbari.aved.ui.userpreferences.UserPreferences;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Decodes and scales training images for the {@link ImageGridPanel} on a
+ * pool of background threads.
+ *
+ * <p>Thumbnails up to {@link #CACHE_SIZE} pixels are kept in a small
+ * on-disk cache in the scratch directory, keyed by the image path, size
+ * and modification time, so reopening a class does not decode every
+ * image again. Larger sizes are scaled from the original image.
+ *
+ * @author dcline
+ */
+class ImageThumbnailLoader {
+    private static final ImageThumbnailLoader INSTANCE        = new ImageThumbnailLoader();
+    static final int                          CACHE_SIZE      = 128;
+    private static final long                 MAX_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final String               EXTENSION       = ".png";
+    private File                              directory;
+    private final ExecutorService             executor;
+
+    private ImageThumbnailLoader() {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ImageThumbnailLoader");
+
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Singleton helper function
+     * @return the singleton instance
+     */
+    static ImageThumbnailLoader getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues the thumbnail of an image for a label. The label is updated
+     * on the Event Dispatch Thread when the thumbnail is ready.
+     *
+     * @param label the label to show the thumbnail in
+     * @param width the thumbnail width
+     * @param height the thumbnail height
+     * @return the queued work; cancel it if the label is no longer shown
+     */
+    Future<?> load(final ImageLabel label, final int width, final int height) {
+        return executor.submit(new Runnable() {
+            public void run() {
+                try {
+                    BufferedImage thumbnail = getThumbnail(label.getFile(), width, height);
+
+                    if (thumbnail != null) {
+                        label.setThumbnail(thumbnail);
+                    }
+                } catch (Exception ex) {
+                    Logger.getLogger(ImageThumbnailLoader.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the thumbnail of an image, from the disk cache if possible
+     *
+     * @param file the image file
+     * @param width the thumbnail width
+     * @param height the thumbnail height
+     * @return the thumbnail, or null if the image could not be read
+     * @throws IOException
+     */
+    BufferedImage getThumbnail(File file, int width, int height) throws IOException {
+        if ((width > CACHE_SIZE) || (height > CACHE_SIZE)) {
+            BufferedImage image = ImageIO.read(file);
+
+            return (image != null)
+                   ? scale(image, width, height)
+                   : null;
+        }
+
+        File          cached = getCacheFile(file);
+        BufferedImage image  = null;
+
+        if ((cached != null) && cached.exists()) {
+            image = ImageIO.read(cached);
+
+            if (image != null) {
+                cached.setLastModified(System.currentTimeMillis());
+            }
+        }
+
+        if (image == null) {
+            image = ImageIO.read(file);
+
+            if (image == null) {
+                return null;
+            }
+
+            image = scale(image, CACHE_SIZE, CACHE_SIZE);
+
+            if (cached != null) {
+                File tmp = new File(cached.getPath() + ".tmp");
+
+                if (ImageIO.write(image, "png", tmp) &&!tmp.renameTo(cached)) {
+                    tmp.delete();
+                }
+            }
+        }
+
+        return ((width == image.getWidth()) && (height == image.getHeight()))
+               ? image
+               : scale(image, width, height);
+    }
+
+    /**
+     * Returns the cache file for an image. The cache directory is created
+     * and trimmed the first time this is called.
+     *
+     * @param file the image file
+     * @return the cache file, or null if the cache is not available
+     */
+    private synchronized File getCacheFile(File file) {
+        if (directory == null) {
+            directory = new File(UserPreferences.getModel().getScratchDirectory(), "aved-thumbnails");
+
+            if (!directory.exists() &&!directory.mkdirs()) {
+                Logger.getLogger(ImageThumbnailLoader.class.getName()).log(Level.WARNING,
+                                 "Unable to create thumbnail cache {0}", directory);
+            }
+
+            trim(directory);
+        }
+
+        if (!directory.isDirectory()) {
+            return null;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            String        key    = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified() + ":"
+                                   + CACHE_SIZE;
+            byte[]        hash   = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder name   = new StringBuilder(2 * hash.length + EXTENSION.length());
+
+            for (int i = 0; i < hash.length; i++) {
+                name.append(Character.forDigit((hash[i] >> 4) & 0xf, 16));
+                name.append(Character.forDigit(hash[i] & 0xf, 16));
+            }
+
+            return new File(directory, name.append(EXTENSION).toString());
+        } catch (NoSuchAlgorithmException ex) {
+            Logger.getLogger(ImageThumbnailLoader.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (IOException ex) {
+            Logger.getLogger(ImageThumbnailLoader.class.getName()).log(Level.SEVERE, null, ex);
+        }
+
+        return null;
+    }
+
+    /**
+     * Deletes the least recently used thumbnails until the cache is
+     * under three quarters of {@link #MAX_CACHE_BYTES}
+     * @param dir the cache directory
+     */
+    private static void trim(File dir) {
+        File[] files = dir.listFiles();
+
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+
+        for (File f : files) {
+            size += f.length();
+        }
+
+        if (size <= MAX_CACHE_BYTES) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File o1, File o2) {
+                return (o1.lastModified() < o2.lastModified())
+                       ? -1
+                       : ((o1.lastModified() == o2.lastModified())
+                          ? 0
+                          : 1);
+            }
+        });
+
+        for (int i = 0; (i < files.length) && (size > 3 * MAX_CACHE_BYTES / 4); i++) {
+            long length = files[i].length();
+
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    /**
+     * Scales an image to the given size with bilinear interpolation
+     */
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        int           type   = (image.getColorModel().hasAlpha())
+                               ? BufferedImage.TYPE_INT_ARGB
+                               : BufferedImage.TYPE_INT_RGB;
+        BufferedImage scaled = new BufferedImage(width, height, type);
+        Graphics2D    g      = scaled.createGraphics();
+
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+
+        return scaled;
+    }
+}
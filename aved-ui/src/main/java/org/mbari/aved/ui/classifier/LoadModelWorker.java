@@ -29,7 +29,7 @@ package org.mbari.aved.ui.classifier;
 //~--- non-JDK imports --------------------------------------------------------
 
 import org.mbari.aved.classifier.ClassModel;
-import org.mbari.aved.classifier.ClassifierLibraryJNI;
+import org.mbari.aved.classifier.ClassifierLibrary;
 import org.mbari.aved.classifier.TrainingModel;
 import org.mbari.aved.ui.userpreferences.UserPreferences;
 
@@ -53,10 +53,13 @@ public class LoadModelWorker extends ClassifierLibraryJNITask {
     public LoadModelWorker(ClassifierModel model) throws Exception {
         super("");
         this.model = model;
+
+        // The other tasks need the loaded classes, so run this first
+        setPriority(HIGH_PRIORITY);
     }
 
     @Override
-    protected void run(ClassifierLibraryJNI library) {
+    protected void run(ClassifierLibrary library) {
         try {
             model.clear();
             
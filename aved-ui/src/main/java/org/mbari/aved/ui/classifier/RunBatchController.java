@@ -61,21 +61,49 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLDecoder;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.JComboBox;
 import javax.swing.JTable;
+import javax.swing.SwingUtilities;
 import javax.swing.table.TableModel;  
 import org.mbari.aved.ui.utils.URLUtils;
 import org.mbari.aved.ui.utils.VideoUtils;
 
 public class RunBatchController extends AbstractController implements ModelListener {
+
+    /** Number of files imported and transcoded ahead of the classifier */
+    private static final int PREFETCH_FILES = 2;
+
+    /** Files in progress through the pipeline, for cancelling */
+    private final List<BatchItem> activeItems = Collections.synchronizedList(new ArrayList<BatchItem>());
+
+    /** Latches released when a queued classifier task completes, keyed by task id */
+    private final Map<Integer, CountDownLatch> pendingTasks = new ConcurrentHashMap<Integer, CountDownLatch>();
+
+    /**
+     * Locks held from transcoding a video to cleaning it up, keyed by
+     * transcode directory name, since two files from the same video share a
+     * transcode directory
+     */
+    private final Map<String, Semaphore> transcodeLocks = new HashMap<String, Semaphore>();
     private final BatchProcessController controller;
-    private ExportXMLWorker              exportXmlWorker;
-    private ImportXMLWorker              importXmlWorker;
-    private RunWorker                    runClassifierWorker;
-    private VideoTranscodeWorker         transcodeWorker;
+    private volatile boolean             isStopped;
     private final BatchProcessView       view; 
 
     RunBatchController(ClassifierModel model, BatchProcessController controller) {
@@ -108,7 +136,12 @@ public class RunBatchController extends AbstractController implements ModelListe
         return null;
     } 
 
-    private File findTranscodeSource(SummaryModel model) throws Exception {
+    /**
+     * Finds the local video file to transcode for the events, downloading
+     * it to the scratch directory if it is a http url. If the file is not
+     * found, searches for a clip named like the XML file next to it.
+     */
+    static File findTranscodeSource(SummaryModel model) throws Exception {
         URL url = model.getInputSourceURL();
         File file = null;  
 
@@ -117,7 +150,7 @@ public class RunBatchController extends AbstractController implements ModelListe
             // If this is a http url reference and not a local file
             // must download to a local directory for transcoding to 
             // work
-            if (url.getProtocol().startsWith("http:")) {
+            if (url.getProtocol().startsWith("http")) {
                 File tmpDir = UserPreferences.getModel().getScratchDirectory();
 
                 // Initialize the transcoder output directory to be the temporary directory
@@ -139,8 +172,7 @@ public class RunBatchController extends AbstractController implements ModelListe
                 }
 
 
-            } else if (url.getProtocol().startsWith("file:")) {
-                URLUtils.isValidURL(url);
+            } else if (url.getProtocol().startsWith("file")) {
                 file = new File(URLDecoder.decode(url.getFile(), "UTF-8"));
             } else {
                 throw new Exception("Invalid image source: " + url.toString());
@@ -148,9 +180,19 @@ public class RunBatchController extends AbstractController implements ModelListe
 
             if ((file != null) && file.exists()) {
                 return file;
-            } else {
-                throw new Exception("Invalid image source: " + url.toString());
             }
+
+            URL u = VideoUtils.searchImageSource(model.getXmlFile(), url);
+
+            if (u != null) {
+                file = new File(URLDecoder.decode(u.getFile(), "UTF-8"));
+
+                if (file.exists()) {
+                    return file;
+                }
+            }
+
+            throw new Exception("Invalid image source: " + url.toString());
         }
         else {
             throw new Exception("Image source not defined ");
@@ -168,48 +210,122 @@ public class RunBatchController extends AbstractController implements ModelListe
     }
      
     /**
-     * Helper method to reset the batch classification cleanly
-     * 
-     * @param name
-     * @param batch
-     * @param tmodel 
+     * Stops the batch classification, cancelling every file in progress
      */
-    private void reset(String name, BatchProcessModel batch, BatchProcessAbstractTableModel tmodel) {
+    private void stop() {
+        isStopped = true;
 
-        NonModalMessageDialog dialog = new NonModalMessageDialog(getView(),
-                name
-                + " classification stopped");
+        synchronized (activeItems) {
+            for (BatchItem item : activeItems) {
+                item.cancel();
+            }
+        }
 
-        batch.setStatus("Stopped");
-        tmodel.fireTableDataChanged();
-        dialog.setVisible(true);
+        // Release anyone waiting on a classifier task that may never run
+        for (CountDownLatch latch : pendingTasks.values()) {
+            latch.countDown();
+        }
+    }
 
-        if (importXmlWorker != null) {
-            importXmlWorker.cancel(false);
+    /**
+     * Returns the lock for the transcode directory of a video source
+     */
+    private Semaphore getTranscodeLock(File source) {
+        String key = ParseUtils.removeFileExtension(source.getName());
+
+        synchronized (transcodeLocks) {
+            Semaphore lock = transcodeLocks.get(key);
+
+            if (lock == null) {
+                lock = new Semaphore(1);
+                transcodeLocks.put(key, lock);
+            }
+
+            return lock;
         }
+    }
 
-        if (transcodeWorker != null) {
-            transcodeWorker.reset();
-            transcodeWorker = null;
+    /**
+     * A file moving through the batch pipeline and the workers processing it
+     */
+    private class BatchItem {
+        final BatchProcessModel         batch;
+        volatile ExportXMLWorker        exportXmlWorker;
+        volatile ImportXMLWorker        importXmlWorker;
+        boolean                         isReady = false;
+        volatile RunWorker              runClassifierWorker;
+        File                            testingDir;
+        volatile Semaphore              transcodeLock;
+        volatile VideoTranscodeWorker   transcodeWorker;
+
+        BatchItem(BatchProcessModel batch) {
+            this.batch = batch;
         }
 
-        if (runClassifierWorker != null) {
-            runClassifierWorker.setFini();
+        /**
+         * Cancels whichever workers are running for this file
+         */
+        void cancel() {
+            if (importXmlWorker != null) {
+                importXmlWorker.cancel(false);
+            }
+
+            if (transcodeWorker != null) {
+                transcodeWorker.cancel(false);
+                transcodeWorker.reset();
+            }
+
+            if (runClassifierWorker != null) {
+                Classifier.getController().kill(runClassifierWorker);
+            }
+
+            if (exportXmlWorker != null) {
+                exportXmlWorker.cancel(false);
+            }
+        }
+
+        /**
+         * Removes the transcoded frames and releases the transcode directory
+         */
+        void cleanup() {
+            if (transcodeWorker != null) {
+                transcodeWorker.reset();
+                transcodeWorker = null;
+            }
+
+            if (transcodeLock != null) {
+                transcodeLock.release();
+                transcodeLock = null;
+            }
+
+            activeItems.remove(this);
         }
-        
-        // Initialize button states
-        getView().setRunButton(true);
-        getView().setStopButton(false);
     }
-  
-    private class BatchWorker extends SwingWorker {
 
-        final RunBatchController runController;
-        final BatchProcessController batchController;
+    /**
+     * Runs the selected files through a staged pipeline. A pool of
+     * {@link #PREFETCH_FILES} threads imports and transcodes files ahead
+     * of the classifier and hands them over in a bounded queue. This
+     * worker feeds them one at a time to the single classifier engine, and
+     * a single thread exports the results while the next file is
+     * classified.
+     */
+    private class BatchWorker extends SwingWorker {
+        final BatchProcessController         batchController;
+        final float                          minProbThreshold;
+        final VotingMethod                   method;
+        ProgressDisplay                      progressDisplay;
+        final RunBatchController             runController;
+        final BatchProcessAbstractTableModel tmodel;
+        final TrainingModel                  trainingModel;
 
         BatchWorker(RunBatchController runController, BatchProcessController c) {
-            this.runController = runController;
-            this.batchController = c;
+            this.runController    = runController;
+            this.batchController  = c;
+            this.trainingModel    = getTrainingModel();
+            this.method           = getView().getVotingMethod();
+            this.minProbThreshold = getView().getProbabilityThreshold();
+            this.tmodel           = c.getAbstractModel();
         }
 
         @Override
@@ -224,16 +340,11 @@ public class RunBatchController extends AbstractController implements ModelListe
             }
 
             // Initialize variables used in thread
-            final TrainingModel trainingModel = getTrainingModel();
-            final VotingMethod method = getView().getVotingMethod();
-            final float minProbThreshold = getView().getProbabilityThreshold();
-            final BatchProcessAbstractTableModel tmodel = batchController.getAbstractModel();
             final int size = view.getSelectedTable().getRowCount();
-            BufferedReader br = Classifier.getController().getBufferedReader();
 
             final SwingWorker worker = Classifier.getController().getWorker();
 
-            final ProgressDisplay progressDisplay = new ProgressDisplay(worker,
+            progressDisplay = new ProgressDisplay(worker,
                     "Running classifier with training model "
                     + trainingModel.getName());
             
@@ -241,178 +352,316 @@ public class RunBatchController extends AbstractController implements ModelListe
             System.setOut(new PrintStream(progressDisplay, true));
             System.setErr(new PrintStream(progressDisplay, true));
 
-            final ProgressDisplayStream progressDisplayStream =
-                  new ProgressDisplayStream(progressDisplay, br);
-
-            progressDisplayStream.execute();
             progressDisplay.getView().setVisible(true);
 
-            for (int i = 0; i < size; i++) {
-                importXmlWorker = null;
-                transcodeWorker = null;
-                runClassifierWorker = null;
+            isStopped = false;
+
+            final BlockingQueue<BatchItem> readyQueue = new ArrayBlockingQueue<BatchItem>(1);
+            ExecutorService                prepare    = Executors.newFixedThreadPool(PREFETCH_FILES);
+            ThreadPoolExecutor             export     = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                                                            new ArrayBlockingQueue<Runnable>(1),
+                                                            new ThreadPoolExecutor.CallerRunsPolicy());
+            int                            numItems   = 0;
 
+            // Queue the files to import and transcode in table order
+            for (int i = 0; i < size; i++) {
                 BatchProcessModel batch = (BatchProcessModel) tmodel.getValueAt(i, -1);
 
                 if (!batch.getStatus().equals("Done")) {
-                    try {
-                        ApplicationModel model = batch.getModel();
-                        EventListModel list = model.getEventListModel();
-                        File xmlfile = model.getSummaryModel().getXmlFile();
-
-                        // import events xml
-                        importXmlWorker = new ImportXMLWorker(xmlfile, model, runController, progressDisplay);
-                        batch.setStatus("Importing xml...");
-                        tmodel.fireTableDataChanged();
-
-                        importXmlWorker.run();
-
-                        if (importXmlWorker.isCancelled()) {
-                            reset(trainingModel.getName(), batch, tmodel);
-                            progressDisplay.getView().dispose();
-                            return null;
+                    final BatchItem item = new BatchItem(batch);
+
+                    numItems++;
+                    activeItems.add(item);
+                    setStatus(batch, "Waiting...");
+                    prepare.execute(new Runnable() {
+                        public void run() {
+                            prepare(item);
+
+                            try {
+                                readyQueue.put(item);
+                            } catch (InterruptedException ex) {
+                                item.cleanup();
+                            }
                         }
+                    });
+                }
+            }
 
-                        // if no events in this, then just skip
-                        if (list.getSize() > 0) {
+            prepare.shutdown();
 
-                            // transcode
-                            SummaryModel summary = model.getSummaryModel();
+            // Classify the files as they become ready
+            for (int n = 0; (n < numItems) && !isStopped; n++) {
+                final BatchItem item = readyQueue.take();
 
-                            File file = findTranscodeSource(summary); 
+                if (!item.isReady) {
+                    continue;
+                }
 
-                            transcodeWorker = new VideoTranscodeWorker(runController, model, file, progressDisplay);
-                            transcodeWorker.setMaxFrame(importXmlWorker.getMaxEventFrame());
-                            batch.setStatus("Transcoding...");
-                            tmodel.fireTableDataChanged();
-                            transcodeWorker.run();
+                try {
+                    if (!classify(item)) {
+                        stop();
+                        item.cleanup();
 
-                            if (transcodeWorker.isCancelled() || !transcodeWorker.isInitialized()) {
-                                reset(trainingModel.getName(), batch, tmodel);
-                                progressDisplay.getView().dispose();
-                                return null;
-                            }
+                        break;
+                    }
 
-                            // make the test directory  a subdirectory of transcoding.
-                            // Putting this test images in a subdirectory makes for easy deletion later
-                            File s = summary.getFrameSourceDir();
-                            File testingDir = new File(s + "/testimages_" + s.getName());
+                    export.execute(new Runnable() {
+                        public void run() {
+                            export(item);
+                        }
+                    });
+                } catch (Exception ex) {
+                    setStatus(item.batch, "Failed");
+                    item.cleanup();
+                    Logger.getLogger(RunBatchController.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
 
-                            if (!testingDir.exists()) {
-                                testingDir.mkdir();
-                            }
+            export.shutdown();
 
-                            summary.setTestImageDir(testingDir);
+            if (isStopped) {
+                prepare.shutdownNow();
+            }
 
-                            // classify
-                            runClassifierWorker = new RunWorker(trainingModel, minProbThreshold,
-                                    testingDir, list, method, progressDisplay);
-                            batch.setStatus("Classifying...");
-                            tmodel.fireTableDataChanged();
+            export.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            prepare.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
 
-                            Classifier.getController().addQueue(runClassifierWorker);
+            // Clean up any files prepared but not classified
+            for (BatchItem item : readyQueue) {
+                item.cleanup();
+            }
 
-                            while (!runClassifierWorker.isCancelled() && !runClassifierWorker.isFini()) {
-                                try {
-                                    Thread.sleep(3000);
-                                } catch (InterruptedException ex) {
-                                    Logger.getLogger(RunBatchController.class.getName()).log(
-                                            Level.SEVERE, null, ex); 
-                                }
-                            }
+            if (isStopped) {
+                synchronized (activeItems) {
+                    for (BatchItem item : activeItems) {
+                        setStatus(item.batch, "Stopped");
+                    }
+                }
 
-                            if (!runClassifierWorker.isFini()) {
-                                reset(trainingModel.getName(), batch, tmodel);
-                                return null;
-                            }
+                activeItems.clear();
 
-                            TableModel cmTableModel = runClassifierWorker.getTableModel();
-                            int rowCnt = cmTableModel.getRowCount();
+                NonModalMessageDialog dialog = new NonModalMessageDialog(getView(),
+                        trainingModel.getName()
+                        + " classification stopped");
 
-                            // get predicted totals from confusion matrix
-                            for (int j = 0; j < rowCnt - 2; j++) {
-                                batch.setClassTotal(j, cmTableModel.getValueAt(j, 1));
-                            }
+                dialog.setVisible(true);
+            }
 
-                            tmodel.fireTableDataChanged();
-                            batch.setStatus("Export...");
-                            tmodel.fireTableDataChanged();
+            // Reset the user preference
+            UserPreferences.getModel().setAddTrainingImages(isAddTrainingImages);
+            
+            // Close the progress display and reset button states
+            progressDisplay.getView().dispose();
+            getView().setRunButton(true);
+            getView().setStopButton(false);
+            return this;
+        }
 
-                            File exportXmlFile = new File(batchController.getOutputDir() + "/"
-                                    + xmlfile.getName());
+        /**
+         * Sets the status of a file and refreshes the table
+         */
+        private void setStatus(BatchProcessModel batch, String status) {
+            batch.setStatus(status);
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    tmodel.fireTableDataChanged();
+                }
+            });
+        }
 
-                            exportXmlWorker = new ExportXMLWorker(exportXmlFile, runController, summary,
-                                    summary.getEventDataStream());
-                            exportXmlWorker.run();
+        /**
+         * Imports the events and transcodes the video of a file. The
+         * transcode directory stays locked until the file is cleaned up.
+         * Sets <code>item.isReady</code> if the file should be classified.
+         */
+        private void prepare(BatchItem item) {
+            BatchProcessModel batch = item.batch;
 
-                            if (exportXmlWorker.isCancelled()) {
-                                reset(trainingModel.getName(), batch, tmodel);
-                                progressDisplay.getView().dispose();
-                                return null;
-                            }
+            try {
+                ApplicationModel model   = batch.getModel();
+                File             xmlfile = model.getSummaryModel().getXmlFile();
 
-                            String title = ParseUtils.removeFileExtension(xmlfile.getName());
-                            String exportFilename = title + ".xls";
+                if (isStopped) {
+                    return;
+                }
 
-                            RunController.createTableControllerView(exportFilename, getModel(),
-                                    runClassifierWorker.getTableModel(), title, "Confusion Matrix for " + title
-                                    + ", Probability Threshold: " + minProbThreshold + " , Voting Method: "
-                                    + method.name(), false);
+                // import events xml
+                item.importXmlWorker = new ImportXMLWorker(xmlfile, model, runController, progressDisplay);
+                setStatus(batch, "Importing xml...");
+                item.importXmlWorker.run();
 
+                if (item.importXmlWorker.isCancelled() || isStopped) {
+                    stop();
+                    return;
+                }
 
-                            // Save the results of class assignments by events in a xls table
-                            File exportXlsFile =
-                                    new File(exportXmlFile.getParent() + "/"
-                                    + ParseUtils.removeFileExtension(exportXmlFile.getName()) + ".xls");
+                // if no events in this, then just skip
+                if (model.getEventListModel().getSize() == 0) {
+                    setStatus(batch, "Done");
+                    activeItems.remove(item);
+                    return;
+                }
 
-                            // Creates the custom event JTable to customize how the table is rendered
-                            EventTable eventTable = new EventTable();
+                // transcode
+                SummaryModel summary = model.getSummaryModel();
+                File         file    = findTranscodeSource(summary);
 
-                            // Get the row selection model and register this as a selection
-                            // listener so we can translated from the sorted table to the
-                            // real model table.
-                            eventTable.setSelectionModel(model.getListSelectionModel());
+                setStatus(batch, "Waiting to transcode...");
+                item.transcodeLock = getTranscodeLock(file);
+                item.transcodeLock.acquire();
 
-                            EventAbstractTableModel tablemodel =
-                                    new EventAbstractTableModel(model.getEventListModel());
+                if (isStopped) {
+                    item.cleanup();
+                    return;
+                }
 
-                            // Create the sorter and intialize it in the model
-                            TableSorter sorter = new TableSorter(tablemodel.getTableModel());
+                item.transcodeWorker = new VideoTranscodeWorker(runController, model, file, progressDisplay);
+                item.transcodeWorker.setMaxFrame(item.importXmlWorker.getMaxEventFrame());
+                item.transcodeWorker.setEventFrames(item.importXmlWorker.getEventFrames());
+                setStatus(batch, "Transcoding...");
+                item.transcodeWorker.run();
 
-                            // getModel().initializeSorter(sorter);
-                            // Initialize the table headers, so the sorter knows what to sort on
-                            sorter.setTableHeader(eventTable.getTableHeader());
+                if (item.transcodeWorker.isCancelled() || !item.transcodeWorker.isInitialized()) {
+                    stop();
+                    item.cleanup();
+                    return;
+                }
 
-                            // Set the model in the event table
-                            eventTable.setModel(sorter);
-                            exportProcessedResultsAsXls(exportXlsFile, eventTable);
+                // make the test directory  a subdirectory of transcoding.
+                // Putting this test images in a subdirectory makes for easy deletion later
+                File s = summary.getFrameSourceDir();
 
-                            // reset will reset and clear-up any created files
-                            batch.setStatus("Cleanup...");
-                            tmodel.fireTableDataChanged();
-                            transcodeWorker.reset(); 
-                        }
+                item.testingDir = new File(s + "/testimages_" + s.getName());
 
-                        batch.setStatus("Done");
-                        tmodel.fireTableDataChanged();
-                    } catch (Exception ex) {  
-                        batch.setStatus("Failed"); 
-                        Logger.getLogger(RunBatchController.class.getName()).log(Level.SEVERE, null,
-                                ex);
-                    }
+                if (!item.testingDir.exists()) {
+                    item.testingDir.mkdir();
                 }
+
+                summary.setTestImageDir(item.testingDir);
+                setStatus(batch, "Waiting to classify...");
+                item.isReady = true;
+            } catch (InterruptedException ex) {
+                item.cleanup();
+            } catch (Exception ex) {
+                setStatus(batch, "Failed");
+                item.cleanup();
+                Logger.getLogger(RunBatchController.class.getName()).log(Level.SEVERE, null, ex);
             }
-            
+        }
 
-            // Reset the user preference
-            UserPreferences.getModel().setAddTrainingImages(isAddTrainingImages);
-            
-            // Close the progress display and reset button states
-            progressDisplayStream.done();
-            progressDisplay.getView().dispose();
-            getView().setRunButton(true);
-            getView().setStopButton(false);
-            return this;
+        /**
+         * Queues the file with the classifier engine and waits for the
+         * task to complete
+         * @return false if the classifier did not finish
+         */
+        private boolean classify(BatchItem item) throws Exception {
+            EventListModel list  = item.batch.getModel().getEventListModel();
+            CountDownLatch latch = new CountDownLatch(1);
+
+            item.runClassifierWorker = new RunWorker(trainingModel, minProbThreshold, item.testingDir, list, method,
+                    progressDisplay);
+            setStatus(item.batch, "Classifying...");
+
+            // Register for the completion callback before queueing the task
+            pendingTasks.put(item.runClassifierWorker.getId(), latch);
+
+            // Follow the log of the engine the file is classified on
+            ProgressDisplayStream progressDisplayStream = new ProgressDisplayStream(progressDisplay,
+                                                              item.runClassifierWorker.getLog());
+
+            progressDisplayStream.execute();
+
+            try {
+                Classifier.getController().addQueue(item.runClassifierWorker);
+                latch.await();
+            } finally {
+                pendingTasks.remove(item.runClassifierWorker.getId());
+                progressDisplayStream.stop();
+            }
+
+            return item.runClassifierWorker.isFini() && !item.runClassifierWorker.isCancelled() && !isStopped;
+        }
+
+        /**
+         * Exports the classified events to XML and the class assignments
+         * to xls, then cleans up the transcoded frames
+         */
+        private void export(BatchItem item) {
+            BatchProcessModel batch = item.batch;
+
+            try {
+                ApplicationModel model        = batch.getModel();
+                SummaryModel     summary      = model.getSummaryModel();
+                File             xmlfile      = summary.getXmlFile();
+                TableModel       cmTableModel = item.runClassifierWorker.getTableModel();
+                int              rowCnt       = cmTableModel.getRowCount();
+
+                // get predicted totals from confusion matrix
+                for (int j = 0; j < rowCnt - 2; j++) {
+                    batch.setClassTotal(j, cmTableModel.getValueAt(j, 1));
+                }
+
+                setStatus(batch, "Export...");
+
+                File exportXmlFile = new File(batchController.getOutputDir() + "/"
+                        + xmlfile.getName());
+
+                item.exportXmlWorker = new ExportXMLWorker(exportXmlFile, runController, summary,
+                        summary.getEventDataStream());
+                item.exportXmlWorker.run();
+
+                if (item.exportXmlWorker.isCancelled()) {
+                    stop();
+                    item.cleanup();
+                    return;
+                }
+
+                String title = ParseUtils.removeFileExtension(xmlfile.getName());
+                String exportFilename = title + ".xls";
+
+                RunController.createTableControllerView(exportFilename, getModel(),
+                        item.runClassifierWorker.getTableModel(), title, "Confusion Matrix for " + title
+                        + ", Probability Threshold: " + minProbThreshold + " , Voting Method: "
+                        + method.name(), false);
+
+
+                // Save the results of class assignments by events in a xls table
+                File exportXlsFile =
+                        new File(exportXmlFile.getParent() + "/"
+                        + ParseUtils.removeFileExtension(exportXmlFile.getName()) + ".xls");
+
+                // Creates the custom event JTable to customize how the table is rendered
+                EventTable eventTable = new EventTable();
+
+                // Get the row selection model and register this as a selection
+                // listener so we can translated from the sorted table to the
+                // real model table.
+                eventTable.setSelectionModel(model.getListSelectionModel());
+
+                EventAbstractTableModel tablemodel =
+                        new EventAbstractTableModel(model.getEventListModel());
+
+                // Create the sorter and intialize it in the model
+                TableSorter sorter = new TableSorter(tablemodel.getTableModel());
+
+                // getModel().initializeSorter(sorter);
+                // Initialize the table headers, so the sorter knows what to sort on
+                sorter.setTableHeader(eventTable.getTableHeader());
+
+                // Set the model in the event table
+                eventTable.setModel(sorter);
+                exportProcessedResultsAsXls(exportXlsFile, eventTable);
+
+                // reset will reset and clear-up any created files
+                setStatus(batch, "Cleanup...");
+                item.cleanup();
+                setStatus(batch, "Done");
+            } catch (Exception ex) {  
+                setStatus(batch, "Failed"); 
+                item.cleanup();
+                Logger.getLogger(RunBatchController.class.getName()).log(Level.SEVERE, null,
+                        ex);
+            }
         }
     }
 
@@ -486,23 +735,7 @@ public class RunBatchController extends AbstractController implements ModelListe
                 getView().populateTrainingLibraryList(newColorSpace, lastSelection);
             }
         } else if (actionCommand.equals("Stop")) {
-            if (importXmlWorker != null) {
-                importXmlWorker.cancel(false);
-            }
-
-            if (transcodeWorker != null) {
-                transcodeWorker.cancel(false);
-                transcodeWorker.reset();
-            }
-
-            if (runClassifierWorker != null) {
-                Classifier.getController().kill(runClassifierWorker);
-            }
-
-            if (exportXmlWorker != null) {
-                exportXmlWorker.cancel(false);
-            }
-
+            stop();
             getView().setRunButton(true);
             getView().setStopButton(false);
         } else if (actionCommand.equals("availLibraryNameComboBoxChanged")) {  
@@ -522,6 +755,16 @@ public class RunBatchController extends AbstractController implements ModelListe
         if (event instanceof ClassifierModel.ClassifierModelEvent) {
             switch (event.getID()) {
 
+            // Release the batch waiting on this classifier task
+            case ClassifierModel.ClassifierModelEvent.JNI_TASK_COMPLETED :
+                CountDownLatch latch = pendingTasks.get(Integer.valueOf(event.getActionCommand()));
+
+                if (latch != null) {
+                    latch.countDown();
+                }
+
+                break;
+
             // When the database root directory change or the models are updated
             // reset the color space
             case ClassifierModel.ClassifierModelEvent.CLASSIFIER_IMAGE_DIR_MODEL_CHANGED :
@@ -48,7 +48,6 @@ import org.mbari.aved.ui.utils.ParseUtils;
 
 import java.awt.event.ActionEvent;
 
-import java.io.BufferedReader;
 import java.io.File;
 
 import java.util.logging.Level;
@@ -132,9 +131,8 @@ public class RunController extends AbstractController implements ModelListener {
                     task = new RunWorker(trainingModel, minProbThreshold, testDir, eventListModel, method, display);
                     
 
-                    BufferedReader br = Classifier.getController().getBufferedReader();
                     final ProgressDisplayStream matlabDisplayStream = new ProgressDisplayStream(display,
-                            br);
+                            task.getLog());
 
                     matlabDisplayStream.execute();
 
@@ -199,7 +197,7 @@ public class RunController extends AbstractController implements ModelListener {
                                 }
                             }
                             
-                            matlabDisplayStream.done();
+                            matlabDisplayStream.stop();
                         }
                     };
 
@@ -28,18 +28,19 @@ package org.mbari.aved.ui.classifier;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import aved.model.EventObject;
 import java.io.File;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.mbari.aved.classifier.ClassifierLibraryJNI;
+import org.mbari.aved.classifier.ClassifierLibrary;
 import org.mbari.aved.classifier.TrainingModel;
 import org.mbari.aved.ui.classifier.table.TableModel;
-import org.mbari.aved.ui.model.EventImageCache;
 import org.mbari.aved.ui.model.EventImageCacheData;
 import org.mbari.aved.ui.model.EventListModel;
 import org.mbari.aved.ui.model.EventObjectContainer;
+import org.mbari.aved.ui.model.SquaredImageGenerator;
 import org.mbari.aved.ui.progress.AbstractOutputStream;
 
 /**
@@ -65,6 +66,7 @@ public class RunWorker extends ClassifierLibraryJNITask {
         this.testDir          = testDir;
         this.method           = method; 
         this.display          = display;
+        addInput(model.getName());
     }
  
 
@@ -73,69 +75,87 @@ public class RunWorker extends ClassifierLibraryJNITask {
     }
 
     @Override
-    protected void run(ClassifierLibraryJNI library)  {
+    protected void run(ClassifierLibrary library)  {
         try {
-            int size         = eventListModel.getSize();
-            int numEvtImages = 0;
-
-            for (int i = 0; i < size; i++) {
-                EventObjectContainer event = eventListModel.getElementAt(i); 
-                numEvtImages += event.getTtlFrames();
-            }
+            int size = eventListModel.getSize();
 
             if (!testDir.exists()) {
                 testDir.mkdirs();
             }
 
-            display.write("Getting list of files in directory " + testDir.toString());
-            String[] children = testDir.list();
-
-            // if event images are not created already create them
-            // this is a simple test of file number, which may not be accurate
-            // for some special cases.
-            // TODO: match event files names; remove everything else, or some
-            // variant of that to speed-up
+            // Squared images are only created for frames that do not
+            // already have an up to date image, so re-running the
+            // classifier on the same events does not regenerate them
             display.write("Creating squared images of events...");
-            if (numEvtImages != children.length) {
-                deleteDir(testDir);
-                testDir.mkdirs();
 
-                for (int i = 0; i < size; i++) {
-                    EventObjectContainer event = eventListModel.getElementAt(i);
-                    int ttlFrames = event.getTtlFrames();
-                    
-                    for (int j = 0; j < ttlFrames; j++) {
-                        if (isCancelled()) {
-                            return;
-                        }
-                        
-                        int frameNo = event.getIndexedFrame(j);
-                        
-                        EventImageCacheData data = new EventImageCacheData(event);
-
-                        // If the event has a class, then rename
-                        // the event with an appended name - replacing
-                        // all the white spaces with dashes
-                        if (event.getClassName().length() > 0) {
-                            data.initialize(testDir, event.getClassName(), frameNo);
-                        } else {
-                            data.initialize(testDir, "", frameNo);
-                        }
-
-                        EventObject object = event.getEventObject(frameNo);
-
-                        if (object != null) {
-                            if(!EventImageCache.createSquaredImageOfEvent(data, object)) {
-                                display.write("Error creating squared images"); 
-                                setFini();
-                                return;
-                            }
-                                
-                        }
+            Set<String>           eventImages = new HashSet<String>();
+            SquaredImageGenerator generator   = new SquaredImageGenerator() {
+                @Override
+                protected boolean isCancelled() {
+                    return RunWorker.this.isCancelled();
+                }
+            };
+
+            for (int i = 0; i < size; i++) {
+                EventObjectContainer event = eventListModel.getElementAt(i);
+                int ttlFrames = event.getTtlFrames();
+
+                for (int j = 0; j < ttlFrames; j++) {
+                    if (isCancelled()) {
+                        return;
+                    }
+
+                    int frameNo = event.getIndexedFrame(j);
+
+                    EventImageCacheData data = new EventImageCacheData(event);
+
+                    // If the event has a class, then rename
+                    // the event with an appended name - replacing
+                    // all the white spaces with dashes
+                    String append = (event.getClassName().length() > 0) ? event.getClassName() : "";
+
+                    if (!data.initialize(testDir, append, frameNo)) {
+                        continue;
+                    }
+
+                    File file   = data.getImageSource();
+                    File source = event.getFrameSource(frameNo);
+
+                    eventImages.add(file.getName());
+
+                    if (file.exists() && (source != null) && (file.lastModified() >= source.lastModified())) {
+                        continue;
                     }
+
+                    generator.add(event, frameNo, file);
+                }
+            }
+
+            // Decode each frame once and create its images in parallel
+            int created = generator.run();
+
+            if (isCancelled()) {
+                return;
+            }
+
+            if (generator.getError() != null) {
+                Logger.getLogger(RunWorker.class.getName()).log(Level.SEVERE, null, generator.getError());
+                display.write("Error creating squared images"); 
+                setFini();
+                return;
+            }
+
+            // Remove images of events or frames no longer in the list
+            String[] children = testDir.list();
+
+            for (int i = 0; i < children.length; i++) {
+                if (!eventImages.contains(children[i])) {
+                    deleteDir(new File(testDir, children[i]));
                 }
             }
 
+            display.write("Created " + created + " of " + eventImages.size() + " squared images");
+
             String dbRoot = trainingModel.getDatabaseRootdirectory().toString();
 
             // Run test image collection on the data
@@ -0,0 +1,121 @@
+/*
+ * @(#)SharedClassifierLibrary.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.classifier;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import org.mbari.aved.classifier.ClassModel;
+import org.mbari.aved.classifier.ClassifierLibrary;
+import org.mbari.aved.classifier.ColorSpace;
+import org.mbari.aved.classifier.TrainingModel;
+
+/**
+ * Shares one classifier library, e.g. the Matlab library, between several
+ * classifier engines. The Matlab runtime can only run one call at a time,
+ * so every call except <code>set_kill</code> is serialized; a running
+ * call must still be able to be killed. The library is initialized by the
+ * first <code>initLib</code> and closed by the matching last
+ * <code>closeLib</code>.
+ *
+ * @author dcline
+ */
+class SharedClassifierLibrary implements ClassifierLibrary {
+    private final ClassifierLibrary library;
+    private int                     references = 0;
+
+    /**
+     * Constructor
+     * @param library the library to share
+     */
+    SharedClassifierLibrary(ClassifierLibrary library) {
+        this.library = library;
+    }
+
+    public synchronized void initLib(String matlabLogFileName, int nojvm) {
+        if (references++ == 0) {
+            library.initLib(matlabLogFileName, nojvm);
+        }
+    }
+
+    public synchronized void closeLib() {
+        if ((references > 0) && (--references == 0)) {
+            library.closeLib();
+        }
+    }
+
+    public void set_kill(String killFileName, int state) {
+        library.set_kill(killFileName, state);
+    }
+
+    public synchronized void collect_class(String killfile, String rawDirectoryName, String squaredDirectoryName,
+            String classname, String matlabdbDirName, String varsclassname, String description,
+            ColorSpace colorspace) {
+        library.collect_class(killfile, rawDirectoryName, squaredDirectoryName, classname, matlabdbDirName,
+                              varsclassname, description, colorspace);
+    }
+
+    public synchronized void delete_class(String classname, String matlabdbDirName, ColorSpace colorspace) {
+        library.delete_class(classname, matlabdbDirName, colorspace);
+    }
+
+    public synchronized void delete_train_class(String matlabdbDirName, String trainingalias) {
+        library.delete_train_class(matlabdbDirName, trainingalias);
+    }
+
+    public synchronized void collect_tests(String killfile, String testDirName, String matlabdbDirName,
+            ColorSpace colorspace) {
+        library.collect_tests(killfile, testDirName, matlabdbDirName, colorspace);
+    }
+
+    public synchronized void test_class(String killfile, String[] eventfilenames, int[] classindex,
+            float[] probability, String testclassname, String trainingclasses, float minprobthreshold,
+            String matlabdbDirName, ColorSpace colorspace) {
+        library.test_class(killfile, eventfilenames, classindex, probability, testclassname, trainingclasses,
+                           minprobthreshold, matlabdbDirName, colorspace);
+    }
+
+    public synchronized void run_test(String killfile, String[] eventids, int[] majoritywinnerindex,
+                                      int[] probabilitywinnerindex, int[] maxwinnerindex, float[] probability,
+                                      String testclassname, String trainingalias, float minprobthreshold,
+                                      String matlabdbDirName, ColorSpace colorspace) {
+        library.run_test(killfile, eventids, majoritywinnerindex, probabilitywinnerindex, maxwinnerindex,
+                         probability, testclassname, trainingalias, minprobthreshold, matlabdbDirName, colorspace);
+    }
+
+    public synchronized void train_classes(String killfile, String trainingclasses, String trainingalias,
+            String matlabdbDirName, ColorSpace colorspace, String description) {
+        library.train_classes(killfile, trainingclasses, trainingalias, matlabdbDirName, colorspace, description);
+    }
+
+    public synchronized TrainingModel[] get_training_classes(String matlabdbDirName) {
+        return library.get_training_classes(matlabdbDirName);
+    }
+
+    public synchronized ClassModel[] get_collected_classes(String matlabdbDirName) {
+        return library.get_collected_classes(matlabdbDirName);
+    }
+}
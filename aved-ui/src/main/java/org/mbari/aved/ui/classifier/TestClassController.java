@@ -31,7 +31,7 @@ package org.mbari.aved.ui.classifier;
 import org.jdesktop.swingworker.SwingWorker;
 
 import org.mbari.aved.classifier.ClassModel;
-import org.mbari.aved.classifier.ClassifierLibraryJNI;
+import org.mbari.aved.classifier.ClassifierLibrary;
 import org.mbari.aved.classifier.ColorSpace;
 import org.mbari.aved.classifier.TrainingModel;
 import org.mbari.aved.ui.appframework.AbstractController;
@@ -47,8 +47,6 @@ import org.mbari.aved.ui.progress.ProgressDisplayStream;
 
 import java.awt.event.ActionEvent;
 
-import java.io.BufferedReader;
-
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -170,7 +168,6 @@ class TestClassController extends AbstractController implements ModelListener {
 
                             @Override
                             public void run() {
-                                BufferedReader br = Classifier.getController().getBufferedReader();
                                 ProgressDisplay progressDisplay = new ProgressDisplay(worker,
                                         "Testing class " + classModel.getName() + " against "
                                         + trainingModel.getName());
@@ -182,7 +179,7 @@ class TestClassController extends AbstractController implements ModelListener {
                                 System.setErr(new PrintStream(progressDisplay, true));
 
                                 ProgressDisplayStream progressDisplayStream = new ProgressDisplayStream(progressDisplay,
-                                        br);
+                                        task.getLog());
 
                                 progressDisplayStream.execute();
                                 Classifier.getController().addQueue(task);
@@ -200,7 +197,7 @@ class TestClassController extends AbstractController implements ModelListener {
                                 getView().setRunButton(true);
                                 getView().setStopButton(false);
 
-                                progressDisplayStream.done();
+                                progressDisplayStream.stop();
                                 progressDisplay.getView().dispose();
 
                                 if (task.isFini()) {
@@ -285,10 +282,12 @@ class TestClassController extends AbstractController implements ModelListener {
             super(classModel.getName());
             this.classModel    = classModel.copy();
             this.trainingModel = trainingModel.copy();
+            addInput(classModel.getName());
+            addInput(trainingModel.getName());
         }
 
         @Override
-        protected void run(ClassifierLibraryJNI library) {
+        protected void run(ClassifierLibrary library) {
 
             // Get a input stream on the matlab log file to display in
             // the progress display window
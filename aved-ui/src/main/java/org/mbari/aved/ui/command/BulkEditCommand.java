@@ -0,0 +1,127 @@
+/*
+ * @(#)BulkEditCommand.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.command;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import org.mbari.aved.ui.model.BulkEdit;
+import org.mbari.aved.ui.model.EventListModel;
+import org.mbari.aved.ui.model.EventObjectContainer;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.ArrayList;
+
+/**
+ * Applies a {@link BulkEdit} to the model as a single undoable command,
+ * e.g. to relabel or purge thousands of events at once. Subclasses that
+ * operate on the current selection build their edit in
+ * {@link #createEdit(ArrayList)} once they are initialized.
+ *
+ * @author dcline
+ */
+public class BulkEditCommand extends AbstractCommand {
+    private ArrayList<EventObjectContainer> containers;
+    private BulkEdit                        edit;
+    private EventListModel                  model;
+    private Memento                         state;
+
+    /**
+     * Constructor for subclasses that build their edit in
+     * {@link #createEdit(ArrayList)}
+     */
+    protected BulkEditCommand() {}
+
+    /**
+     * Constructor
+     * @param edit the edit to apply
+     * @param model the model
+     */
+    public BulkEditCommand(BulkEdit edit, EventListModel model) {
+        this.edit = edit;
+        initialize(edit.getContainers(), model);
+    }
+
+    /**
+     * Initializer
+     * @param containers the list of <code>EventObjectContainers</code> the edit changes
+     * @param model the model
+     */
+    @Override
+    public void initialize(ArrayList<EventObjectContainer> containers, EventListModel model) {
+        this.model      = model;
+        this.containers = containers;
+
+        // Create a memento for undo
+        state = new Memento();
+    }
+
+    /**
+     * Creates the edit to apply to the containers
+     * @param containers the list of <code>EventObjectContainers</code> to operate on
+     * @return the edit
+     */
+    protected BulkEdit createEdit(ArrayList<EventObjectContainer> containers) {
+        return edit;
+    }
+
+    /**
+     * Applies the edit, saving the containers it changes for undo
+     */
+    @Override
+    public void execute() {
+        if ((containers != null) && (model != null)) {
+
+            // Only the containers already in the model are saved;
+            // anything the edit adds is simply deleted on undo
+            ArrayList<EventObjectContainer> existing = new ArrayList<EventObjectContainer>();
+
+            for (EventObjectContainer c : containers) {
+                int index = model.getIndexOf(c);
+
+                if (index != -1) {
+                    existing.add(model.getElementAt(index));
+                }
+            }
+
+            state.setState(existing);
+            model.apply(createEdit(containers));
+        }
+    }
+
+    /**
+     * Performs the undo to a bulk edit by restoring the original labels,
+     * adding back the deleted <code>EventObjectContainers</code> and
+     * deleting the added ones in one edit
+     */
+    @Override
+    public void unexecute() {
+        if ((state != null) && (model != null)) {
+            state.restore(model, containers);
+        }
+    }
+}
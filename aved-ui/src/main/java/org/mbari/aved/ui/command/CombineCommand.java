@@ -63,7 +63,8 @@ public class CombineCommand extends AbstractCommand {
     @Override
     public void execute() {
         if ((containers != null) && (model != null)) {
-            state.setState(containers);
+            // Combining changes the event objects, so save a copy
+            state.setCopy(containers);
 
             // Combine the EventObjectContainers and get back the result
             newContainer = model.combine(containers);
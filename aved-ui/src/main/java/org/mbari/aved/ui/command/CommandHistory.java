@@ -33,7 +33,7 @@ import java.util.NoSuchElementException;
 
 public class CommandHistory {
     private static final CommandHistory INSTANCE            = new CommandHistory();
-    private static final int            MAX_COMMAND_HISTORY = 5;
+    private static final int            MAX_COMMAND_HISTORY = 50;
     private LinkedList<AbstractCommand> commands            = new LinkedList<AbstractCommand>();
     private int                         lastCommandIndex    = 0;
     private UndoRedoState               state               = UndoRedoState.INIT_STATE;
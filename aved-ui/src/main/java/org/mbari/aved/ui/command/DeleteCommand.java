@@ -28,6 +28,7 @@ package org.mbari.aved.ui.command;
 
 //~--- non-JDK imports --------------------------------------------------------
 
+import org.mbari.aved.ui.model.BulkEdit;
 import org.mbari.aved.ui.model.EventListModel;
 import org.mbari.aved.ui.model.EventObjectContainer;
 
@@ -35,11 +36,7 @@ import org.mbari.aved.ui.model.EventObjectContainer;
 
 import java.util.ArrayList;
 
-public class DeleteCommand extends AbstractCommand {
-    private ArrayList<EventObjectContainer> containers;
-    private EventListModel                  model;
-    private Memento                         state;
-
+public class DeleteCommand extends BulkEditCommand {
     public DeleteCommand() {}
 
     /**
@@ -55,46 +52,12 @@ public class DeleteCommand extends AbstractCommand {
     }
 
     /**
-     * Initializer
+     * Creates the edit that deletes the EventObjectContainers
      * @param containers the list of <code>EventObjectContainers</code> to operate on
-     * @param model the model
-     */
-    @Override
-    public void initialize(ArrayList<EventObjectContainer> containers, EventListModel model) {
-        this.model      = model;
-        this.containers = containers;
-
-        // Create a memento for undo
-        state = new Memento();
-    }
-
-    /**
-     * Deletes the EventObjectContainers
+     * @return the edit
      */
     @Override
-    public void execute() {
-        if ((containers != null) && (model != null)) {
-            state.setState(containers);
-
-            // Delete the EventObjectContainers
-            model.delete(containers);
-        }
-    }
-
-    /**
-     * Performs the undo to a delete command
-     * by adding the containers back into the model
-     */
-    @Override
-    public void unexecute() {
-        if ((state != null) && (model != null)) {
-
-            // Get the containers back
-            ArrayList<EventObjectContainer> c = state.getState();
-
-            // Add back into the model
-            model.add(c);
-            containers = c;
-        }
+    protected BulkEdit createEdit(ArrayList<EventObjectContainer> containers) {
+        return new BulkEdit().delete(containers);
     }
 }
@@ -28,8 +28,9 @@ package org.mbari.aved.ui.command;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import org.mbari.aved.ui.model.EventListModel;
+import org.mbari.aved.ui.model.BulkEdit;
 import org.mbari.aved.ui.model.EventObjectContainer;
+import org.mbari.aved.ui.userpreferences.UserPreferences;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -51,11 +52,19 @@ public class IdCommand extends StringCommand {
      */
     @Override
     public void execute() {
-        super.execute();
 
-        EventListModel                  model     = getModel();
-        ArrayList<EventObjectContainer> container = getContainer();
+        // Add the label to the user preferences
+        UserPreferences.getModel().addIdList(id);
+        super.execute();
+    }
 
-        model.setIdAll(container, id);
+    /**
+     * Creates the edit that assigns the label
+     * @param containers the list of <code>EventObjectContainers</code> to operate on
+     * @return the edit
+     */
+    @Override
+    protected BulkEdit createEdit(ArrayList<EventObjectContainer> containers) {
+        return new BulkEdit().setIdentityReference(containers, id);
     }
 }
@@ -28,21 +28,19 @@ package org.mbari.aved.ui.command;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import org.mbari.aved.ui.model.EventListModel;
+import org.mbari.aved.ui.model.BulkEdit;
 import org.mbari.aved.ui.model.EventObjectContainer;
+import org.mbari.aved.ui.userpreferences.UserPreferences;
 
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.ArrayList; 
 
-public class LabelCommand extends AbstractCommand {
-    private String                          id = "";
-    private String                          className;
-    private ArrayList<EventObjectContainer> containers;
-    private EventListModel                  model;
-    private String                          predictedClassName;
-    private Memento                         state;
-    private String                          tag;
+public class LabelCommand extends BulkEditCommand {
+    private String id = "";
+    private String className;
+    private String predictedClassName;
+    private String tag;
 
     public LabelCommand(String predictedClassName, String className, String tag, String id) {
         this.predictedClassName = predictedClassName;
@@ -67,52 +65,28 @@ public class LabelCommand extends AbstractCommand {
         }
     }
 
-    /**
-     * Initializer
-     * @param containers the list of <code>EventObjectContainers</code> to operate on
-     * @param model the model
-     */
-    @Override
-    public void initialize(ArrayList<EventObjectContainer> containers, EventListModel model) {
-        this.model      = model;
-        this.containers = containers;
-
-        // Create a memento for undo
-        state = new Memento();
-    }
-
     /**
      * Tags the EventObjectContainers
      */
     @Override
     public void execute() {
-        if ((containers != null) && (model != null)) {
-
-            // Get a copy of the original containers
-            state.setState(containers);
-            model.setIdAll(containers, id);
-            model.setClassAll(containers, className);
-            model.setPredictedClass(containers, predictedClassName, 1.0f);
-            model.setTagAll(containers, tag); 
-        }
+
+        // Add the labels to the user preferences
+        UserPreferences.getModel().addIdList(id);
+        UserPreferences.getModel().addClassNameList(className);
+        UserPreferences.getModel().addClassNameList(predictedClassName);
+        UserPreferences.getModel().addTagList(tag);
+        super.execute();
     }
 
     /**
-     * Performs the undo to a id command
-     * by removing the old <code>EventObjectContainers</code>
-     * and replacing with the originals
+     * Creates the edit that applies all the labels at once
+     * @param containers the list of <code>EventObjectContainers</code> to operate on
+     * @return the edit
      */
     @Override
-    public void unexecute() {
-        if ((state != null) && (model != null) && (id != null)) {
-
-            // Get the containers back
-            ArrayList<EventObjectContainer> c = state.getState();
-
-            // Delete then add originals back into the model
-            model.delete(containers);
-            model.add(c);
-            containers = c;
-        }
-    } 
+    protected BulkEdit createEdit(ArrayList<EventObjectContainer> containers) {
+        return new BulkEdit().setIdentityReference(containers, id).setClassName(containers,
+                className).setPredictedClass(containers, predictedClassName, 1.0f).setTag(containers, tag);
+    }
 }
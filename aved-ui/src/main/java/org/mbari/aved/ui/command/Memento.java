@@ -23,36 +23,192 @@
  */
 
 
-
 package org.mbari.aved.ui.command;
 
 //~--- non-JDK imports --------------------------------------------------------
 
+import org.mbari.aved.ui.model.BulkEdit;
+import org.mbari.aved.ui.model.EventListModel;
 import org.mbari.aved.ui.model.EventObjectContainer;
 
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
+/**
+ * Saved state of the <code>EventObjectContainers</code> a command changes,
+ * used to undo the command.
+ *
+ * <p>Most commands only relabel events, so by default only the labels of
+ * each container are recorded, along with a reference to the container
+ * itself. A container that was deleted is not changed by the delete, so
+ * undo simply adds the same container back. Undo only edits the labels
+ * that actually changed, so its cost scales with the change rather than
+ * with the size of the events.
+ *
+ * <p>Commands that rewrite the event objects themselves, e.g. combine,
+ * save a copy of the containers instead with {@link #setCopy}.
+ */
 class Memento {
-    private ArrayList<EventObjectContainer> state = null;
+    private ArrayList<EventObjectContainer> copies = null;
+    private ArrayList<Delta>                deltas = null;
 
     public Memento() {}
 
+    /**
+     * Records the labels of the containers
+     * @param containers the containers the command changes
+     */
     public void setState(ArrayList<EventObjectContainer> containers) {
-        state = new ArrayList<EventObjectContainer>();
+        copies = null;
+        deltas = new ArrayList<Delta>(containers.size());
 
-        Iterator<EventObjectContainer> i = containers.iterator();
+        for (EventObjectContainer c : containers) {
+            deltas.add(new Delta(c));
+        }
+    }
 
-        while (i.hasNext()) {
-            EventObjectContainer e = i.next().clone();
+    /**
+     * Records a copy of the containers, for commands that change the
+     * event objects in the containers
+     * @param containers the containers the command changes
+     */
+    public void setCopy(ArrayList<EventObjectContainer> containers) {
+        deltas = null;
+        copies = new ArrayList<EventObjectContainer>(containers.size());
 
-            state.add(e);
+        for (EventObjectContainer c : containers) {
+            copies.add(c.clone());
         }
     }
 
+    /**
+     * Returns the saved containers; the copies if saved with
+     * {@link #setCopy}, otherwise the original containers
+     * @return the containers
+     */
     public ArrayList<EventObjectContainer> getState() {
+        if (copies != null) {
+            return copies;
+        }
+
+        ArrayList<EventObjectContainer> state = new ArrayList<EventObjectContainer>();
+
+        if (deltas != null) {
+            for (Delta d : deltas) {
+                state.add(d.container);
+            }
+        }
+
         return state;
     }
+
+    /**
+     * Restores the recorded labels and adds back any recorded containers
+     * no longer in the model, in one edit. Containers the command added
+     * that were not recorded are deleted.
+     *
+     * @param model the model to restore
+     * @param added the containers the command added, or null if none
+     */
+    public void restore(EventListModel model, Collection<EventObjectContainer> added) {
+        if (deltas == null) {
+            return;
+        }
+
+        BulkEdit                        edit     = new BulkEdit();
+        ArrayList<EventObjectContainer> deleted  = new ArrayList<EventObjectContainer>();
+        HashSet<Long>                   recorded = new HashSet<Long>();
+
+        for (Delta d : deltas) {
+            recorded.add(d.container.getObjectId());
+        }
+
+        if (added != null) {
+            ArrayList<EventObjectContainer> remove = new ArrayList<EventObjectContainer>();
+
+            for (EventObjectContainer c : added) {
+                if (!recorded.contains(c.getObjectId())) {
+                    remove.add(c);
+                }
+            }
+
+            edit.delete(remove);
+        }
+
+        for (Delta d : deltas) {
+            int j = model.getIndexOf(d.container);
+
+            if (j == -1) {
+                d.container.relink();
+                deleted.add(d.container);
+
+                continue;
+            }
+
+            EventObjectContainer c = model.getElementAt(j);
+
+            List<EventObjectContainer> one = Collections.singletonList(c);
+
+            if (!d.className.equals(c.getClassName())) {
+                edit.setClassName(one, d.className);
+            }
+
+            if (!d.tag.equals(c.getTag())) {
+                edit.setTag(one, d.tag);
+            }
+
+            if (!d.id.equals(c.getIdentityReference())) {
+                edit.setIdentityReference(one, d.id);
+            }
+
+            Float p = c.getPredictedClassProbability();
+
+            if (!d.predictedClassName.equals(c.getPredictedClassName()) || (p == null)
+                    || (p.floatValue() != d.probability)) {
+                edit.setPredictedClass(c, d.predictedClassName, d.probability);
+            }
+        }
+
+        edit.add(deleted);
+
+        if (!edit.isEmpty()) {
+            model.apply(edit);
+        }
+    }
+
+    /**
+     * The labels of a container before a command
+     */
+    private static class Delta {
+        final String               className;
+        final EventObjectContainer container;
+        final String               id;
+        final String               predictedClassName;
+        final float                probability;
+        final String               tag;
+
+        Delta(EventObjectContainer c) {
+            Float p = c.getPredictedClassProbability();
+
+            container          = c;
+            className          = nonNull(c.getClassName());
+            tag                = nonNull(c.getTag());
+            id                 = nonNull(c.getIdentityReference());
+            predictedClassName = nonNull(c.getPredictedClassName());
+            probability        = (p != null)
+                                 ? p.floatValue()
+                                 : 0.f;
+        }
+
+        private static String nonNull(String s) {
+            return (s != null)
+                   ? s
+                   : "";
+        }
+    }
 }
@@ -28,8 +28,9 @@ package org.mbari.aved.ui.command;
 
 //~--- non-JDK imports --------------------------------------------------------
 
-import org.mbari.aved.ui.model.EventListModel;
+import org.mbari.aved.ui.model.BulkEdit;
 import org.mbari.aved.ui.model.EventObjectContainer;
+import org.mbari.aved.ui.userpreferences.UserPreferences;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -53,11 +54,19 @@ public class PredictedClassCommand extends StringCommand {
      */
     @Override
     public void execute() {
-        super.execute();
 
-        EventListModel                  model     = getModel();
-        ArrayList<EventObjectContainer> container = getContainer();
+        // Add the label to the user preferences
+        UserPreferences.getModel().addClassNameList(className);
+        super.execute();
+    }
 
-        model.setPredictedClass(container, className, probability);
+    /**
+     * Creates the edit that assigns the label
+     * @param containers the list of <code>EventObjectContainers</code> to operate on
+     * @return the edit
+     */
+    @Override
+    protected BulkEdit createEdit(ArrayList<EventObjectContainer> containers) {
+        return new BulkEdit().setPredictedClass(containers, className, probability);
     }
 }
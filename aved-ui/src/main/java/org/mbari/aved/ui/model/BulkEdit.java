@@ -0,0 +1,226 @@
+/*
+ * @(#)BulkEdit.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.model;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import aved.model.EventObject;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A set of mutations to apply to an {@link EventListModel} in one
+ * transaction with {@link EventListModel#apply(BulkEdit)}. The edits are
+ * applied under a single lock and listeners receive a single
+ * <code>MULTIPLE_ENTRIES_CHANGED</code> event, regardless of how many
+ * events were changed.
+ *
+ * Containers are matched to the list by object ID, so an edit can be
+ * applied again after its containers have been replaced, e.g. by an undo.
+ *
+ * @author dcline
+ */
+public class BulkEdit {
+    private final ArrayList<Mutation> mutations = new ArrayList<Mutation>();
+
+    /** Types of mutations */
+    enum Type { CLASS_NAME, TAG, IDENTITY_REFERENCE, PREDICTED_CLASS, DELETE, ADD, APPEND }
+
+    public BulkEdit() {}
+
+    /**
+     * Assigns a class to the containers
+     * @param containers the containers to edit
+     * @param className the name of the class to assign
+     * @return this edit
+     */
+    public BulkEdit setClassName(Collection<EventObjectContainer> containers, String className) {
+        for (EventObjectContainer c : containers) {
+            mutations.add(new Mutation(Type.CLASS_NAME, c, className, 0.f));
+        }
+
+        return this;
+    }
+
+    /**
+     * Assigns a tag to the containers
+     * @param containers the containers to edit
+     * @param tag the tag to assign
+     * @return this edit
+     */
+    public BulkEdit setTag(Collection<EventObjectContainer> containers, String tag) {
+        for (EventObjectContainer c : containers) {
+            mutations.add(new Mutation(Type.TAG, c, tag, 0.f));
+        }
+
+        return this;
+    }
+
+    /**
+     * Assigns an identity reference to the containers
+     * @param containers the containers to edit
+     * @param id the identity reference to assign
+     * @return this edit
+     */
+    public BulkEdit setIdentityReference(Collection<EventObjectContainer> containers, String id) {
+        for (EventObjectContainer c : containers) {
+            mutations.add(new Mutation(Type.IDENTITY_REFERENCE, c, id, 0.f));
+        }
+
+        return this;
+    }
+
+    /**
+     * Assigns a predicted class to the containers
+     * @param containers the containers to edit
+     * @param className the name of the predicted class
+     * @param probability the probability of the class assignment
+     * @return this edit
+     */
+    public BulkEdit setPredictedClass(Collection<EventObjectContainer> containers, String className,
+                                      float probability) {
+        for (EventObjectContainer c : containers) {
+            setPredictedClass(c, className, probability);
+        }
+
+        return this;
+    }
+
+    /**
+     * Assigns a predicted class to a single container, e.g. when each
+     * event gets its own prediction from a classifier run
+     * @param container the container to edit
+     * @param className the name of the predicted class
+     * @param probability the probability of the class assignment
+     * @return this edit
+     */
+    public BulkEdit setPredictedClass(EventObjectContainer container, String className, float probability) {
+        mutations.add(new Mutation(Type.PREDICTED_CLASS, container, className, probability));
+
+        return this;
+    }
+
+    /**
+     * Deletes the containers from the list
+     * @param containers the containers to delete
+     * @return this edit
+     */
+    public BulkEdit delete(Collection<EventObjectContainer> containers) {
+        for (EventObjectContainer c : containers) {
+            mutations.add(new Mutation(Type.DELETE, c, null, 0.f));
+        }
+
+        return this;
+    }
+
+    /**
+     * Adds the containers to the list. Containers with an object ID
+     * already in the list are ignored.
+     * @param containers the containers to add
+     * @return this edit
+     */
+    public BulkEdit add(Collection<EventObjectContainer> containers) {
+        for (EventObjectContainer c : containers) {
+            mutations.add(new Mutation(Type.ADD, c, null, 0.f));
+        }
+
+        return this;
+    }
+
+    /**
+     * Adds an event object to a container already in the list, e.g. when
+     * an event is found in frames read after it was added
+     * @param container the container to add to
+     * @param event the event object to add
+     * @return this edit
+     */
+    public BulkEdit append(EventObjectContainer container, EventObject event) {
+        mutations.add(new Mutation(container, event));
+
+        return this;
+    }
+
+    /**
+     * @return the distinct containers this edit changes, in the order
+     * they were first referenced
+     */
+    public ArrayList<EventObjectContainer> getContainers() {
+        LinkedHashMap<Long, EventObjectContainer> map = new LinkedHashMap<Long, EventObjectContainer>();
+
+        for (Mutation m : mutations) {
+            if (!map.containsKey(m.container.getObjectId())) {
+                map.put(m.container.getObjectId(), m.container);
+            }
+        }
+
+        return new ArrayList<EventObjectContainer>(map.values());
+    }
+
+    public boolean isEmpty() {
+        return mutations.isEmpty();
+    }
+
+    public int size() {
+        return mutations.size();
+    }
+
+    List<Mutation> getMutations() {
+        return mutations;
+    }
+
+    /**
+     * A single mutation to a container
+     */
+    static class Mutation {
+        final EventObjectContainer container;
+        final EventObject          event;
+        final float                probability;
+        final Type                 type;
+        final String               value;
+
+        Mutation(Type type, EventObjectContainer container, String value, float probability) {
+            this.type        = type;
+            this.container   = container;
+            this.value       = value;
+            this.probability = probability;
+            this.event       = null;
+        }
+
+        Mutation(EventObjectContainer container, EventObject event) {
+            this.type        = Type.APPEND;
+            this.container   = container;
+            this.value       = null;
+            this.probability = 0.f;
+            this.event       = event;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * @(#)DecodedImageCache.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.model;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import org.mbari.aved.ui.userpreferences.UserPreferences;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.ImageIcon;
+
+/**
+ * Singleton least-recently-used cache of decoded event thumbnails keyed
+ * by object ID. The cache is bounded by a byte budget rather than an
+ * entry count, since event crops vary widely in size. The cropped ppm
+ * files on disk remain the backing store, so an evicted thumbnail is
+ * simply decoded again the next time it is displayed.
+ *
+ * @author dcline
+ */
+public class DecodedImageCache {
+    private static final DecodedImageCache INSTANCE = new DecodedImageCache();
+
+    /** Bytes per pixel assumed for a decoded image */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /** Access-ordered map, eldest entry is the least recently used */
+    private final LinkedHashMap<Long, ImageIcon> map = new LinkedHashMap<Long, ImageIcon>(256, 0.75f, true);
+    private long                                 evictions;
+    private long                                 hits;
+    private long                                 maxBytes;
+    private long                                 misses;
+    private long                                 usedBytes;
+
+    private DecodedImageCache() {
+
+        // The thumbnail budget is split evenly with the ScaledImageCache
+        maxBytes = UserPreferences.getModel().getThumbnailCacheMBytes() * 1024L * 1024L / 2;
+    }
+
+    /**
+     * Get the singleton for this object.
+     * @return the cache
+     */
+    public static DecodedImageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the cached image for an object, or null if it has not been
+     * decoded yet or has been evicted
+     * @param objectId the object ID
+     * @return the image or null
+     */
+    public synchronized ImageIcon get(long objectId) {
+        ImageIcon icon = map.get(objectId);
+
+        if (icon != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+
+        return icon;
+    }
+
+    /**
+     * Adds an image to the cache, evicting the least recently used images
+     * until the cache is within its byte budget
+     * @param objectId the object ID
+     * @param icon the decoded image
+     */
+    public synchronized void put(long objectId, ImageIcon icon) {
+        ImageIcon old = map.put(objectId, icon);
+
+        if (old != null) {
+            usedBytes -= sizeOf(old);
+        }
+
+        usedBytes += sizeOf(icon);
+        evict();
+    }
+
+    /**
+     * Removes the image for an object, e.g. when its best frame changes
+     * @param objectId the object ID
+     */
+    public synchronized void remove(long objectId) {
+        ImageIcon old = map.remove(objectId);
+
+        if (old != null) {
+            usedBytes -= sizeOf(old);
+        }
+    }
+
+    /**
+     * Removes all images from the cache. The counters are left intact.
+     */
+    public synchronized void clear() {
+        map.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Sets the byte budget, evicting images if the cache is now over it
+     * @param bytes the maximum number of bytes of decoded images to keep
+     */
+    public synchronized void setMaxBytes(long bytes) {
+        maxBytes = bytes;
+        evict();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DecodedImageCache images: " + map.size() + " used: " + usedBytes / 1024 + "/" + maxBytes / 1024
+               + " KB hits: " + hits + " misses: " + misses + " evictions: " + evictions;
+    }
+
+    /**
+     * Evicts the least recently used images until within the byte budget.
+     * The most recently added image is always kept.
+     *
+     * Call within block synced by: <code>this</code>
+     */
+    private void evict() {
+        Iterator<Map.Entry<Long, ImageIcon>> i = map.entrySet().iterator();
+
+        while ((usedBytes > maxBytes) && (map.size() > 1) && i.hasNext()) {
+            ImageIcon icon = i.next().getValue();
+
+            i.remove();
+            usedBytes -= sizeOf(icon);
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns the approximate number of bytes used by a decoded image
+     */
+    private static long sizeOf(ImageIcon icon) {
+        return (long) Math.max(icon.getIconWidth(), 0) * Math.max(icon.getIconHeight(), 0) * BYTES_PER_PIXEL;
+    }
+}
@@ -35,16 +35,25 @@ import java.awt.image.Raster;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.metadata.IIOMetadata;
 import org.jdesktop.swingworker.SwingWorker;
-import org.mbari.aved.mbarivision.api.utils.Utils;
+import org.mbari.aved.mbarivision.api.utils.PpmCodec;
 import org.mbari.aved.ui.exceptions.FrameOutRangeException;
 import org.mbari.aved.ui.exceptions.MissingFrameException;
 import org.mbari.aved.ui.utils.ImageMetadata;
@@ -55,22 +64,45 @@ import org.mbari.aved.ui.utils.ImageUtils;
  * the best BufferedImage for each AVED event.
  * Depending on how many images, this can take
  * a long time to load so it's put in a separate
- * SwingWorker class
+ * SwingWorker class. The SwingWorker groups the events
+ * by best frame and decodes each frame once in a
+ * pool of loader threads.
  */
 public class EventImageCache {
 
+    /** Number of threads used to decode and crop frames */
+    static final int NUM_LOADER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * How long to wait before retrying frames that could not be loaded yet,
+     * e.g. while they are being transcoded
+     */
+    static final long RETRY_DELAY_MSECS = 500;
+
     /**
      * Used to kill the SwingWorker
      */
-    boolean                           iKeepRunning       = true;
-    int                               cacheNextIndex     = 0;
+    volatile boolean                  iKeepRunning       = true;
     private List<EventImageCacheData> imageCacheDataList = null;
-    int[]                             indexsToCache      = null;
-    int                               loadingCacheIndex  = 0;
-    int                               loadingIndex       = -1;
-    final String                      syncArrays         = "syncArrays";
-    private ImageLoader               thread             = null;
-    int                               totalLoaded        = 0;
+    private boolean                   loadByFrame        = false;
+
+    /**
+     * True while a loader is running and will still take entries from
+     * <code>queued</code>
+     *
+     *  Call within block synced by: syncArrays
+     */
+    private boolean loading = false;
+
+    /**
+     * Entries added or refreshed since the loader last took them
+     *
+     *  Call within block synced by: syncArrays
+     */
+    private final List<EventImageCacheData> queued      = new ArrayList<EventImageCacheData>();
+    final String                            syncArrays  = "syncArrays";
+    private ImageLoader                     thread      = null;
+    int                                     totalLoaded = 0;
 
     /**
      * Event List model for retrieving event images
@@ -98,16 +130,13 @@ public class EventImageCache {
                 thread.cancel(true);
             }
 
-            cacheNextIndex    = 0;
-            loadingCacheIndex = 0;
-            totalLoaded       = 0;
+            loading     = false;
+            totalLoaded = 0;
+            queued.clear();
 
             if (imageCacheDataList != null) {
                 imageCacheDataList.clear(); 
             }
-
-            loadingIndex  = -1;
-            indexsToCache = null;
         }
     }
 
@@ -122,7 +151,6 @@ public class EventImageCache {
 
                 Logger.getLogger(EventImageCache.class.getName()).log(Level.INFO, null, "Reloading image cache: " + eventListModel.getSize());
                 this.eventListModel = eventListModel;
-                indexsToCache       = new int[eventListModel.getSize()];
 
                 int size = eventListModel.getSize();
 
@@ -136,14 +164,13 @@ public class EventImageCache {
 
                         // Add the new data to my cache
                         imageCacheDataList.add(data);
+                        queued.add(data);
                     }
-                }
 
-                update();
-                iKeepRunning       = true;
-                thread             = new ImageLoader(this, eventListModel);
-                thread.loadByFrame = loadByFrame;
-                thread.execute();
+                    iKeepRunning     = true;
+                    this.loadByFrame = loadByFrame;
+                    startLoader();
+                }
             } else {
                 Logger.getLogger(EventImageCache.class.getName()).log(Level.INFO, null, "Image cache empty - no images to load");
             }
@@ -163,67 +190,103 @@ public class EventImageCache {
     }
 
     /*
-     *  Add cache at index.
+     *  Add cache at index. The image is grabbed by the loader thread,
+     *  which retries it until its frame is available.
      * @param zero-based index to add
      * @param element element to add
      */
-    public void add(int index, EventImageCacheData element) throws MissingFrameException, Exception {
+    public void add(int index, EventImageCacheData element) {
         synchronized (syncArrays) {
             imageCacheDataList.add(index, element);
+            queue(element);
+        }
+    }
+
+    /*
+     *  Grab the image at index again, e.g. when the best frame of its
+     *  event changed. The image is grabbed by the loader thread.
+     * @param zero-based index to grab
+     */
+    public void refresh(int index) {
+        synchronized (syncArrays) {
+            if ((imageCacheDataList == null) || (index < 0) || (index >= imageCacheDataList.size())) {
+                return;
+            }
+
+            queue(imageCacheDataList.get(index));
+        }
+    }
+
+    /**
+     * Queues an entry for the loader, starting a new loader if the last
+     * one has finished, e.g. when events are appended while following
+     * a growing XML file
+     *
+     *  Call within block synced by: syncArrays
+     */
+    private void queue(EventImageCacheData data) {
+        queued.add(data);
 
+        if (!loading && iKeepRunning && (eventListModel != null)) {
             try {
-                grabImage(index);
-            } catch (FrameOutRangeException ex) {
+                startLoader();
+            } catch (Exception ex) {
                 Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex);
-            } 
+            }
         }
     }
 
-    /** Remove cache using an arraylist of indexes */
+    /**
+     * Starts a loader to take the queued entries
+     *
+     *  Call within block synced by: syncArrays
+     */
+    private void startLoader() throws Exception {
+        thread             = new ImageLoader(this, eventListModel);
+        thread.loadByFrame = loadByFrame;
+        loading            = true;
+        thread.execute();
+    }
+
+    /**
+     * Remove cache using an arraylist of indexes. The remaining entries
+     * are compacted in a single pass, so this is linear in the size of
+     * the cache rather than in the product of the two sizes.
+     */
     public void removeIndexes(ArrayList<Integer> l) {
-        iKeepRunning = false;
+        synchronized (syncArrays) {
+            if (imageCacheDataList == null) {
+                return;
+            }
 
-        Iterator<Integer>              i          = l.iterator();
-        ArrayList<EventImageCacheData> collection = new ArrayList<EventImageCacheData>(l.size());
+            int       size   = imageCacheDataList.size();
+            boolean[] remove = new boolean[size];
 
-        synchronized (syncArrays) {
-            try {
-                while (i.hasNext()) {
-                    EventImageCacheData c = imageCacheDataList.get((int) i.next());
+            for (Integer j : l) {
+                if ((j >= 0) && (j < size)) {
+                    remove[j] = true;
+                } else {
+                    Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null,
+                                     "Index out of range: " + j);
+                }
+            }
 
-                    collection.add(c);
+            int k = 0;
+
+            for (int j = 0; j < size; j++) {
+                if (!remove[j]) {
+                    imageCacheDataList.set(k++, imageCacheDataList.get(j));
                 }
-            } catch (IndexOutOfBoundsException exception) {
-                Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, exception.getMessage());
             }
 
-            imageCacheDataList.removeAll(collection);
+            imageCacheDataList.subList(k, size).clear();
         }
 
-        iKeepRunning = true;
-        update();
         Logger.getLogger(EventImageCache.class.getName()).log(Level.INFO, null,
                 "BufferedImageCache removed new size:" + imageCacheDataList.size() 
                 + " collection size:" + l.size());
     }
 
-    void update() {
-
-        // Clear out all the old stuff to cache.
-        synchronized (syncArrays) {
-            for (int i = 0; i < indexsToCache.length; i++) {
-
-                // Negative means don't cache.
-                // so assign an index to cache new images in case
-                // we need to
-                indexsToCache[i] = i;
-            }
-
-            // Reset for the real running loop.
-            cacheNextIndex = 0;
-        }
-    }
-
     /**
      * Creates the best cropped image of an event. Saves the event
      * to a ppm on disk. An exception is thrown if the image file
@@ -234,10 +297,10 @@ public class EventImageCache {
      */
     private boolean createBestCroppedImageOfEvent(EventImageCacheData data)
             throws MissingFrameException, FrameOutRangeException, Exception {
-        BufferedImage original = loadImage(data.getRawImageSource());
+        BufferedImage original = data.getRawImage();
 
         if (original != null) {
-            return createCroppedImageOfEvent(original, data, data.getEvent());
+            return createCroppedImageOfEvent(original, data, data.getEvent()) != null;
         }
 
         return false;
@@ -254,24 +317,25 @@ public class EventImageCache {
      */
     public static boolean createSquaredImageOfEvent(EventImageCacheData data, EventObject evtObj)
             throws MissingFrameException, FrameOutRangeException, Exception {
-        File          source   = data.getRawImageSource();
-        BufferedImage original = loadImage(source);
+        BufferedImage original = data.getRawImage();
 
-         if (createCroppedImageOfEvent(original, data, evtObj)) {
-            try {
-                String imgInFilePath  = data.getImageSource().toString();
-                String imgOutFilePath = imgInFilePath;
-                String ext          = Utils.getExtension(new File(imgInFilePath));
-                
-                ImageUtils.squareImageThumbnail(imgInFilePath, imgOutFilePath, ext);
+        if (original == null) {
+            return false;
+        }
 
-                return true;
-            } catch (Exception ex) {
-                Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex);
-            }
+        File outputFile = data.getImageSource();
+
+        if ((outputFile == null) || (evtObj == null)) {
+            return false;
         }
 
-        return false;
+        // Crop and square in memory and write the result once
+        IIOImage image = cropImageOfEvent(original, evtObj);
+
+        writePpm(new IIOImage(ImageUtils.squareImage((BufferedImage) image.getRenderedImage()), null,
+                              image.getMetadata()), outputFile);
+
+        return true;
     }
 
     /**
@@ -298,7 +362,7 @@ public class EventImageCache {
                 }
 
                 // Load the image that corresponds to the best frame
-                BufferedImage original = ImageIO.read(source); 
+                BufferedImage original = PpmCodec.readImage(source);
 
                 return original;
             } catch (IOException ex) {
@@ -318,228 +382,101 @@ public class EventImageCache {
      * @param original BufferedImage image to crop event image from
      * @param data image cache data to store the image data in
      * @param evtObj Object to crop
-     * @return
+     * @return the cropped image, which is not read back from the file,
+     * or null if it cannot be created
      * @throws org.mbari.aved.ui.exceptions.MissingFrameException
      */
-    public static boolean createCroppedImageOfEvent(BufferedImage original, EventImageCacheData data,
+    public static BufferedImage createCroppedImageOfEvent(BufferedImage original, EventImageCacheData data,
             EventObject evtObj)
             throws MissingFrameException, FrameOutRangeException, Exception {
+        File outputFile = data.getImageSource();
 
-        // Load the image that corresponds to the best frame
-        try {
-            File outputFile = data.getImageSource();
-
-            if (outputFile == null) {
-                return false;
-            } 
-            
-            // If the file already exists, then return
-            if (outputFile.exists()) {
-                return true;
-            }
-            
-            if (evtObj == null) {
-                return false; //should never get here
-            }
-            
-            // Calculate the cropping coordinates from the bounding box
-            BoundingBox b       = evtObj.getBoundingBox(); 
-            
-            int         xorigin = b.getLowerLeftX();
-            int         yorigin = b.getUpperRightY();
-            int         width   = b.getUpperRightX() - b.getLowerLeftX();
-            int         height  = b.getLowerLeftY() - b.getUpperRightY();
-
-            // If the clip bounds are beyond the original image size, adjust
-            if (xorigin + width > original.getWidth()) {
-                width = original.getWidth() - xorigin;
-            }
-
-            if (yorigin + height > original.getHeight()) {
-                height = original.getHeight() - yorigin;
-            }
+        if ((outputFile == null) || (evtObj == null)) {
+            return null;
+        }
 
-            // If width or height is negative, something is wrong. Video
-            // source may be wrong frame size
-            if (width < 0 || height < 0)
-                throw new Exception("Cropped event image width or height negative");
-            
-            // If width or height is zero, adjust to 1 to avoid cropping error
-            if (width == 0) {
-                width = 1;
-            }
+        IIOImage image = cropImageOfEvent(original, evtObj);
 
-            if (height == 0) {
-                height = 1;
-            } 
-             
-            // Create the output image by cropping the input image
-            BufferedImage subImage = original.getSubimage(xorigin, yorigin, width, height); 
-              
-            // Encode size, actual and transposed centroid position into 
-            // white space delimited comment field of ppm file
-            String comment = Integer.toString(evtObj.getCurrSize()) 
-                    + " " + Integer.toString(evtObj.getCurrX())
-                    + " " + Integer.toString(evtObj.getCurrY())
-                    + " " + Integer.toString(evtObj.getCurrX() - xorigin)
-                    + " " + Integer.toString(evtObj.getCurrY() - yorigin);
-            ImageMetadata m = new ImageMetadata(comment);
-            IIOImage image = new IIOImage(subImage, null, null);
-            image.setMetadata(m);
-           
-            Iterator<ImageWriter> writers =  ImageIO.getImageWritersByFormatName("ppm");
-            ImageWriter writer = writers.next();
-            ImageOutputStream ios = ImageIO.createImageOutputStream(outputFile); 
-            writer.setOutput(ios);  
-             
-            if (outputFile != null) {
-                    writer.write(image);   
-                return true;
-            }
-        } catch (Exception ex) {
-            throw ex;
+        // If the file already exists, it is not written again
+        if (!outputFile.exists()) {
+            writePpm(image, outputFile);
         }
 
-        return false;
+        return (BufferedImage) image.getRenderedImage();
     } 
 
-    private int grabEventsByFrame(BufferedImage original, int bestFrame, int index)
-            throws MissingFrameException, FrameOutRangeException, Exception {
-        int numEventsInFrame = 0;
-
-        synchronized (syncArrays) {
-            EventObjectContainer ec = null;
-
-            do {
-                if (index >= eventListModel.getSize()) {
-                    return numEventsInFrame;
-                }
-
-                EventImageCacheData data;
-
-                // Get the EventImageCacheData at this index
-                data = imageCacheDataList.get(index);
-                ec   = data.getEventObjectContainer();
-                File source = new File(ec.getFrameSource(bestFrame).getParent());
+    /**
+     * Crops an event from a frame. The crop is returned with the event
+     * size and centroid position encoded in its comment metadata
+     * @param original the frame to crop the event image from
+     * @param evtObj the event to crop
+     * @return the cropped image and its metadata
+     * @throws Exception if the bounding box does not fit the frame
+     */
+    static IIOImage cropImageOfEvent(BufferedImage original, EventObject evtObj) throws Exception {
+
+        // Calculate the cropping coordinates from the bounding box
+        BoundingBox b       = evtObj.getBoundingBox(); 
+        
+        int         xorigin = b.getLowerLeftX();
+        int         yorigin = b.getUpperRightY();
+        int         width   = b.getUpperRightX() - b.getLowerLeftX();
+        int         height  = b.getLowerLeftY() - b.getUpperRightY();
+
+        // If the clip bounds are beyond the original image size, adjust
+        if (xorigin + width > original.getWidth()) {
+            width = original.getWidth() - xorigin;
+        }
 
-                // If the best frame match, initialize and crop
-                if (ec.getBestEventFrame() == bestFrame) {
-                    data.initialize(source, "" , bestFrame);
-                    ec.setIsBlackChecked();
+        if (yorigin + height > original.getHeight()) {
+            height = original.getHeight() - yorigin;
+        }
 
-                    if (createCroppedImageOfEvent(original, data, data.getEvent())) {
-                        ec.setEventImageCacheData(data);
-                        index++;
-                        numEventsInFrame++;
-                    }
-                } else {
-                    return numEventsInFrame;
-                }
-            } while (ec.getBestEventFrame() == bestFrame);
+        // If width or height is negative, something is wrong. Video
+        // source may be wrong frame size
+        if (width < 0 || height < 0)
+            throw new Exception("Cropped event image width or height negative");
+        
+        // If width or height is zero, adjust to 1 to avoid cropping error
+        if (width == 0) {
+            width = 1;
         }
 
-        return numEventsInFrame;
+        if (height == 0) {
+            height = 1;
+        } 
+         
+        // Create the output image by cropping the input image
+        BufferedImage subImage = original.getSubimage(xorigin, yorigin, width, height); 
+          
+        // Encode size, actual and transposed centroid position into 
+        // white space delimited comment field of ppm file
+        String comment = Integer.toString(evtObj.getCurrSize()) 
+                + " " + Integer.toString(evtObj.getCurrX())
+                + " " + Integer.toString(evtObj.getCurrY())
+                + " " + Integer.toString(evtObj.getCurrX() - xorigin)
+                + " " + Integer.toString(evtObj.getCurrY() - yorigin);
+        ImageMetadata m = new ImageMetadata(comment);
+        IIOImage image = new IIOImage(subImage, null, null);
+        image.setMetadata(m);
+
+        return image;
     }
 
     /**
-     * Grabs image to populate the cache list and given index
-     * @param index
-     * @return false if the index is out of range of the list
-     * or any other exception occurs, otherwise returns true
-     * if found an image to represent the index. Note, this
-     * doesn't not necessary mean that the image is valid. This
-     * could return a default image to give some visual
-     * indication to the user of the error.
-     *
-     *  Call within block synced by: syncArrays
-     *
+     * Writes an image to a ppm file, with the comment of its
+     * {@link ImageMetadata} in the ppm header
+     * @param image the image and its metadata
+     * @param outputFile the file to write to
+     * @throws IOException
      */
-    private boolean grabImage(int index) throws FrameOutRangeException, MissingFrameException, Exception {
-        if (index >= eventListModel.getSize()) {
-            return false;
-        }
-
-        synchronized (syncArrays) {
-            EventImageCacheData data = null;
-            int                 bestFrame = -1;
-
-            try {
+    static void writePpm(IIOImage image, File outputFile) throws IOException {
+        IIOMetadata metadata = image.getMetadata();
+        String      comment  = (metadata instanceof ImageMetadata)
+                               ? ((ImageMetadata) metadata).getComment()
+                               : null;
 
-                // Get the EventImageCacheData at this index
-                data = imageCacheDataList.get(index);
-
-                if (data != null) {
-                    EventObjectContainer ec        = data.getEventObjectContainer();
-                                         bestFrame = ec.getBestEventFrame();
-                    File                    source = new File(ec.getFrameSource(bestFrame).getParent());
-
-                        if (data.initialize(source, "", bestFrame) && createBestCroppedImageOfEvent(data) == true) {
-                        if (ec.isBlackChecked() == false) {
-                            
-                            ec.setIsBlackChecked();
-                            
-                            // Load the image that corresponds to the best frame
-                            BufferedImage original = ImageIO.read(data.getImageSource());
-                            int           mean     = meanValue(original);
-                            int           length   = ec.getEndFrame() - ec.getStartFrame();
-
-                            
-                            System.out.println("Mean: " + mean +
-                              " for ObjectID: " + ec.getObjectId() +
-                              " bestFrame: " + bestFrame);
-                             
-
-                            // If the mean is nearly black, then assume this is a bogus
-                            // image and select the next best frame.
-                            // This may not be true for all cases, but this is true
-                            // for the still-images that are largely black images
-                            if ((mean < 5) && (length > 0)) {
-
-                                // Get the next best frame
-                                int nextBestFrame = ec.findNextBestFrame();
-
-                                if (nextBestFrame != bestFrame) {
-
-                                    // if found a next best frame, reinitialize
-                                    // the EventImageCacheData
-                                    ec.setBestImageFrame(nextBestFrame);
-                                    data.initialize(source, "", nextBestFrame);
-                                    System.out.println("Found alternative best frame" + " for ObjectID: "
-                                                       + ec.getObjectId() + " bestFrame: " + nextBestFrame);
-                                    createBestCroppedImageOfEvent(data);  
-                                    ec.setEventImageCacheData(data);
-
-                                    return true;
-                                }
-                                else if (nextBestFrame == -1) {
-                                    // if no next best frame found, must use this one   
-                                    ec.setBestImageFrame(bestFrame);
-                                    ec.setEventImageCacheData(data);
-                                }
-                            } else {
-                                ec.setEventImageCacheData(data);
-                                return true;
-                            }
-                        } else {
-                            ec.setEventImageCacheData(data);
-                            return true;
-                        }
-                    }
-                }
-            } catch (IOException ex) {
-                Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex);
-            } catch (MissingFrameException e) {
-                 throw e; 
-            } catch (IndexOutOfBoundsException ex) {
-                Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex);
-                return false; 
-            } catch (Exception ex) {
-                Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex); 
-                throw ex; 
-            }
-        }
-
-        return false;
+        PpmCodec.write((BufferedImage) image.getRenderedImage(), comment, outputFile);
     }
 
     /**
@@ -561,137 +498,122 @@ public class EventImageCache {
     }
 
     /**
-     * Grabs and loads events by frame
-     * Returns the number of total loaded
+     * Groups the cache data by best frame so each frame only needs
+     * to be decoded once. The groups are returned in the order the
+     * first event of each frame appears in <code>pending</code>, so
+     * images still load roughly in list order, or in increasing frame
+     * order for frame sources that decode in sequence.
+     *
+     * @param pending the cache data still waiting for an image
+     * @param inFrameOrder if true, return the groups in increasing frame order
+     * @return the cache data grouped by best frame number
      */
-    public int loadNextFrame() {
-        if ((cacheNextIndex < indexsToCache.length) && iKeepRunning) {
-            int           index     = -1;
-            int           bestFrame = -1;
-            BufferedImage original  = null;
-
-            index = indexsToCache[cacheNextIndex];
-
-            
-            System.out.println("EventImageCache total loaded: " + totalLoaded + " total needed:"
-                             + imageCacheDataList.size() + " Indexes to cache: " + indexsToCache.length
-                             + " cacheNextIndex:" + cacheNextIndex);
-             
-            if (index > -1) {
-                synchronized (syncArrays) {
+    static Map<Integer, List<EventImageCacheData>> groupByBestFrame(List<EventImageCacheData> pending,
+            boolean inFrameOrder) {
+        Map<Integer, List<EventImageCacheData>> groups = inFrameOrder
+                ? new TreeMap<Integer, List<EventImageCacheData>>()
+                : new LinkedHashMap<Integer, List<EventImageCacheData>>();
+
+        for (EventImageCacheData data : pending) {
+            Integer                   bestFrame = data.getEventObjectContainer().getBestEventFrame();
+            List<EventImageCacheData> group     = groups.get(bestFrame);
+
+            if (group == null) {
+                group = new ArrayList<EventImageCacheData>();
+                groups.put(bestFrame, group);
+            }
 
-                    // Get the EventImageCacheData at this index
-                    EventImageCacheData data = imageCacheDataList.get(index);
+            group.add(data);
+        }
+
+        return groups;
+    }
 
-                    if (data != null) {
-                        EventObjectContainer ec = data.getEventObjectContainer();
+    /**
+     * Decodes a frame once and crops every event in the group from it.
+     * This runs in a loader pool thread and does not hold
+     * <code>syncArrays</code>; each group owns its cache data so no two
+     * threads touch the same <code>EventObjectContainer</code>.
+     *
+     * @param bestFrame the frame number shared by the group
+     * @param group the cache data whose best frame is <code>bestFrame</code>
+     * @param checkBlack if true, check each new crop for a black image and
+     * fall back to the next best frame as done when loading by event
+     * @return the cache data that were successfully loaded
+     */
+    private List<EventImageCacheData> loadFrameGroup(int bestFrame, List<EventImageCacheData> group,
+            boolean checkBlack) {
+        List<EventImageCacheData> loaded = new ArrayList<EventImageCacheData>(group.size());
 
-                        // initialize a new best frame
-                        if (bestFrame != ec.getBestEventFrame()) {
-                            bestFrame = ec.getBestEventFrame();
-                            original  = loadImage(data.getRawImageSource());
+        if (group.isEmpty() || !iKeepRunning) {
+            return loaded;
+        }
 
-                            if (original != null) {
-                                int i = 0;
+        File rawSource = group.get(0).getEventObjectContainer().getFrameSource(bestFrame);
 
-                                try {
-                                    i = grabEventsByFrame(original, bestFrame, index);
-                                } catch (FrameOutRangeException ex) {}
-                                catch (MissingFrameException ex) {}
-                                catch (Exception ex) {
-                                    Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex);
-                                }
+        if (rawSource == null) {
+            return loaded;
+        }
 
-                                if (i > 0) {
+        BufferedImage original = group.get(0).getEventObjectContainer().getFrame(bestFrame);
 
-                                    // If grabbed all images in frame, increment the loaded count appropriately
-                                    for (int j = 0; j < i; j++) {
-                                        indexsToCache[cacheNextIndex++] = -1;
-                                        totalLoaded++;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        if (original == null) {
+            return loaded;
+        }
 
-            // If loaded all the images then end the SwingWorker
-            if (totalLoaded >= indexsToCache.length) {
-                iKeepRunning   = false;
-                cacheNextIndex = 0;
-            }
+        File source = new File(rawSource.getParent());
 
-            // If exceeded the total to cache and haven't loaded everything
-            // then reset the next index back to zero. This will continue
-            // this threads attempts to load images.
-            if ((cacheNextIndex >= indexsToCache.length) && (totalLoaded < indexsToCache.length)) {
-                iKeepRunning   = true;
-                cacheNextIndex = 0;
+        for (EventImageCacheData data : group) {
+            if (!iKeepRunning) {
+                break;
             }
-        }
 
-        return totalLoaded;
-    }
+            EventObjectContainer ec = data.getEventObjectContainer();
 
-    /**
-     * Grabs and loads the next needed index
-     * Returns the number of total loaded
-     */
-    private int loadNextIndex() throws MissingFrameException, Exception {
-        if ((cacheNextIndex < indexsToCache.length) && iKeepRunning) {
-            int index = -1;
-
-            index = indexsToCache[cacheNextIndex];
-
-            /*
-             * System.out.println("EventImageCache total loaded: " + totalLoaded +
-             *       " total needed:" + imageCacheDataList.size() +
-             *       " Indexes to cache: " + indexsToCache.length +
-             *       " cacheNextIndex:" + cacheNextIndex);
-             */
-            if (index > -1) {
-                synchronized (syncArrays) {
-                    try {
-                        for (int retries = 0; retries < 2; retries++) {
+            try {
+                if (!data.initialize(source, "", bestFrame)) {
+                    continue;
+                }
 
-                            // If grabbed an image, increment the loaded count
-                            if (grabImage(index) == true) {
-                                indexsToCache[cacheNextIndex] = -1;
-                                totalLoaded++;
+                BufferedImage cropped = createCroppedImageOfEvent(original, data, data.getEvent());
 
-                                break;
-                            }
-                        }
-                    } catch (FrameOutRangeException ex) {
-                        Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex);
-                    } catch (Exception ex) {
-                        Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex);
-                        iKeepRunning = false;
-                        return totalLoaded;
-                    }
-                    
+                if (cropped == null) {
+                    continue;
                 }
-            }
 
-            cacheNextIndex++;
-        }
+                if (checkBlack && !ec.isBlackChecked()) {
+                    ec.setIsBlackChecked();
 
-        // If loaded all the images then end the SwingWorker
-        if (totalLoaded >= indexsToCache.length) {
-            iKeepRunning   = false;
-            cacheNextIndex = 0;
-        }
+                    int length = ec.getEndFrame() - ec.getStartFrame();
+
+                    // If the mean is nearly black, then assume this is a bogus
+                    // image and select the next best frame
+                    if ((meanValue(cropped) < 5) && (length > 0)) {
+                        int nextBestFrame = ec.findNextBestFrame();
+
+                        if ((nextBestFrame != -1) && (nextBestFrame != bestFrame)) {
+                            ec.setBestImageFrame(nextBestFrame);
+                            data.initialize(source, "", nextBestFrame);
+                            System.out.println("Found alternative best frame" + " for ObjectID: "
+                                               + ec.getObjectId() + " bestFrame: " + nextBestFrame);
+                            createBestCroppedImageOfEvent(data);
+                        }
+                    }
+                } else if (!checkBlack) {
+                    ec.setIsBlackChecked();
+                }
 
-        // If exceeded the total to cache and haven't loaded everything
-        // then reset the next index back to zero. This will continue
-        // this threads attempts to load images.
-        if ((cacheNextIndex >= indexsToCache.length) && (totalLoaded < indexsToCache.length)) {
-            iKeepRunning   = true;
-            cacheNextIndex = 0;
+                ec.setEventImageCacheData(data);
+                loaded.add(data);
+            } catch (FrameOutRangeException ex) {
+                Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex);
+            } catch (MissingFrameException ex) {}
+            catch (Exception ex) {
+                Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex);
+            }
         }
 
-        return totalLoaded;
+        return loaded;
     }
 
     /**
@@ -769,41 +691,124 @@ public class EventImageCache {
 
         @Override
         protected Void doInBackground() throws Exception {
+            Set<EventImageCacheData> pending = new LinkedHashSet<EventImageCacheData>();
+            int                      ttl     = 0;
+            int                      ttllast = 0;
+
+            ExecutorService executor   = null;
+            boolean         sequential = false;
 
-            /*
-             *  Runnable implementation
-             */
-            if (cache != null) {
-                int ttl        = cache.size();
-                int ttllast    = 0;
-                
-                // every 10 loads update the view
-                int refreshcnt = ((ttl > 10)
-                                  ? 10
-                                  : ttl);
-
-                while (cache.iKeepRunning) {
-                    try {
-                        int totalLoaded = 0;
-
-                        if (loadByFrame) {
-                            totalLoaded = cache.loadNextFrame();
-                        } else {
-                            totalLoaded = cache.loadNextIndex();
+            try {
+                while (cache.iKeepRunning && !isCancelled()) {
+
+                    // Take the entries added or refreshed since the last pass,
+                    // e.g. events appended while following a growing XML file
+                    synchronized (syncArrays) {
+                        for (EventImageCacheData data : queued) {
+                            if (pending.add(data)) {
+                                ttl++;
+                            }
                         }
 
-                        if ((totalLoaded - ttllast > refreshcnt) || (totalLoaded == ttl)) {
-                            publish(new ImageLoadStats(totalLoaded, ttl));
-                            ttllast = totalLoaded;
+                        queued.clear();
+
+                        if (pending.isEmpty()) {
+                            if (thread == this) {
+                                loading = false;
+                            }
+
+                            break;
+                        }
+                    }
+
+                    EventImageCacheData first = pending.iterator().next();
+
+                    // Once the frame source is complete, this pass is the last;
+                    // frames still missing after it will never appear
+                    boolean lastPass = first.getEventObjectContainer().isFrameSourceComplete();
+
+                    // A sequential frame source, e.g. decoding on demand, restarts
+                    // its decoder when frames are requested out of order, so its
+                    // frames are decoded in increasing order by a single thread.
+                    // The source is checked each pass as it is set once the
+                    // transcoder starts.
+                    boolean s = first.getEventObjectContainer().isFrameSourceSequential();
+
+                    if ((executor == null) || (s != sequential)) {
+                        if (executor != null) {
+                            executor.shutdown();
                         }
 
-                        if (totalLoaded == ttl) {
+                        // Only as many frames as there are threads are held decoded at once
+                        sequential = s;
+                        executor   = Executors.newFixedThreadPool(sequential ? 1 : NUM_LOADER_THREADS);
+                    }
+
+                    Map<Integer, List<EventImageCacheData>> groups =
+                        groupByBestFrame(new ArrayList<EventImageCacheData>(pending), sequential);
+                    CompletionService<List<EventImageCacheData>> done =
+                        new ExecutorCompletionService<List<EventImageCacheData>>(executor);
+
+                    for (Map.Entry<Integer, List<EventImageCacheData>> entry : groups.entrySet()) {
+                        final int                       bestFrame = entry.getKey();
+                        final List<EventImageCacheData> group     = entry.getValue();
+
+                        done.submit(new Callable<List<EventImageCacheData>>() {
+                            public List<EventImageCacheData> call() {
+                                return loadFrameGroup(bestFrame, group, !loadByFrame);
+                            }
+                        });
+                    }
+
+                    Set<EventImageCacheData> loaded = new HashSet<EventImageCacheData>();
+                    int                      base   = ttl - pending.size();
+
+                    for (int i = 0; i < groups.size(); i++) {
+                        try {
+                            loaded.addAll(done.take().get());
+                        } catch (ExecutionException ex) {
+                            Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, ex);
+                        }
+
+                        if (!cache.iKeepRunning) {
                             return null;
                         }
-                    } catch (Exception e) {
-                        cache.iKeepRunning = false;
-                        Logger.getLogger(EventImageCache.class.getName()).log(Level.SEVERE, null, e);
-                        break;
+
+                        totalLoaded = base + loaded.size();
+
+                        // every 10 loads update the view
+                        if ((totalLoaded - ttllast > 10) || (totalLoaded == ttl)) {
+                            publish(new ImageLoadStats(totalLoaded, ttl));
+                            ttllast = totalLoaded;
+                        }
+                    }
+
+                    // Keep whatever is left, e.g. frames still being transcoded,
+                    // and try those again after a short wait
+                    pending.removeAll(loaded);
+
+                    // Leave the rest with the missing image, e.g. frames outside
+                    // the transcoded range or that could not be decoded
+                    if (lastPass && !pending.isEmpty()) {
+                        Logger.getLogger(EventImageCache.class.getName()).log(Level.INFO,
+                                         "No frame found for {0} event images", pending.size());
+                        publish(new ImageLoadStats(totalLoaded, ttl));
+                        pending.clear();
+                    } else if (!pending.isEmpty() && loaded.isEmpty()) {
+                        Thread.sleep(RETRY_DELAY_MSECS);
+                    }
+                }
+            } catch (InterruptedException ex) {
+
+                // cancelled by reset()
+            } finally {
+                if (executor != null) {
+                    executor.shutdownNow();
+                }
+
+                synchronized (syncArrays) {
+                    if (thread == this) {
+                        loading = false;
                     }
                 }
             }
@@ -35,22 +35,26 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
+import org.mbari.aved.mbarivision.api.utils.PpmCodec;
 import org.mbari.aved.mbarivision.api.utils.Utils;
 import org.mbari.aved.ui.exceptions.FrameOutRangeException;
 
 /**
- * Container images of AVED Events.
+ * Container images of AVED Events. The decoded image is held in the
+ * bounded {@link DecodedImageCache} rather than here, so it may be
+ * dropped and decoded again from the cropped image file on demand.
  *
  * @author dcline
  */
 public class EventImageCacheData {
     private File                 eventImageFile;
     private EventObjectContainer eventObjectContainer;
-    private ImageIcon            imageIcon;
-    private ImageIcon            missingImageIcon;
+    private static ImageIcon     missingImageIcon;
     private static String        evtStem = "zevt";
+
+    /** True if the last attempt to decode found no valid image file */
+    private volatile boolean     missing;
     
     /**
      * Default constructor. Throws exception if a valid
@@ -91,14 +95,24 @@ public class EventImageCacheData {
 
             eventObjectContainer.setBestImageFrame(bestFrameNo);
 
-            if ((rootDirectory != null) && (rootDirectory.exists())
-                    && (source != null) && (append != null) && source.exists()) {
+            // Frames decoded on demand are never written to frame files
+            if ((rootDirectory != null) && (rootDirectory.exists()) && (source != null) && (append != null)
+                    && (source.exists() || eventObjectContainer.isFrameSourceSequential())) {
                 String filename = String.format("%s/%s%06d%s%s.ppm", rootDirectory,
                                                 evtStem,
                                                 eventObjectContainer.getObjectId(),
                                                 Utils.getNameWithoutExtension(source), append);
 
-                eventImageFile = new File(filename);
+                File file = new File(filename);
+
+                // A different best frame means the decoded image is stale
+                if (!file.equals(eventImageFile)) {
+                    DecodedImageCache.getInstance().remove(getObjectId());
+                    ScaledImageCache.getInstance().remove(getObjectId());
+                }
+
+                eventImageFile = file;
+                missing        = false;
 
                 //System.out.println("###DEBUG initializing object " +
                 //filename + " " + Long.toString(getObjectId()) + "/" + this.toString());
@@ -139,24 +153,52 @@ public class EventImageCacheData {
      * @return the ImageIcon.
      */
     public ImageIcon getImage() {
+        DecodedImageCache cache     = DecodedImageCache.getInstance();
+        ImageIcon         imageIcon = cache.get(getObjectId());
+
         if (imageIcon == null) {
             if (isValidImageFile()) {
                 try {
-                    BufferedImage image = ImageIO.read(eventImageFile);
-                    imageIcon = new ImageIcon(image);
+                    BufferedImage image = PpmCodec.readImage(eventImageFile);
+
+                    if (image != null) {
+                        imageIcon = new ImageIcon(image);
+                        cache.put(getObjectId(), imageIcon);
+                    }
                 } catch (IOException ex) {
                     Logger.getLogger(EventImageCacheData.class.getName()).log(Level.SEVERE, null, ex);
                 }
 
+                missing = (imageIcon == null);
+
                 return imageIcon;
             }
         } else {
             return imageIcon;
         }
 
+        missing = true;
+
         return missingImageIcon;
     }
 
+    /**
+     * Returns the image contained in this class only if it has already been
+     * decoded, so it can be called on the Event Dispatch Thread without
+     * reading the image file.
+     * @return the ImageIcon, the missing image if the last decode found no
+     * valid image file, or null if the image has not been decoded yet
+     */
+    public ImageIcon getLoadedImage() {
+        ImageIcon imageIcon = DecodedImageCache.getInstance().get(getObjectId());
+
+        if (imageIcon == null && missing) {
+            return missingImageIcon;
+        }
+
+        return imageIcon;
+    }
+
     /**
      * Returns the event object that corresponds to this thumbanil
      * @return best event object
@@ -188,6 +230,14 @@ public class EventImageCacheData {
         return eventImageFile;
     }
 
+    /**
+     * Returns the decoded raw image from which this thumbnail comes
+     * @return the raw image or null if none found.
+     */
+    public BufferedImage getRawImage() {
+        return eventObjectContainer.getFrame(eventObjectContainer.getBestEventFrame());
+    }
+
     /**
      * Returns the raw image source from which this thumbnail came from
      * @return the raw image source name or null if none found.
@@ -32,16 +32,19 @@ import aved.model.EventObject;
 
 import org.mbari.aved.ui.appframework.AbstractModel;
 import org.mbari.aved.ui.appframework.ModelEvent;
+import org.mbari.aved.ui.appframework.ModelEventDispatcher;
 import org.mbari.aved.ui.exceptions.FrameOutRangeException;
 import org.mbari.aved.ui.userpreferences.UserPreferences;
 
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
-import java.util.ListIterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,8 +61,12 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
     /** Jump to index value */
     private int jumpToIndex = 0;
 
-    /** Contains EventObjects to edit */
-    private LinkedList<EventObjectContainer> list = new LinkedList<EventObjectContainer>();
+    /**
+     * Contains EventObjects to edit. This is kept sorted by increasing
+     * object ID, so it doubles as the object ID to index map through
+     * a binary search in {@link #indexOfId(long)}
+     */
+    private ArrayList<EventObjectContainer> list = new ArrayList<EventObjectContainer>();
 
     /** Used in BoundedRangeModel logic. This is used by the scroller. */
     private boolean isBoundedRangeModelValueIsAdjusting = false;
@@ -70,11 +77,138 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
     /** Sync for this list */
     private final String syncList = "syncList";
 
+    /**
+     * Counts the changes that moved entries in the list, so a queued event
+     * can tell if its indexes are still current.
+     * Call within block synced by: <code>syncList</code>
+     */
+    private int version = 0;
+
+    /**
+     * The version of the list the listeners last had to redraw in whole.
+     * Call within block synced by: <code>syncList</code>
+     */
+    private int redrawnVersion = -1;
+
     /**
      * Default constructor
      */
     public void EventListModel() {}
 
+    /**
+     * Creates an empty list. Events are delivered to the listeners on the
+     * Event Dispatch Thread, since the image loaders and import workers
+     * change the list from background threads.
+     */
+    public EventListModel() {
+        setDispatcher(ModelEventDispatcher.getEdtDispatcher());
+    }
+
+    /**
+     * Merges bursts of events sent from background threads. Only the
+     * latest count of loaded images is of interest, and consecutive
+     * changes to the list are sent as one change of all their entries,
+     * whose indexes are looked up in {@link #resolve(ModelEvent)}.
+     */
+    @Override
+    protected ModelEvent coalesce(ModelEvent queued, ModelEvent next) {
+        if (queued.getID() != next.getID()) {
+            return null;
+        }
+
+        switch (next.getID()) {
+        case EventListModelEvent.NUM_LOADED_IMAGES_CHANGED :
+            return next;
+
+        case EventListModelEvent.MULTIPLE_ENTRIES_CHANGED :
+            LinkedHashSet<Long> ids = new LinkedHashSet<Long>(((EventListModelEvent) queued).getObjectIds());
+
+            ids.addAll(((EventListModelEvent) next).getObjectIds());
+
+            // No version, so the indexes are looked up when delivered
+            EventListModelEvent merged = new EventListModelEvent(this,
+                                             EventListModelEvent.MULTIPLE_ENTRIES_CHANGED,
+                                             new ArrayList<Long>(ids), new BitSet());
+
+            merged.rowsAddedOrRemoved = ((EventListModelEvent) queued).rowsAddedOrRemoved
+                                        || ((EventListModelEvent) next).rowsAddedOrRemoved;
+
+            return merged;
+
+        default :
+            return null;
+        }
+    }
+
+    /**
+     * Brings the indexes in an event up to date with the list before it is
+     * delivered, since the list may have changed while it was queued. The
+     * indexes of changed entries are looked up again from their object IDs.
+     * A removed entry is no longer in the list, so its index is dropped and
+     * listeners redraw the list in whole.
+     */
+    @Override
+    protected ModelEvent resolve(ModelEvent event) {
+        if (!(event instanceof EventListModelEvent)) {
+            return event;
+        }
+
+        EventListModelEvent e = (EventListModelEvent) event;
+
+        switch (e.getID()) {
+        case EventListModelEvent.ONE_ENTRY_REMOVED :
+            synchronized (syncList) {
+                if ((e.listVersion == version) && (redrawnVersion != version)) {
+                    return e;
+                }
+
+                redrawnVersion = version;
+            }
+
+            return new EventListModelEvent(this, EventListModelEvent.ONE_ENTRY_REMOVED, e.getObjectIds(),
+                                           new BitSet());
+
+        case EventListModelEvent.MULTIPLE_ENTRIES_CHANGED :
+            BitSet indexes = new BitSet();
+
+            synchronized (syncList) {
+                if (e.listVersion == version) {
+                    return e;
+                }
+
+                for (Long id : e.getObjectIds()) {
+                    int index = indexOfId(id);
+
+                    if (index >= 0) {
+                        indexes.set(index);
+                    }
+                }
+
+                EventListModelEvent resolved = new EventListModelEvent(this,
+                                                   EventListModelEvent.MULTIPLE_ENTRIES_CHANGED,
+                                                   e.getObjectIds(), indexes);
+
+                resolved.listVersion        = version;
+                resolved.rowsAddedOrRemoved = e.rowsAddedOrRemoved;
+
+                return resolved;
+            }
+
+        default :
+            return event;
+        }
+    }
+
+    /**
+     * Sends an event whose indexes are those of the given version of the list
+     * @param event the event
+     * @param listVersion the version of the list
+     */
+    private void notifyChanged(EventListModelEvent event, int listVersion) {
+        event.listVersion = listVersion;
+        notifyChanged(event);
+    }
+
     /**
      * @return a reference to the image cache associated with this list
      */
@@ -101,13 +235,16 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
         }
 
         imageCache = null; 
+
+        // drop the decoded thumbnails; they are reloaded from disk on demand
+        Logger.getLogger(EventListModel.class.getName()).log(Level.INFO, DecodedImageCache.getInstance().toString());
+        DecodedImageCache.getInstance().clear();
+        ScaledImageCache.getInstance().clear();
         
          // clear the image cache reference
         synchronized (syncList) { 
 
-            ListIterator<EventObjectContainer> itr = list.listIterator();
-            while(itr.hasNext()) {
-                EventObjectContainer ec = itr.next();
+            for (EventObjectContainer ec : list) {
                 ec.clearEventImageCache();
             }
         }
@@ -126,15 +263,14 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
         // clear the image cache reference
         synchronized (syncList) { 
 
-            ListIterator<EventObjectContainer> itr = list.listIterator();
-            while(itr.hasNext()) {
-                EventObjectContainer ec = itr.next();
+            for (EventObjectContainer ec : list) {
                 ec.cleanup();
             }
         }
         
         synchronized (syncList) {
             list.clear();
+            version++;
         }
 
         // Run the garbage collector
@@ -151,16 +287,19 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
      *  Call within block synced by: <code>syncList</code>
      */
     public void deleteElement(EventObjectContainer myEvent) {
-        long id    = -1;
-        int  index = -1;
+        long id          = -1;
+        int  index       = -1;
+        int  listVersion = -1;
 
         synchronized (syncList) {
-            if (list.contains(myEvent)) {
+            index = indexOf(myEvent);
+
+            if (index != -1) {
 
-                // Get the id and index before deleting
-                id    = myEvent.getObjectId();
-                index = list.indexOf(myEvent);
-                list.remove(myEvent);
+                // Get the id before deleting
+                id = myEvent.getObjectId();
+                list.remove(index);
+                listVersion = ++version;
                 myEvent.cleanup();
 
                 if ((imageCache != null) && (index != -1)) {
@@ -169,11 +308,9 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
             }
         }
 
-        // Run the garbage collector
-        Runtime.getRuntime().gc();
-
         if ((id != -1) && (index != -1)) {
-            notifyChanged(new EventListModelEvent(this, EventListModelEvent.ONE_ENTRY_REMOVED, id, index));
+            notifyChanged(new EventListModelEvent(this, EventListModelEvent.ONE_ENTRY_REMOVED, id, index),
+                          listVersion);
         }
     }
 
@@ -193,8 +330,101 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
      */
     public int getIndexOf(EventObjectContainer event) {
         synchronized (syncList) {
-            return list.indexOf(event);
+            return indexOf(event);
+        }
+    }
+
+    /**
+     * Returns the index in this list of the event with the given object ID
+     *
+     * @param objectId the object ID to search for
+     * @return the index or -1 if the list does not contain the object ID
+     */
+    public int getIndexOfObjectId(long objectId) {
+        synchronized (syncList) {
+            int index = indexOfId(objectId);
+
+            return (index >= 0)
+                   ? index
+                   : -1;
+        }
+    }
+
+    /**
+     * Binary search for an object ID in the list.
+     *
+     *  Call within block synced by: <code>syncList</code>
+     *
+     * @param objectId the object ID to search for
+     * @return the index of the object ID, otherwise
+     * <tt>(-(<i>insertion point</i>) - 1)</tt> as in
+     * {@link Collections#binarySearch(java.util.List, Object)}
+     */
+    private int indexOfId(long objectId) {
+        int low  = 0;
+        int high = list.size() - 1;
+
+        while (low <= high) {
+            int  mid   = (low + high) >>> 1;
+            long midId = list.get(mid).getObjectId();
+
+            if (midId < objectId) {
+                low = mid + 1;
+            } else if (midId > objectId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the index of the event in this list
+     *
+     *  Call within block synced by: <code>syncList</code>
+     *
+     * @param event element to search for
+     * @return the index or -1 if the list does not contain the element
+     */
+    private int indexOf(EventObjectContainer event) {
+        if (event == null) {
+            return -1;
+        }
+
+        int index = indexOfId(event.getObjectId());
+
+        return (index >= 0)
+               ? index
+               : -1;
+    }
+
+    /**
+     * Removes the elements at the given indexes in a single pass
+     *
+     *  Call within block synced by: <code>syncList</code>
+     *
+     * @param indexes the zero based indexes to remove
+     */
+    private void removeIndexes(ArrayList<Integer> indexes) {
+        boolean[] remove = new boolean[list.size()];
+
+        for (Integer j : indexes) {
+            if ((j >= 0) && (j < remove.length)) {
+                remove[j] = true;
+            }
         }
+
+        int k = 0;
+
+        for (int j = 0; j < remove.length; j++) {
+            if (!remove[j]) {
+                list.set(k++, list.get(j));
+            }
+        }
+
+        list.subList(k, list.size()).clear();
     }
 
     /**
@@ -207,7 +437,7 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
      */
     public EventObjectContainer getElementNextTo(EventObjectContainer event) {
         synchronized (syncList) {
-            int index = list.indexOf(event);
+            int index = indexOf(event);
 
             if ((index >= 0) && (++index < list.size())) {
                 return list.get(index);
@@ -227,7 +457,7 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
      */
     public EventObjectContainer getElementPrevTo(EventObjectContainer event) {
         synchronized (syncList) {
-            int index = list.indexOf(event);
+            int index = indexOf(event);
 
             if (--index >= 0) {
                 return list.get(index);
@@ -245,7 +475,8 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
      * @param index the zero based index to delete
      */
     public void delete(int index) {
-        long id = -1;
+        long id          = -1;
+        int  listVersion = -1;
 
         synchronized (syncList) {
             if (index >= list.size()) {
@@ -265,6 +496,7 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
 
             // Remove the container from the linked list
             list.remove(index);
+            listVersion = ++version;
 
             // Remove the image cache at index
             if (imageCache != null) {
@@ -272,11 +504,9 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
             }
         }
 
-        // Run the garbage collector
-        Runtime.getRuntime().gc();
-
         // Send model event
-        notifyChanged(new EventListModelEvent(this, EventListModelEvent.ONE_ENTRY_REMOVED, id, index));
+        notifyChanged(new EventListModelEvent(this, EventListModelEvent.ONE_ENTRY_REMOVED, id, index),
+                      listVersion);
     }
 
     /**
@@ -294,11 +524,13 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
         Iterator<EventObjectContainer> i       = containers.iterator();
         ArrayList<Integer>             indexes = new ArrayList<Integer>();
 
-        while (i.hasNext()) {
-            int k = list.indexOf(i.next());
+        synchronized (syncList) {
+            while (i.hasNext()) {
+                int k = indexOf(i.next());
 
-            if (k >= 0) {
-                indexes.add(new Integer(k));
+                if (k >= 0) {
+                    indexes.add(new Integer(k));
+                }
             }
         }
 
@@ -427,355 +659,308 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
     /**
      * Adds identifiers to elements in this list model
      *
-     *  Call within block synced by: <code>syncList</code>
-     *
      * @param containers the EventObjectContainers to add identifiers to
      * @param id the name of the identifier to assign
      */
     public void setIdAll(ArrayList<EventObjectContainer> containers, String id) {
-        Iterator<EventObjectContainer> iIter     = containers.iterator();
-        ArrayList<Long>                objectIds = new ArrayList<Long>();
-        ArrayList<Integer>             indexes   = new ArrayList<Integer>();
 
         // Add the id to the user preferences
         UserPreferences.getModel().addIdList(id);
-
-        synchronized (syncList) {
-            while (iIter.hasNext()) {
-                try {
-                    EventObjectContainer c = iIter.next();
-                    int                  j = list.indexOf(c);
-
-                    if (j != -1) {
-
-                        // Add the event id to the ID list
-                        objectIds.add(new Long(c.getObjectId()));
-                        indexes.add(new Integer(j));
-                        System.out.println("Identity reference for Object ID: " + c.getObjectId() + " is " + id);
-                        c.setIdentityReference(id);
-                    }
-                } catch (IndexOutOfBoundsException e) {}
-            }
-        }
-
-        // Send model event
-        notifyChanged(new EventListModelEvent(this, EventListModelEvent.MULTIPLE_ENTRIES_CHANGED, objectIds, indexes));
+        apply(new BulkEdit().setIdentityReference(containers, id));
     }
 
     /**
      * Adds tags to elements in this list model
      *
-     *  Call within block synced by: <code>syncList</code>
-     *
      * @param containers the EventObjectContainers to add tags to
      * @param tag the name of the tag to assign
      */
     public void setTagAll(ArrayList<EventObjectContainer> containers, String tag) {
-        Iterator<EventObjectContainer> iIter     = containers.iterator();
-        ArrayList<Long>                objectIds = new ArrayList<Long>();
-        ArrayList<Integer>             indexes   = new ArrayList<Integer>();
 
         // Add the tag to the user preferences
         UserPreferences.getModel().addTagList(tag);
-
-        synchronized (syncList) {
-            while (iIter.hasNext()) {
-                try {
-                    EventObjectContainer c = iIter.next();
-                    int                  j = list.indexOf(c);
-
-                    if (j != -1) {
-
-                        // Add the event id to the ID list
-                        objectIds.add(new Long(c.getObjectId()));
-                        indexes.add(new Integer(j));
-                        System.out.println("Tagging Object ID: " + c.getObjectId() + " as " + tag);
-                        c.setTag(tag);
-                    }
-                } catch (IndexOutOfBoundsException e) {}
-            }
-        }
-
-        // Send model event
-        notifyChanged(new EventListModelEvent(this, EventListModelEvent.MULTIPLE_ENTRIES_CHANGED, objectIds, indexes));
+        apply(new BulkEdit().setTag(containers, tag));
     }
 
     /**
      * Assigns classes to the elements from this list model
      *
-     *  Call within block synced by: <code>syncList</code>
-     *
-     * @param indexes the zero based index ArrayList of Integers to classify
+     * @param containers the EventObjectContainers to classify
      * @param className The name of the class to assign
      */
     public void setClassAll(ArrayList<EventObjectContainer> containers, String className) {
-        Iterator<EventObjectContainer> iIter     = containers.iterator();
-        ArrayList<Long>                objectIds = new ArrayList<Long>();
-        ArrayList<Integer>             indexes   = new ArrayList<Integer>();
 
-        // Add the tag to the user preferences
+        // Add the class to the user preferences
         UserPreferences.getModel().addClassNameList(className);
-
-        synchronized (syncList) {
-            while (iIter.hasNext()) {
-                try {
-                    EventObjectContainer c = iIter.next();
-                    int                  j = list.indexOf(c);
-
-                    if (j != -1) {
-
-                        // Add the event id to the ID list
-                        objectIds.add(new Long(c.getObjectId()));
-                        indexes.add(new Integer(j));
-                        System.out.println("Assigning class for Object ID: " + c.getObjectId() + " as " + className);
-                        c.setClassName(className);
-                    }
-                } catch (IndexOutOfBoundsException e) {}
-            }
-        }
-
-        // Send model event
-        notifyChanged(new EventListModelEvent(this, EventListModelEvent.MULTIPLE_ENTRIES_CHANGED, objectIds, indexes));
+        apply(new BulkEdit().setClassName(containers, className));
     }
 
     /**
      * Assigns species to the elements from this list model
      *
-     *  Call within block synced by: <code>syncList</code>
-     *
-     * @param indexes the zero based index ArrayList of Integers to classify
-     * @param speciesName the name of the class to assign
+     * @param containers the EventObjectContainers to classify
+     * @param className the name of the class to assign
      * @param probability the probability of the class assignment
      */
     public void setPredictedClass(ArrayList<EventObjectContainer> containers, String className, float probability) {
-        Iterator<EventObjectContainer> iIter     = containers.iterator();
-        ArrayList<Long>                objectIds = new ArrayList<Long>();
-        ArrayList<Integer>             indexes   = new ArrayList<Integer>();
 
-        // Add the tag to the user preferences
+        // Add the class to the user preferences
         UserPreferences.getModel().addClassNameList(className);
+        apply(new BulkEdit().setPredictedClass(containers, className, probability));
+    }
+
+    /**
+     * Deletes the elements from this list model
+     *
+     * @param indexes the zero based index ArrayList of Integers to delete
+     */
+    public void deleteByIndex(ArrayList<Integer> indexes) {
+        ArrayList<EventObjectContainer> collection = new ArrayList<EventObjectContainer>(indexes.size());
 
         synchronized (syncList) {
-            while (iIter.hasNext()) {
-                try {
-                    EventObjectContainer c = iIter.next();
-                    int                  j = list.indexOf(c);
-
-                    if (j != -1) {
-
-                        // Add the event id to the ID list
-                        objectIds.add(new Long(c.getObjectId()));
-                        indexes.add(new Integer(j));
-                        System.out.println("Assigning predicted class for Object ID: " + c.getObjectId() + " as "
-                                           + className);
-                        c.setPredictedClass(className, probability);
-                    }
-                } catch (IndexOutOfBoundsException e) {}
+            for (Integer j : indexes) {
+                if ((j >= 0) && (j < list.size())) {
+                    collection.add(list.get(j));
+                }
             }
         }
 
-        // Send model event
-        notifyChanged(new EventListModelEvent(this, EventListModelEvent.MULTIPLE_ENTRIES_CHANGED, objectIds, indexes));
+        apply(new BulkEdit().delete(collection), false);
     }
 
     /**
      * Deletes the elements from this list model
      *
-     *  Call within block synced by: <code>syncList</code>
+     * @param collection The list of EventObjectContainers to delete
+     */
+    public void delete(ArrayList<EventObjectContainer> collection) {
+        apply(new BulkEdit().delete(collection));
+    }
+
+    /**
+     * Add a  set of EventObjectContainer entries to this listmodel.
+     * Entries with an object ID already in the list are ignored.
      *
-     * @param indexes the zero based index ArrayList of Integers to delete
+     * @param entries the list of entries to add
      */
-    public void deleteByIndex(ArrayList<Integer> indexes) {
-        ArrayList<EventObjectContainer> collection = new ArrayList<EventObjectContainer>(indexes.size());
-        Iterator<Integer>               i          = indexes.iterator();
-        ArrayList<Long>                 objectIds  = new ArrayList<Long>();
+    public void add(ArrayList<EventObjectContainer> entries) {
+        apply(new BulkEdit().add(entries));
+    }
 
-        // Sort the indexes in case they are random
-        Collections.sort(indexes);
+    /**
+     * Applies a set of mutations to this list model in one transaction.
+     * Field edits are applied first, then the deletes and then the adds,
+     * all under a single lock. Listeners are sent a single
+     * <code>MULTIPLE_ENTRIES_CHANGED</code> event with the object IDs of
+     * all changed entries and the indexes of those still in the list,
+     * or a <code>ONE_ENTRY_REMOVED</code> event if the edit only removed
+     * a single entry.
+     *
+     * @param edit the mutations to apply
+     */
+    public void apply(BulkEdit edit) {
+        apply(edit, true);
+    }
+
+    /**
+     * Applies a set of mutations to this list model in one transaction
+     *
+     * @param edit the mutations to apply
+     * @param notifySingleRemove true to send <code>ONE_ENTRY_REMOVED</code>
+     * when the edit only removed a single entry
+     */
+    private void apply(BulkEdit edit, boolean notifySingleRemove) {
+        ArrayList<Long>     objectIds = new ArrayList<Long>();
+        BitSet              changed   = new BitSet();
+        LinkedHashSet<Long> edited    = new LinkedHashSet<Long>();
+        ArrayList<Long>     moved     = new ArrayList<Long>();
+        ArrayList<Integer>  removed   = new ArrayList<Integer>();
+        long                removedId = -1;
+        boolean             resized   = false;
+        int                 listVersion;
 
         synchronized (syncList) {
-            while (i.hasNext()) {
-                try {
-                    int                  j = (int) i.next();
-                    EventObjectContainer c = list.get(j);
+            ArrayList<EventObjectContainer> additions = new ArrayList<EventObjectContainer>();
+            BitSet                          remove    = new BitSet(list.size());
 
-                    System.out.println("Deleting Event ID: " + c.getObjectId());
+            for (BulkEdit.Mutation m : edit.getMutations()) {
+                if (m.type == BulkEdit.Type.ADD) {
+                    additions.add(m.container);
 
-                    // Add the event id to the ID list
-                    objectIds.add(new Long(c.getObjectId()));
+                    continue;
+                }
 
-                    // Add this EventObjectContainer to the collection
-                    collection.add(c);
+                int j = indexOf(m.container);
 
-                    // Delete the references to this object in the original FrameEventSet
-                    c.cleanup();
+                if (j == -1) {
+                    continue;
+                }
 
-                    // Adjust scroller value by one
-                    if (jumpToIndex > 0) {
-                        jumpToIndex--;
-                    }
-                } catch (IndexOutOfBoundsException e) {}
-            }
+                EventObjectContainer c = list.get(j);
 
-            Collections.sort(objectIds);
+                switch (m.type) {
+                case CLASS_NAME :
+                    c.setClassName(m.value);
 
-            // Remove all from the list
-            list.removeAll(collection);
-            System.out.println("EventListModel removed " + indexes.size() + " new size:" + list.size());
+                    break;
 
-            // / Remove all from the cache
-            if (imageCache != null) {
-                imageCache.removeIndexes(indexes);
-            }
-        }
+                case TAG :
+                    c.setTag(m.value);
 
-        // Run the garbage collector
-        Runtime.getRuntime().gc();
+                    break;
 
-        // Send model event
-        notifyChanged(new EventListModelEvent(this, EventListModelEvent.MULTIPLE_ENTRIES_CHANGED, objectIds, indexes));
-    }
+                case IDENTITY_REFERENCE :
+                    c.setIdentityReference(m.value);
 
-    /**
-     * Deletes the elements from this list model
-     *
-     *  Call within block synced by: <code>syncList</code>
-     *
-     * @param indexes The list of EventObjectContainers to delete
-     */
-    public void delete(ArrayList<EventObjectContainer> collection) {
-        Iterator<EventObjectContainer> i         = collection.iterator();
-        ArrayList<Long>                objectIds = new ArrayList<Long>();
-        ArrayList<Integer>             indexes   = new ArrayList<Integer>();
-        Boolean                        modified  = false;
+                    break;
 
-        synchronized (syncList) {
-            while (i.hasNext()) {
-                try {
-                    EventObjectContainer c = i.next();
+                case PREDICTED_CLASS :
+                    c.setPredictedClass(m.value, m.probability);
 
-                    // If a valid index is found for this event object
-                    if (list.indexOf(c) != -1) {
-                        System.out.println("Deleting Event ID: " + c.getObjectId() + c.toString());
+                    break;
 
-                        // Add the event id to the ID list
-                        objectIds.add(new Long(c.getObjectId()));
-                        indexes.add(new Integer(list.indexOf(c)));
+                case APPEND :
+                    int bestFrame = c.getBestEventFrame();
 
-                        // Delete the references to this object in the original FrameEventSet
-                        c.cleanup();
+                    c.add(m.event);
 
-                        // Adjust scroller value by one
-                        if (jumpToIndex > 0) {
-                            jumpToIndex--;
-                        }
+                    if (c.getBestEventFrame() != bestFrame) {
+                        moved.add(c.getObjectId());
                     }
-                } catch (IndexOutOfBoundsException e) {}
-            }
 
-            // Remove all from the list
-            modified = list.removeAll(collection);
+                    break;
+
+                case DELETE :
+                    if (!remove.get(j)) {
+                        remove.set(j);
+                        removed.add(new Integer(j));
+                        removedId = c.getObjectId();
+                        objectIds.add(new Long(removedId));
+                    }
 
-            if (modified == true) {
-                System.out.println("EventListModel removed " + indexes.size() + " new size:" + list.size());
+                    break;
 
-                // / Remove all from the cache
-                if (imageCache != null) {
-                    imageCache.removeIndexes(indexes);
+                default :
+                    break;
+                }
+
+                if (m.type != BulkEdit.Type.DELETE) {
+                    edited.add(c.getObjectId());
                 }
             }
-        }
 
-        if (modified == true) {
+            // Remove the deleted entries from the list and the cache in one pass
+            if (!removed.isEmpty()) {
+                for (int j = remove.nextSetBit(0); j >= 0; j = remove.nextSetBit(j + 1)) {
+
+                    // Delete the references to this object in the original FrameEventSet
+                    list.get(j).cleanup();
 
-            // Run the garbage collector
-            Runtime.getRuntime().gc();
+                    // Adjust scroller value by one
+                    if (jumpToIndex > 0) {
+                        jumpToIndex--;
+                    }
+                }
+
+                removeIndexes(removed);
+                version++;
+                resized = true;
 
-            if (objectIds.size() > 1) {
+                if (imageCache != null) {
+                    imageCache.removeIndexes(removed);
+                }
 
-                // Send model event
-                notifyChanged(new EventListModelEvent(this, EventListModelEvent.MULTIPLE_ENTRIES_CHANGED, objectIds,
-                        indexes));
-            } else if (objectIds.size() == 1) {
-                notifyChanged(new EventListModelEvent(this, EventListModelEvent.ONE_ENTRY_REMOVED, objectIds.get(0),
-                        indexes.get(0)));
+                edited.removeAll(objectIds);
             }
-        }
-    }
 
-    /**
-     * Add a  set of EventObjectContainer entries to this listmodel.
-     * Call within block synced by: <code>syncList</code>
-     * @param entries the list of entries to add
-     */
-    public void add(ArrayList<EventObjectContainer> entries) {
-        ArrayList<Long>    objectIds = new ArrayList<Long>();
-        ArrayList<Integer> indexes   = new ArrayList<Integer>();
+            // Merge the new entries into the list in increasing objectId order
+            ArrayList<EventObjectContainer> added = new ArrayList<EventObjectContainer>(additions.size());
+            HashSet<Long>                   ids   = new HashSet<Long>();
 
-        synchronized (syncList) {
-            Iterator<EventObjectContainer> i = entries.iterator();
+            for (EventObjectContainer c : additions) {
+                if ((indexOfId(c.getObjectId()) < 0) && ids.add(c.getObjectId())) {
+                    added.add(c);
+                }
+            }
 
-            if (list != null) {
-                while (i.hasNext()) {
-                    EventObjectContainer c = i.next();
-
-                    // If the object isn't already in the list
-                    if (list.indexOf(c) == -1) {
-                        ListIterator<EventObjectContainer> j  = list.listIterator();
-                        int                                k  = 0;
-                        Long                               id = c.getObjectId();
-
-                        // Add the object in increasing objectId order
-                        // Go through the list until the next higher id is
-                        // found and insert before this.
-                        while (j.hasNext()) {
-                            Long                 idNext = id;
-                            EventObjectContainer event  = null;
-
-                            // If any containers left
-                            if (j.hasNext()) {
-                                event  = j.next();
-                                idNext = event.getObjectId();
-                            }
-
-                            // If found a larger id
-                            if (idNext > id) {
-                                if (event != null) {
-                                    k = list.indexOf(event);
-                                }
-
-                                break;
-                            }
-
-                            k++;
-                        }
+            if (!added.isEmpty()) {
+                ArrayList<EventObjectContainer> merged  = new ArrayList<EventObjectContainer>(list.size()
+                                                              + added.size());
+                BitSet                          addedAt = new BitSet();
+                int                             a       = 0;
+                int                             b       = 0;
+
+                Collections.sort(added, EventObjectContainer.OBJECT_ID_COMPARATOR);
+
+                while ((a < list.size()) || (b < added.size())) {
+                    if ((b < added.size())
+                            && ((a >= list.size()) || (added.get(b).getObjectId() < list.get(a).getObjectId()))) {
+                        addedAt.set(merged.size());
+                        edited.add(added.get(b).getObjectId());
+                        merged.add(added.get(b++));
+                    } else {
+                        merged.add(list.get(a++));
+                    }
+                }
 
-                        jumpToIndex++;
-                        list.add(k, c);
-                        indexes.add(new Integer(k));
-                        objectIds.add(new Long(id));
-                        System.out.println("Adding Event ID: " + id + " to index " + k + c.toString());
-
-                        // / Add element to the image cache
-                        if (imageCache != null) {
-                            EventImageCacheData data;
-
-                            try {
-                                data = new EventImageCacheData(c);
-                                imageCache.add(k, data);
-                            } catch (Exception ex) {
-                                Logger.getLogger(EventListModel.class.getName()).log(Level.SEVERE, null, ex);
-                            }
-                        }
+                list        = merged;
+                jumpToIndex += added.size();
+                version++;
+                resized = true;
+
+                // Add elements to the image cache, in increasing index order
+                // so each lands at its final index. The images are grabbed
+                // by the cache's loader thread, not under these locks.
+                if (imageCache != null) {
+                    for (int k = addedAt.nextSetBit(0); k >= 0; k = addedAt.nextSetBit(k + 1)) {
+                        imageCache.add(k, new EventImageCacheData(list.get(k)));
                     }
                 }
+            }
+
+            // Grab the images of entries whose best frame moved again
+            if (imageCache != null) {
+                for (Long id : moved) {
+                    int k = indexOfId(id);
 
-                System.out.println("EventListModel added " + indexes.size() + " new size:" + list.size());
+                    if (k >= 0) {
+                        imageCache.refresh(k);
+                    }
+                }
+            }
+
+            // Find where the edited and added entries ended up
+            for (Long id : edited) {
+                int k = indexOfId(id);
+
+                if (k >= 0) {
+                    changed.set(k);
+                    objectIds.add(id);
+                }
             }
+
+            listVersion = version;
+
+            Logger.getLogger(EventListModel.class.getName()).log(Level.FINE,
+                             "EventListModel applied " + edit.size() + " edits to " + objectIds.size()
+                             + " entries, removed " + removed.size() + " new size:" + list.size());
         }
 
-        // Send a notifier to all the ModelListeners that entries have changed
-        notifyChanged(new EventListModelEvent(this, EventListModelEvent.MULTIPLE_ENTRIES_CHANGED, objectIds, indexes));
+        if (objectIds.isEmpty()) {
+            return;
+        }
+
+        // Send model event
+        if (notifySingleRemove && (removed.size() == 1) && (objectIds.size() == 1)) {
+            notifyChanged(new EventListModelEvent(this, EventListModelEvent.ONE_ENTRY_REMOVED, removedId,
+                    removed.get(0)), listVersion);
+        } else {
+            EventListModelEvent e = new EventListModelEvent(this, EventListModelEvent.MULTIPLE_ENTRIES_CHANGED,
+                                        objectIds, changed);
+
+            e.rowsAddedOrRemoved = resized;
+            notifyChanged(e, listVersion);
+        }
     }
 
     /**
@@ -791,8 +976,10 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
                 list.clear();
             }
 
-            // Initialize the list
-            list = new LinkedList<EventObjectContainer>(entries);
+            // Initialize the list and make sure it is sorted by objectId
+            list = new ArrayList<EventObjectContainer>(entries);
+            Collections.sort(list, EventObjectContainer.OBJECT_ID_COMPARATOR);
+            version++;
         }
 
         // Send a notifier to all the ModelListeners
@@ -898,7 +1085,7 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
     }
 
     public boolean isLastEvent(EventObjectContainer event) {
-        if ((event != null) && (event == list.getLast())) {
+        if ((event != null) &&!list.isEmpty() && (event == list.get(list.size() - 1))) {
             return true;
         }
 
@@ -906,7 +1093,7 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
     }
 
     public boolean isFirstEvent(EventObjectContainer event) {
-        if ((event != null) && (event == list.getFirst())) {
+        if ((event != null) &&!list.isEmpty() && (event == list.get(0))) {
             return true;
         }
 
@@ -1040,6 +1227,21 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
          */
         ArrayList<Integer> modelIndexes = new ArrayList<Integer>();
 
+        /**
+         * Stores the set of List model indexes from the last model event
+         */
+        BitSet modelIndexSet = null;
+
+        /**
+         * The version of the list the indexes are for, or -1 if unknown
+         */
+        private int listVersion = -1;
+
+        /**
+         * True if entries were added to or removed from the list
+         */
+        private boolean rowsAddedOrRemoved = false;
+
         /**
          * Constructor for this custom ModelEvent. Basically just like ModelEvent.
          * This is the default constructor for events that don't need to set the
@@ -1079,6 +1281,23 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
             modelIndexes = indexes;
         }
 
+        /**
+         * Constructor for this custom ModelEvent.
+         * @param obj  the object that originated the event
+         * @param objectIds   the event ID of the events changed by this ModelEvent
+         * @param indexes the set of event indexes changed by this ModelEvent
+         */
+        public EventListModelEvent(Object obj, int type, ArrayList<Long> eventIDS, BitSet indexes) {
+            super(obj, type, "EventListModelEvent:" + type + "EventID Size: " + eventIDS.size());
+            objectIds     = eventIDS;
+            modelIndexSet = indexes;
+            modelIndexes  = new ArrayList<Integer>(indexes.cardinality());
+
+            for (int i = indexes.nextSetBit(0); i >= 0; i = indexes.nextSetBit(i + 1)) {
+                modelIndexes.add(new Integer(i));
+            }
+        }
+
         /**
          * Constructor for this custom ModelEvent.
          * @param obj  the object that originated the event
@@ -1103,11 +1322,32 @@ public class EventListModel extends AbstractModel implements ListModel, BoundedR
             return imageCache;
         }
 
+        /**
+         * Returns true if entries were added to or removed from the list, so
+         * the indexes of entries not in this ModelEvent may have moved too
+         */
+        public boolean hasAddedOrRemovedRows() {
+            return rowsAddedOrRemoved;
+        }
+
         /** Returns the List model index array associated with this ModelEvent */
         public ArrayList<Integer> getModelIndexes() {
             return modelIndexes;
         }
 
+        /** Returns the List model indexes associated with this ModelEvent as a set */
+        public BitSet getModelIndexSet() {
+            if (modelIndexSet == null) {
+                modelIndexSet = new BitSet();
+
+                for (Integer i : modelIndexes) {
+                    modelIndexSet.set(i);
+                }
+            }
+
+            return modelIndexSet;
+        }
+
         /**
          * Returns the single object ID associated with this ModelEvent
          *  Returns -1 if no event ID was found
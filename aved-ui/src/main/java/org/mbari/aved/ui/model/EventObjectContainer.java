@@ -36,14 +36,16 @@ import org.mbari.aved.ui.exceptions.FrameOutRangeException;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.awt.image.BufferedImage;
+
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -57,13 +59,32 @@ public class EventObjectContainer implements Comparable, Serializable {
             return o1.toString().compareTo(o2.toString());
         }
     };
+
+    /** Orders containers by increasing object ID */
+    public static final Comparator<EventObjectContainer> OBJECT_ID_COMPARATOR =
+        new Comparator<EventObjectContainer>() {
+        public int compare(EventObjectContainer o1, EventObjectContainer o2) {
+            return (o1.getObjectId() < o2.getObjectId())
+                   ? -1
+                   : ((o1.getObjectId() == o2.getObjectId())
+                      ? 0
+                      : 1);
+        }
+    };
     private static final long                   serialVersionUID  = 1L;
     private int                                 bestEventFrame    = -1;
     private final HashMap<Integer, EventObject> eventHashMap      = new HashMap<Integer, EventObject>(51, 0.75f);
     private int                                 maxEventFrame     = -1;
+    private int                                 maxEventSize      = 0;
     private float                               maxSaliencymVolts = 0.0f;
+    private int                                 numEventFrames    = 0;
     private long                                objectId          = 0;
-    private LinkedList<Integer>                 sortedEventFrames = new LinkedList<Integer>(eventHashMap.keySet());
+
+    /**
+     * Frame numbers of the events in increasing order. Only the first
+     * <code>numEventFrames</code> entries are used.
+     */
+    private int[] sortedEventFrames = new int[4];
 
     /**
      * Checks the loaded image for being all black/not.
@@ -145,9 +166,6 @@ public class EventObjectContainer implements Comparable, Serializable {
                     clone.add(value);
                 }
 
-                // Sort the clone and return
-                clone.sort();
-
                 return clone;
             }
         } catch (Exception ex) {
@@ -196,6 +214,37 @@ public class EventObjectContainer implements Comparable, Serializable {
         }
     }
 
+    /**
+     * Restores the references to this object in its original frameSet event set
+     * removed by {@link #cleanup()}. This should be called before adding
+     * a deleted EventObjectContainer back to the list
+     */
+    public void relink() {
+        synchronized (eventHashMap) {
+            Iterator<EventObject> i = this.eventHashMap.values().iterator();
+
+            // Go through hash list and add each event object back to its frameSet event set
+            while (i.hasNext()) {
+                EventObject      value        = i.next();
+                FrameEventSet    frameSet     = value.getFrameEventSet();
+                Set<EventObject> eventObjects = frameSet.getEventObjects();
+                boolean          found        = false;
+
+                for (EventObject event : eventObjects) {
+                    if (event.getObjectId() == value.getObjectId()) {
+                        found = true;
+
+                        break;
+                    }
+                }
+
+                if (!found) {
+                    eventObjects.add(value);
+                }
+            }
+        }
+    }
+
     /**
      * Cleans up the references to this object in its original frameSet event set
      * This should be called before destroying this EventObjectContainer
@@ -263,7 +312,9 @@ public class EventObjectContainer implements Comparable, Serializable {
      * @return total number of frames for this event
      */
     public int getTtlFrames() {
-        return sortedEventFrames.size();
+        synchronized (eventHashMap) {
+            return numEventFrames;
+        }
     }
 
     /**
@@ -271,12 +322,10 @@ public class EventObjectContainer implements Comparable, Serializable {
      * @param value the name of the class
      */
     void setClassName(String value) {
-        Iterator<Integer> iter = sortedEventFrames.iterator();
-
-        while (iter.hasNext()) {
-            EventObject o = eventHashMap.get(iter.next());
-
-            o.setClassName(value);
+        synchronized (eventHashMap) {
+            for (EventObject o : eventHashMap.values()) {
+                o.setClassName(value);
+            }
         }
     }
 
@@ -286,12 +335,10 @@ public class EventObjectContainer implements Comparable, Serializable {
      * @param probability the probability it is within this class
      */
     public void setPredictedClass(String value, float probability) {
-        Iterator<Integer> iter = sortedEventFrames.iterator();
-
-        while (iter.hasNext()) {
-            EventObject o = eventHashMap.get(iter.next());
-
-            o.setPredictedClass(value, probability);
+        synchronized (eventHashMap) {
+            for (EventObject o : eventHashMap.values()) {
+                o.setPredictedClass(value, probability);
+            }
         }
     }
  
@@ -302,12 +349,10 @@ public class EventObjectContainer implements Comparable, Serializable {
      * @param id the name of the identifier
      */
     void setIdentityReference(String id) {
-        Iterator<Integer> iter = sortedEventFrames.iterator();
-
-        while (iter.hasNext()) {
-            EventObject o = eventHashMap.get(iter.next());
-
-            o.setIdentityReference(id);
+        synchronized (eventHashMap) {
+            for (EventObject o : eventHashMap.values()) {
+                o.setIdentityReference(id);
+            }
         }
     }
 
@@ -333,13 +378,73 @@ public class EventObjectContainer implements Comparable, Serializable {
      * @param value the name of the class
      */
     void setTag(String tag) {
-        Iterator<Integer> iter = sortedEventFrames.iterator();
+        synchronized (eventHashMap) {
+            for (EventObject o : eventHashMap.values()) {
+                o.setTag(tag);
+            }
+        }
+    }
+
+    /**
+     * Returns the decoded frame for the given framenumber for this
+     * EventObjectContainer. Depending on the video's frame source this
+     * is either read from the transcoded frame file or decoded on demand.
+     * @return the frame or null if none found
+     */
+    public BufferedImage getFrame(int frameNo) {
+        return getFrame(frameNo, null);
+    }
+
+    /**
+     * Returns the decoded frame for the given framenumber, decoding it into
+     * a reusable image where the frame source supports it
+     * @param frameNo the frame number
+     * @param reuse an image to decode into if it matches the frame, or null
+     * @return the frame or null if none found
+     */
+    public BufferedImage getFrame(int frameNo, BufferedImage reuse) {
+        if ((mainModel != null) && (mainModel.getSummaryModel() != null)) {
+            AvedVideo v = mainModel.getSummaryModel().getAvedVideo();
+
+            if (v != null) {
+                try {
+                    return v.getFrame(frameNo, reuse);
+                } catch (IOException ex) {
+                    Logger.getLogger(EventObjectContainer.class.getName()).log(Level.SEVERE, null, ex);
+                } catch (IllegalArgumentException ex) {}
+            }
+        }
+
+        return null;
+    }
 
-        while (iter.hasNext()) {
-            EventObject o = eventHashMap.get(iter.next());
+    /**
+     * @return true if the frames are decoded by a sequential frame source,
+     * e.g. on demand from the video, so they should be requested in
+     * increasing frame order from one thread
+     */
+    public boolean isFrameSourceSequential() {
+        if ((mainModel != null) && (mainModel.getSummaryModel() != null)) {
+            AvedVideo v = mainModel.getSummaryModel().getAvedVideo();
 
-            o.setTag(tag);
+            return (v != null) && v.getFrameSource().isSequential();
         }
+
+        return false;
+    }
+
+    /**
+     * @return true if no more frames will become available, e.g. the
+     * transcoder finished, or there is no video to get frames from
+     */
+    public boolean isFrameSourceComplete() {
+        if ((mainModel != null) && (mainModel.getSummaryModel() != null)) {
+            AvedVideo v = mainModel.getSummaryModel().getAvedVideo();
+
+            return (v == null) || v.isComplete();
+        }
+
+        return true;
     }
 
     /**
@@ -389,51 +494,81 @@ public class EventObjectContainer implements Comparable, Serializable {
 
     public void add(EventObject eventObject) {
         synchronized (eventHashMap) {
-            int maxSize = 0;
-            int frameNum = eventObject.getFrameEventSet().getFrameNumber();
+            int         frameNum = eventObject.getFrameEventSet().getFrameNumber();
+            int         size     = eventObject.getCurrSize();
+            EventObject replaced = eventHashMap.put(frameNum, eventObject);
 
-            eventHashMap.put(frameNum, eventObject);
-
-            // recalc the next biggest size
-            if (maxEventFrame != -1) {
-                EventObject object = eventHashMap.get(maxEventFrame);
+            if (replaced == null) {
+                insertFrame(frameNum);
+            }
 
-                maxSize = object.getCurrSize();
+            // Find the new max size. If the largest event was replaced
+            // with a smaller one, search all the events for the new max
+            if (size >= maxEventSize) {
+                maxEventFrame = frameNum;
+                maxEventSize  = size;
+            } else if (frameNum == maxEventFrame) {
+                findMaxSize();
             }
 
-            // Find the new max size
-            if (eventObject.getCurrSize() >= maxSize) {
-                maxEventFrame = eventObject.getFrameEventSet().getFrameNumber();
-            } 
-            
             // Find the new max saliency
             float mV = 1000f*Float.valueOf(eventObject.getSaliency());
             if (mV > maxSaliencymVolts) {
                 maxSaliencymVolts = mV;
             }
 
-            sortedEventFrames = new LinkedList<Integer>(eventHashMap.keySet());    // Get the keys as a list
-            Collections.sort(sortedEventFrames);    // Sort the events by increasing framenumber
-            
             // the best event frame is in the middle; this is generally arbitrary but
             // works best for fast midwater transects in particular where the 
             // largest area is often blurred  at the outer edges of the frame 
-            bestEventFrame = getIndexedFrame(sortedEventFrames.size()/2);
-            
-            
-             //System.out.println("#########Max size for event: " 
-               //  + eventObject.getObjectId() + " size: " + eventObject.getCurrSize()
-               //  + " best frame: " + bestEventFrame 
-               //  + " frameSet#:" + eventObject.getFrameEventSet().getFrameNumber()
-               //  + " startFrame: " + getStartFrame() + " endFrame: " + getEndFrame()); 
+            bestEventFrame = sortedEventFrames[numEventFrames / 2];
         } 
         
     }
 
-    public void sort() {
-        synchronized (eventHashMap) {
-            sortedEventFrames = new LinkedList<Integer>(eventHashMap.keySet());    // Get the keys as a list
-            Collections.sort(sortedEventFrames);    // Sort the events by increasing framenumber
+    /**
+     * Inserts a frame number into the sorted frame index. Events are
+     * usually added in increasing frame order, so this is generally
+     * an append.
+     *
+     *  Call within block synced by: <code>eventHashMap</code>
+     *
+     * @param frameNum the frame number to insert
+     */
+    private void insertFrame(int frameNum) {
+        if (numEventFrames == sortedEventFrames.length) {
+            int[] frames = new int[2 * sortedEventFrames.length];
+
+            System.arraycopy(sortedEventFrames, 0, frames, 0, numEventFrames);
+            sortedEventFrames = frames;
+        }
+
+        int index = numEventFrames;
+
+        if ((numEventFrames > 0) && (frameNum < sortedEventFrames[numEventFrames - 1])) {
+            index = -Arrays.binarySearch(sortedEventFrames, 0, numEventFrames, frameNum) - 1;
+            System.arraycopy(sortedEventFrames, index, sortedEventFrames, index + 1, numEventFrames - index);
+        }
+
+        sortedEventFrames[index] = frameNum;
+        numEventFrames++;
+    }
+
+    /**
+     * Searches all the events for the largest one
+     *
+     *  Call within block synced by: <code>eventHashMap</code>
+     */
+    private void findMaxSize() {
+        maxEventFrame = -1;
+        maxEventSize  = 0;
+
+        for (int i = 0; i < numEventFrames; i++) {
+            int size = eventHashMap.get(sortedEventFrames[i]).getCurrSize();
+
+            if (size >= maxEventSize) {
+                maxEventFrame = sortedEventFrames[i];
+                maxEventSize  = size;
+            }
         }
     }
 
@@ -448,6 +583,19 @@ public class EventObjectContainer implements Comparable, Serializable {
         return null;
     }
 
+    /**
+     * Gets the best image associated with this event if it has already
+     * been decoded
+     * @return the image, or null if it has not been decoded yet
+     */
+    public ImageIcon getLoadedBestImage() {
+        if (eventImageCacheData != null) {
+            return eventImageCacheData.getLoadedImage();
+        }
+
+        return null;
+    }
+
     /**
      * Gets the event object in this container that corresponds to a frameSet number
      * @param frameNo  The frameSet number.
@@ -474,13 +622,13 @@ public class EventObjectContainer implements Comparable, Serializable {
 
         s = "Object ID: " + objectId + "\r";
 
-        Iterator iter = sortedEventFrames.iterator();
-
-        while (iter.hasNext()) {
-            Integer     i = (Integer) iter.next();
-            EventObject o = eventHashMap.get(i);
+        synchronized (eventHashMap) {
+            for (int j = 0; j < numEventFrames; j++) {
+                int         i = sortedEventFrames[j];
+                EventObject o = eventHashMap.get(i);
 
-            s += "frame: " + i + o.toStringNoId() + "\n";
+                s += "frame: " + i + o.toStringNoId() + "\n";
+            }
         }
 
         s += "\n";
@@ -506,10 +654,8 @@ public class EventObjectContainer implements Comparable, Serializable {
      */
     public String getClassName() {
         synchronized (eventHashMap) {
-            Iterator<Integer> iter = sortedEventFrames.iterator();
-
-            if (iter.hasNext()) {
-                EventObject o = eventHashMap.get(iter.next());
+            if (numEventFrames > 0) {
+                EventObject o = eventHashMap.get(sortedEventFrames[0]);
 
                 return o.getClassName();
             }
@@ -524,10 +670,8 @@ public class EventObjectContainer implements Comparable, Serializable {
      */
     public Float getPredictedClassProbability() {
         synchronized (eventHashMap) {
-            Iterator<Integer> iter = sortedEventFrames.iterator();
-
-            if (iter.hasNext()) {
-                EventObject o = eventHashMap.get(iter.next());
+            if (numEventFrames > 0) {
+                EventObject o = eventHashMap.get(sortedEventFrames[0]);
 
                 return o.getPredictedClassProbability();
             }
@@ -542,10 +686,8 @@ public class EventObjectContainer implements Comparable, Serializable {
      */
     public String getPredictedClassName() {
         synchronized (eventHashMap) {
-            Iterator<Integer> iter = sortedEventFrames.iterator();
-
-            if (iter.hasNext()) {
-                EventObject o = eventHashMap.get(iter.next());
+            if (numEventFrames > 0) {
+                EventObject o = eventHashMap.get(sortedEventFrames[0]);
 
                 return o.getPredictedClassName();
             }
@@ -560,10 +702,8 @@ public class EventObjectContainer implements Comparable, Serializable {
      */
     public String getTag() {
         synchronized (eventHashMap) {
-            Iterator<Integer> iter = sortedEventFrames.iterator();
-
-            if (iter.hasNext()) {
-                EventObject o = eventHashMap.get(iter.next());
+            if (numEventFrames > 0) {
+                EventObject o = eventHashMap.get(sortedEventFrames[0]);
 
                 return o.getTag();
             }
@@ -578,10 +718,8 @@ public class EventObjectContainer implements Comparable, Serializable {
      */
     public String getIdentityReference() {
         synchronized (eventHashMap) {
-            Iterator<Integer> iter = sortedEventFrames.iterator();
-
-            if (iter.hasNext()) {
-                EventObject o = eventHashMap.get(iter.next());
+            if (numEventFrames > 0) {
+                EventObject o = eventHashMap.get(sortedEventFrames[0]);
 
                 return o.getIdentityReference();
             }
@@ -592,20 +730,14 @@ public class EventObjectContainer implements Comparable, Serializable {
 
     public int getMaxSize() {
         synchronized (eventHashMap) {
-            if (maxEventFrame != -1) {
-                EventObject object = eventHashMap.get(maxEventFrame);
-
-                return object.getCurrSize();
-            }
+            return maxEventSize;
         }
-
-        return 0;
     }
 
     public String getStartTimecode() {
         synchronized (eventHashMap) {
-            if (!sortedEventFrames.isEmpty()) {
-                return eventHashMap.get(sortedEventFrames.getFirst()).getFrameEventSet().getTimecode();
+            if (numEventFrames > 0) {
+                return eventHashMap.get(sortedEventFrames[0]).getFrameEventSet().getTimecode();
             }
 
             return "";
@@ -614,8 +746,8 @@ public class EventObjectContainer implements Comparable, Serializable {
 
     public String getEndTimecode() {
         synchronized (eventHashMap) {
-            if (!sortedEventFrames.isEmpty()) {
-                return eventHashMap.get(sortedEventFrames.getLast()).getFrameEventSet().getTimecode();
+            if (numEventFrames > 0) {
+                return eventHashMap.get(sortedEventFrames[numEventFrames - 1]).getFrameEventSet().getTimecode();
             }
 
             return "";
@@ -624,8 +756,8 @@ public class EventObjectContainer implements Comparable, Serializable {
 
     public int getStartFrame() {
         synchronized (eventHashMap) {
-            if (!sortedEventFrames.isEmpty()) {
-                return eventHashMap.get(sortedEventFrames.getFirst()).getFrameEventSet().getFrameNumber();
+            if (numEventFrames > 0) {
+                return eventHashMap.get(sortedEventFrames[0]).getFrameEventSet().getFrameNumber();
             }
 
             return -1;
@@ -634,8 +766,8 @@ public class EventObjectContainer implements Comparable, Serializable {
 
     public int getEndFrame() {
         synchronized (eventHashMap) {
-            if (!sortedEventFrames.isEmpty()) {
-                return eventHashMap.get(sortedEventFrames.getLast()).getFrameEventSet().getFrameNumber();
+            if (numEventFrames > 0) {
+                return eventHashMap.get(sortedEventFrames[numEventFrames - 1]).getFrameEventSet().getFrameNumber();
             }
 
             return -1;
@@ -650,9 +782,10 @@ public class EventObjectContainer implements Comparable, Serializable {
      * @return 
      */
     public int getIndexedFrame(int index) {        
-        int               maxSize     = sortedEventFrames.size();
-        if (index >=0 && index < maxSize) {
-             return sortedEventFrames.get(index);
+        synchronized (eventHashMap) {
+            if (index >=0 && index < numEventFrames) {
+                 return sortedEventFrames[index];
+            }
         }
         
         return -1;        
@@ -666,15 +799,14 @@ public class EventObjectContainer implements Comparable, Serializable {
      * or the given frame is out of range
      */
     int findNextBestFrame() {
-        Iterator<Integer> iter        = sortedEventFrames.iterator();
-        int               nextMaxSize = -1;
+        int nextMaxSize = -1;
 
         if (bestEventFrame != -1) {
             int maxSize  = eventHashMap.get(bestEventFrame).getCurrSize();
             int maxFrame = bestEventFrame;
 
-            while (iter.hasNext()) {
-                EventObject eventObject = eventHashMap.get(iter.next());
+            for (int i = 0; i < numEventFrames; i++) {
+                EventObject eventObject = eventHashMap.get(sortedEventFrames[i]);
                 int         size        = eventObject.getCurrSize();
 
                 // Find the next largest size
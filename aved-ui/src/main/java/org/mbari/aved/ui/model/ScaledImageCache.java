@@ -0,0 +1,477 @@
+/*
+ * @(#)ScaledImageCache.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.model;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import org.mbari.aved.ui.userpreferences.UserPreferences;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import java.lang.ref.WeakReference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * Singleton least-recently-used cache of pre-scaled event thumbnails keyed
+ * by object ID and size level. Each event gets a small pyramid of
+ * renditions, one per discrete level the thumbnail grid asks for, so a
+ * repaint is a single <code>drawImage</code> of a screen compatible image
+ * instead of a copy and rescale of the decoded image.
+ *
+ * <p>Renditions are created off the Event Dispatch Thread. A request for a
+ * rendition that is not ready yet returns the closest level already
+ * cached, or null, and the requesting component is repainted once the
+ * rendition is done. A rendition is stale as soon as the decoded image it
+ * was made from is replaced, e.g. when the best frame of the event changes.
+ *
+ * @author dcline
+ */
+public class ScaledImageCache {
+    private static final ScaledImageCache INSTANCE = new ScaledImageCache();
+
+    /** Bytes per pixel assumed for a scaled image */
+    private static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * The discrete sizes in pixels of the longest side of a rendition.
+     * Thumbnails larger than the last level are scaled from it.
+     */
+    private static final int[] LEVELS = {
+        32, 48, 64, 96, 128, 192, 256, 384, 512, 768, 1024
+    };
+
+    /** Access-ordered map, eldest entry is the least recently used */
+    private final LinkedHashMap<Key, Rendition> map     = new LinkedHashMap<Key, Rendition>(256, 0.75f, true);
+    private final HashMap<Key, List<Component>> pending = new HashMap<Key, List<Component>>();
+    private final ExecutorService                executor;
+    private long                                 hits;
+    private long                                 maxBytes;
+    private long                                 misses;
+    private long                                 usedBytes;
+
+    private ScaledImageCache() {
+
+        // The thumbnail budget is split evenly with the DecodedImageCache
+        maxBytes = UserPreferences.getModel().getThumbnailCacheMBytes() * 1024L * 1024L / 2;
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ScaledImageCache");
+
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Get the singleton for this object.
+     * @return the cache
+     */
+    public static ScaledImageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the size level a rendition that fits into a box of the given
+     * size is made at
+     * @param width the box width
+     * @param height the box height
+     * @return the length of the longest side of the rendition
+     */
+    public static int getLevel(int width, int height) {
+        int size = Math.max(width, height);
+
+        for (int i = 0; i < LEVELS.length; i++) {
+            if (LEVELS[i] >= size) {
+                return LEVELS[i];
+            }
+        }
+
+        return LEVELS[LEVELS.length - 1];
+    }
+
+    /**
+     * Returns the size an image is drawn at to fit into a box preserving
+     * its aspect ratio. Images are scaled down, but not up.
+     * @param width the image width
+     * @param height the image height
+     * @param boxWidth the box width
+     * @param boxHeight the box height
+     * @return the fitted size
+     */
+    public static Dimension fit(int width, int height, int boxWidth, int boxHeight) {
+        if ((width <= boxWidth) && (height <= boxHeight)) {
+            return new Dimension(width, height);
+        }
+
+        float t = Math.min((float) boxWidth / width, (float) boxHeight / height);
+
+        return new Dimension(Math.max(1, (int) (width * t)), Math.max(1, (int) (height * t)));
+    }
+
+    /**
+     * Returns a rendition of an event image that fits into a box of the
+     * given size. If the rendition for the box is not ready, it is queued
+     * for creation and the closest cached level is returned instead,
+     * which the caller can draw scaled until <code>component</code> is
+     * repainted.
+     *
+     * @param objectId the object ID of the event
+     * @param source the decoded event image
+     * @param boxWidth the width to fit the image into
+     * @param boxHeight the height to fit the image into
+     * @param component component to repaint when the rendition is ready
+     * @return the rendition, or null if none is cached yet for the image
+     */
+    public BufferedImage get(long objectId, ImageIcon source, int boxWidth, int boxHeight, Component component) {
+        int       level = getLevel(boxWidth, boxHeight);
+        Key       key   = new Key(objectId, level);
+        Rendition r;
+
+        synchronized (this) {
+            r = map.get(key);
+
+            if ((r != null) && (r.source.get() == source)) {
+                hits++;
+
+                return r.image;
+            }
+
+            misses++;
+
+            List<Component> waiting = pending.get(key);
+
+            if (waiting == null) {
+                waiting = new ArrayList<Component>();
+                pending.put(key, waiting);
+                executor.execute(new Scaler(key, source));
+            }
+
+            if ((component != null) &&!waiting.contains(component)) {
+                waiting.add(component);
+            }
+
+            return closest(objectId, source, level);
+        }
+    }
+
+    /**
+     * Creates the rendition of an event image for a box on the calling
+     * thread, if it is not cached already. This is used to prepare a page
+     * of thumbnails off the Event Dispatch Thread before it is painted.
+     *
+     * @param objectId the object ID of the event
+     * @param source the decoded event image
+     * @param boxWidth the width to fit the image into
+     * @param boxHeight the height to fit the image into
+     */
+    public void prepare(long objectId, ImageIcon source, int boxWidth, int boxHeight) {
+        Key key = new Key(objectId, getLevel(boxWidth, boxHeight));
+
+        synchronized (this) {
+            Rendition r = map.get(key);
+
+            if ((r != null) && (r.source.get() == source)) {
+                return;
+            }
+        }
+
+        BufferedImage image = scale(source, key.level);
+
+        if (image != null) {
+            synchronized (this) {
+                store(key, source, image);
+            }
+        }
+    }
+
+    /**
+     * Removes all renditions of an object, e.g. when its best frame changes
+     * @param objectId the object ID
+     */
+    public synchronized void remove(long objectId) {
+        Iterator<Map.Entry<Key, Rendition>> i = map.entrySet().iterator();
+
+        while (i.hasNext()) {
+            Map.Entry<Key, Rendition> e = i.next();
+
+            if (e.getKey().objectId == objectId) {
+                usedBytes -= sizeOf(e.getValue().image);
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all renditions from the cache. The counters are left intact.
+     */
+    public synchronized void clear() {
+        map.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Sets the byte budget, evicting renditions if the cache is now over it
+     * @param bytes the maximum number of bytes of renditions to keep
+     */
+    public synchronized void setMaxBytes(long bytes) {
+        maxBytes = bytes;
+        evict();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ScaledImageCache images: " + map.size() + " used: " + usedBytes / 1024 + "/" + maxBytes / 1024
+               + " KB hits: " + hits + " misses: " + misses;
+    }
+
+    /**
+     * Returns the cached rendition of the same image closest in size to a
+     * level, preferring larger ones since they scale down cleanly.
+     *
+     * Call within block synced by: <code>this</code>
+     */
+    private BufferedImage closest(long objectId, ImageIcon source, int level) {
+        BufferedImage best = null;
+
+        for (int i = 0; i < LEVELS.length; i++) {
+            Rendition r = map.get(new Key(objectId, LEVELS[i]));
+
+            if ((r != null) && (r.source.get() == source)) {
+                best = r.image;
+
+                if (LEVELS[i] >= level) {
+                    break;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Adds a rendition, evicting the least recently used renditions until
+     * the cache is within its byte budget
+     *
+     * Call within block synced by: <code>this</code>
+     */
+    private void store(Key key, ImageIcon source, BufferedImage image) {
+        Rendition old = map.put(key, new Rendition(source, image));
+
+        if (old != null) {
+            usedBytes -= sizeOf(old.image);
+        }
+
+        usedBytes += sizeOf(image);
+        evict();
+    }
+
+    /**
+     * Evicts the least recently used renditions until within the byte
+     * budget. The most recently added rendition is always kept.
+     *
+     * Call within block synced by: <code>this</code>
+     */
+    private void evict() {
+        Iterator<Map.Entry<Key, Rendition>> i = map.entrySet().iterator();
+
+        while ((usedBytes > maxBytes) && (map.size() > 1) && i.hasNext()) {
+            Rendition r = i.next().getValue();
+
+            i.remove();
+            usedBytes -= sizeOf(r.image);
+        }
+    }
+
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Creates an image compatible with the screen so drawing it needs no
+     * conversion, or a plain RGB image when running headless
+     */
+    private static BufferedImage createImage(int width, int height) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration gc =
+                GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+
+            return gc.createCompatibleImage(width, height);
+        }
+
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Creates a rendition of a decoded image that fits in a level x level box
+     */
+    static BufferedImage scale(ImageIcon source, int level) {
+        int width  = source.getIconWidth();
+        int height = source.getIconHeight();
+
+        if ((width <= 0) || (height <= 0)) {
+            return null;
+        }
+
+        Dimension     d     = fit(width, height, level, level);
+        BufferedImage image = createImage(d.width, d.height);
+        Graphics2D    g2d   = image.createGraphics();
+
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.drawImage(source.getImage(), 0, 0, d.width, d.height, null);
+        g2d.dispose();
+
+        return image;
+    }
+
+    /**
+     * Creates a rendition on the cache thread, then repaints the components
+     * waiting on it
+     */
+    private class Scaler implements Runnable {
+        private final Key       key;
+        private final ImageIcon source;
+
+        Scaler(Key key, ImageIcon source) {
+            this.key    = key;
+            this.source = source;
+        }
+
+        public void run() {
+            BufferedImage   image = null;
+            List<Component> waiting;
+
+            try {
+                image = scale(source, key.level);
+            } catch (Exception ex) {
+                Logger.getLogger(ScaledImageCache.class.getName()).log(Level.SEVERE, null, ex);
+            }
+
+            synchronized (ScaledImageCache.this) {
+                waiting = pending.remove(key);
+
+                if (image != null) {
+                    store(key, source, image);
+                }
+            }
+
+            if ((image != null) && (waiting != null) &&!waiting.isEmpty()) {
+                final List<Component> components = waiting;
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        for (Component c : components) {
+                            c.repaint();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * A rendition and the decoded image it was made from. The decoded image
+     * is only weakly held so the decoded image cache stays in charge of it.
+     */
+    private static class Rendition {
+        final BufferedImage             image;
+        final WeakReference<ImageIcon> source;
+
+        Rendition(ImageIcon source, BufferedImage image) {
+            this.source = new WeakReference<ImageIcon>(source);
+            this.image  = image;
+        }
+    }
+
+
+    private static class Key {
+        final int  level;
+        final long objectId;
+
+        Key(long objectId, int level) {
+            this.objectId = objectId;
+            this.level    = level;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key k = (Key) o;
+
+            return (k.objectId == objectId) && (k.level == level);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (objectId ^ (objectId >>> 32)) * 31 + level;
+        }
+    }
+}
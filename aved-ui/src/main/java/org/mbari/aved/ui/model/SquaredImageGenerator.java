@@ -0,0 +1,291 @@
+/*
+ * @(#)SquaredImageGenerator.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.model;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import aved.model.EventObject;
+
+import org.mbari.aved.ui.utils.ImageUtils;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.IIOImage;
+
+/**
+ * Creates the squared event images the classifier runs on.
+ *
+ * <p>Event crops are queued with {@link #add(EventObjectContainer, int, File)}
+ * and grouped by frame, so each
+ * frame is decoded once no matter how many events are in it. Each event
+ * is cropped and squared in memory and written once. Frames are processed
+ * in parallel, one frame per thread, except for a sequential frame source,
+ * e.g. decoding on demand, which decodes the frames in increasing order on
+ * a single thread. Image files, e.g. training images, can also be squared
+ * in parallel with {@link #add(File, File)}.
+ *
+ * <p>Override {@link #isCancelled} to stop the generation early, e.g.
+ * when the user cancels the task it runs in.
+ *
+ * @author dcline
+ */
+public class SquaredImageGenerator {
+    private final TreeMap<Integer, List<Crop>> crops = new TreeMap<Integer, List<Crop>>();
+    private final List<File[]>                 files = new ArrayList<File[]>();
+
+    /** The last frame decoded by each thread, reused to decode the next */
+    private final ThreadLocal<BufferedImage>   frames = new ThreadLocal<BufferedImage>();
+    private Exception                          error;
+    private final int                          numThreads;
+
+    public SquaredImageGenerator() {
+        this(EventImageCache.NUM_LOADER_THREADS);
+    }
+
+    /**
+     * Constructor
+     * @param numThreads the number of frames to process in parallel
+     */
+    public SquaredImageGenerator(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Queues a squared image of an event in a frame
+     * @param event the event
+     * @param frameNo the frame to crop the event from
+     * @param output the file to write the squared image to
+     */
+    public void add(EventObjectContainer event, int frameNo, File output) {
+        List<Crop> list = crops.get(frameNo);
+
+        if (list == null) {
+            list = new ArrayList<Crop>();
+            crops.put(frameNo, list);
+        }
+
+        list.add(new Crop(event, output));
+    }
+
+    /**
+     * Queues a squared copy of an image file, e.g. a training image
+     * @param input the image file
+     * @param output the file to write the squared image to, in the
+     * same format as the input
+     */
+    public void add(File input, File output) {
+        files.add(new File[] { input, output });
+    }
+
+    /**
+     * @return the number of squared images queued
+     */
+    public int size() {
+        int size = files.size();
+
+        for (List<Crop> list : crops.values()) {
+            size += list.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Override to stop the generation early. This is checked before each
+     * frame is decoded and before each image is written.
+     * @return true to stop
+     */
+    protected boolean isCancelled() {
+        return false;
+    }
+
+    /**
+     * @return the first error that stopped the generation, or null if none
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Creates all the queued squared images. Stops at the first error,
+     * which is then returned by {@link #getError}.
+     *
+     * @return the number of squared images written
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int run() throws InterruptedException {
+        ExecutorService                      executor = Executors.newFixedThreadPool(numThreads);
+        LinkedBlockingQueue<Future<Integer>> queue    = new LinkedBlockingQueue<Future<Integer>>();
+        CompletionService<Integer>           done     = new ExecutorCompletionService<Integer>(executor, queue);
+        List<Future<Integer>>                futures  = new ArrayList<Future<Integer>>(crops.size() + files.size());
+        int                                  created  = 0;
+
+        // The crops are sorted by frame, so a single thread requests the
+        // frames of a sequential source in increasing order
+        ExecutorService            decoder      = null;
+        CompletionService<Integer> frameService = done;
+
+        if (!crops.isEmpty() && crops.firstEntry().getValue().get(0).event.isFrameSourceSequential()) {
+            decoder      = Executors.newSingleThreadExecutor();
+            frameService = new ExecutorCompletionService<Integer>(decoder, queue);
+        }
+
+        try {
+            for (Map.Entry<Integer, List<Crop>> entry : crops.entrySet()) {
+                final int        frameNo = entry.getKey();
+                final List<Crop> list    = entry.getValue();
+
+                futures.add(frameService.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        return createFrame(frameNo, list);
+                    }
+                }));
+            }
+
+            for (final File[] f : files) {
+                futures.add(done.submit(new Callable<Integer>() {
+                    public Integer call() throws Exception {
+                        if (isCancelled()) {
+                            return 0;
+                        }
+
+                        ImageUtils.squareImageThumbnail(f[0].getPath(), f[1].getPath(), ImageUtils.getExtension(f[0]));
+
+                        return 1;
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    created += done.take().get();
+                } catch (ExecutionException ex) {
+                    error = (ex.getCause() instanceof Exception)
+                            ? (Exception) ex.getCause()
+                            : ex;
+
+                    break;
+                }
+
+                if (isCancelled()) {
+                    break;
+                }
+            }
+        } finally {
+            for (Future<Integer> f : futures) {
+                f.cancel(true);
+            }
+
+            executor.shutdownNow();
+
+            if (decoder != null) {
+                decoder.shutdownNow();
+            }
+
+            crops.clear();
+            files.clear();
+        }
+
+        return created;
+    }
+
+    /**
+     * Decodes a frame and writes the squared images of all the events in it
+     * @return the number of squared images written
+     */
+    private int createFrame(int frameNo, List<Crop> list) throws Exception {
+        if (isCancelled() || list.isEmpty()) {
+            return 0;
+        }
+
+        BufferedImage frame   = list.get(0).event.getFrame(frameNo, frames.get());
+        int           created = 0;
+
+        if (frame == null) {
+            Logger.getLogger(SquaredImageGenerator.class.getName()).log(Level.WARNING,
+                             "Unable to decode frame {0}", frameNo);
+
+            return 0;
+        }
+
+        // The crops are squared into new images, so the frame is free to
+        // be decoded into again once they are written
+        frames.set(frame);
+
+        for (Crop c : list) {
+            if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+
+            EventObject object = c.event.getEventObject(frameNo);
+
+            if (object == null) {
+                continue;
+            }
+
+            IIOImage crop = EventImageCache.cropImageOfEvent(frame, object);
+
+            EventImageCache.writePpm(new IIOImage(ImageUtils.squareImage((BufferedImage) crop.getRenderedImage()),
+                    null, crop.getMetadata()), c.output);
+            created++;
+        }
+
+        return created;
+    }
+
+    /**
+     * An event to crop and the file to write it to
+     */
+    private static class Crop {
+        final EventObjectContainer event;
+        final File                 output;
+
+        Crop(EventObjectContainer event, File output) {
+            this.event  = event;
+            this.output = output;
+        }
+    }
+}
@@ -62,6 +62,13 @@ import javax.swing.table.*;
  * rows, a note of this is made and the sorter will resort the
  * rows the next time a value is requested.
  * <p/>
+ * To sort, the values of each sorting column are read from the model once
+ * into a primitive array, or for non numeric columns into an array of
+ * ranks of the distinct values, and an array of row indexes is sorted
+ * by comparing those. When only a few rows change, and none were added
+ * or removed, {@link #rowsUpdated} re-positions just those rows instead
+ * of resorting the whole table.
+ * <p/>
  * When the tableHeader property is set, either by using the
  * setTableHeader() method or the two argument constructor, the
  * table header may be used as a complete UI for TableSorter.
@@ -116,7 +123,10 @@ public class TableSorter extends AbstractTableModel {
     private JTableHeader         tableHeader;
     protected AbstractTableModel tableModel;
     private TableModelListener   tableModelListener;
-    private Row[]                viewToModel;
+    private int[]                viewToModel;
+
+    /** Snapshot of the sorting column values the view order is sorted by */
+    private SortKey[] sortKeys;
 
     public TableSorter() {
         this.mouseListener      = new MouseHandler();
@@ -137,6 +147,7 @@ public class TableSorter extends AbstractTableModel {
     private void clearSortingState() {
         viewToModel = null;
         modelToView = null;
+        sortKeys    = null;
     }
 
     public AbstractTableModel getTableModel() {
@@ -265,24 +276,239 @@ public class TableSorter extends AbstractTableModel {
         return LEXICAL_COMPARATOR;
     }
 
-    private Row[] getViewToModel() {
+    private int[] getViewToModel() {
         if (viewToModel == null) {
             int tableModelRowCount = tableModel.getRowCount();
 
-            viewToModel = new Row[tableModelRowCount];
+            viewToModel = new int[tableModelRowCount];
 
             for (int row = 0; row < tableModelRowCount; row++) {
-                viewToModel[row] = new Row(row);
+                viewToModel[row] = row;
             }
 
             if (isSorting()) {
-                Arrays.sort(viewToModel);
+                createSortKeys(tableModelRowCount);
+                sort(viewToModel);
             }
         }
 
         return viewToModel;
     }
 
+    /**
+     * Re-positions rows whose values have changed, when no rows were
+     * added or removed, and notifies the listeners.
+     *
+     * @param rows the model indexes of the changed rows
+     */
+    public void rowsUpdated(BitSet rows) {
+        rowsUpdated(rows, false);
+    }
+
+    /**
+     * Re-positions rows whose values have changed, e.g. after a
+     * <code>MULTIPLE_ENTRIES_CHANGED</code> event from the
+     * {@link EventListModel}, and notifies the listeners. Only the sort
+     * keys of the changed rows are read again, and only those rows are
+     * sorted and merged back into the view order. The whole table is
+     * resorted if rows were added or removed, since the model indexes
+     * of the other rows have then moved too, or if many rows changed.
+     *
+     * @param rows the model indexes of the changed rows
+     * @param addedOrRemoved true if rows were added or removed
+     */
+    public void rowsUpdated(BitSet rows, boolean addedOrRemoved) {
+        int n = getRowCount();
+
+        if (addedOrRemoved || !isSorting() || (viewToModel == null) || (sortKeys == null)
+                || (viewToModel.length != n) || (rows.length() > n)) {
+            clearSortingState();
+            fireTableDataChanged();
+
+            return;
+        }
+
+        int k = rows.cardinality();
+
+        if (k == 0) {
+            return;
+        }
+
+        // Resorting is cheaper than merging when many rows changed
+        if (k > n / 4) {
+            clearSortingState();
+            fireTableDataChanged();
+
+            return;
+        }
+
+        int[] changed = new int[k];
+        int   j       = 0;
+
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            for (int i = 0; i < sortKeys.length; i++) {
+                sortKeys[i].update(row, tableModel.getValueAt(row, sortKeys[i].column));
+            }
+
+            changed[j++] = row;
+        }
+
+        for (int i = 0; i < sortKeys.length; i++) {
+            sortKeys[i].commit();
+        }
+
+        sort(changed);
+
+        // The unchanged rows are still in order, so merge the changed rows in
+        int[] merged = new int[n];
+        int   q      = 0;
+
+        j = 0;
+
+        for (int i = 0; i < n; i++) {
+            int row = viewToModel[i];
+
+            if (rows.get(row)) {
+                continue;
+            }
+
+            while ((q < k) && (compareRows(changed[q], row) < 0)) {
+                merged[j++] = changed[q++];
+            }
+
+            merged[j++] = row;
+        }
+
+        while (q < k) {
+            merged[j++] = changed[q++];
+        }
+
+        boolean moved = !Arrays.equals(merged, viewToModel);
+
+        viewToModel = merged;
+        modelToView = null;
+
+        if (moved) {
+            fireTableDataChanged();
+        } else {
+            int[] m     = getModelToView();
+            int   first = n;
+            int   last  = -1;
+
+            for (int i = 0; i < k; i++) {
+                first = Math.min(first, m[changed[i]]);
+                last  = Math.max(last, m[changed[i]]);
+            }
+
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    /**
+     * Reads the values of the sorting columns into sort keys.
+     */
+    private void createSortKeys(int rowCount) {
+        sortKeys = new SortKey[sortingColumns.size()];
+
+        for (int i = 0; i < sortKeys.length; i++) {
+            Directive directive = (Directive) sortingColumns.get(i);
+            int       column    = directive.column;
+            Object[]  values    = new Object[rowCount];
+            boolean   numeric   = !columnComparators.containsKey(tableModel.getColumnClass(column));
+            boolean   integral  = true;
+
+            for (int row = 0; row < rowCount; row++) {
+                Object o = tableModel.getValueAt(row, column);
+
+                values[row] = o;
+
+                if (o != null) {
+                    if (!(o instanceof Number)) {
+                        numeric = false;
+                    } else if (!((o instanceof Long) || (o instanceof Integer) || (o instanceof Short)
+                                 || (o instanceof Byte))) {
+                        integral = false;
+                    }
+                }
+            }
+
+            if (numeric && integral) {
+                sortKeys[i] = new LongKey(column, directive.direction, values);
+            } else if (numeric) {
+                sortKeys[i] = new DoubleKey(column, directive.direction, values);
+            } else {
+                sortKeys[i] = new RankKey(column, directive.direction, values, getComparator(column));
+            }
+        }
+    }
+
+    /**
+     * Compares two model rows by the sort keys. Rows that are equal in all
+     * sorting columns keep their model order.
+     */
+    private int compareRows(int row1, int row2) {
+        for (int i = 0; i < sortKeys.length; i++) {
+            int comparison = sortKeys[i].compare(row1, row2);
+
+            if (comparison != 0) {
+                return (sortKeys[i].direction == DESCENDING)
+                       ? -comparison
+                       : comparison;
+            }
+        }
+
+        return (row1 < row2)
+               ? -1
+               : ((row1 == row2)
+                  ? 0
+                  : 1);
+    }
+
+    /**
+     * Sorts an array of model rows with a merge sort
+     */
+    private void sort(int[] rows) {
+        mergeSort(rows.clone(), rows, 0, rows.length);
+    }
+
+    private void mergeSort(int[] src, int[] dest, int low, int high) {
+        int length = high - low;
+
+        // Insertion sort on the smallest arrays
+        if (length < 7) {
+            for (int i = low; i < high; i++) {
+                for (int j = i; (j > low) && (compareRows(dest[j - 1], dest[j]) > 0); j--) {
+                    int t = dest[j];
+
+                    dest[j]     = dest[j - 1];
+                    dest[j - 1] = t;
+                }
+            }
+
+            return;
+        }
+
+        int mid = (low + high) >>> 1;
+
+        mergeSort(dest, src, low, mid);
+        mergeSort(dest, src, mid, high);
+
+        // If already in order, just copy
+        if (compareRows(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, length);
+
+            return;
+        }
+
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if ((q >= high) || ((p < mid) && (compareRows(src[p], src[q]) <= 0))) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
     public int viewIndex(int modelIndex) {
         if ((modelIndex >= 0) && (modelIndex <= getRowCount()) && (modelIndex < getModelToView().length)) {
             return getModelToView()[modelIndex];
@@ -294,7 +520,7 @@ public class TableSorter extends AbstractTableModel {
     public int modelIndex(int viewIndex) {
         if ((viewIndex >= 0) && (viewIndex <= getRowCount()) && (getViewToModel() != null)
                 && (viewIndex < getViewToModel().length)) {
-            return getViewToModel()[viewIndex].modelIndex;
+            return getViewToModel()[viewIndex];
         }
 
         return 0;
@@ -456,43 +682,202 @@ public class TableSorter extends AbstractTableModel {
 
 
     // Helper classes
-    private class Row implements Comparable {
-        private int modelIndex = 0;
-
-        public Row(int index) {
-            this.modelIndex = index;
-        }
-
-        public int compareTo(Object o) {
-            int row1 = modelIndex;
-            int row2 = ((Row) o).modelIndex;
-
-            for (Iterator it = sortingColumns.iterator(); it.hasNext(); ) {
-                Directive directive  = (Directive) it.next();
-                int       column     = directive.column;
-                Object    o1         = tableModel.getValueAt(row1, column);
-                Object    o2         = tableModel.getValueAt(row2, column);
-                int       comparison = 0;
-
-                // Define null less than everything, except null.
-                if ((o1 == null) && (o2 == null)) {
-                    comparison = 0;
-                } else if (o1 == null) {
-                    comparison = -1;
-                } else if (o2 == null) {
-                    comparison = 1;
-                } else {
-                    comparison = getComparator(column).compare(o1, o2);
-                }
 
-                if (comparison != 0) {
-                    return (directive.direction == DESCENDING)
-                           ? -comparison
-                           : comparison;
+    /**
+     * The values of one sorting column, snapshot from the model
+     */
+    private static abstract class SortKey {
+        final int column;
+        final int direction;
+
+        SortKey(int column, int direction) {
+            this.column    = column;
+            this.direction = direction;
+        }
+
+        /** Compares the values of two model rows. Null is less than everything, except null. */
+        abstract int compare(int row1, int row2);
+
+        /** Replaces the value of a model row */
+        abstract void update(int row, Object value);
+
+        /** Called after a batch of updates, before comparing again */
+        void commit() {}
+    }
+
+
+    /**
+     * Sort key for columns of integral numbers
+     */
+    private static class LongKey extends SortKey {
+        private final BitSet nulls = new BitSet();
+        private final long[] values;
+
+        LongKey(int column, int direction, Object[] objects) {
+            super(column, direction);
+            values = new long[objects.length];
+
+            for (int row = 0; row < objects.length; row++) {
+                update(row, objects[row]);
+            }
+        }
+
+        int compare(int row1, int row2) {
+            boolean null1 = nulls.get(row1);
+            boolean null2 = nulls.get(row2);
+
+            if (null1 || null2) {
+                return (null1 == null2)
+                       ? 0
+                       : (null1
+                          ? -1
+                          : 1);
+            }
+
+            long v1 = values[row1];
+            long v2 = values[row2];
+
+            return (v1 < v2)
+                   ? -1
+                   : ((v1 == v2)
+                      ? 0
+                      : 1);
+        }
+
+        final void update(int row, Object value) {
+            if (value instanceof Number) {
+                values[row] = ((Number) value).longValue();
+                nulls.clear(row);
+            } else {
+                nulls.set(row);
+            }
+        }
+    }
+
+
+    /**
+     * Sort key for columns of floating point numbers
+     */
+    private static class DoubleKey extends SortKey {
+        private final BitSet   nulls = new BitSet();
+        private final double[] values;
+
+        DoubleKey(int column, int direction, Object[] objects) {
+            super(column, direction);
+            values = new double[objects.length];
+
+            for (int row = 0; row < objects.length; row++) {
+                update(row, objects[row]);
+            }
+        }
+
+        int compare(int row1, int row2) {
+            boolean null1 = nulls.get(row1);
+            boolean null2 = nulls.get(row2);
+
+            if (null1 || null2) {
+                return (null1 == null2)
+                       ? 0
+                       : (null1
+                          ? -1
+                          : 1);
+            }
+
+            return Double.compare(values[row1], values[row2]);
+        }
+
+        final void update(int row, Object value) {
+            if (value instanceof Number) {
+                values[row] = ((Number) value).doubleValue();
+                nulls.clear(row);
+            } else {
+                nulls.set(row);
+            }
+        }
+    }
+
+
+    /**
+     * Sort key for any other column. The distinct values are sorted once
+     * with the column comparator, and each row is compared by the rank of
+     * its value, so e.g. class names are not compared as strings over and
+     * over while sorting.
+     */
+    private static class RankKey extends SortKey {
+        private final Comparator comparator;
+        private TreeMap          rankMap;
+        private int[]            ranks;
+        private boolean          stale;
+        private final Object[]   values;
+
+        RankKey(int column, int direction, Object[] values, Comparator comparator) {
+            super(column, direction);
+            this.values     = values;
+            this.comparator = comparator;
+            rank();
+        }
+
+        /** Ranks all the values, null ranks lowest */
+        private void rank() {
+            rankMap = new TreeMap(comparator);
+
+            for (int row = 0; row < values.length; row++) {
+                if (values[row] != null) {
+                    rankMap.put(values[row], null);
                 }
             }
 
-            return 0;
+            int r = 0;
+
+            for (Iterator it = rankMap.entrySet().iterator(); it.hasNext(); ) {
+                ((Map.Entry) it.next()).setValue(new Integer(r++));
+            }
+
+            ranks = new int[values.length];
+
+            for (int row = 0; row < values.length; row++) {
+                ranks[row] = (values[row] == null)
+                             ? -1
+                             : ((Integer) rankMap.get(values[row])).intValue();
+            }
+        }
+
+        int compare(int row1, int row2) {
+            int r1 = ranks[row1];
+            int r2 = ranks[row2];
+
+            return (r1 < r2)
+                   ? -1
+                   : ((r1 == r2)
+                      ? 0
+                      : 1);
+        }
+
+        void update(int row, Object value) {
+            values[row] = value;
+
+            if (value == null) {
+                ranks[row] = -1;
+
+                return;
+            }
+
+            Integer r = (Integer) rankMap.get(value);
+
+            // A new distinct value changes the ranks of the values after it
+            if (r == null) {
+                stale = true;
+            } else {
+                ranks[row] = r.intValue();
+            }
+        }
+
+        @Override
+        void commit() {
+            if (stale) {
+                stale = false;
+                rank();
+            }
         }
     }
 
@@ -572,6 +957,17 @@ public class TableSorter extends AbstractTableModel {
                 return;
             }
 
+            // A few updated rows can be re-positioned without resorting
+            if ((e.getType() == TableModelEvent.UPDATE) && (e.getFirstRow() >= 0)
+                    && (e.getLastRow() < getRowCount()) && (viewToModel != null)) {
+                BitSet rows = new BitSet();
+
+                rows.set(e.getFirstRow(), e.getLastRow() + 1);
+                rowsUpdated(rows);
+
+                return;
+            }
+
             // Something has happened to the data that may have invalidated the row order.
             clearSortingState();
             fireTableDataChanged();
@@ -130,6 +130,47 @@ public class DisplayThumbnail extends DisplayJAI {
         super.set(thumbnail);
     }
 
+    /**
+     * Sets an image that has already been scaled down from the original
+     * image, e.g. by the {@link FramePrefetcher}. If it was scaled to the
+     * scale of this display, it is used as is without rescaling.
+     * @param image the scaled image to set
+     * @param prescale the scale the image was scaled by
+     */
+    public void set(PlanarImage image, float prescale) {
+        if ((prescale <= 0.f) || (prescale == 1.0f)) {
+            set(image);
+
+            return;
+        }
+
+        imageWidth  = Math.round(image.getWidth() / prescale);
+        imageHeight = Math.round(image.getHeight() / prescale);
+
+        if (prescale == scale) {
+            super.set(image);
+
+            return;
+        }
+
+        ParameterBlock pb = new ParameterBlock();
+
+        pb.addSource(image);
+        pb.add(scale / prescale);
+        pb.add(scale / prescale);
+        pb.add(0.0F);
+        pb.add(0.0F);
+        pb.add(new InterpolationNearest());
+        super.set(JAI.create("scale", pb, null));
+    }
+
+    /**
+     * @return the scale the original image is displayed at
+     */
+    public float getScale() {
+        return scale;
+    }
+
     /**
      * This method will repaint the component. It will draw the thumbnail image,
      * then draw some yellow lines over the tiles' boundary (if the image is
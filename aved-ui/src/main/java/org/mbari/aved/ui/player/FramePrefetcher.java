@@ -0,0 +1,338 @@
+/*
+ * @(#)FramePrefetcher.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+
+package org.mbari.aved.ui.player;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import org.mbari.aved.ui.model.EventObjectContainer;
+import org.mbari.aved.ui.thumbnail.ImageChangeUtil;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decodes the frames of an event ahead of playback on a background thread.
+ *
+ * <p>Frames are addressed by their offset into the sorted frames of the
+ * event, as in {@link EventObjectContainer#getIndexedFrame(int)}. Starting
+ * at the playback cursor, the prefetcher decodes frames in the play
+ * direction into a fixed size ring buffer, optionally scaled down to the
+ * size they are displayed at. Moving the cursor past frames that are not
+ * decoded yet skips them, so a slow decoder drops frames rather than
+ * falling further behind.
+ *
+ * <p>The prefetcher also keeps the achieved display rate, updated by
+ * {@link #markDisplayed(int)}.
+ *
+ * @author dcline
+ */
+public class FramePrefetcher implements Runnable {
+
+    /** Number of display times the frame rate is averaged over */
+    private static final int FPS_WINDOW = 32;
+
+    /** Lock for the ring buffer and cursor */
+    private final Object                 sync = new Object();
+    private boolean                      forward = true;
+    private final long[]                 displayTimes = new long[FPS_WINDOW];
+    private int                          cursor;
+    private long                         displayed;
+    private long                         dropped;
+    private final EventObjectContainer   event;
+    private final int                    lastOffset;
+    private final Frame[]                ring;
+    private volatile boolean             running;
+    private final float                  scale;
+    private Thread                       thread;
+
+    /**
+     * A decoded frame. The image is null if the frame is missing.
+     */
+    public static class Frame {
+        public final BufferedImage image;
+        public final int           offset;
+        public final float         scale;
+
+        Frame(int offset, BufferedImage image, float scale) {
+            this.offset = offset;
+            this.image  = image;
+            this.scale  = scale;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param event the event to decode frames for
+     * @param lastOffset the last frame offset to decode
+     * @param capacity number of frames to decode ahead
+     * @param scale the scale to decode frames at, or 1 to keep them at
+     * full resolution
+     */
+    public FramePrefetcher(EventObjectContainer event, int lastOffset, int capacity, float scale) {
+        this.event      = event;
+        this.lastOffset = lastOffset;
+        this.ring       = new Frame[Math.max(2, capacity)];
+        this.scale      = ((scale > 0.f) && (scale < 1.0f))
+                          ? scale
+                          : 1.0f;
+    }
+
+    /**
+     * Starts decoding on a background thread if not started already
+     */
+    public void start() {
+        synchronized (sync) {
+            if (running) {
+                return;
+            }
+
+            running = true;
+            thread  = new Thread(this, "FramePrefetcher " + event.getObjectId());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the background thread. Decoded frames are kept, so starting
+     * again replays them without decoding.
+     */
+    public void stop() {
+        synchronized (sync) {
+            running = false;
+            sync.notifyAll();
+        }
+    }
+
+    /**
+     * Moves the playback cursor, which is where decoding continues from
+     * @param offset the frame offset to be displayed next
+     * @param forward true if playing forward, false if in reverse
+     */
+    public void seek(int offset, boolean forward) {
+        synchronized (sync) {
+            this.cursor  = Math.max(0, Math.min(lastOffset, offset));
+            this.forward = forward;
+            sync.notifyAll();
+        }
+    }
+
+    /**
+     * Returns a decoded frame without waiting for it
+     * @param offset the frame offset
+     * @return the frame, or null if it is not decoded
+     */
+    public Frame poll(int offset) {
+        synchronized (sync) {
+            Frame f = ring[slot(offset)];
+
+            return ((f != null) && (f.offset == offset))
+                   ? f
+                   : null;
+        }
+    }
+
+    /**
+     * Returns the decoded frame closest to <code>to</code> after the frame
+     * <code>from</code> in the play direction, without waiting. Frames
+     * between <code>from</code> and the returned frame are late and should
+     * be dropped.
+     * @param from the last frame offset displayed
+     * @param to the frame offset that should be displayed now
+     * @return the frame, or null if none is decoded yet
+     */
+    public Frame latest(int from, int to) {
+        synchronized (sync) {
+            int step = forward
+                       ? -1
+                       : 1;
+
+            for (int offset = to; offset != from; offset += step) {
+                if ((offset < 0) || (offset > lastOffset)) {
+                    break;
+                }
+
+                Frame f = ring[slot(offset)];
+
+                if ((f != null) && (f.offset == offset)) {
+                    return f;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Records that a frame was displayed
+     * @param skipped the number of frames dropped before it
+     */
+    public void markDisplayed(int skipped) {
+        synchronized (sync) {
+            displayTimes[(int) (displayed % FPS_WINDOW)] = System.nanoTime();
+            displayed++;
+            dropped += Math.max(0, skipped);
+        }
+    }
+
+    /**
+     * Returns the rate frames were displayed at, averaged over the last
+     * few displayed frames
+     * @return frames per second
+     */
+    public float getFps() {
+        synchronized (sync) {
+            int n = (int) Math.min(displayed, FPS_WINDOW);
+
+            if (n < 2) {
+                return 0.f;
+            }
+
+            long last  = displayTimes[(int) ((displayed - 1) % FPS_WINDOW)];
+            long first = displayTimes[(int) ((displayed - n) % FPS_WINDOW)];
+
+            return (last > first)
+                   ? (n - 1) * 1.0e9f / (last - first)
+                   : 0.f;
+        }
+    }
+
+    public long getDisplayedFrames() {
+        synchronized (sync) {
+            return displayed;
+        }
+    }
+
+    public long getDroppedFrames() {
+        synchronized (sync) {
+            return dropped;
+        }
+    }
+
+    public void run() {
+        while (running) {
+            int offset;
+
+            synchronized (sync) {
+                offset = nextToDecode();
+
+                if (offset < 0) {
+                    try {
+                        sync.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+
+                    continue;
+                }
+            }
+
+            Frame f = decode(offset);
+
+            synchronized (sync) {
+
+                // Only keep the frame if the cursor has not moved past it
+                if (inWindow(offset)) {
+                    ring[slot(offset)] = f;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first frame offset from the cursor in the play direction
+     * that is not decoded, or -1 if the ring buffer is full.
+     *
+     * Call within block synced by: <code>sync</code>
+     */
+    private int nextToDecode() {
+        for (int i = 0; i < ring.length; i++) {
+            int offset = forward
+                         ? cursor + i
+                         : cursor - i;
+
+            if ((offset < 0) || (offset > lastOffset)) {
+                break;
+            }
+
+            Frame f = ring[slot(offset)];
+
+            if ((f == null) || (f.offset != offset)) {
+                return offset;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Call within block synced by: <code>sync</code>
+     */
+    private boolean inWindow(int offset) {
+        return forward
+               ? (offset >= cursor) && (offset < cursor + ring.length)
+               : (offset <= cursor) && (offset > cursor - ring.length);
+    }
+
+    private int slot(int offset) {
+        return offset % ring.length;
+    }
+
+    /**
+     * Decodes and scales a frame
+     */
+    private Frame decode(int offset) {
+        BufferedImage image    = null;
+        int           frameNum = event.getIndexedFrame(offset);
+
+        if (frameNum >= 0) {
+            try {
+                image = event.getFrame(frameNum);
+
+                if ((image != null) && (scale < 1.0f)) {
+                    int width  = Math.max(1, Math.round(image.getWidth() * scale));
+                    int height = Math.max(1, Math.round(image.getHeight() * scale));
+
+                    image = ImageChangeUtil.getScaledInstance(image, width, height,
+                            RenderingHints.VALUE_INTERPOLATION_BILINEAR, false);
+                }
+            } catch (Exception ex) {
+                Logger.getLogger(FramePrefetcher.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+
+        return new Frame(offset, image, (image != null)
+                                        ? scale
+                                        : 1.0f);
+    }
+}
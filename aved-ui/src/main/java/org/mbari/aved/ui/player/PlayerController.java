@@ -47,8 +47,7 @@ import org.mbari.aved.ui.userpreferences.UserPreferencesModel;
 //~--- JDK imports ------------------------------------------------------------
 
 import java.awt.event.*;
-
-import java.io.File;
+import java.awt.image.BufferedImage;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -66,6 +65,19 @@ public class PlayerController extends AbstractController implements ActionListen
     private EventObjectContainer event;
     private EventListModel       eventListModel;
 
+    /** Number of frames decoded ahead of continuous play */
+    private static final int PREFETCH_FRAMES = 24;
+
+    /** Decodes frames ahead of the timer */
+    private FramePrefetcher prefetcher;
+
+    /** The frame index and time continuous play was started at */
+    private int  playStartIndex;
+    private long playStartTime;
+
+    /** The last frame index displayed in continuous play */
+    private int lastDisplayed;
+
     /** the icon displayed with pause function is enabled */
     private ImageIcon pauseIcon;
 
@@ -105,6 +117,77 @@ public class PlayerController extends AbstractController implements ActionListen
         updateButtonStates();
     }
 
+    /**
+     * Returns the rate continuous play achieved in displaying frames
+     * @return frames per second, or 0 if not played yet
+     */
+    public float getAchievedFps() {
+        return (prefetcher != null)
+               ? prefetcher.getFps()
+               : 0.f;
+    }
+
+    /**
+     * Creates the prefetcher on first play. Frames are decoded at the
+     * scale the view displays them at, which is only known once the view
+     * has displayed the first frame.
+     */
+    private FramePrefetcher getPrefetcher() {
+        if (prefetcher == null) {
+            prefetcher = new FramePrefetcher(event, nImages, PREFETCH_FRAMES,
+                                             ((PlayerView) getView()).getDisplayScale());
+        }
+
+        return prefetcher;
+    }
+
+    /**
+     * Displays the frame continuous play should be at by now. Frames that
+     * are not decoded in time are dropped rather than waited for.
+     */
+    private void displayNextFrame() {
+        int step   = (direction == Direction.Reverse)
+                     ? -1
+                     : 1;
+        long ticks = (System.nanoTime() - playStartTime) / (timer.getDelay() * 1000000L);
+        int target = Math.max(0, Math.min(nImages, playStartIndex + step * (int) ticks));
+
+        // Decode from the target on, so late frames are never decoded
+        getPrefetcher().seek(target, step > 0);
+
+        FramePrefetcher.Frame f = prefetcher.latest(lastDisplayed, target);
+
+        if (f != null) {
+            displayFrame(f);
+            prefetcher.markDisplayed(Math.abs(f.offset - lastDisplayed) - 1);
+            lastDisplayed = f.offset;
+        }
+
+        frameIndex = lastDisplayed + step;
+    }
+
+    /**
+     * Displays a frame decoded by the prefetcher
+     */
+    private void displayFrame(FramePrefetcher.Frame f) {
+        PlayerView view     = ((PlayerView) getView());
+        int        frameNum = event.getIndexedFrame(f.offset);
+
+        if (frameNum >= 0) {
+            try {
+                EventObject eventObj = event.getEventObject(frameNum);
+
+                if (eventObj != null) {
+                    view.displayEventFrame(event, eventObj.getBoundingBox(), f.image, f.scale);
+                    view.displayTimecodeFrameString(eventObj.getFrameEventSet().getTimecode(),
+                                                    eventObj.getFrameEventSet().getFrameNumber());
+                }
+            } catch (Exception ex) {
+                Logger.getLogger(PlayerController.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
     /**
      * Controls telling the view what image to display from the
      * offset from the beginning of the event
@@ -118,16 +201,28 @@ public class PlayerController extends AbstractController implements ActionListen
         int frameNum = (event.getIndexedFrame(offset));
 
         if (frameNum >= 0) {
+
+            // Use the frame if it is already decoded
+            FramePrefetcher.Frame f = (prefetcher != null)
+                                      ? prefetcher.poll(offset)
+                                      : null;
+
+            if (f != null) {
+                displayFrame(f);
+
+                return;
+            }
+
             // Get the image sequence, and display the image
             try {
-                File src = null;
+                BufferedImage src = null;
 
                 eventObj = event.getEventObject(frameNum);
 
-                // Get the frame source and catch exception
+                // Get the frame and catch exception
                 // in case it is missing
                 try {
-                    src = event.getFrameSource(frameNum);
+                    src = event.getFrame(frameNum);
                 } catch (Exception ex) {
 
                     src = null;
@@ -193,6 +288,15 @@ public class PlayerController extends AbstractController implements ActionListen
 
         state = State.Stop;
         view.setPlayStopButtonIcon(playIcon);
+
+        if (timer.isRunning() && (prefetcher != null)) {
+            prefetcher.stop();
+            Logger.getLogger(PlayerController.class.getName()).log(Level.INFO,
+                             "Event " + event.getObjectId() + " played at " + String.format("%.1f", prefetcher.getFps())
+                             + " fps, " + prefetcher.getDroppedFrames() + " of " + (prefetcher.getDisplayedFrames()
+                                 + prefetcher.getDroppedFrames()) + " frames dropped");
+        }
+
         timer.stop();
     }
 
@@ -211,6 +315,18 @@ public class PlayerController extends AbstractController implements ActionListen
 
             // kick start the timer is it isn't running
             if (!timer.isRunning()) {
+                if (mode == Mode.Continuous) {
+                    int step = (direction == Direction.Reverse)
+                               ? -1
+                               : 1;
+
+                    playStartIndex = frameIndex;
+                    playStartTime  = System.nanoTime();
+                    lastDisplayed  = frameIndex - step;
+                    getPrefetcher().seek(frameIndex, step > 0);
+                    prefetcher.start();
+                }
+
                 timer.start();
             }
         }
@@ -321,6 +437,21 @@ public class PlayerController extends AbstractController implements ActionListen
             }
         }
 
+        // Continuous play is paced by the clock, not by the timer ticks
+        if ((mode == Mode.Continuous) && timer.isRunning()) {
+            state = State.Play;
+            displayNextFrame();
+
+            if ((frameIndex > nImages) || (frameIndex < 0)) {
+                frameIndex = 0;
+                stop();
+            }
+
+            updateButtonStates();
+
+            return;
+        }
+
         if (frameIndex == nImages) {
             stop();
         }
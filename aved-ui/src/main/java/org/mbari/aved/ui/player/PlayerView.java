@@ -52,13 +52,11 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 
-import java.io.File;
 
 import java.net.URL;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.media.jai.JAI;
 import javax.media.jai.PlanarImage;
 
 import javax.swing.ImageIcon;
@@ -241,23 +239,19 @@ public class PlayerView extends JFrameView {
 
     /**
      * Display the event image for this event object.
-     * This will load the image frame this EventObject
+     * This will display the decoded image frame this EventObject
      * is in and overlay the bounding box representing it
      * on the image.
      */
-    public void displayEventImage(EventObjectContainer eventObj, BoundingBox b,  File frame) {
+    public void displayEventImage(EventObjectContainer eventObj, BoundingBox b, BufferedImage frame) {
         PlanarImage image = null;
 
         if (eventObj != null) {
-            try {
 
-                // Load up the frame, or use missing image it is undefined
-                image = ((frame != null)
-                         ? JAI.create("fileload", frame.toString())
-                         : missingImage);
-            } catch (IllegalArgumentException ex) {
-                image = missingImage;
-            }
+            // Wrap the decoded frame, or use missing image it is undefined
+            image = ((frame != null)
+                     ? PlanarImage.wrapRenderedImage(frame)
+                     : missingImage);
 
             // If file load failed, use missingImage
             if (image == null) {
@@ -329,6 +323,51 @@ public class PlayerView extends JFrameView {
         }
     }
 
+    /**
+     * Returns the scale the event frames are displayed at
+     * @return the display scale, or 1 if no frame is displayed yet
+     */
+    public float getDisplayScale() {
+        return (jai != null)
+               ? jai.getScale()
+               : 1.0f;
+    }
+
+    /**
+     * Displays a frame that was scaled down from the original frame by
+     * <code>prescale</code>. The bounding box is in the original frame
+     * coordinates. Falls back to {@link #displayEventImage} if the frame is
+     * not scaled or there is no display to put it in yet.
+     * @param eventObj the event
+     * @param b the bounding box of the event in the original frame
+     * @param frame the scaled frame
+     * @param prescale the scale the frame was scaled by
+     */
+    public void displayEventFrame(EventObjectContainer eventObj, BoundingBox b, BufferedImage frame, float prescale) {
+        if ((jai == null) || (frame == null) || (prescale == 1.0f)) {
+            displayEventImage(eventObj, b, frame);
+
+            return;
+        }
+
+        int fullWidth  = Math.round(frame.getWidth() / prescale);
+        int fullHeight = Math.round(frame.getHeight() / prescale);
+
+        if ((imageWidth < fullWidth) || (imageHeight < fullHeight)) {
+            displayEventImage(eventObj, b, frame);
+
+            return;
+        }
+
+        int xorigin = b.getLowerLeftX();
+        int yorigin = b.getUpperRightY();
+        int width   = Math.min(b.getUpperRightX() - b.getLowerLeftX(), fullWidth - xorigin);
+        int height  = Math.min(b.getLowerLeftY() - b.getUpperRightY(), fullHeight - yorigin);
+
+        jai.set(PlanarImage.wrapRenderedImage(frame), prescale);
+        jai.repositionViewportBounds(width, height, new Point(xorigin, yorigin));
+    }
+
     /* Sets the icon on the play stop button */
     public void setPlayStopButtonIcon(ImageIcon icon) {
         if (icon != null) {
@@ -380,7 +419,7 @@ public class PlayerView extends JFrameView {
         // Display the best representation of the event
         int         frame    = event.getBestEventFrame();
         EventObject eventObj = event.getEventObject(frame);
-        File        f        = event.getFrameSource(frame);
+        BufferedImage f      = event.getFrame(frame);
 
         displayEventImage(event, eventObj.getBoundingBox(), f);
     }
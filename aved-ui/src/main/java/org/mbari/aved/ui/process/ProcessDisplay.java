@@ -71,6 +71,11 @@ public class ProcessDisplay extends AbstractOutputStream {
         controller.display(String.valueOf((char) b));  
     }
 
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        controller.display(new String(b, off, len));
+    }
+
     public void write(byte b[]) throws IOException {
         String s = "";
 
@@ -31,6 +31,14 @@ public abstract class AbstractOutputStream extends OutputStream {
         throw new UnsupportedOperationException("Not supported yet.");
     }
     
+    /**
+     * Shows progress parsed from the output. Displays without a progress
+     * indicator ignore it.
+     * @param event the progress
+     */
+    public void setProgress(LogProgressEvent event) {
+    }
+    
     @Override  
     public void write(int b) throws IOException {   
         throw new IOException("Not supported yet.");
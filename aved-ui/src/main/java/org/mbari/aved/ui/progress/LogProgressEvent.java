@@ -0,0 +1,110 @@
+/*
+ * @(#)LogProgressEvent.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.progress;
+
+/**
+ * Progress parsed from a classifier log, e.g. the
+ * <code>Collecting 3 of 120 file.ppm</code> lines printed while
+ * collecting features
+ *
+ * @author dcline
+ */
+public class LogProgressEvent {
+    private final int    count;
+    private final String file;
+    private final float  rate;
+    private final String stage;
+    private final int    total;
+
+    /**
+     * Constructor
+     * @param stage what is in progress, e.g. Collecting
+     * @param count the number of files done, or -1 if not known
+     * @param total the total number of files, or -1 if not known
+     * @param file the current file, or null if none
+     * @param rate the files done per second, or 0 if not known
+     */
+    public LogProgressEvent(String stage, int count, int total, String file, float rate) {
+        this.stage = stage;
+        this.count = count;
+        this.total = total;
+        this.file  = file;
+        this.rate  = rate;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the current file, or null if none
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * @return the files done per second, or 0 if not known
+     */
+    public float getRate() {
+        return rate;
+    }
+
+    /**
+     * @return the percent done, or -1 if not known
+     */
+    public int getPercent() {
+        if ((count < 0) || (total <= 0)) {
+            return -1;
+        }
+
+        return Math.min(100, 100 * count / total);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder(stage);
+
+        if ((count >= 0) && (total > 0)) {
+            s.append(' ').append(count).append(" of ").append(total);
+        }
+
+        if (rate > 0) {
+            s.append(String.format(" (%.1f files/s)", rate));
+        }
+
+        return s.toString();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * @(#)LogProgressParser.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.progress;
+
+/**
+ * Parses the progress lines the classifier libraries print to their log
+ * while collecting features and testing. Lines are parsed from the bytes
+ * read from the log, so only the file name of a progress line is copied.
+ * <ul>
+ * <li><code>Collecting &lt;n&gt; of &lt;total&gt; &lt;file&gt;</code></li>
+ * <li><code>TESTING [&lt;class&gt;] STARTING...</code></li>
+ * <li><code>TESTING DONE...</code></li>
+ * </ul>
+ *
+ * @author dcline
+ */
+public class LogProgressParser {
+    private static final byte[] COLLECTING = ascii("Collecting ");
+    private static final byte[] DONE       = ascii("TESTING DONE");
+    private static final byte[] OF         = ascii(" of ");
+    private static final byte[] TESTING    = ascii("TESTING ");
+    private long                start;
+    private int                 startCount;
+
+    /**
+     * Parses a line
+     * @param b the buffer holding the line
+     * @param off the offset of the line in the buffer
+     * @param len the length of the line, without the line terminator
+     * @return the progress, or null if this is not a progress line
+     */
+    public LogProgressEvent parse(byte[] b, int off, int len) {
+        int end = off + len;
+
+        // Matlab indents some lines
+        while ((off < end) && (b[off] == ' ')) {
+            off++;
+        }
+
+        if (startsWith(b, off, end, COLLECTING)) {
+            int   i     = off + COLLECTING.length;
+            int[] count = new int[1];
+            int[] total = new int[1];
+
+            i = parseInt(b, i, end, count);
+
+            if ((i < 0) ||!startsWith(b, i, end, OF)) {
+                return null;
+            }
+
+            i = parseInt(b, i + OF.length, end, total);
+
+            if (i < 0) {
+                return null;
+            }
+
+            while ((i < end) && (b[i] == ' ')) {
+                i++;
+            }
+
+            String file = (i < end) ? new String(b, i, end - i) : null;
+
+            return new LogProgressEvent("Collecting", count[0], total[0], file, rate(count[0]));
+        } else if (startsWith(b, off, end, DONE)) {
+            return new LogProgressEvent("Testing done", 1, 1, null, 0f);
+        } else if (startsWith(b, off, end, TESTING)) {
+            return new LogProgressEvent("Testing", 0, 1, null, 0f);
+        }
+
+        return null;
+    }
+
+    /**
+     * Calculates the files per second since the first file of this run
+     */
+    private float rate(int count) {
+        long now = System.currentTimeMillis();
+
+        if ((count <= 1) || (start == 0) || (count < startCount)) {
+            start      = now;
+            startCount = count;
+
+            return 0f;
+        }
+
+        long elapsed = now - start;
+
+        return (elapsed > 0) ? 1000f * (count - startCount) / elapsed : 0f;
+    }
+
+    /**
+     * Parses an unsigned integer
+     * @param value set to the integer parsed
+     * @return the index after the integer, or -1 if there is none
+     */
+    private static int parseInt(byte[] b, int i, int end, int[] value) {
+        int start = i;
+        int v     = 0;
+
+        while ((i < end) && (b[i] >= '0') && (b[i] <= '9')) {
+            v = v * 10 + (b[i++] - '0');
+        }
+
+        value[0] = v;
+
+        return (i > start) ? i : -1;
+    }
+
+    private static boolean startsWith(byte[] b, int off, int end, byte[] prefix) {
+        if (end - off < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (b[off + i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] b = new byte[s.length()];
+
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) s.charAt(i);
+        }
+
+        return b;
+    }
+}
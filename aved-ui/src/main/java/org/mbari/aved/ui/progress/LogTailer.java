@@ -0,0 +1,163 @@
+/*
+ * @(#)LogTailer.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.progress;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Follows a growing log file, like <code>tail -f</code>.
+ *
+ * <p>Reads block until there is new data in the file. The file is polled
+ * while it is idle, starting at {@link #MIN_BACKOFF} ms and doubling up to
+ * {@link #MAX_BACKOFF} ms, so an idle log costs next to nothing and a busy
+ * one is read as soon as it is written. If the file is truncated or
+ * replaced, it is read again from the start.
+ *
+ * @author dcline
+ */
+public class LogTailer {
+
+    /** The shortest and longest time to wait for new data, in ms */
+    public static final long MIN_BACKOFF = 10;
+    public static final long MAX_BACKOFF = 500;
+    private FileChannel      channel;
+    private final File       file;
+    private FileInputStream  in;
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor
+     * @param file the file to follow, or null if there is none
+     * @param fromEnd true to skip what is already in the file
+     */
+    public LogTailer(File file, boolean fromEnd) {
+        this(file, (fromEnd && (file != null)) ? file.length() : 0);
+    }
+
+    /**
+     * Constructor
+     * @param file the file to follow, or null if there is none
+     * @param position the position in the file to start reading from
+     */
+    public LogTailer(File file, long position) {
+        this.file = file;
+
+        if ((position > 0) && (file != null)) {
+            try {
+                open().position(position);
+            } catch (IOException ex) {
+
+                // The file will be opened when it is created
+                close();
+            }
+        }
+    }
+
+    /**
+     * Reads new data from the file, waiting for it if there is none
+     * @param b the buffer to read into
+     * @param off the offset in the buffer
+     * @param len the most bytes to read
+     * @param timeout the most time to wait for data in ms, or 0 to wait
+     * until there is data or the tailer is stopped
+     * @return the number of bytes read, 0 if the timeout expired, or -1
+     * if the tailer was stopped
+     * @throws IOException if the file cannot be read
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int read(byte[] b, int off, int len, long timeout) throws IOException, InterruptedException {
+        long backoff = MIN_BACKOFF;
+        long waited  = 0;
+
+        while (!stopped) {
+            if ((channel == null) && (file != null) && file.exists()) {
+                open();
+            }
+
+            if (channel != null) {
+
+                // Truncated or replaced by a shorter file
+                if (channel.size() < channel.position()) {
+                    channel.position(0);
+                }
+
+                int n = channel.read(ByteBuffer.wrap(b, off, len));
+
+                if (n > 0) {
+                    return n;
+                }
+            }
+
+            if ((timeout > 0) && (waited >= timeout)) {
+                return 0;
+            }
+
+            long sleep = (timeout > 0) ? Math.min(backoff, timeout - waited) : backoff;
+
+            Thread.sleep(sleep);
+            waited  += sleep;
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Stops the tailer. A blocked read returns -1 within {@link #MAX_BACKOFF} ms.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Closes the file
+     */
+    public synchronized void close() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ex) {}
+        }
+
+        in      = null;
+        channel = null;
+    }
+
+    private synchronized FileChannel open() throws IOException {
+        in      = new FileInputStream(file);
+        channel = in.getChannel();
+
+        return channel;
+    }
+}
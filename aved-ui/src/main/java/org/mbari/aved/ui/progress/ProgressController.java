@@ -64,6 +64,20 @@ public class ProgressController implements PropertyChangeListener {
         controller.display(str);
     }
 
+    /**
+     * Shows progress parsed from the classifier log. Unlike the task
+     * progress, this does not close the display when it reaches 100%,
+     * since a task may run several stages
+     * @param event the progress
+     */
+    public void setProgress(LogProgressEvent event) {
+        int percent = event.getPercent();
+
+        if (percent >= 0) {
+            view.setValue(percent, event.toString());
+        }
+    }
+
     public ProgressView getView() {
         return view;
     }
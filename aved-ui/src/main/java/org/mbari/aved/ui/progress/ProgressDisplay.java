@@ -66,6 +66,11 @@ public class ProgressDisplay extends AbstractOutputStream {
       write(b, 0, b.length);  
     }  
     
+    @Override
+    public void setProgress(LogProgressEvent event) {
+        controller.setProgress(event);
+    }
+
     public JFrame getView() {
         return controller.getView();
     }
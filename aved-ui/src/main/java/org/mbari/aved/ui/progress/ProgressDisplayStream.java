@@ -32,55 +32,178 @@ import org.jdesktop.swingworker.SwingWorker;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.io.BufferedReader;
-import java.io.IOException; 
+import java.io.File;
+import java.io.IOException;
 
-import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Displays the output from a @{link InputStreamReader}
- * to a @{link org.mbari.aved.ui.progress.ProgressDisplay}
+ * Displays the output appended to a log file, e.g. the classifier log,
+ * to a @{link org.mbari.aved.ui.progress.AbstractOutputStream}, and
+ * the progress parsed from it to the display's progress bar.
+ *
+ * <p>The log is followed with a {@link LogTailer}, so this waits for
+ * new output rather than spinning. Lines are copied in place within
+ * one buffer and written to the display a read at a time.
  *
  * @author dcline
  */
-public class ProgressDisplayStream extends SwingWorker {
-    private Boolean          isDone = false;
-    private BufferedReader  br;
-    private OutputStream display; 
-
-    public ProgressDisplayStream(OutputStream display, BufferedReader br) {
-        this.br      = br;
-        this.display = display; 
+public class ProgressDisplayStream extends SwingWorker<Object, LogProgressEvent> {
+
+    /**
+     * How long a partial line is held waiting for the rest of it, in ms.
+     * Matlab prints the newline before rather than after some lines
+     */
+    private static final long          PARTIAL_LINE_TIMEOUT = 250;
+    private final AbstractOutputStream display;
+    private final LogProgressParser    parser = new LogProgressParser();
+    private final Callable<LogTailer>  source;
+    private volatile boolean           stopped = false;
+    private volatile LogTailer         tailer;
+
+    /**
+     * Constructor
+     * @param display the display to write the log output to
+     * @param logFile the log file. Only output appended after this is
+     * created is displayed
+     */
+    public ProgressDisplayStream(AbstractOutputStream display, File logFile) {
+        this.display = display;
+        this.source  = null;
+        this.tailer  = new LogTailer(logFile, true);
+    }
+
+    /**
+     * Constructor for a log that is not known yet, e.g. the log of the
+     * classifier engine a queued task will run on
+     * @param display the display to write the log output to
+     * @param source creates the tailer to follow the log with. It is
+     * called in the background and may wait until the log is known
+     */
+    public ProgressDisplayStream(AbstractOutputStream display, Callable<LogTailer> source) {
+        this.display = display;
+        this.source  = source;
     }
 
     @Override
     protected Object doInBackground() throws Exception {
+        byte[] buf     = new byte[8192];
+        int    pending = 0;
+
+        if (tailer == null) {
+            try {
+                tailer = source.call();
+            } catch (InterruptedException ex) {
+
+                // stopped before the log was known
+                return this;
+            }
+
+            if (stopped) {
+                tailer.stop();
+            }
+        }
+
         try {
-            String s;
-
-            while (!isDone) {
-                if (br.ready()) {
-                    while ((s = br.readLine()) != null && s.length() > 0) {
-                        String copy = s.substring(0, s.length());
-                        display.write(copy.getBytes());
-                    }
+            while (!isCancelled()) {
+                int n = tailer.read(buf, pending, buf.length - pending, (pending > 0) ? PARTIAL_LINE_TIMEOUT : 0);
+
+                if (n < 0) {
+                    break;
                 }
+
+                int length = pending + n;
+
+                // Flush a partial line if no more of it came, or if it
+                // fills the buffer
+                boolean flush = (n == 0) || (length == buf.length);
+
+                pending = writeLines(buf, length, flush);
             }
+        } catch (InterruptedException ex) {
+
+            // cancelled
         } catch (IOException ex) {
             Logger.getLogger(ProgressDisplayStream.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            tailer.close();
         }
 
         return this;
     }
 
-    public void setBufferedReader(BufferedReader br) {
-        this.br = br;
+    /**
+     * Parses and displays the complete lines in the buffer, skipping empty
+     * lines, and moves what is left to the start of the buffer
+     * @param buf the buffer
+     * @param length the number of bytes in the buffer
+     * @param flush true to treat the last partial line as complete
+     * @return the number of bytes left in the buffer
+     */
+    private int writeLines(byte[] buf, int length, boolean flush) throws IOException {
+        int out   = 0;
+        int start = 0;
+
+        for (int i = 0; i <= length; i++) {
+            boolean eol = (i < length) && ((buf[i] == '\n') || (buf[i] == '\r'));
+
+            if (!eol && !((i == length) && flush)) {
+                continue;
+            }
+
+            int len = i - start;
+
+            if (len > 0) {
+                LogProgressEvent event = parser.parse(buf, start, len);
+
+                if (event != null) {
+                    publish(event);
+                }
+
+                System.arraycopy(buf, start, buf, out, len);
+                out += len;
+
+                if (out < buf.length) {
+                    buf[out++] = '\n';
+                }
+            }
+
+            start = i + 1;
+        }
+
+        if (out > 0) {
+            display.write(buf, 0, out);
+        }
+
+        int left = Math.max(0, length - start);
+
+        System.arraycopy(buf, start, buf, 0, left);
+
+        return left;
     }
-    
+
     @Override
-    public void done() {
-        isDone = true;
+    protected void process(List<LogProgressEvent> events) {
+
+        // Only the latest progress is of interest
+        display.setProgress(events.get(events.size() - 1));
+    }
+
+    /**
+     * Stops following the log
+     */
+    public void stop() {
+        stopped = true;
+
+        LogTailer t = tailer;
+
+        if (t != null) {
+            t.stop();
+        } else {
+            cancel(true);
+        }
     }
 }
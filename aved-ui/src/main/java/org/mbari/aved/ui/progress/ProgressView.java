@@ -86,6 +86,17 @@ public class ProgressView extends JFrame {
         progressBar.setValue(progress);
     }
 
+    /**
+     * Sets the progress and the text shown on the progress bar
+     * @param progress the percent done
+     * @param text the text to show
+     */
+    public void setValue(int progress, String text) {
+        setValue(progress);
+        progressBar.setString(text);
+        progressBar.setStringPainted(true);
+    }
+
     private Component findNestedForm() {
         Iterator iter = mainViewAccessor.beanIterator();
 
@@ -220,12 +220,25 @@ public class TableController extends AbstractController implements ModelListener
                     int lastRow  = firstRow;
 
                     model.fireTableRowsDeleted(firstRow, lastRow);
+                } else {
+
+                    // The row is unknown if the list changed while the
+                    // event was queued
+                    model.fireTableDataChanged();
                 }
 
                 break;
 
+            // Only re-position the changed rows if the table is sorted
             case EventListModel.EventListModelEvent.MULTIPLE_ENTRIES_CHANGED : 
-                tablemodel.getTableModel().fireTableDataChanged();     
+                TableSorter sorter = getModel().getSorter();
+
+                if ((sorter != null) && (sorter.getTableModel() == tablemodel.getTableModel())) {
+                    sorter.rowsUpdated(e.getModelIndexSet(), e.hasAddedOrRemovedRows());
+                } else {
+                    tablemodel.getTableModel().fireTableDataChanged();
+                }
+
                 break;
 
             case EventListModel.EventListModelEvent.LIST_CLEARED : 
@@ -73,6 +73,9 @@ public class ThumbnailPanel extends JPanel {
     int                            iScroller;
     int                            nPicturesPerPage;
 
+    /** Decodes the images for each page off the Event Dispatch Thread */
+    private final ThumbnailPrefetcher prefetcher = new ThumbnailPrefetcher(this);
+
     // ==========================================================================
     // Constructor
     // ==========================================================================
@@ -186,6 +189,9 @@ public class ThumbnailPanel extends JPanel {
      */
     public void reset() {
 
+        // Stop decoding images for the pictures being removed
+        prefetcher.shutdown();
+
         // Remove all pictures from this panel
         Iterator<ThumbnailPicture> iter = pictures.iterator();
 
@@ -282,16 +288,20 @@ public class ThumbnailPanel extends JPanel {
         TableSorter sorter = model.getSorter();
 
         if (sorter != null) {
-            EventListModel eventlistmodel = model.getEventListModel();
-
-            // Reset all of the pictures for this page
+            EventListModel             eventlistmodel = model.getEventListModel();
+            int                        size           = eventlistmodel.getSize();
+            List<EventObjectContainer> visible        = new ArrayList<EventObjectContainer>();
+            List<EventObjectContainer> adjacent       = new ArrayList<EventObjectContainer>();
+
+            // Reset all of the pictures for this page. Pictures whose image
+            // is not decoded yet show a placeholder until the prefetcher
+            // has the page ready
             for (int i = 0; i < pictures.size(); i++) {
                 int scrollIndex = i + offset;
 
-                // If beyond the model size, return otherwise this throws an
-                // ArrayIndexOutOfBoundsException. But be sure to repaint
-                // before returning to display any changes
-                if (scrollIndex >= eventlistmodel.getSize()) {
+                // If beyond the model size, clear the picture otherwise this throws an
+                // ArrayIndexOutOfBoundsException
+                if (scrollIndex >= size) {
                     if (pictures.get(i) != null) {
                         pictures.get(i).reset(null);
                     }
@@ -302,13 +312,38 @@ public class ThumbnailPanel extends JPanel {
                         pictures.get(i).reset(data);
                         pictures.get(i).setScrollerIndex(scrollIndex);
                     }
+
+                    if ((data != null) && (data.getLoadedBestImage() == null)) {
+                        visible.add(data);
+                    }
                 }
+            }
 
-                this.repaint();
+            // Look ahead to the next page, then back to the previous one
+            for (int i = offset + nPicturesPerPage; (i < offset + 2 * nPicturesPerPage) && (i < size); i++) {
+                adjacent.add(eventlistmodel.getElementAt(sorter.modelIndex(i)));
             }
+
+            for (int i = Math.max(0, offset - nPicturesPerPage); i < offset; i++) {
+                adjacent.add(eventlistmodel.getElementAt(sorter.modelIndex(i)));
+            }
+
+            prefetcher.showPage(visible, adjacent, pictures.isEmpty()
+                    ? null
+                    : pictures.get(0).getImageBox());
+            this.repaint();
         }
     }
 
+    /**
+     * Queues the image of a picture that was painted before its image was
+     * decoded
+     * @param picture the picture to repaint when its image is ready
+     */
+    void requestImage(ThumbnailPicture picture) {
+        prefetcher.request(picture, picture.getImageBox());
+    }
+
     /**
      * Request focus on this panel. Sets internal state variable used in repaint logic
      * @param state the focus state
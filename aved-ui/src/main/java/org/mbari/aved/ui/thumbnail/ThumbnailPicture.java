@@ -30,6 +30,7 @@ package org.mbari.aved.ui.thumbnail;
 
 import org.mbari.aved.ui.Application;
 import org.mbari.aved.ui.model.EventObjectContainer;
+import org.mbari.aved.ui.model.ScaledImageCache;
 
 //~--- JDK imports ------------------------------------------------------------
 
@@ -50,7 +51,6 @@ import java.util.logging.Logger;
 
 import javax.swing.ImageIcon;
 import javax.swing.JComponent;
-import javax.swing.JPanel;
 import javax.swing.ListSelectionModel;
 import org.mbari.aved.ui.utils.ImageUtils;
 
@@ -60,6 +60,7 @@ import org.mbari.aved.ui.utils.ImageUtils;
  * picture that best represents an individual event
  * contained in an {@link org.mbari.aved.ui.model.EventObjectContainer}.
  * Images may be scaled down, but not up, depending on their size.
+ * Scaled images come from the {@link ScaledImageCache}.
  *
  * The size of this <code>ThumbnailPicture</code>
  * is defined by the <code>ThumbnailPanel</code>.
@@ -96,7 +97,10 @@ public class ThumbnailPicture extends JComponent {
     /** Scroller index used for controller the scrolling display */
     private int                iScroller;
     private ListSelectionModel listSelectionModel;
-    private JPanel             panel;
+    private ThumbnailPanel     panel;
+
+    /** The size of the box the image was last drawn into */
+    private volatile Dimension imageBox;
 
     /**
      * ThumbnailPicture. <bold>This will exit the system if default images for transform and
@@ -173,6 +177,15 @@ public class ThumbnailPicture extends JComponent {
         return iScroller;
     }
 
+    /**
+     * Returns the size of the box the image was last drawn into, used to
+     * prepare scaled images before they are painted
+     * @return the box size, or null if not painted yet
+     */
+    Dimension getImageBox() {
+        return imageBox;
+    }
+
     // ==========================================================================
     // Overridden Methods
     // ==========================================================================
@@ -201,12 +214,9 @@ public class ThumbnailPicture extends JComponent {
         }
 
         if (eventObjectContainer != null) {
-            ImageIcon imageicon = eventObjectContainer.getBestImage();
-
-            // If the event object does not have an image, set it to a default image
-            if (imageicon == null) {
-                imageicon = missingImageIcon;
-            }
+            // Only draw images that are already decoded; the others are
+            // decoded off the EDT and a placeholder is drawn meanwhile
+            ImageIcon imageicon = eventObjectContainer.getLoadedBestImage();
 
             Graphics2D g2 = (Graphics2D) g;
 
@@ -237,33 +247,46 @@ public class ThumbnailPicture extends JComponent {
             int           topOfText = 0;
 
             if ((imgWidth > 0) && (imgHeight > 0)) {
-                try {
-
-                    // Create an ImageIcon from the image data
-                    int width  = imageicon.getIconWidth();
-                    int height = imageicon.getIconHeight();
-
-                    // Create a new empty image buffer to "draw" the resized image into
-                    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                imageBox = new Dimension(imgWidth, imgHeight);
+            }
 
-                    // Create a Graphics object to do the "drawing"
-                    Graphics2D g2d = image.createGraphics();
+            if ((imgWidth > 0) && (imgHeight > 0) && (imageicon == null)) {
+                int centerX = (int) ((super.getWidth() - imgWidth) / 2);
+                int centerY = (int) ((super.getHeight() - imgHeight) / 2);
 
-                    g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+                g2.setPaint(Color.LIGHT_GRAY);
+                g2.fillRect(centerX, centerY, imgWidth, imgHeight);
+                g2.setPaint(Color.BLACK);
+                topOfText = centerY + imgHeight;
 
-                    // Draw the resized image
-                    g2d.drawImage(imageicon.getImage(), 0, 0, width, height, null);
-                    g2d.dispose();
+                if (panel != null) {
+                    panel.requestImage(this);
+                }
+            } else if ((imgWidth > 0) && (imgHeight > 0)) {
+                try {
 
-                    // Fit image into aspect ratio and draw it in the center
-                    // of the block
-                    im = ImageChangeUtil.fitAspect(image, imgWidth, imgHeight);
+                    // Draw the pre-scaled rendition of the image, fit into the
+                    // aspect ratio, in the center of the block. The rendition is
+                    // made off the EDT, so until it is ready the closest cached
+                    // size is drawn scaled, or nothing at all
+                    Dimension d = ScaledImageCache.fit(imageicon.getIconWidth(), imageicon.getIconHeight(),
+                                                       imgWidth, imgHeight);
+                    int centerX = (int) ((super.getWidth() - d.width) / 2);
+                    int centerY = (int) ((super.getHeight() - d.height) / 2);
+
+                    im = ScaledImageCache.getInstance().get(eventObjectContainer.getObjectId(), imageicon,
+                            imgWidth, imgHeight, this);
+
+                    if (im != null) {
+                        if ((im.getWidth() != d.width) || (im.getHeight() != d.height)) {
+                            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                        }
 
-                    int centerX = (int) ((super.getWidth() - im.getWidth()) / 2);
-                    int centerY = (int) ((super.getHeight() - im.getHeight()) / 2);
+                        g2.drawImage(im, centerX, centerY, d.width, d.height, null);
+                    }
 
-                    g2.drawImage(im, centerX, centerY, null);
-                    topOfText = centerY + im.getHeight();
+                    topOfText = centerY + d.height;
 
                     // If cannnot scale, then log and display transform error image
                 } catch (Exception ex) {
@@ -0,0 +1,262 @@
+/*
+ * @(#)ThumbnailPrefetcher.java
+ * 
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+
+package org.mbari.aved.ui.thumbnail;
+
+//~--- non-JDK imports --------------------------------------------------------
+
+import org.mbari.aved.ui.model.EventObjectContainer;
+import org.mbari.aved.ui.model.ScaledImageCache;
+
+//~--- JDK imports ------------------------------------------------------------
+
+import java.awt.Component;
+import java.awt.Dimension;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * Decodes and scales thumbnail images on background threads so paging
+ * through the {@link ThumbnailPanel} never reads an image file on the
+ * Event Dispatch Thread.
+ *
+ * <p>When a page is shown, the events on it are queued first, then the
+ * events on the next and previous pages. Pictures show a placeholder until
+ * their image is decoded, and the panel is repainted once when the
+ * visible images queued for the page are ready. Work queued for a page
+ * that has since been scrolled away is skipped.
+ *
+ * @author dcline
+ */
+class ThumbnailPrefetcher {
+    private final Set<Long> pending = new HashSet<Long>();
+    private final Component component;
+    private ExecutorService executor;
+
+    /** The page currently shown */
+    private volatile Page page;
+
+    /**
+     * Constructor
+     * @param component the component to repaint when a page is ready
+     */
+    ThumbnailPrefetcher(Component component) {
+        this.component = component;
+        this.page      = new Page();
+    }
+
+    /**
+     * Queues the images for a newly shown page. Anything still queued for
+     * an earlier page is skipped.
+     *
+     * @param visible the events shown on the page
+     * @param adjacent the events on the next and previous pages, in the
+     * order they should be fetched
+     * @param box the size the images are drawn at, or null if not known yet
+     */
+    void showPage(List<EventObjectContainer> visible, List<EventObjectContainer> adjacent, Dimension box) {
+        Page p = new Page();
+
+        page = p;
+
+        // Count the whole page before any of it can finish
+        p.remaining.addAndGet(visible.size());
+
+        for (EventObjectContainer c : visible) {
+            p.markRequested(c);
+            execute(new Fetcher(p, c, box, true));
+        }
+
+        for (EventObjectContainer c : adjacent) {
+            execute(new Fetcher(p, c, box, false));
+        }
+    }
+
+    /**
+     * Queues the image for a single picture that was painted before its
+     * image was decoded, e.g. because its best frame changed. Nothing is
+     * queued if the image was already requested for the page shown.
+     * @param picture the picture to repaint when its image is ready
+     * @param box the size the image is drawn at
+     */
+    void request(ThumbnailPicture picture, Dimension box) {
+        EventObjectContainer c = picture.getEventObjectContainer();
+        Page                 p = page;
+
+        if ((c == null) ||!p.markRequested(c)) {
+            return;
+        }
+
+        p.remaining.incrementAndGet();
+        execute(new Fetcher(p, c, box, true));
+    }
+
+    /**
+     * Skips everything queued and stops the prefetch threads. They are
+     * started again when the next page is shown.
+     */
+    synchronized void shutdown() {
+        page = new Page();
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized void execute(Runnable r) {
+        if (executor == null) {
+            int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ThumbnailPrefetcher");
+
+                    t.setDaemon(true);
+                    t.setPriority(Thread.NORM_PRIORITY - 1);
+
+                    return t;
+                }
+            });
+        }
+
+        executor.execute(r);
+    }
+
+    private synchronized boolean markPending(EventObjectContainer c) {
+        return pending.add(c.getObjectId());
+    }
+
+    private synchronized void clearPending(EventObjectContainer c) {
+        pending.remove(c.getObjectId());
+    }
+
+    /**
+     * Decodes the best image of an event and creates its rendition
+     */
+    private static void load(EventObjectContainer c, Dimension box) {
+        try {
+            ImageIcon icon = c.getBestImage();
+
+            if ((icon != null) && (box != null) && (box.width > 0) && (box.height > 0)) {
+                ScaledImageCache.getInstance().prepare(c.getObjectId(), icon, box.width, box.height);
+            }
+        } catch (Exception ex) {
+            Logger.getLogger(ThumbnailPrefetcher.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * A page shown in the panel: the visible images still to be fetched
+     * for it, and the best frame of each image requested for it
+     */
+    private static class Page {
+        private final AtomicInteger      remaining = new AtomicInteger();
+        private final Map<Long, Integer> requested = new HashMap<Long, Integer>();
+
+        /**
+         * @return false if the image of the event's best frame was
+         * already requested for this page
+         */
+        synchronized boolean markRequested(EventObjectContainer c) {
+            Integer frame = c.getBestEventFrame();
+
+            return !frame.equals(requested.put(c.getObjectId(), frame));
+        }
+
+        /**
+         * Lets a later paint request the image again, e.g. once the
+         * image loader has created it
+         */
+        synchronized void clearRequested(EventObjectContainer c) {
+            requested.remove(c.getObjectId());
+        }
+    }
+
+    /**
+     * Fetches one event image for a page, and repaints once the last
+     * visible image queued for the page is done
+     */
+    private class Fetcher implements Runnable {
+        private final Dimension            box;
+        private final EventObjectContainer container;
+        private final Page                 page;
+        private final boolean              isVisible;
+
+        Fetcher(Page page, EventObjectContainer container, Dimension box, boolean isVisible) {
+            this.page      = page;
+            this.container = container;
+            this.box       = box;
+            this.isVisible = isVisible;
+        }
+
+        public void run() {
+
+            // Skip pages that have been scrolled away
+            if (page != ThumbnailPrefetcher.this.page) {
+                return;
+            }
+
+            if (markPending(container)) {
+                try {
+                    load(container, box);
+                } finally {
+                    clearPending(container);
+                }
+            }
+
+            if (!isVisible) {
+                return;
+            }
+
+            // Nothing to show yet if the event has no image at all
+            if (container.getLoadedBestImage() == null) {
+                page.clearRequested(container);
+            }
+
+            if ((page.remaining.decrementAndGet() == 0) && (page == ThumbnailPrefetcher.this.page)) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        component.repaint();
+                    }
+                });
+            }
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.io.File;
 import javax.swing.*;
+import org.mbari.aved.classifier.FeatureCache;
 import org.mbari.aved.ui.appframework.AbstractController;
 import org.mbari.aved.ui.userpreferences.UserPreferencesModel.VideoPlayoutMode;
 
@@ -92,6 +93,17 @@ public class UserPreferencesController extends AbstractController {
         return null;
     }
 
+    /**
+     * @return the positive integer in the text, or -1 if it is not one
+     */
+    private static int parsePositive(String text) {
+        try {
+            return Math.max(-1, Integer.parseInt(text.trim()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
     @Override
     public void actionPerformed(ActionEvent e) {
         String op = e.getActionCommand();
@@ -113,6 +125,41 @@ public class UserPreferencesController extends AbstractController {
             getModel().setPlayoutMode(VideoPlayoutMode.OTHER);
         } else if (op.equals("PlayoutDefault")) {
             getModel().setPlayoutMode(VideoPlayoutMode.DEFAULT);
+        } else if (op.equals("EnableJavaClassifier")) {
+            getModel().setEnableJavaClassifier(((JCheckBox) e.getSource()).isSelected());
+        } else if (op.equals("EnableDecodeOnDemand")) {
+            getModel().setEnableDecodeOnDemand(((JCheckBox) e.getSource()).isSelected());
+        } else if (op.equals("EnableSparseTranscode")) {
+            getModel().setEnableSparseTranscode(((JCheckBox) e.getSource()).isSelected());
+        } else if (op.equals("EnableXmlIndex")) {
+            getModel().setEnableXmlIndex(((JCheckBox) e.getSource()).isSelected());
+        } else if (op.equals("ClassifierEngines")) {
+            JTextField field   = (JTextField) e.getSource();
+            int        engines = parsePositive(field.getText());
+
+            if (engines > 0) {
+                getModel().setClassifierEngines(engines);
+            }
+
+            field.setText(Integer.toString(getModel().getClassifierEngines()));
+        } else if (op.equals("ThumbnailCacheMBytes")) {
+            JTextField field  = (JTextField) e.getSource();
+            int        mbytes = parsePositive(field.getText());
+
+            if (mbytes > 0) {
+                getModel().setThumbnailCacheMBytes(mbytes);
+            }
+
+            field.setText(Integer.toString(getModel().getThumbnailCacheMBytes()));
+        } else if (op.equals("MeasureFeatureCache")) {
+            FeatureCache cache = new FeatureCache(getModel().getClassImageDirectory());
+
+            getView().setFeatureCacheSummary(cache.getSummary());
+        } else if (op.equals("ClearFeatureCache")) {
+            FeatureCache cache = new FeatureCache(getModel().getClassImageDirectory());
+
+            cache.invalidate();
+            getView().setFeatureCacheSummary(cache.getSummary());
         } else if (op.equals("AskBeforeDelete")) {
             boolean state = ((JCheckBox) e.getSource()).isSelected();
 
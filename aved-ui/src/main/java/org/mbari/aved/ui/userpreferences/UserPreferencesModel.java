@@ -75,6 +75,11 @@ public final class UserPreferencesModel extends AbstractModel {
     private static final String LAST_TRAINING_SELECTION             = "LAST_TRAINING_SELECTION";
     private static final String LAST_VIDEO_IMPORT_DIR               = "LAST_VIDEO_IMPORT_DIR";
     private static final String ENABLE_FFMPEG                       = "ENABLE_FFMPEG";
+    private static final String ENABLE_DECODE_ON_DEMAND             = "ENABLE_DECODE_ON_DEMAND";
+    private static final String ENABLE_SPARSE_TRANSCODE             = "ENABLE_SPARSE_TRANSCODE";
+    private static final String ENABLE_XML_INDEX                    = "ENABLE_XML_INDEX";
+    private static final String ENABLE_JAVA_CLASSIFIER              = "ENABLE_JAVA_CLASSIFIER";
+    private static final String CLASSIFIER_ENGINES                  = "CLASSIFIER_ENGINES";
 
     /** The maximum number of class names store */
     public static int MAX_NUM_CLASS_NAMES = 30;
@@ -88,6 +93,10 @@ public final class UserPreferencesModel extends AbstractModel {
     private static final String SCRATCH_DIR               = "SCRATCH_DIR";
     public static int           SCRATCH_DIR_CHANGED       = 2;
     private static final String TAG_LIST                  = "TAG_LIST";
+    private static final String THUMBNAIL_CACHE_MBYTES    = "THUMBNAIL_CACHE_MBYTES";
+
+    /** The default size of the thumbnail caches together in megabytes */
+    public static int           DEFAULT_THUMBNAIL_CACHE_MBYTES = 256;
     private static final String VIDEO_BATCH_INPUT_DIR     = "VIDEO_BATCH_INPUT_DIR";
     private static final String VIDEO_MASK_DIR            = "VIDEO_MASK_DIR";
     public static int           VIDEO_PLAYOUT_CHANGED     = 0;
@@ -356,6 +365,38 @@ public final class UserPreferencesModel extends AbstractModel {
     public boolean getEnableFfmpeg() {
         return Boolean.valueOf(get(ENABLE_FFMPEG, Boolean.toString(false)));
     }
+
+    /**
+     * @return true if decoding video frames on demand from an ffmpeg pipe
+     * instead of transcoding every frame to a file
+     */
+    public boolean getEnableDecodeOnDemand() {
+        return Boolean.valueOf(get(ENABLE_DECODE_ON_DEMAND, Boolean.toString(false)));
+    }
+
+    /**
+     * @return true if transcoding only the frames events are found in
+     * instead of every frame up to the last event
+     */
+    public boolean getEnableSparseTranscode() {
+        return Boolean.valueOf(get(ENABLE_SPARSE_TRANSCODE, Boolean.toString(true)));
+    }
+
+    /**
+     * @return true if writing an index next to each XML file imported,
+     * so the file opens faster the next time
+     */
+    public boolean getEnableXmlIndex() {
+        return Boolean.valueOf(get(ENABLE_XML_INDEX, Boolean.toString(false)));
+    }
+
+    /**
+     * @return true if classifying with the Java classifier library
+     * instead of the Matlab library
+     */
+    public boolean getEnableJavaClassifier() {
+        return Boolean.valueOf(get(ENABLE_JAVA_CLASSIFIER, Boolean.toString(false)));
+    }
     
     /**
      *  Clears the list of user-defined ids
@@ -652,6 +693,62 @@ public final class UserPreferencesModel extends AbstractModel {
     public void setEnableFfmpeg(boolean b) {
         put(ENABLE_FFMPEG, Boolean.toString(b));
     }
+
+    public void setEnableDecodeOnDemand(boolean b) {
+        put(ENABLE_DECODE_ON_DEMAND, Boolean.toString(b));
+    }
+
+    public void setEnableSparseTranscode(boolean b) {
+        put(ENABLE_SPARSE_TRANSCODE, Boolean.toString(b));
+    }
+
+    public void setEnableXmlIndex(boolean b) {
+        put(ENABLE_XML_INDEX, Boolean.toString(b));
+    }
+
+    public void setEnableJavaClassifier(boolean b) {
+        put(ENABLE_JAVA_CLASSIFIER, Boolean.toString(b));
+    }
+
+    /**
+     * @return the maximum size of the thumbnail caches in megabytes, split
+     * evenly between the decoded thumbnails and their scaled renditions
+     */
+    public int getThumbnailCacheMBytes() {
+        try {
+            return Integer.parseInt(get(THUMBNAIL_CACHE_MBYTES, Integer.toString(DEFAULT_THUMBNAIL_CACHE_MBYTES)));
+        } catch (NumberFormatException ex) {
+            return DEFAULT_THUMBNAIL_CACHE_MBYTES;
+        }
+    }
+
+    /**
+     * @param mbytes the maximum size of the thumbnail caches in megabytes
+     */
+    public void setThumbnailCacheMBytes(int mbytes) {
+        put(THUMBNAIL_CACHE_MBYTES, Integer.toString(mbytes));
+    }
+
+    /**
+     * @return the number of Java classifier engines that run classifier
+     * tasks concurrently; the Matlab library only ever runs one
+     */
+    public int getClassifierEngines() {
+        int defaultEngines = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+        try {
+            return Math.max(1, Integer.parseInt(get(CLASSIFIER_ENGINES, Integer.toString(defaultEngines))));
+        } catch (NumberFormatException ex) {
+            return defaultEngines;
+        }
+    }
+
+    /**
+     * @param engines the number of Java classifier engines
+     */
+    public void setClassifierEngines(int engines) {
+        put(CLASSIFIER_ENGINES, Integer.toString(engines));
+    }
     
     public void setEventImageDirectory(File f) {
         put(EVENT_IMAGE_DIR, f.getAbsolutePath());
@@ -44,6 +44,7 @@ import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JRadioButton;
 import javax.swing.JTextField;
@@ -64,13 +65,31 @@ public class UserPreferencesView extends JFrameView {
     public static final String ID_TRANSCODE_RADIO         = "converttranscode";   // javax.swing.JRadioButton
     public static final String ID_SCRATCH_DIRECTORY_COMBO = "scratchdir";         // javax.swing.JComboBox
     public static final String ID_VIDEO_PLAYER_TEXTFIELD  = "videoplayer";        // javax.swing.JTextField
+    public static final String ID_JAVA_CLASSIFIER         = "enablejavaclassifier"; // javax.swing.JCheckBox
+    public static final String ID_DECODE_ON_DEMAND        = "enabledecodeondemand"; // javax.swing.JCheckBox
+    public static final String ID_SPARSE_TRANSCODE        = "enablesparsetranscode"; // javax.swing.JCheckBox
+    public static final String ID_XML_INDEX               = "enablexmlindex";     // javax.swing.JCheckBox
+    public static final String ID_CLASSIFIER_ENGINES      = "classifierengines";  // javax.swing.JTextField
+    public static final String ID_THUMBNAIL_CACHE         = "thumbnailcachembytes"; // javax.swing.JTextField
+    public static final String ID_FEATURE_CACHE_SIZE      = "featurecachesize";   // javax.swing.JLabel
+    public static final String ID_MEASURE_FEATURE_CACHE   = "measurefeaturecache"; // javax.swing.JButton
+    public static final String ID_CLEAR_FEATURE_CACHE     = "clearfeaturecache";  // javax.swing.JButton
     private final JCheckBox    askBeforeDeleteCheckBox;
     private final JButton      browsePlayerButton;
     private final JButton      browseScratchDirButton;
+    private final JTextField   classifierEnginesTextField;
+    private final JButton      clearFeatureCacheButton;
+    private final JCheckBox    decodeOnDemandCheckBox;
+    private final JLabel       featureCacheSizeLabel;
+    private final JCheckBox    javaClassifierCheckBox;
+    private final JButton      measureFeatureCacheButton;
     private final JRadioButton playerDefaultRadio, playerOtherRadio;
     private final JRadioButton ffmpegRadio, transcodeRadio;
     private final JComboBox    scratchDirComboBox;
+    private final JCheckBox    sparseTranscodeCheckBox;
+    private final JTextField   thumbnailCacheTextField;
     private final JTextField   videoPlayerTextField;
+    private final JCheckBox    xmlIndexCheckBox;
 
     public UserPreferencesView(UserPreferencesModel model, UserPreferencesController controller) {
         super("org/mbari/aved/ui/forms/UserPreferences.xml", model, controller);
@@ -85,6 +104,15 @@ public class UserPreferencesView extends JFrameView {
         scratchDirComboBox      = (JComboBox) getForm().getComboBox(ID_SCRATCH_DIRECTORY_COMBO);
         ffmpegRadio             =  getForm().getRadioButton(ID_FFMPEG__RADIO);
         transcodeRadio          =  getForm().getRadioButton(ID_TRANSCODE_RADIO);
+        javaClassifierCheckBox     = getForm().getCheckBox(ID_JAVA_CLASSIFIER);
+        decodeOnDemandCheckBox     = getForm().getCheckBox(ID_DECODE_ON_DEMAND);
+        sparseTranscodeCheckBox    = getForm().getCheckBox(ID_SPARSE_TRANSCODE);
+        classifierEnginesTextField = (JTextField) getForm().getComponentByName(ID_CLASSIFIER_ENGINES);
+        thumbnailCacheTextField    = (JTextField) getForm().getComponentByName(ID_THUMBNAIL_CACHE);
+        xmlIndexCheckBox           = getForm().getCheckBox(ID_XML_INDEX);
+        featureCacheSizeLabel      = getForm().getLabel(ID_FEATURE_CACHE_SIZE);
+        measureFeatureCacheButton  = (JButton) getForm().getButton(ID_MEASURE_FEATURE_CACHE);
+        clearFeatureCacheButton    = (JButton) getForm().getButton(ID_CLEAR_FEATURE_CACHE);
          
         // Add handler to buttons and combo boxes
         ActionHandler actionHandler = getActionHandler();
@@ -98,6 +126,14 @@ public class UserPreferencesView extends JFrameView {
         scratchDirComboBox.addActionListener(actionHandler);
         ffmpegRadio.addActionListener(actionHandler);
         transcodeRadio.addActionListener(actionHandler);
+        javaClassifierCheckBox.addActionListener(actionHandler);
+        decodeOnDemandCheckBox.addActionListener(actionHandler);
+        sparseTranscodeCheckBox.addActionListener(actionHandler);
+        classifierEnginesTextField.addActionListener(actionHandler);
+        thumbnailCacheTextField.addActionListener(actionHandler);
+        xmlIndexCheckBox.addActionListener(actionHandler);
+        measureFeatureCacheButton.addActionListener(actionHandler);
+        clearFeatureCacheButton.addActionListener(actionHandler);
         
         loadModel(model);
 
@@ -140,6 +176,15 @@ public class UserPreferencesView extends JFrameView {
         
         ffmpegRadio.setSelected(model.getEnableFfmpeg());
         transcodeRadio.setSelected(!model.getEnableFfmpeg());
+
+        // The engines and cache sizes are read when the classifier or the
+        // caches are created, so changes take effect then
+        javaClassifierCheckBox.setSelected(model.getEnableJavaClassifier());
+        decodeOnDemandCheckBox.setSelected(model.getEnableDecodeOnDemand());
+        sparseTranscodeCheckBox.setSelected(model.getEnableSparseTranscode());
+        classifierEnginesTextField.setText(Integer.toString(model.getClassifierEngines()));
+        thumbnailCacheTextField.setText(Integer.toString(model.getThumbnailCacheMBytes()));
+        xmlIndexCheckBox.setSelected(model.getEnableXmlIndex());
     }
 
     /**
@@ -184,6 +229,15 @@ public class UserPreferencesView extends JFrameView {
         return videoPlayerTextField;
     }
 
+    /**
+     * Shows the number of entries and size of the classifier feature cache.
+     * This is not measured until asked for as it walks the cache directory.
+     * @param summary the cache summary
+     */
+    void setFeatureCacheSummary(String summary) {
+        featureCacheSizeLabel.setText(summary);
+    }
+
     /**
      * Adds a scratch directory to the scratch directory combo box model
      * @param f
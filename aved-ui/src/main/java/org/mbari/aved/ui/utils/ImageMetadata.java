@@ -32,6 +32,13 @@ public class ImageMetadata extends IIOMetadata {
         this.comment = comment;
     }
 
+    /**
+     * @return the comment written in the image file header
+     */
+    public String getComment() {
+        return comment;
+    }
+
     @Override
     public boolean isReadOnly() {
         return true;
@@ -62,6 +62,7 @@ import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.stream.*;
 import javax.media.jai.Interpolation;
+import org.mbari.aved.mbarivision.api.utils.PpmCodec;
 import sun.awt.image.OffScreenImageSource;
 
 public class ImageUtils {
@@ -111,6 +112,21 @@ public class ImageUtils {
     public static void squareImageThumbnail(String imgInFilePath, String imgOutFilePath, String imgExt) throws Exception {
       
         System.out.println("Writing " + imgOutFilePath);
+
+        // Ppm images keep their comment, e.g. the event size and position
+        if (ppm.equalsIgnoreCase(imgExt) || pnm.equalsIgnoreCase(imgExt)) {
+            File          inFile = new File(imgInFilePath);
+            BufferedImage image  = PpmCodec.readImage(inFile);
+
+            if (image == null) {
+                throw new Exception("Cannot read " + imgInFilePath);
+            }
+
+            PpmCodec.write(squareImage(image), PpmCodec.readComment(inFile), new File(imgOutFilePath));
+
+            return;
+        }
+
         FileInputStream in = new FileInputStream(imgInFilePath);
         ImageInputStream iin = ImageIO.createImageInputStream(in);
         ImageReader reader = ImageIO.getImageReaders(iin).next();
@@ -118,23 +134,8 @@ public class ImageUtils {
         BufferedImage image = reader.read(0);
         BufferedImage sqImage;
         ImageIO.setUseCache(false); 
-        int maxDim;
-        
-        int imageWidth  = image.getWidth();
-        int imageHeight = image.getHeight();
-        
-        // square the image with the largest dimension 
-        if (imageWidth > imageHeight) {
-            maxDim = imageWidth;
-        } else {
-            maxDim = imageHeight;
-        }
-        Image i = image.getScaledInstance(maxDim, maxDim, Image.SCALE_FAST);
-        sqImage = new BufferedImage(maxDim, maxDim, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = sqImage.createGraphics();
-        g.drawImage(i, null, null);
-        g.dispose();
-        i.flush(); 
+
+        sqImage = squareImage(image);
          
         Iterator        iterw   = ImageIO.getImageWritersByFormatName(imgExt); 
         ImageWriter     writer = (ImageWriter) iterw.next();
@@ -153,8 +154,40 @@ public class ImageUtils {
         writer.write(null, iiimage, iwp);
         writer.dispose();
         output.close();  
+        reader.dispose();
+        iin.close();
+        in.close();
     }
      
+    /**
+     * Stretches an image to a square with its larger dimension, as
+     * required for the classifier
+     * @param image the image to square
+     * @return the squared image
+     */
+    public static BufferedImage squareImage(BufferedImage image) {
+        int imageWidth  = image.getWidth();
+        int imageHeight = image.getHeight();
+        int maxDim;
+
+        // square the image with the largest dimension 
+        if (imageWidth > imageHeight) {
+            maxDim = imageWidth;
+        } else {
+            maxDim = imageHeight;
+        }
+
+        // Draw with the default nearest neighbor interpolation, which is
+        // the same as scaling with Image.SCALE_FAST
+        BufferedImage sqImage = new BufferedImage(maxDim, maxDim, BufferedImage.TYPE_INT_RGB);
+        Graphics2D    g       = sqImage.createGraphics();
+
+        g.drawImage(image, 0, 0, maxDim, maxDim, null);
+        g.dispose();
+
+        return sqImage;
+    }
+
     public static boolean checkForPpmReader() {
         ImageIO.scanForPlugins();
 
@@ -106,6 +106,8 @@ public class VideoUtils {
                             || (file = searchForClip(xmlfile, ".avi", f)) != null
                             || (file = searchForClip(xmlfile, ".mov")) != null
                             || (file = searchForClip(xmlfile, ".mov", f)) != null
+                            || (file = searchForClip(xmlfile, ".mp4")) != null
+                            || (file = searchForClip(xmlfile, ".mp4", f)) != null
                             || (file = searchForClip(xmlfile, ".tar")) != null
                             || (file = searchForClip(xmlfile, ".tar", f)) != null
                             || (file = searchForClip(xmlfile, ".tar.gz")) != null
@@ -0,0 +1,173 @@
+/*
+ * @(#)TestEventListModel.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import aved.model.EventObject;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.mbari.aved.ui.model.BulkEdit;
+import org.mbari.aved.ui.model.EventListModel;
+import org.mbari.aved.ui.model.EventObjectContainer;
+
+/**
+ * Times the EventListModel lookups, inserts, deletes and bulk edits
+ * with a large number of events.
+ *
+ * @author dcline
+ */
+public class TestEventListModel extends TestCase {
+    private static final int NUM_EVENTS = 100000;
+    private static final int NUM_EDITS  = 1000;
+
+    public TestEventListModel(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // The events have no frames so the containers log a missing frame
+        Logger.getLogger(EventObjectContainer.class.getName()).setLevel(Level.OFF);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    public final void testLargeList() throws Exception {
+        EventListModel                   model  = new EventListModel();
+        LinkedList<EventObjectContainer> events = new LinkedList<EventObjectContainer>();
+
+        // Every other ID so there is room to insert between events
+        for (long id = NUM_EVENTS * 2L; id > 0; id -= 2) {
+            events.add(createEvent(id));
+        }
+
+        long start = System.currentTimeMillis();
+
+        model.add(events);
+        report("load", start);
+        assertEquals(NUM_EVENTS, model.getSize());
+
+        // Look up every event
+        start = System.currentTimeMillis();
+
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            EventObjectContainer c = model.getElementAt(i);
+
+            assertEquals(i, model.getIndexOf(c));
+            assertEquals(c.getObjectId(), 2L * (i + 1));
+        }
+
+        report("getIndexOf", start);
+
+        // Walk the list
+        start = System.currentTimeMillis();
+
+        EventObjectContainer c = model.getElementAt(0);
+
+        for (int i = 1; i < NUM_EVENTS; i++) {
+            c = model.getElementNextTo(c);
+        }
+
+        assertTrue(model.isLastEvent(c));
+        report("getElementNextTo", start);
+
+        // Insert events between the existing ones
+        ArrayList<EventObjectContainer> inserts = new ArrayList<EventObjectContainer>();
+
+        for (int i = 0; i < NUM_EDITS; i++) {
+            inserts.add(createEvent(2L * i * (NUM_EVENTS / NUM_EDITS) + 1));
+        }
+
+        start = System.currentTimeMillis();
+        model.add(inserts);
+        report("add", start);
+        assertEquals(NUM_EVENTS + NUM_EDITS, model.getSize());
+
+        for (int i = 1; i < model.getSize(); i++) {
+            assertTrue(model.getElementAt(i - 1).getObjectId() < model.getElementAt(i).getObjectId());
+        }
+
+        // And delete them again
+        start = System.currentTimeMillis();
+        model.delete(inserts);
+        report("delete", start);
+        assertEquals(NUM_EVENTS, model.getSize());
+        assertEquals(-1, model.getIndexOf(inserts.get(0)));
+    }
+
+    public final void testBulkEdit() throws Exception {
+        EventListModel                   model  = new EventListModel();
+        LinkedList<EventObjectContainer> events = new LinkedList<EventObjectContainer>();
+
+        for (long id = 1; id <= NUM_EVENTS; id++) {
+            events.add(createEvent(id));
+        }
+
+        model.add(events);
+
+        // Tag every event and delete every other one in a single edit
+        ArrayList<EventObjectContainer> all    = new ArrayList<EventObjectContainer>(events);
+        ArrayList<EventObjectContainer> purged = new ArrayList<EventObjectContainer>();
+
+        for (int i = 0; i < all.size(); i += 2) {
+            purged.add(all.get(i));
+        }
+
+        long start = System.currentTimeMillis();
+
+        model.apply(new BulkEdit().setTag(all, "tag").delete(purged));
+        report("bulk edit", start);
+        assertEquals(NUM_EVENTS - purged.size(), model.getSize());
+        assertEquals(-1, model.getIndexOf(purged.get(0)));
+        assertEquals(0, model.getIndexOf(all.get(1)));
+
+        // And restore the deleted events
+        start = System.currentTimeMillis();
+        model.apply(new BulkEdit().add(purged));
+        report("bulk add", start);
+        assertEquals(NUM_EVENTS, model.getSize());
+    }
+
+    private static EventObjectContainer createEvent(long id) {
+        EventObject object = new EventObject();
+
+        object.setObjectId(id);
+
+        return new EventObjectContainer(object);
+    }
+
+    private static void report(String name, long start) {
+        System.out.println("TestEventListModel " + name + " " + NUM_EVENTS + " events: "
+                           + (System.currentTimeMillis() - start) + " msec");
+    }
+}
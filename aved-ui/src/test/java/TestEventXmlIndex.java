@@ -0,0 +1,360 @@
+/*
+ * @(#)TestEventXmlIndex.java
+ *
+ * Copyright 2013 MBARI
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import aved.model.FrameEventSet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import junit.framework.TestCase;
+
+import org.mbari.aved.ui.EventXmlIndex;
+import org.mbari.aved.ui.EventXmlStreamReader;
+
+/**
+ * Tests recording the EventXmlIndex of an events XML file while it is
+ * parsed and opening it, that an out of date index is ignored, and that
+ * the EventXmlStreamReader falls back to parsing the XML when the index
+ * does not match it.
+ *
+ * @author dcline
+ */
+public class TestEventXmlIndex extends TestCase {
+    private static final int NUM_FRAMES  = 20;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 12;
+
+    /** An object that is in every frame */
+    private static final long ALL_FRAMES_ID = 100;
+    private File              xmlFile;
+
+    public TestEventXmlIndex(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        xmlFile = File.createTempFile("TestEventXmlIndex", ".events.xml");
+        writeXml(xmlFile, "avedac");
+
+        // The tests ignore and delete indexes on purpose
+        Logger.getLogger(EventXmlIndex.class.getName()).setLevel(Level.OFF);
+        Logger.getLogger(EventXmlStreamReader.class.getName()).setLevel(Level.OFF);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        EventXmlIndex.delete(xmlFile);
+        xmlFile.delete();
+        super.tearDown();
+    }
+
+    public final void testWriteAndOpen() throws Exception {
+        assertNull(EventXmlIndex.open(xmlFile));
+        assertTrue(index(xmlFile));
+
+        EventXmlIndex index = EventXmlIndex.open(xmlFile);
+
+        assertNotNull(index);
+        assertEquals(NUM_FRAMES, index.getNumFrameSets());
+
+        // Each slice is one whole FrameEventSet after the white space, comments
+        // and processing instructions before it, skipping the one in the comment
+        RandomAccessFile xml = new RandomAccessFile(xmlFile, "r");
+
+        try {
+            for (int i = 0; i < NUM_FRAMES; i++) {
+                byte[] slice = new byte[index.getLength(i)];
+
+                xml.seek(index.getOffset(i));
+                xml.readFully(slice);
+
+                String element = new String(slice, "UTF-8").trim();
+
+                if (i == NUM_FRAMES / 2) {
+                    assertTrue(element, element.startsWith("<?aved"));
+                    element = element.substring(element.indexOf("?>") + 2).trim();
+                }
+
+                assertTrue(element, element.startsWith("<FrameEventSet FrameNumber=\"" + i + "\""));
+                assertTrue(element, element.endsWith("</FrameEventSet>"));
+            }
+        } finally {
+            xml.close();
+        }
+
+        // Objects 1 to NUM_FRAMES / 4 are each in four frames
+        assertEquals(NUM_FRAMES / 4 + 1, index.getNumObjects());
+
+        for (long id = 1; id <= NUM_FRAMES / 4; id++) {
+            int object = index.findObject(id);
+
+            assertTrue(object >= 0);
+            assertEquals(id, index.getObjectId(object));
+            assertEquals(4 * (int) (id - 1), index.getFirstFrameSet(object));
+            assertEquals(4 * (int) (id - 1) + 3, index.getLastFrameSet(object));
+        }
+
+        int object = index.findObject(ALL_FRAMES_ID);
+
+        assertEquals(0, index.getFirstFrameSet(object));
+        assertEquals(NUM_FRAMES - 1, index.getLastFrameSet(object));
+        assertEquals(-1, index.findObject(ALL_FRAMES_ID + 1));
+        assertEquals(-1, index.findObject(0));
+    }
+
+    public final void testStaleLength() throws Exception {
+        assertTrue(index(xmlFile));
+
+        long modified = xmlFile.lastModified();
+
+        // Change only the length
+        append(xmlFile, "\n");
+        xmlFile.setLastModified(modified);
+        assertNull(EventXmlIndex.open(xmlFile));
+    }
+
+    public final void testStaleModified() throws Exception {
+        assertTrue(index(xmlFile));
+        assertTrue(xmlFile.setLastModified(xmlFile.lastModified() + 2000));
+        assertNull(EventXmlIndex.open(xmlFile));
+    }
+
+    public final void testVersion() throws Exception {
+        assertTrue(index(xmlFile));
+        patchInt(EventXmlIndex.getIndexFile(xmlFile), 4, EventXmlIndex.VERSION + 1);
+        assertNull(EventXmlIndex.open(xmlFile));
+    }
+
+    public final void testIndexedRead() throws Exception {
+        assertTrue(index(xmlFile));
+
+        EventXmlStreamReader reader = new EventXmlStreamReader(xmlFile);
+
+        try {
+            assertTrue(reader.isIndexed());
+            reader.readHeader();
+            assertFrames(reader);
+            assertTrue(reader.isIndexed());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public final void testCorruptSliceFallback() throws Exception {
+        assertTrue(index(xmlFile));
+
+        // Start a FrameEventSet in the third batch inside its start tag.
+        // The index still looks valid when opened
+        File indexFile = EventXmlIndex.getIndexFile(xmlFile);
+        long offset    = HEADER_SIZE + 4L * RECORD_SIZE;
+
+        patchLong(indexFile, offset, readLong(indexFile, offset) + 20);
+        patchInt(indexFile, offset + 8, readInt(indexFile, offset + 8) - 20);
+
+        EventXmlStreamReader reader = new EventXmlStreamReader(xmlFile);
+
+        try {
+            assertTrue(reader.isIndexed());
+            reader.readHeader();
+
+            // Every FrameEventSet is still read once, in order
+            assertFrames(reader);
+            assertFalse(reader.isIndexed());
+            assertFalse(indexFile.exists());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public final void testNotAscii() throws Exception {
+
+        // The parser reports character offsets, which are not byte offsets here
+        writeXml(xmlFile, "av\u00e9dac");
+        assertFalse(index(xmlFile));
+        assertNull(EventXmlIndex.open(xmlFile));
+    }
+
+    public final void testNotReadToEnd() throws Exception {
+        EventXmlStreamReader reader = new EventXmlStreamReader(xmlFile);
+
+        try {
+            reader.readHeader();
+            reader.readFrameEventSets(2);
+            assertFalse(reader.writeIndex());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses the XML file and writes the index recorded while parsing it
+     * @return true if the index was written
+     */
+    private static boolean index(File file) throws Exception {
+        EventXmlStreamReader reader = new EventXmlStreamReader(file);
+
+        try {
+            assertFalse(reader.isIndexed());
+            reader.readHeader();
+            assertFrames(reader);
+
+            return reader.writeIndex();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the FrameEventSets two at a time and checks they are all read
+     * once, in order
+     */
+    private static void assertFrames(EventXmlStreamReader reader) throws Exception {
+        List<FrameEventSet> frames;
+        int                 next = 0;
+
+        while (!(frames = reader.readFrameEventSets(2)).isEmpty()) {
+            for (FrameEventSet f : frames) {
+                assertEquals(next++, f.getFrameNumber());
+            }
+        }
+
+        assertEquals(NUM_FRAMES, next);
+    }
+
+    /**
+     * Writes an events XML file with NUM_FRAMES FrameEventSets. Frame i has
+     * object i / 4 + 1, and object ALL_FRAMES_ID is in every frame. The
+     * header has a comment with a FrameEventSet in it, there is a quoted
+     * '&gt;' in a TimeCode, and a processing instruction with an end tag
+     * in it before the FrameEventSet in the middle.
+     */
+    private static void writeXml(File file, String owner) throws IOException {
+        StringBuilder xml = new StringBuilder();
+
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\" ?>\n");
+        xml.append("<EventDataSet CreationDate=\"2013-11-06 14:43:43 PST\" EndFrame=\"" + (NUM_FRAMES - 1)
+                   + "\" StartFrame=\"0\">\n\n");
+        xml.append("  <!-- <FrameEventSet FrameNumber=\"-1\" TimeCode=\"\"/> -->\n\n");
+        xml.append("  <SourceMetadata CreationDate=\"2013-11-06T16:38:22-08:00\" FrameHeight=\"706\""
+                   + " FrameRate=\"29.970\" FrameWidth=\"362\" Owner=\"" + owner + "\""
+                   + " SourceIdentifier=\"file://localhost/examples/test.mov\"/>\n\n");
+
+        for (int i = 0; i < NUM_FRAMES; i++) {
+            if (i == NUM_FRAMES / 2) {
+                xml.append("  <?aved </FrameEventSet> ?>\n");
+            }
+
+            xml.append("  <FrameEventSet FrameNumber=\"" + i + "\" TimeCode=\"" + ((i == 1) ? "a>b" : "") + "\">\n");
+
+            appendObject(xml, i / 4 + 1, i);
+            appendObject(xml, ALL_FRAMES_ID, i);
+            xml.append("  </FrameEventSet>\n\n");
+        }
+
+        xml.append("</EventDataSet>\n");
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try {
+            out.write(xml.toString());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void appendObject(StringBuilder xml, long id, int frame) {
+        xml.append("    <EventObject CurrSize=\"1554\" CurrX=\"306\" CurrY=\"13\" ObjectID=\"" + id
+                   + "\" Saliency=\"0.00388888\" StartFrameNumber=\"" + frame + "\">\n");
+        xml.append("      <BoundingBox LowerLeftX=\"261\" LowerLeftY=\"42\" UpperRightX=\"341\""
+                   + " UpperRightY=\"0\"/>\n");
+        xml.append("    </EventObject>\n");
+    }
+
+    private static void append(File file, String text) throws IOException {
+        FileWriter out = new FileWriter(file, true);
+
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static long readLong(File file, long offset) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "r");
+
+        try {
+            f.seek(offset);
+
+            return f.readLong();
+        } finally {
+            f.close();
+        }
+    }
+
+    private static int readInt(File file, long offset) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "r");
+
+        try {
+            f.seek(offset);
+
+            return f.readInt();
+        } finally {
+            f.close();
+        }
+    }
+
+    private static void patchLong(File file, long offset, long value) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "rw");
+
+        try {
+            f.seek(offset);
+            f.writeLong(value);
+        } finally {
+            f.close();
+        }
+    }
+
+    private static void patchInt(File file, long offset, int value) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file, "rw");
+
+        try {
+            f.seek(offset);
+            f.writeInt(value);
+        } finally {
+            f.close();
+        }
+    }
+}